@@ -0,0 +1,34 @@
+package com.rushlimit.doodlz;
+
+import android.graphics.Bitmap;
+
+/**
+ * Exposes a Bitmap's pixels as a TileHistory.Surface.
+ */
+public class BitmapSurface implements TileHistory.Surface {
+    private final Bitmap bitmap;
+
+    public BitmapSurface(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    @Override
+    public int getWidth() {
+        return bitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return bitmap.getHeight();
+    }
+
+    @Override
+    public void readPixels(int[] pixels, int x, int y, int width, int height) {
+        bitmap.getPixels(pixels, 0, width, x, y, width, height);
+    }
+
+    @Override
+    public void writePixels(int[] pixels, int x, int y, int width, int height) {
+        bitmap.setPixels(pixels, 0, width, x, y, width, height);
+    }
+}
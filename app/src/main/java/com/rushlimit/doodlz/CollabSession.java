@@ -0,0 +1,139 @@
+package com.rushlimit.doodlz;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A drawing session shared with one peer, as DoodleView uses it. The
+ * session outlives any single view, so a configuration change doesn't
+ * drop the connection: frames arriving while no view is attached are
+ * held and applied once the next one is. Local events batch in the
+ * encoder and go out as one frame per display frame.
+ */
+public class CollabSession implements CollabConnection.Listener {
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private CollabConnection connection;
+    private final StrokeStreamEncoder encoder = new StrokeStreamEncoder();
+
+    // Only used on the UI thread
+    private final StrokeStreamDecoder decoder = new StrokeStreamDecoder();
+    private final ArrayList<byte[]> held = new ArrayList<>();
+    private DoodleView view;
+    private boolean connected;
+    private boolean ended;
+    private IOException error;
+    private boolean flushScheduled;
+
+    private final Choreographer.FrameCallback flush = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flushScheduled = false;
+            if (!encoder.isEmpty()) {
+                connection.send(encoder.takeFrame());
+            }
+        }
+    };
+
+    // Waits for a peer to join on port
+    public static CollabSession host(int port) throws IOException {
+        CollabSession session = new CollabSession();
+        session.connection = CollabConnection.listen(port, session);
+        return session;
+    }
+
+    public static CollabSession join(String address, int port) throws IOException {
+        CollabSession session = new CollabSession();
+        session.connection = CollabConnection.connect(address, port, session);
+        return session;
+    }
+
+    // Routes the session to view, handing it everything that arrived meanwhile
+    public void attach(DoodleView view) {
+        this.view = view;
+        for (int i = 0; i < held.size() && this.view == view; i++) {
+            view.applySessionFrame(held.get(i));
+        }
+        held.clear();
+        if (ended && this.view == view) {
+            view.onSessionEnded(error);
+        }
+    }
+
+    public void detach() {
+        view = null;
+    }
+
+    public StrokeStreamEncoder getEncoder() {
+        return encoder;
+    }
+
+    public StrokeStreamDecoder getDecoder() {
+        return decoder;
+    }
+
+    // Sends what the encoder holds with the next display frame
+    public void scheduleFlush() {
+        if (!flushScheduled && !encoder.isEmpty()) {
+            flushScheduled = true;
+            Choreographer.getInstance().postFrameCallback(flush);
+        }
+    }
+
+    public void close() {
+        view = null;
+        if (flushScheduled) {
+            Choreographer.getInstance().removeFrameCallback(flush);
+            flushScheduled = false;
+        }
+        connection.close();
+    }
+
+    public boolean isConnected() {
+        return connected && !ended;
+    }
+
+    @Override
+    public void onConnected() {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                connected = true;
+                if (view != null) {
+                    view.onSessionConnected();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onFrame(final byte[] frame) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (view != null) {
+                    view.applySessionFrame(frame);
+                } else {
+                    held.add(frame);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onClosed(final IOException closeError) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ended = true;
+                error = closeError;
+                if (view != null) {
+                    view.onSessionEnded(closeError);
+                }
+            }
+        });
+    }
+}
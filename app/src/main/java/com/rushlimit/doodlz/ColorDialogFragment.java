@@ -8,27 +8,39 @@ import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.DialogFragment;
 import android.support.v7.app.AlertDialog;
+import android.util.Log;
 import android.view.View;
+import android.widget.LinearLayout;
 import android.widget.SeekBar;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * Created by aminm on 5/4/16.
  */
 public class ColorDialogFragment extends DialogFragment {
-    private SeekBar alphaSeekBar, redSeekBar, greenSeekBar, blueSeekBar;
+    private static final String TAG = "ColorDialogFragment";
+    private static final String RECENT_COLORS_FILE_NAME = "recent_colors";
+    private static final int RECENT_COLORS = 8;
+
+    // Saves the recent colors in order, off the UI thread
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private static RecentColors recentColors; // Loaded by the first dialog
+
+    private SeekBar alphaSeekBar;
+    private HsvColorPickerView hsvColorPickerView;
     private View colorView;
     private int color;
 
-    private final SeekBar.OnSeekBarChangeListener colorChangedListener = new SeekBar.OnSeekBarChangeListener() {
+    private final SeekBar.OnSeekBarChangeListener alphaChangedListener = new SeekBar.OnSeekBarChangeListener() {
         @Override
         public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
             if (fromUser) { // User, not program, changed SeekBar progress
-                color = Color.argb(
-                        alphaSeekBar.getProgress(),
-                        redSeekBar.getProgress(),
-                        greenSeekBar.getProgress(),
-                        blueSeekBar.getProgress());
-                colorView.setBackgroundColor(color);
+                setColor(hsvColorPickerView.getColor(progress));
             }
         }
 
@@ -43,6 +55,24 @@ public class ColorDialogFragment extends DialogFragment {
         }
     };
 
+    private final HsvColorPickerView.OnColorChangedListener hsvChangedListener =
+            new HsvColorPickerView.OnColorChangedListener() {
+                @Override
+                public void onColorChanged(float hue, float saturation, float value) {
+                    setColor(ColorMath.hsvToColor(alphaSeekBar.getProgress(), hue, saturation, value));
+                }
+            };
+
+    private final View.OnClickListener recentColorClicked = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            int recent = (Integer) view.getTag();
+            alphaSeekBar.setProgress(Color.alpha(recent));
+            hsvColorPickerView.setColor(recent);
+            setColor(recent);
+        }
+    };
+
     @NonNull
     @Override
     public Dialog onCreateDialog(Bundle savedInstanceState) {
@@ -53,36 +83,83 @@ public class ColorDialogFragment extends DialogFragment {
         builder.setTitle(R.string.title_color_dialog);
 
         alphaSeekBar = (SeekBar) colorDialogView.findViewById(R.id.alphaSeekBar);
-        redSeekBar = (SeekBar) colorDialogView.findViewById(R.id.redSeekBar);
-        greenSeekBar = (SeekBar) colorDialogView.findViewById(R.id.greenSeekBar);
-        blueSeekBar = (SeekBar) colorDialogView.findViewById(R.id.blueSeekBar);
+        hsvColorPickerView = (HsvColorPickerView) colorDialogView.findViewById(R.id.hsvColorPickerView);
         colorView = colorDialogView.findViewById(R.id.colorView);
 
-        alphaSeekBar.setOnSeekBarChangeListener(colorChangedListener);
-        redSeekBar.setOnSeekBarChangeListener(colorChangedListener);
-        greenSeekBar.setOnSeekBarChangeListener(colorChangedListener);
-        blueSeekBar.setOnSeekBarChangeListener(colorChangedListener);
+        alphaSeekBar.setOnSeekBarChangeListener(alphaChangedListener);
+        hsvColorPickerView.setOnColorChangedListener(hsvChangedListener);
 
-        // Use current drawing color to set SeekBar values
+        // Use current drawing color to set the picker
         final DoodleView doodleView = getDoodleFragment().getDoodleView();
         color = doodleView.getDrawingColor();
         alphaSeekBar.setProgress(Color.alpha(color));
-        redSeekBar.setProgress(Color.red(color));
-        greenSeekBar.setProgress(Color.green(color));
-        blueSeekBar.setProgress(Color.blue(color));
+        hsvColorPickerView.setColor(color);
         colorView.setBackgroundColor(color);
 
+        addRecentColors((LinearLayout) colorDialogView.findViewById(R.id.recentColorsLayout));
+
         // Add Set Color Button
         builder.setPositiveButton(R.string.button_set_color, new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
                 doodleView.setDrawingColor(color);
+                rememberColor(new File(getContext().getFilesDir(), RECENT_COLORS_FILE_NAME), color);
             }
         });
 
         return builder.create();
     }
 
+    private void setColor(int color) {
+        this.color = color;
+        colorView.setBackgroundColor(color);
+    }
+
+    // One swatch per recent color, newest first
+    private void addRecentColors(LinearLayout layout) {
+        if (recentColors == null) {
+            // A few dozen bytes, read once per process
+            File file = new File(getContext().getFilesDir(), RECENT_COLORS_FILE_NAME);
+            try {
+                recentColors = RecentColors.load(file, RECENT_COLORS);
+            } catch (IOException e) {
+                Log.e(TAG, "Reading recent colors failed; starting over", e);
+                recentColors = new RecentColors(RECENT_COLORS);
+            }
+        }
+
+        int size = getResources().getDimensionPixelSize(R.dimen.recent_color_size);
+        int spacing = getResources().getDimensionPixelSize(R.dimen.recent_color_spacing);
+        for (int i = 0; i < recentColors.size(); i++) {
+            View swatch = new View(getContext());
+            int recent = recentColors.get(i);
+            swatch.setBackgroundColor(recent);
+            swatch.setTag(recent);
+            swatch.setContentDescription(getString(R.string.recent_color_description));
+            swatch.setOnClickListener(recentColorClicked);
+
+            LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(size, size);
+            params.setMarginEnd(spacing);
+            layout.addView(swatch, params);
+        }
+    }
+
+    private static void rememberColor(final File file, int color) {
+        if (recentColors == null || !recentColors.add(color)) {
+            return;
+        }
+        SAVE_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    recentColors.save(file);
+                } catch (IOException e) {
+                    Log.e(TAG, "Saving recent colors failed", e);
+                }
+            }
+        });
+    }
+
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
@@ -0,0 +1,289 @@
+package com.rushlimit.doodlz;
+
+import android.app.ActivityManager;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The app's saved doodles: a GalleryIndex and their thumbnails. A
+ * thumbnail is looked up in a memory LRU sized in bytes, then in a disk
+ * cache, and only then decoded from the saved image with inSampleSize.
+ * Decodes run on background threads, newest request first, and requests
+ * for views that were rebound in the meantime are dropped.
+ */
+public class DoodleGallery {
+    public interface Listener {
+        // Called on the UI thread after entries were removed from the index
+        void onEntriesRemoved();
+    }
+
+    private static final String TAG = "DoodleGallery";
+    private static final String INDEX_FILE_NAME = "gallery.idx";
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails";
+    private static final long DISK_CACHE_BYTES = 16 * 1024 * 1024;
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    private static DoodleGallery instance;
+
+    private final ContentResolver contentResolver;
+    private final File indexFile;
+    private final GalleryIndex index;
+    private final int thumbnailSize; // Longest side in pixels
+    private final ByteSizedLruCache<Bitmap> memoryCache;
+    private final ThumbnailDiskCache diskCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Listener listener; // Only used on the UI thread
+
+    // Writes the index in order, off the UI thread
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+
+    // Decodes thumbnails; the deque is used as a stack so the rows just
+    // scrolled into view decode before the ones already scrolled past
+    private final ExecutorService decodeExecutor = new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingDeque<Runnable>() {
+                @Override
+                public boolean offer(Runnable runnable) {
+                    return offerFirst(runnable);
+                }
+            });
+
+    public static synchronized DoodleGallery get(Context context) {
+        if (instance == null) {
+            instance = new DoodleGallery(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private DoodleGallery(Context context) {
+        contentResolver = context.getContentResolver();
+        indexFile = new File(context.getFilesDir(), INDEX_FILE_NAME);
+        thumbnailSize = context.getResources().getDimensionPixelSize(R.dimen.gallery_thumbnail_size);
+
+        GalleryIndex loaded;
+        try {
+            loaded = GalleryIndex.load(indexFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Reading gallery index failed; starting a new one", e);
+            loaded = new GalleryIndex();
+        }
+        index = loaded;
+
+        // An eighth of the heap holds several screens of thumbnails
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        memoryCache = new ByteSizedLruCache<>(activityManager.getMemoryClass() * 1024L * 1024L / 8,
+                new ByteSizedLruCache.Sizer<Bitmap>() {
+                    @Override
+                    public int sizeOf(Bitmap bitmap) {
+                        return bitmap.getAllocationByteCount();
+                    }
+                });
+        diskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), THUMBNAIL_DIRECTORY), DISK_CACHE_BYTES);
+    }
+
+    public GalleryIndex getIndex() {
+        return index;
+    }
+
+    // Called on ImageSaver's worker once image was saved to uri; the
+    // thumbnail is made from the bitmap in hand instead of decoding the file
+    public void addSavedImage(Uri uri, String title, Bitmap image) {
+        GalleryIndex.Entry entry = index.add(uri.toString(), title, System.currentTimeMillis(),
+                image.getWidth(), image.getHeight());
+        Bitmap thumbnail = scaleToThumbnail(image);
+        storeThumbnail(entry.id, thumbnail);
+        if (thumbnail != image) {
+            memoryCache.put(entry.id, thumbnail);
+        }
+        saveIndex();
+    }
+
+    // Shows entry's thumbnail in view, now if it is in memory, otherwise
+    // once it has been loaded; view may be rebound before then
+    public void loadThumbnail(final GalleryIndex.Entry entry, final ImageView view) {
+        Object previous = view.getTag();
+        if (previous instanceof ThumbnailRequest) {
+            ((ThumbnailRequest) previous).cancelled = true;
+        }
+
+        Bitmap cached = memoryCache.get(entry.id);
+        if (cached != null) {
+            view.setTag(null);
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageDrawable(null);
+        final ThumbnailRequest request = new ThumbnailRequest();
+        view.setTag(request);
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled) {
+                    return; // Scrolled away before the decode started
+                }
+
+                final Bitmap thumbnail = loadThumbnail(entry);
+                if (thumbnail != null) {
+                    memoryCache.put(entry.id, thumbnail);
+                }
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!request.cancelled && view.getTag() == request) {
+                            view.setTag(null);
+                            view.setImageBitmap(thumbnail);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Set by the screen showing the index, and cleared when it goes away
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Drops the memory cache, e.g. when the gallery is closed or memory is low
+    public void trimMemory() {
+        memoryCache.evictAll();
+    }
+
+    // Runs on a decode thread
+    private Bitmap loadThumbnail(GalleryIndex.Entry entry) {
+        try {
+            byte[] data = diskCache.read(entry.id);
+            if (data != null) {
+                Bitmap thumbnail = BitmapFactory.decodeByteArray(data, 0, data.length);
+                if (thumbnail != null) {
+                    return thumbnail;
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Reading cached thumbnail failed", e);
+        }
+
+        try {
+            Bitmap thumbnail = decodeSampled(Uri.parse(entry.uri));
+            if (thumbnail != null) {
+                storeThumbnail(entry.id, thumbnail);
+            }
+            return thumbnail;
+        } catch (FileNotFoundException e) {
+            // Deleted from outside the app
+            diskCache.delete(entry.id);
+            removeEntry(entry.id);
+        } catch (IOException e) {
+            Log.w(TAG, "Decoding " + entry.uri + " failed", e);
+        }
+        return null;
+    }
+
+    // Reads the image's size, then decodes it at the smallest power of
+    // two scale that still covers a thumbnail
+    private Bitmap decodeSampled(Uri uri) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        decodeStream(uri, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int targetWidth = Math.max(1, (int) ((long) thumbnailSize * options.outWidth
+                / Math.max(options.outWidth, options.outHeight)));
+        int targetHeight = Math.max(1, (int) ((long) thumbnailSize * options.outHeight
+                / Math.max(options.outWidth, options.outHeight)));
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = SampleSize.forTarget(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        Bitmap sampled = decodeStream(uri, options);
+        return sampled == null ? null : scaleToThumbnail(sampled);
+    }
+
+    private Bitmap decodeStream(Uri uri, BitmapFactory.Options options) throws IOException {
+        InputStream in = contentResolver.openInputStream(uri);
+        if (in == null) {
+            throw new FileNotFoundException("No input stream for " + uri);
+        }
+        try {
+            return BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Scales image so its longest side is the thumbnail size; returns
+    // image itself if it is already small enough
+    private Bitmap scaleToThumbnail(Bitmap image) {
+        int longest = Math.max(image.getWidth(), image.getHeight());
+        if (longest <= thumbnailSize) {
+            return image;
+        }
+        int width = Math.max(1, image.getWidth() * thumbnailSize / longest);
+        int height = Math.max(1, image.getHeight() * thumbnailSize / longest);
+        return Bitmap.createScaledBitmap(image, width, height, true);
+    }
+
+    private void storeThumbnail(long id, Bitmap thumbnail) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(thumbnailSize * thumbnailSize / 4);
+        if (!thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, encoded)) {
+            return;
+        }
+        try {
+            diskCache.write(id, encoded.toByteArray(), encoded.size());
+        } catch (IOException e) {
+            Log.w(TAG, "Caching thumbnail failed", e);
+        }
+    }
+
+    // Removes an entry on the UI thread, where the grid reads the index,
+    // so positions never shift under a pending getView or click
+    private void removeEntry(final long id) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (index.remove(id)) {
+                    saveIndex();
+                    if (listener != null) {
+                        listener.onEntriesRemoved();
+                    }
+                }
+            }
+        });
+    }
+
+    private void saveIndex() {
+        indexExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    index.save(indexFile);
+                } catch (IOException e) {
+                    Log.e(TAG, "Writing gallery index failed", e);
+                }
+            }
+        });
+    }
+
+    // Tag of an ImageView whose thumbnail is loading
+    private static class ThumbnailRequest {
+        volatile boolean cancelled;
+    }
+}
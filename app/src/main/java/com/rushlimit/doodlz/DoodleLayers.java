@@ -0,0 +1,310 @@
+package com.rushlimit.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+
+/**
+ * The Bitmaps of DoodleView's layers, bottom first, over a white page.
+ * Each frame draws one cached composite of the layers below the active
+ * one, the active layer itself, and, over the live strokes, a second
+ * composite of the layers above it, however many layers there are. A
+ * LayerStack decides when a composite has to be rebuilt. Only normal
+ * layers above can share a composite; one that blends otherwise must
+ * see what is under it, so those are then drawn one by one.
+ */
+public class DoodleLayers {
+    public static final int BLEND_NORMAL = 0;
+    public static final int BLEND_SCREEN = 1;
+    public static final int BLEND_OVERLAY = 2;
+    public static final int BLEND_DARKEN = 3;
+    public static final int BLEND_LIGHTEN = 4;
+    public static final int BLEND_ADD = 5;
+
+    // Indexed by blend mode; normal is plain source-over
+    private static final PorterDuffXfermode[] XFERMODES = {
+            null,
+            new PorterDuffXfermode(PorterDuff.Mode.SCREEN),
+            new PorterDuffXfermode(PorterDuff.Mode.OVERLAY),
+            new PorterDuffXfermode(PorterDuff.Mode.DARKEN),
+            new PorterDuffXfermode(PorterDuff.Mode.LIGHTEN),
+            new PorterDuffXfermode(PorterDuff.Mode.ADD),
+    };
+
+    private final LayerStack<Bitmap> stack;
+    private Bitmap base; // The opaque layer drawings start on; null once removed
+
+    // Allocated while there is more than one layer
+    private Bitmap below; // White, then the visible layers below the active one
+    private Bitmap above; // Transparent, then the visible layers above it
+    private final Canvas compositeCanvas = new Canvas();
+    private final Paint paintLayer = new Paint();
+
+    public DoodleLayers(long budgetBytes) {
+        stack = new LayerStack<>(budgetBytes);
+    }
+
+    // Drops every layer but base, which becomes the only one
+    public void reset(Bitmap base) {
+        for (int i = 0; i < stack.size(); i++) {
+            if (stack.get(i) != base) {
+                stack.get(i).recycle();
+            }
+        }
+        stack.clear();
+        stack.add(base, base.getAllocationByteCount());
+        this.base = base;
+        releaseComposites();
+    }
+
+    public int size() {
+        return stack.size();
+    }
+
+    public Bitmap getActive() {
+        return stack.getActive();
+    }
+
+    public int getActiveIndex() {
+        return stack.getActiveIndex();
+    }
+
+    // Erases every layer, the base to white and the others to transparent
+    public void erase() {
+        for (int i = 0; i < stack.size(); i++) {
+            Bitmap layer = stack.get(i);
+            layer.eraseColor(layer == base ? Color.WHITE : Color.TRANSPARENT);
+        }
+        stack.invalidateComposites();
+    }
+
+    // Adds a transparent layer above the active one and makes it active.
+    // Returns false if it and the composites wouldn't fit in the budget.
+    public boolean add() {
+        Bitmap active = stack.getActive();
+        long layerBytes = active.getAllocationByteCount();
+        long compositeBytes = below == null ? 2 * layerBytes : 0;
+        if (getBytes() + layerBytes + compositeBytes > stack.getBudgetBytes()) {
+            return false;
+        }
+
+        Bitmap layer = Bitmap.createBitmap(active.getWidth(), active.getHeight(), Bitmap.Config.ARGB_8888);
+        stack.add(layer, layerBytes);
+        if (below == null) {
+            below = Bitmap.createBitmap(active.getWidth(), active.getHeight(), Bitmap.Config.ARGB_8888);
+            above = Bitmap.createBitmap(active.getWidth(), active.getHeight(), Bitmap.Config.ARGB_8888);
+        }
+        return true;
+    }
+
+    // Removes the active layer; the last one stays
+    public boolean remove() {
+        if (stack.size() == 1) {
+            return false;
+        }
+        Bitmap removed = stack.remove(stack.getActiveIndex());
+        if (removed == base) {
+            base = null;
+        }
+        removed.recycle();
+        if (stack.size() == 1) {
+            releaseComposites();
+        }
+        return true;
+    }
+
+    // Moves the active layer by offset places, within the stack
+    public boolean move(int offset) {
+        int from = stack.getActiveIndex();
+        int to = from + offset;
+        if (to < 0 || to >= stack.size()) {
+            return false;
+        }
+        stack.move(from, to);
+        return true;
+    }
+
+    public boolean setActive(int index) {
+        if (index < 0 || index >= stack.size()) {
+            return false;
+        }
+        stack.setActive(index);
+        return true;
+    }
+
+    public boolean isVisible() {
+        return stack.isVisible(stack.getActiveIndex());
+    }
+
+    public void setVisible(boolean visible) {
+        stack.setVisible(stack.getActiveIndex(), visible);
+    }
+
+    public float getOpacity() {
+        return stack.getOpacity(stack.getActiveIndex());
+    }
+
+    public void setOpacity(float opacity) {
+        stack.setOpacity(stack.getActiveIndex(), opacity);
+    }
+
+    public int getBlendMode() {
+        return stack.getBlendMode(stack.getActiveIndex());
+    }
+
+    public void setBlendMode(int blendMode) {
+        if (blendMode < 0 || blendMode >= XFERMODES.length) {
+            throw new IllegalArgumentException("Unknown blend mode " + blendMode);
+        }
+        stack.setBlendMode(stack.getActiveIndex(), blendMode);
+    }
+
+    // Draws the page, the layers below the active one and the active
+    // layer, rebuilding the lower composite only if it went stale
+    public void drawBelowAndActive(Canvas canvas) {
+        int active = stack.getActiveIndex();
+        if (active > 0) {
+            if (!stack.useBelowComposite()) {
+                below.eraseColor(Color.WHITE);
+                compositeCanvas.setBitmap(below);
+                drawLayers(compositeCanvas, 0, active);
+                compositeCanvas.setBitmap(null);
+            }
+            canvas.drawBitmap(below, 0, 0, null);
+        } else if (!drawsOpaque(0)) {
+            canvas.drawColor(Color.WHITE);
+        }
+        drawLayers(canvas, active, active + 1);
+    }
+
+    // Draws the layers above the active one, if any show, in stack order
+    public void drawAbove(Canvas canvas) {
+        if (!stack.hasVisibleAbove()) {
+            return;
+        }
+        int from = stack.getActiveIndex() + 1;
+        if (!blendsNormally(from, stack.size())) {
+            drawLayers(canvas, from, stack.size());
+            return;
+        }
+        if (!stack.useAboveComposite()) {
+            above.eraseColor(Color.TRANSPARENT);
+            compositeCanvas.setBitmap(above);
+            drawLayers(compositeCanvas, from, stack.size());
+            compositeCanvas.setBitmap(null);
+        }
+        canvas.drawBitmap(above, 0, 0, null);
+    }
+
+    // Draws the page and every visible layer in stack order, for exports;
+    // unlike a frame, it does not depend on which layer is active
+    public void draw(Canvas canvas) {
+        if (!drawsOpaque(0)) {
+            canvas.drawColor(Color.WHITE);
+        }
+        drawLayers(canvas, 0, stack.size());
+    }
+
+    // Merges the visible layers into one opaque layer, which becomes the only one
+    public Bitmap flatten() {
+        if (stack.size() == 1 && drawsOpaque(0)) {
+            return stack.getActive();
+        }
+        Bitmap active = stack.getActive();
+        Bitmap flat = Bitmap.createBitmap(active.getWidth(), active.getHeight(), Bitmap.Config.ARGB_8888);
+        compositeCanvas.setBitmap(flat);
+        draw(compositeCanvas);
+        compositeCanvas.setBitmap(null);
+        reset(flat);
+        return flat;
+    }
+
+    // Enlarges every layer to width x height, keeping the drawing in the top left corner
+    public void grow(int width, int height) {
+        for (int i = 0; i < stack.size(); i++) {
+            Bitmap layer = stack.get(i);
+            Bitmap grown = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            grown.eraseColor(layer == base ? Color.WHITE : Color.TRANSPARENT);
+            compositeCanvas.setBitmap(grown);
+            compositeCanvas.drawBitmap(layer, 0, 0, null);
+            stack.replace(i, grown, grown.getAllocationByteCount());
+            if (layer == base) {
+                base = grown;
+            }
+            layer.recycle();
+        }
+        compositeCanvas.setBitmap(null);
+
+        if (below != null) {
+            releaseComposites();
+            below = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            above = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+    }
+
+    // Layers and composites together
+    public long getBytes() {
+        return stack.getBytes() + (below == null ? 0 : below.getAllocationByteCount() + above.getAllocationByteCount());
+    }
+
+    public long getBudgetBytes() {
+        return stack.getBudgetBytes();
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        stack.setBudgetBytes(budgetBytes);
+    }
+
+    public long getCompositeHits() {
+        return stack.getHits();
+    }
+
+    public long getCompositeMisses() {
+        return stack.getMisses();
+    }
+
+    public void resetStats() {
+        stack.resetStats();
+    }
+
+    // Draws visible layers from up to, but not including, to
+    private void drawLayers(Canvas canvas, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (stack.isVisible(i)) {
+                paintLayer.setAlpha(Math.round(stack.getOpacity(i) * 255));
+                paintLayer.setXfermode(XFERMODES[stack.getBlendMode(i)]);
+                canvas.drawBitmap(stack.get(i), 0, 0, paintLayer);
+            }
+        }
+    }
+
+    // True if every visible layer from up to, but not including, to is
+    // drawn source-over, which composites them the same on their own
+    private boolean blendsNormally(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (stack.isVisible(i) && stack.getBlendMode(i) != BLEND_NORMAL) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // True if layer index covers the page by itself
+    private boolean drawsOpaque(int index) {
+        return stack.get(index) == base && stack.isVisible(index)
+                && stack.getOpacity(index) == 1 && stack.getBlendMode(index) == BLEND_NORMAL;
+    }
+
+    private void releaseComposites() {
+        if (below != null) {
+            below.recycle();
+            above.recycle();
+            below = null;
+            above = null;
+        }
+        stack.invalidateComposites();
+    }
+}
@@ -0,0 +1,207 @@
+package com.rushlimit.doodlz;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.pdf.PdfDocument;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.print.PageRange;
+import android.print.PrintAttributes;
+import android.print.PrintDocumentAdapter;
+import android.print.PrintDocumentInfo;
+import android.print.pdf.PrintedPdfDocument;
+import android.util.Log;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Prints a region of a doodle by replaying its StrokeLog into a PDF
+ * page, so strokes stay paths and the printer rasterizes them at its
+ * own resolution. Fills only exist as pixels and PDF canvases can't
+ * draw the vertex meshes of variable-width strokes, so a log with
+ * either is rendered into a bitmap at the printer's resolution instead, capped
+ * at MAX_RASTER_PIXELS. Pages are rendered and written on a worker.
+ */
+public class DoodlePrintAdapter extends PrintDocumentAdapter {
+    private static final String TAG = "DoodlePrintAdapter";
+
+    // 8M pixels, 32 MB as ARGB_8888
+    private static final long MAX_RASTER_PIXELS = 8L * 1024 * 1024;
+
+    // Commands replayed between checks for a cancelled print
+    private static final int COMMANDS_PER_CHECK = 256;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Context context;
+    private final String jobName;
+    private final StrokeLog log; // A copy the UI thread no longer changes
+    private final RectF region; // Printed part of the drawing, in log coordinates
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private PrintAttributes attributes;
+
+    public DoodlePrintAdapter(Context context, String jobName, StrokeLog log, RectF region) {
+        this.context = context.getApplicationContext();
+        this.jobName = jobName;
+        this.log = log;
+        this.region = new RectF(region);
+    }
+
+    @Override
+    public void onLayout(PrintAttributes oldAttributes, PrintAttributes newAttributes,
+                         CancellationSignal cancellationSignal, LayoutResultCallback callback, Bundle extras) {
+        if (cancellationSignal.isCanceled()) {
+            callback.onLayoutCancelled();
+            return;
+        }
+
+        attributes = newAttributes;
+        PrintDocumentInfo info = new PrintDocumentInfo.Builder(jobName + ".pdf")
+                .setContentType(PrintDocumentInfo.CONTENT_TYPE_PHOTO)
+                .setPageCount(1)
+                .build();
+        callback.onLayoutFinished(info, !newAttributes.equals(oldAttributes));
+    }
+
+    @Override
+    public void onWrite(PageRange[] pages, final ParcelFileDescriptor destination,
+                        final CancellationSignal cancellationSignal, final WriteResultCallback callback) {
+        final PrintAttributes pageAttributes = attributes;
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                String error = null;
+                boolean written = false;
+                PrintedPdfDocument document = new PrintedPdfDocument(context, pageAttributes);
+                try {
+                    PdfDocument.Page page = document.startPage(0);
+                    boolean complete = drawPage(page.getCanvas(), document.getPageContentRect(),
+                            pageAttributes, cancellationSignal);
+                    document.finishPage(page);
+
+                    if (complete) {
+                        FileOutputStream out = new FileOutputStream(destination.getFileDescriptor());
+                        try {
+                            document.writeTo(out);
+                        } finally {
+                            out.close();
+                        }
+                        written = true;
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Writing print document failed", e);
+                    error = e.toString();
+                } finally {
+                    document.close();
+                }
+
+                final String message = error;
+                final boolean finished = written;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (finished) {
+                            callback.onWriteFinished(new PageRange[] {PageRange.ALL_PAGES});
+                        } else if (message != null) {
+                            callback.onWriteFailed(message);
+                        } else {
+                            callback.onWriteCancelled();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Draws the region fitted into content, which is in points; returns
+    // false if the print was cancelled meanwhile
+    private boolean drawPage(Canvas canvas, Rect content, PrintAttributes pageAttributes,
+                             CancellationSignal cancellationSignal) {
+        PageFit fit = PageFit.fit(content.width(), content.height(), region.width(), region.height());
+
+        Matrix pageMatrix = new Matrix();
+        pageMatrix.setTranslate(-region.left, -region.top);
+        if (fit.rotated) {
+            // Turn clockwise about the origin, then move back into view
+            pageMatrix.postRotate(90);
+            pageMatrix.postTranslate(region.height(), 0);
+        }
+        pageMatrix.postScale(fit.scale, fit.scale);
+        pageMatrix.postTranslate(content.left + fit.left, content.top + fit.top);
+
+        if (needsRaster()) {
+            return drawRaster(canvas, pageMatrix, fit, pageAttributes, cancellationSignal);
+        }
+
+        canvas.save();
+        canvas.concat(pageMatrix);
+        canvas.clipRect(region);
+        canvas.drawColor(Color.WHITE);
+        boolean complete = replay(null, canvas, null, cancellationSignal);
+        canvas.restore();
+        return complete;
+    }
+
+    private boolean drawRaster(Canvas canvas, Matrix pageMatrix, PageFit fit, PrintAttributes pageAttributes,
+                               CancellationSignal cancellationSignal) {
+        PrintAttributes.Resolution resolution = pageAttributes.getResolution();
+        int dpi = resolution == null ? 300 : resolution.getHorizontalDpi();
+        float scale = fit.rasterScale(dpi, (int) region.width(), (int) region.height(), MAX_RASTER_PIXELS);
+
+        Bitmap raster = Bitmap.createBitmap(Math.max(1, (int) (region.width() * scale)),
+                Math.max(1, (int) (region.height() * scale)), Bitmap.Config.ARGB_8888);
+        try {
+            raster.eraseColor(Color.WHITE);
+            Matrix rasterMatrix = new Matrix();
+            rasterMatrix.setTranslate(-region.left, -region.top);
+            rasterMatrix.postScale(scale, scale);
+            Canvas rasterCanvas = new Canvas(raster);
+            rasterCanvas.concat(rasterMatrix);
+            if (!replay(raster, rasterCanvas, rasterMatrix, cancellationSignal)) {
+                return false;
+            }
+
+            // The raster covers the region at scale, so undo that first
+            Matrix matrix = new Matrix();
+            matrix.setScale(1 / scale, 1 / scale);
+            matrix.postTranslate(region.left, region.top);
+            matrix.postConcat(pageMatrix);
+            canvas.drawBitmap(raster, matrix, null);
+            return true;
+        } finally {
+            raster.recycle();
+        }
+    }
+
+    private boolean replay(Bitmap bitmap, Canvas canvas, Matrix matrix, CancellationSignal cancellationSignal) {
+        StrokeLogRenderer renderer = new StrokeLogRenderer();
+        for (int from = 0; from < log.size(); from += COMMANDS_PER_CHECK) {
+            if (cancellationSignal.isCanceled()) {
+                return false;
+            }
+            renderer.render(log, from, Math.min(from + COMMANDS_PER_CHECK, log.size()),
+                    bitmap, canvas, Color.WHITE, matrix);
+        }
+        return true;
+    }
+
+    private boolean needsRaster() {
+        for (int i = 0; i < log.size(); i++) {
+            if (log.getKind(i) == StrokeLog.KIND_FILL || log.getKind(i) == StrokeLog.KIND_VARIABLE_STROKE) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
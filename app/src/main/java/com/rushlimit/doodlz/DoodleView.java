@@ -1,38 +1,184 @@
 package com.rushlimit.doodlz;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.Point;
-import android.provider.MediaStore;
-import android.support.v4.print.PrintHelper;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Debug;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.os.SystemClock;
+import android.print.PrintManager;
 import android.util.AttributeSet;
+import android.util.Log;
 import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.widget.Toast;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Created by aminm on 5/4/16.
  */
 public class DoodleView extends View {
-    //Used to determine whether user moved a finger enough to draw again
-    private static final float TOUCH_TOLERANCE = 10;
+    private static final String TAG = "DoodleView";
 
-    private Bitmap bitmap; // Drawing area for displaying or saving
+    // Segments a live path may hold before its stable prefix is flattened
+    private static final int INCREMENTAL_SEGMENT_LIMIT = 32;
+
+    // Reads and writes project files off the UI thread, one at a time
+    private static final ExecutorService PROJECT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    // Runs paint-bucket fills off the UI thread
+    private static final ExecutorService FILL_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    // How far, per channel, a pixel's color may be from the one tapped and still be filled
+    private static final int FILL_TOLERANCE = 32;
+
+    // Largest StrokeLog kept in saved instance state, well under the Binder limit
+    private static final int MAX_SAVED_LOG_BYTES = 256 * 1024;
+
+    // Side of the square drawing used in large canvas mode, and its zoom range
+    private static final int LARGE_CANVAS_SIZE = 8192;
+    private static final float MIN_SCALE = 0.5f;
+    private static final float MAX_SCALE = 4;
+
+    private StrokeLog strokeLog = new StrokeLog(); // Every command drawn so far
+    private final StrokeLogRenderer strokeLogRenderer = new StrokeLogRenderer();
+    private Bitmap bitmap; // The active layer, which strokes are drawn on
     private Canvas bitmapCanvas; // Used to draw on the bitmap
+    private DoodleLayers layers; // Every layer, bottom first, within a memory budget
     private final Paint paintScreen; // Used to draw bitmap onto screen
-    private final Paint paintLine; // Used to draw lines onto bitmap
+    private final Paint paintLine; // Brush settings for the next stroke
+
+    // Paints shared by every stroke with the same brush; each live stroke
+    // keeps the brush it started with, and its opaque twin for strokeLayer
+    private final BrushTable<Paint> brushes = new BrushTable<>(new PaintFactory());
+
+    // Translucent strokes are flattened opaque into this layer, which is
+    // composited with the stroke alpha, so prefix and tail never double-blend.
+    // Only strokes of one alpha share it at a time; see canFlatten.
+    private Bitmap strokeLayer;
+    private Canvas strokeLayerCanvas;
+    private boolean strokeLayerInUse;
+    private int strokeLayerAlpha;
+    private final Paint paintStrokeLayer; // Composites strokeLayer at strokeLayerAlpha
+    private final RectF strokeLayerBounds = new RectF(); // Area drawn into strokeLayer
+
+    // Undo history of the bitmap tiles each gesture changed
+    private TileHistory history;
+    private boolean stateRetained; // Drawing was handed over from a previous view
+    private final TileHistory.Surface bitmapSurface = new CommittedSurface();
+    private final RectF pathBounds = new RectF();
+
+    private final ImageSaver imageSaver;
+    private final int memoryClass; // Heap limit in megabytes
+
+    // In large canvas mode strokes go to tiles instead of bitmap, and
+    // viewMatrix maps the tiles' coordinates onto the view
+    private TiledCanvas tiledCanvas;
+    private final Matrix viewMatrix = new Matrix();
+    private float minScale = MIN_SCALE; // Raised when the resident tiles can't cover MIN_SCALE
+    private final Matrix inverseMatrix = new Matrix();
+    private final float[] matrixValues = new float[9];
+    private final RectF mappedBounds = new RectF();
+    private final ScaleGestureDetector scaleDetector;
+    private boolean navigating; // Touches pan and zoom instead of drawing
+    private float lastFocusX;
+    private float lastFocusY;
+
+    // Per-pointer stroke geometry and the Paths being drawn, indexed by pointer id
+    private final AdaptiveSimplifier simplifier =
+            new AdaptiveSimplifier(POINTER_CAPACITY); // Picks the samples strokes keep
+    private final StrokePipeline strokes =
+            new QuadStrokePipeline(new PointerSlotTable(POINTER_CAPACITY), new StrokeBuilder(simplifier));
+    private final Path[] paths = new Path[strokes.getCapacity()];
+    private final int[] liveSegmentCounts = new int[strokes.getCapacity()];
+    private final int[] liveBrushes = new int[strokes.getCapacity()];
+    private final int[] liveOpaqueBrushes = new int[strokes.getCapacity()];
+    private boolean incrementalRasterization = true;
+
+    // Variable-width strokes are outlined into a mesh piece by piece and
+    // rasterized into the committed drawing at once, since hardware
+    // canvases can't draw vertices; their Paths stay empty
+    private boolean variableWidth;
+    private final boolean[] liveVariable = new boolean[strokes.getCapacity()];
+    private final StrokeOutline[] outlines = new StrokeOutline[strokes.getCapacity()];
+    private final WidthDynamics[] dynamics = new WidthDynamics[strokes.getCapacity()];
+    private final float[][] pointWidths = new float[strokes.getCapacity()][];
+    private final StrokeMesh liveMesh = new StrokeMesh();
+    private final Paint paintMesh = new Paint();
+
+    // Reused buffers for the historical and current samples of one pointer
+    private float[] sampleX = new float[16];
+    private float[] sampleY = new float[16];
+    private final float[] singleX = new float[1]; // One sample of a variable-width stroke
+    private final float[] singleY = new float[1];
+
+    // Region touched by the current MotionEvent; only this area is
+    // invalidated. Hardware-accelerated views repaint everything on
+    // invalidate(Rect) since API 21, so this only saves work when the
+    // view draws in software, as with a software layer.
+    private final Rect dirtyRect = new Rect();
+    private final Rect clipBounds = new Rect();
+    private final Rect commitRect = new Rect();
+    private boolean dirtyRectInvalidation = true;
+
+    // Redraw statistics used to compare partial against full invalidation;
+    // only software frames count, since hardware ones clip to the whole view
+    private long framesDrawn;
+    private long pixelsRedrawn;
 
-    // Maps of the current Paths being drawn and Points in those Paths
-    private final Map<Integer, Path> pathMap = new HashMap<>();
-    private final Map<Integer, Point> previousPointMap = new HashMap<>();
+    // Field metrics; null while they are off so every hook is a null check
+    private static final int METRICS_SAMPLES = 1024;
+    private DoodleMetrics metrics;
+    private long undrawnInputMillis = -1; // Uptime of the oldest sample not yet drawn
+    private long gcCountAtStart;
+    private long gcTimeAtStart;
+    private long bytesAllocatedAtStart;
+
+    // In fill mode a touch fills the region under it. The fill runs on a
+    // copy of the bitmap's pixels, and touches are ignored until it lands.
+    private boolean fillMode;
+    private boolean filling;
+    private int[] fillPixels;
+    private final FloodFill floodFill = new FloodFill(); // Only used on FILL_EXECUTOR
+
+    // Raw touch input is copied into touchRecorder while recording, and a
+    // replay feeds a trace back in place of the user's touches
+    private TouchTraceRecorder touchRecorder;
+    private TouchReplay touchReplay;
+
+    // While a session is open local strokes are streamed to the peer, and
+    // the peer's strokes are drawn through the same pipeline as pointers
+    // offset by REMOTE_POINTER_BASE, so they never collide with local ones.
+    // The pipeline holds every id the wire can carry above the local ones.
+    private static final int REMOTE_POINTER_BASE = StrokeStreamEncoder.MAX_POINTER_ID + 1;
+    private static final int POINTER_CAPACITY = REMOTE_POINTER_BASE + StrokeStreamEncoder.MAX_POINTER_ID + 1;
+    private CollabSession session;
+    private final RemoteStrokes remoteStrokes = new RemoteStrokes();
 
     // This constructor is called when inflating view from an XML file
     public DoodleView(Context context, AttributeSet attrs) {
@@ -46,167 +192,1769 @@ public class DoodleView extends View {
         paintLine.setStyle(Paint.Style.STROKE); // Solid line
         paintLine.setStrokeWidth(5); // Set the default line width
         paintLine.setStrokeCap(Paint.Cap.ROUND); // Rounded line ends
+
+        paintStrokeLayer = new Paint();
+
+        // Simplification tolerances are in dp, scaled to the stroke width
+        simplifier.setDensity(getResources().getDisplayMetrics().density);
+        simplifier.setLineWidth(paintLine.getStrokeWidth());
+
+        // Give undo history an eighth of the app's heap by default
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        memoryClass = activityManager.getMemoryClass();
+        history = new TileHistory(memoryClass * 1024L * 1024L / 8);
+
+        // and layers, with their composites, a quarter
+        layers = new DoodleLayers(memoryClass * 1024L * 1024L / 4);
+
+        imageSaver = new ImageSaver(context.getContentResolver());
+        imageSaver.setGallery(DoodleGallery.get(context));
+        scaleDetector = new ScaleGestureDetector(context, new ScaleListener());
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        // Draw the background screen
-        canvas.drawBitmap(bitmap, 0, 0, paintScreen);
+        long start = metrics != null ? System.nanoTime() : 0;
+
+        // Count the pixels this frame actually has to repaint
+        boolean clipped = canvas.getClipBounds(clipBounds);
+        if (clipped && !canvas.isHardwareAccelerated()) {
+            pixelsRedrawn += (long) clipBounds.width() * clipBounds.height();
+            framesDrawn++;
+        }
+
+        if (tiledCanvas != null) {
+            drawTiles(canvas, clipBounds);
+        } else if (bitmap != null) {
+            drawStrokes(canvas);
+        }
+
+        if (metrics != null) {
+            recordFrameMetrics(System.nanoTime() - start);
+        }
+    }
+
+    private void recordFrameMetrics(long drawNanos) {
+        long latencyNanos = -1;
+        if (undrawnInputMillis >= 0) {
+            latencyNanos = (SystemClock.uptimeMillis() - undrawnInputMillis) * 1000000L;
+            undrawnInputMillis = -1;
+        }
+
+        int points = 0;
+        for (int i = 0; i < strokes.getActiveCount(); i++) {
+            points += strokes.getPointCount(strokes.getActiveId(i));
+        }
+        metrics.recordFrame(drawNanos, latencyNanos, strokes.getActiveCount(), points);
+    }
+
+    // Draws the committed layers up to the active one, the live strokes,
+    // then the layers above the active one
+    private void drawStrokes(Canvas canvas) {
+        layers.drawBelowAndActive(canvas);
+
+        if (strokeLayerInUse) {
+            // Draw flattened prefixes and the live tails sharing their alpha
+            // opaque, then blend them once
+            int saveCount = canvas.saveLayer(clipBounds.left, clipBounds.top,
+                    clipBounds.right, clipBounds.bottom, paintStrokeLayer);
+            canvas.drawBitmap(strokeLayer, 0, 0, null);
+            for (int i = 0; i < strokes.getActiveCount(); i++) {
+                int id = strokes.getActiveId(i);
+                if (usesStrokeLayer(id)) {
+                    canvas.drawPath(paths[id], brushes.get(liveOpaqueBrushes[id]));
+                }
+            }
+            canvas.restoreToCount(saveCount);
+        }
+
+        for (int i = 0; i < strokes.getActiveCount(); i++) {
+            int id = strokes.getActiveId(i);
+            if (!strokeLayerInUse || !usesStrokeLayer(id)) {
+                canvas.drawPath(paths[id], brushes.get(liveBrushes[id]));
+            }
+        }
+        layers.drawAbove(canvas);
+    }
+
+    // Draws the visible tiles and live strokes of the large canvas
+    private void drawTiles(Canvas canvas, Rect visible) {
+        canvas.drawColor(Color.WHITE); // Blank tiles have no Bitmap
 
-        for (Integer key : pathMap.keySet()) {
-            canvas.drawPath(pathMap.get(key), paintLine);
+        mappedBounds.set(visible);
+        inverseMatrix.mapRect(mappedBounds);
+
+        int saveCount = canvas.save();
+        canvas.concat(viewMatrix);
+        tiledCanvas.draw(canvas, mappedBounds, paintScreen);
+        for (int i = 0; i < strokes.getActiveCount(); i++) {
+            int id = strokes.getActiveId(i);
+            canvas.drawPath(paths[id], brushes.get(liveBrushes[id]));
         }
+        canvas.restoreToCount(saveCount);
     }
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (touchReplay == null) {
+            dispatchTouch(event);
+        }
+        return true;
+    }
+
+    private void dispatchTouch(MotionEvent event) {
+        if (touchRecorder != null) {
+            touchRecorder.record(event);
+        }
+        if (metrics != null) {
+            int historySize = event.getHistorySize();
+            metrics.recordTouchEvent(System.nanoTime(), (historySize + 1) * event.getPointerCount());
+            if (undrawnInputMillis < 0) {
+                undrawnInputMillis = historySize > 0 ? event.getHistoricalEventTime(0) : event.getEventTime();
+            }
+        }
+
+        if (fillMode && tiledCanvas == null) {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN && !filling) {
+                startFill((int) event.getX(), (int) event.getY());
+            }
+            return;
+        }
+
+        if (tiledCanvas == null) {
+            handleStrokeEvent(event);
+        } else if (navigating) {
+            navigate(event);
+            return;
+        } else {
+            // Strokes are built in tile coordinates
+            MotionEvent mapped = MotionEvent.obtain(event);
+            mapped.transform(inverseMatrix);
+            handleStrokeEvent(mapped);
+            mapped.recycle();
+            mapDirtyRectToView();
+        }
+
+        invalidateDirtyRect();
+        if (session != null) {
+            session.scheduleFlush();
+        }
+    }
+
+    private void invalidateDirtyRect() {
+        if (!dirtyRectInvalidation) {
+            invalidate();
+        } else if (!dirtyRect.isEmpty()) {
+            invalidate(dirtyRect);
+        }
+        dirtyRect.setEmpty();
+    }
+
+    // Strokes are built in tile coordinates on the large canvas
+    private void mapDirtyRectToView() {
+        mappedBounds.set(dirtyRect);
+        viewMatrix.mapRect(mappedBounds);
+        mappedBounds.roundOut(dirtyRect);
+    }
+
+    private void handleStrokeEvent(MotionEvent event) {
         int action = event.getActionMasked(); // Event type
         int actionIndex = event.getActionIndex(); // Pointer (i.e., finger)
 
+        // Each gesture, from first finger down to last finger up, is one undo step
+        if (action == MotionEvent.ACTION_DOWN && tiledCanvas == null) {
+            history.beginStep(bitmapSurface, strokeLog.size());
+        }
+
         // Determine whether touch started, ended or is moving
         if (action == MotionEvent.ACTION_DOWN || action == MotionEvent.ACTION_POINTER_DOWN) {
-            touchStarted(event.getX(actionIndex), event.getY(actionIndex), event.getPointerId(actionIndex));
+            touchStarted(event.getX(actionIndex), event.getY(actionIndex), event.getPointerId(actionIndex),
+                    event.getPressure(actionIndex), event.getEventTime());
         } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_POINTER_UP) {
             touchEnded(event.getPointerId(actionIndex));
         } else {
             touchMoved(event);
         }
 
+        if (action == MotionEvent.ACTION_UP && tiledCanvas == null) {
+            // The peer's strokes may outlast the gesture, but the layer
+            // only holds this gesture's translucent strokes
+            if (strokeLayerInUse) {
+                flushStrokeLayer();
+            }
+            history.endStep(strokeLog.size());
+        }
+    }
+
+    // Pans with the focus of all fingers down; ScaleListener zooms
+    private void navigate(MotionEvent event) {
+        scaleDetector.onTouchEvent(event);
+
+        int action = event.getActionMasked();
+        int liftedIndex = action == MotionEvent.ACTION_POINTER_UP ? event.getActionIndex() : -1;
+        float sumX = 0;
+        float sumY = 0;
+        int count = 0;
+        for (int i = 0; i < event.getPointerCount(); i++) {
+            if (i != liftedIndex) {
+                sumX += event.getX(i);
+                sumY += event.getY(i);
+                count++;
+            }
+        }
+        float focusX = sumX / count;
+        float focusY = sumY / count;
+
+        // A finger going down or up moves the focus without panning
+        if (action == MotionEvent.ACTION_MOVE) {
+            viewMatrix.postTranslate(focusX - lastFocusX, focusY - lastFocusY);
+            updateViewMatrix();
+        }
+        lastFocusX = focusX;
+        lastFocusY = focusY;
+    }
+
+    // Keeps the large canvas covering the view and refreshes the inverse
+    private void updateViewMatrix() {
+        viewMatrix.getValues(matrixValues);
+        float scale = Math.max(minScale, matrixValues[Matrix.MSCALE_X]);
+        float minX = Math.min(0, getWidth() - tiledCanvas.getWidth() * scale);
+        float minY = Math.min(0, getHeight() - tiledCanvas.getHeight() * scale);
+        float x = Math.max(minX, Math.min(0, matrixValues[Matrix.MTRANS_X]));
+        float y = Math.max(minY, Math.min(0, matrixValues[Matrix.MTRANS_Y]));
+
+        viewMatrix.setScale(scale, scale);
+        viewMatrix.postTranslate(x, y);
+        viewMatrix.invert(inverseMatrix);
         invalidate();
+    }
 
-        return true;
+    // Tiles kept in memory: the view at its smallest zoom plus a ring of
+    // neighbors, capped at a quarter of the heap
+    private int residentTileCount() {
+        int needed = TiledCanvas.residentTilesFor(Math.max(1, getWidth()), Math.max(1, getHeight()), MIN_SCALE);
+        long affordable = memoryClass * 1024L * 1024L / 4
+                / (TiledCanvas.TILE_SIZE * TiledCanvas.TILE_SIZE * 4);
+        return (int) Math.max(1, Math.min(needed, affordable));
+    }
+
+    // Sizes the tile cache for the view, and keeps zoom where the tiles
+    // the view shows stay resident, so frames never load from disk
+    private void updateResidentTiles() {
+        int residentTiles = residentTileCount();
+        tiledCanvas.setResidentTiles(residentTiles);
+        minScale = TiledCanvas.minScaleFor(Math.max(1, getWidth()), Math.max(1, getHeight()),
+                residentTiles, MIN_SCALE, MAX_SCALE);
     }
 
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        if (tiledCanvas != null) {
+            updateResidentTiles();
+            updateViewMatrix();
+        }
+
+        if (bitmap == null) {
+            bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            bitmapCanvas = new Canvas(bitmap);
+            bitmap.eraseColor(Color.WHITE); // Erase the Bitmap with white
+            strokeLogRenderer.render(strokeLog, 0, strokeLog.size(), bitmap, bitmapCanvas, Color.WHITE);
+            layers.reset(bitmap);
+            return;
+        }
+
+        // Rotating back or shrinking reuses the bitmap as it is
+        if (CanvasSizePolicy.fits(bitmap.getWidth(), bitmap.getHeight(), w, h)) {
+            return;
+        }
+
+        // Grow the layers and copy the drawing over instead of re-rendering it
+        if (strokeLayerInUse) {
+            flushStrokeLayer();
+        }
+        history.endStep(strokeLog.size());
+
+        layers.grow(CanvasSizePolicy.grownWidth(bitmap.getWidth(), w),
+                CanvasSizePolicy.grownHeight(bitmap.getHeight(), h));
+        bitmap = layers.getActive();
         bitmapCanvas = new Canvas(bitmap);
-        bitmap.eraseColor(Color.WHITE); // Erase the Bitmap with white
+
+        // Reallocated at the new size when a translucent stroke needs it
+        strokeLayer = null;
+        strokeLayerCanvas = null;
+    }
+
+    // Hands the drawing to the next DoodleView across a configuration change
+    public RetainedState getRetainedState() {
+        if (strokeLayerInUse) {
+            flushStrokeLayer();
+        }
+        history.endStep(strokeLog.size());
+        if (session != null) {
+            session.detach();
+        }
+        return new RetainedState(layers, strokeLog, history, tiledCanvas, viewMatrix, navigating,
+                paintLine.getColor(), paintLine.getStrokeWidth(), session);
+    }
+
+    // Adopts a previous view's drawing without re-rendering it; call before layout
+    public void restoreRetainedState(RetainedState state) {
+        layers = state.layers;
+        bitmap = layers.size() == 0 ? null : layers.getActive();
+        bitmapCanvas = bitmap == null ? null : new Canvas(bitmap);
+        strokeLog = state.strokeLog;
+        history = state.history;
+        tiledCanvas = state.tiledCanvas;
+        viewMatrix.set(state.viewMatrix);
+        viewMatrix.invert(inverseMatrix);
+        navigating = state.navigating;
+        paintLine.setColor(state.color);
+        paintLine.setStrokeWidth(state.lineWidth);
+        stateRetained = true;
+        session = state.session;
+        if (session != null) {
+            session.attach(this);
+        }
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.color = paintLine.getColor();
+        state.lineWidth = paintLine.getStrokeWidth();
+
+        // Keep the stroke log so the drawing can be re-rendered after process death
+        if (strokeLog.getByteSize() <= MAX_SAVED_LOG_BYTES) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) strokeLog.getByteSize() + 4);
+            try {
+                strokeLog.writeTo(new DataOutputStream(bytes));
+                state.strokeLog = bytes.toByteArray();
+            } catch (IOException e) {
+                state.strokeLog = null;
+            }
+        }
+        return state;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable parcelable) {
+        SavedState state = (SavedState) parcelable;
+        super.onRestoreInstanceState(state.getSuperState());
+
+        // A retained drawing is newer than anything in the saved state
+        if (stateRetained) {
+            return;
+        }
+
+        paintLine.setColor(state.color);
+        paintLine.setStrokeWidth(state.lineWidth);
+
+        if (state.strokeLog != null) {
+            try {
+                strokeLog = StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(state.strokeLog)));
+            } catch (IOException e) {
+                return;
+            }
+
+            // Re-render now if the bitmap already exists; otherwise onSizeChanged will
+            if (bitmap != null) {
+                bitmap.eraseColor(Color.WHITE);
+                strokeLogRenderer.render(strokeLog, 0, strokeLog.size(), bitmap, bitmapCanvas, Color.WHITE);
+                history.clear();
+                invalidate();
+            }
+        }
     }
 
     // Called when the user touches the screen
-    private void touchStarted(float x, float y, int lineID) {
-        Path path; // Used to store the path for the given touch id
-        Point point; // Used to store the last point in path
+    private void touchStarted(float x, float y, int lineID, float pressure, long time) {
+        if (isRemotePointer(lineID)) {
+            return;
+        }
 
-        // If there is already a path for lineID
-        if (pathMap.containsKey(lineID)) {
-            path = pathMap.get(lineID); // Get the Path
-            path.reset();
-            point = previousPointMap.get(lineID); // Get Path's last point
-        } else {
+        // Later color or width changes don't affect this stroke
+        int color = paintLine.getColor();
+        float width = paintLine.getStrokeWidth();
+        int cap = paintLine.getStrokeCap().ordinal();
+        if (startStroke(x, y, lineID, color, width, cap) && variableWidth) {
+            liveVariable[lineID] = true;
+            startVariableStroke(lineID, x, y, width, color, pressure, time);
+        }
+        if (session != null && strokes.isActive(lineID)) {
+            session.getEncoder().start(lineID, x, y, color, width, cap);
+        }
+    }
+
+    // Starts stroke lineID with the given brush, for a local or remote pointer
+    private boolean startStroke(float x, float y, int lineID, int color, float width, int cap) {
+        // A stroke restarted without ending, as a peer may send, gives up its brushes
+        boolean restarted = strokes.isActive(lineID);
+
+        // Ignore pointers beyond the slot table's capacity
+        if (!strokes.start(lineID, x, y)) {
+            return false;
+        }
+        if (restarted) {
+            releaseBrushes(lineID);
+        }
+
+        // Reuse the Path for lineID if there already is one
+        Path path = paths[lineID];
+        if (path == null) {
             path = new Path();
-            pathMap.put(lineID, path); // Add the Path to Map
-            point = new Point();
-            previousPointMap.put(lineID, point); // Add the Point to the Map
+            paths[lineID] = path;
+        } else {
+            path.reset();
         }
 
         // Move to the coordinates of the touch
         path.moveTo(x, y);
-        point.x = (int) x;
-        point.y = (int) y;
+        liveSegmentCounts[lineID] = 0;
+
+        int style = paintLine.getStyle().ordinal();
+        liveBrushes[lineID] = brushes.intern(color, width, cap, style);
+        liveOpaqueBrushes[lineID] = Color.alpha(color) == 255
+                ? liveBrushes[lineID] : brushes.intern(color | 0xff000000, width, cap, style);
+        liveVariable[lineID] = false;
+
+        addDirtyPoint(x, y, width);
+        return true;
+    }
+
+    private void startVariableStroke(int lineID, float x, float y, float width, int color,
+                                     float pressure, long time) {
+        if (outlines[lineID] == null) {
+            outlines[lineID] = new StrokeOutline();
+            dynamics[lineID] = new WidthDynamics();
+            dynamics[lineID].setDensity(getResources().getDisplayMetrics().density);
+            pointWidths[lineID] = new float[64];
+        }
+        WidthDynamics widths = dynamics[lineID];
+        widths.setBaseWidth(width);
+        float startWidth = widths.start(time, x, y, pressure);
+        pointWidths[lineID][0] = startWidth;
+        outlines[lineID].start(x, y, startWidth, color);
     }
 
     // Called when the user finishes a touch
     private void touchEnded(int lineID) {
-        Path path = pathMap.get(lineID); // Get the corresponding Path
-        bitmapCanvas.drawPath(path, paintLine); // Draw to bitmapCanvas
+        if (isRemotePointer(lineID) || !strokes.isActive(lineID)) {
+            return;
+        }
+        endStroke(lineID);
+        if (session != null) {
+            session.getEncoder().end(lineID);
+        }
+    }
+
+    private void endStroke(int lineID) {
+        if (!strokes.isActive(lineID)) {
+            return;
+        }
+
+        Path path = paths[lineID]; // Get the corresponding Path
+        appendSegments(lineID, strokes.finish(lineID)); // Reach the last sample held back
+        int brush = liveBrushes[lineID];
+        if (liveVariable[lineID]) {
+            outlines[lineID].finish(liveMesh);
+            commitMesh(lineID);
+            strokes.end(lineID);
+            strokeLog.appendVariableStroke(brushes.getColor(brush), brushes.getWidth(brush), brushes.getCap(brush),
+                    strokes.getPoints(lineID), 0, pointWidths[lineID], 0, strokes.getPointCount(lineID));
+        } else {
+            commitPath(path, lineID); // Draw to bitmapCanvas
+            strokes.end(lineID);
+            strokeLog.appendStroke(brushes.getColor(brush), brushes.getWidth(brush), brushes.getCap(brush),
+                    strokes.getPoints(lineID), 0, strokes.getPointCount(lineID));
+        }
         path.reset(); // Reset the path
+
+        // Blend translucent strokes into the bitmap once no stroke shares the layer
+        if (strokeLayerInUse && strokes.getActiveCount() == 0) {
+            flushStrokeLayer();
+        }
+
+        // The stroke now comes from the bitmap; repaint around its end
+        addDirtyPoint(strokes.getEndX(lineID), strokes.getEndY(lineID), brushes.getWidth(brush));
+        releaseBrushes(lineID);
+    }
+
+    // Gives back the brush references startStroke took for lineID
+    private void releaseBrushes(int lineID) {
+        brushes.release(liveBrushes[lineID]);
+        brushes.release(liveOpaqueBrushes[lineID]);
+    }
+
+    // Drops every live stroke without committing it
+    private void clearStrokes() {
+        for (int i = 0; i < strokes.getActiveCount(); i++) {
+            releaseBrushes(strokes.getActiveId(i));
+        }
+        strokes.clear();
     }
 
     // Called when the user drags along the screen
     private void touchMoved(MotionEvent event) {
-        int pointerID;
-        int pointerIndex;
-        float newX, deltaX;
-        float newY, deltaY;
-        Path path;
-        Point point;
+        int historySize = event.getHistorySize();
+        if (historySize + 1 > sampleX.length) {
+            sampleX = new float[historySize + 1];
+            sampleY = new float[historySize + 1];
+        }
+
         for (int i = 0; i < event.getPointerCount(); i++) {
-            pointerID = event.getPointerId(i);
-            pointerIndex = event.findPointerIndex(pointerID);
+            int pointerID = event.getPointerId(i);
 
             // If there is a path associated with the pointer
-            if (pathMap.containsKey(pointerID)) {
-                // Get the new coordinates for the pointer
-                newX = event.getX(pointerIndex);
-                newY = event.getY(pointerIndex);
-
-                // Get the path and previous point associated with this pointer
-                path = pathMap.get(pointerID);
-                point = previousPointMap.get(pointerID);
-
-                // Calculate how far the user moved from the last update
-                deltaX = Math.abs(newX - point.x);
-                deltaY = Math.abs(newY - point.y);
-
-                // If the distance is significant enough to matter
-                if (deltaX >= TOUCH_TOLERANCE || deltaY >= TOUCH_TOLERANCE) {
-                    // Move the path to the new location
-                    path.quadTo(point.x, point.y, (newX + point.x) / 2, (newY + point.y) / 2);
-
-                    // Store the new coordinates
-                    point.x = (int) newX;
-                    point.y = (int) newY;
+            if (strokes.isActive(pointerID) && !isRemotePointer(pointerID)) {
+                // Gather the samples batched since the last event, then the current one
+                for (int h = 0; h < historySize; h++) {
+                    sampleX[h] = event.getHistoricalX(i, h);
+                    sampleY[h] = event.getHistoricalY(i, h);
+                }
+                sampleX[historySize] = event.getX(i);
+                sampleY[historySize] = event.getY(i);
+
+                if (liveVariable[pointerID]) {
+                    moveVariableStroke(pointerID, event, i);
+                } else {
+                    moveStroke(pointerID, sampleX, sampleY, historySize + 1);
+                }
+                if (session != null) {
+                    session.getEncoder().move(pointerID, sampleX, sampleY, historySize + 1);
                 }
             }
         }
     }
 
-    public void saveImage() {
-        final String name = getContext().getResources().getString(R.string.app_name)
-                + System.currentTimeMillis() + ".jpg";
+    // Extends stroke lineID by count samples, for a local or remote pointer
+    private void moveStroke(int lineID, float[] xs, float[] ys, int count) {
+        int segments = strokes.addSamples(lineID, xs, ys, count);
+        if (segments > 0) {
+            appendSegments(lineID, segments);
+            if (liveVariable[lineID]) {
+                commitMesh(lineID);
+            } else if (incrementalRasterization && liveSegmentCounts[lineID] >= INCREMENTAL_SEGMENT_LIMIT
+                    && canFlatten(lineID)) {
+                flattenPrefix(lineID);
+            }
+        }
+    }
+
+    // Extends variable-width stroke lineID by the samples gathered from
+    // pointer index i of event, one at a time, so each point the stroke
+    // keeps takes the width of the sample it came from
+    private void moveVariableStroke(int lineID, MotionEvent event, int i) {
+        WidthDynamics widths = dynamics[lineID];
+        int historySize = event.getHistorySize();
+        int segments = 0;
+        for (int h = 0; h <= historySize; h++) {
+            if (h < historySize) {
+                widths.update(event.getHistoricalEventTime(h), sampleX[h], sampleY[h],
+                        event.getHistoricalPressure(i, h));
+            } else {
+                widths.update(event.getEventTime(), sampleX[h], sampleY[h], event.getPressure(i));
+            }
+            singleX[0] = sampleX[h];
+            singleY[0] = sampleY[h];
+            int built = strokes.addSamples(lineID, singleX, singleY, 1);
+            appendSegments(lineID, built);
+            segments += built;
+        }
+        if (segments > 0) {
+            commitMesh(lineID);
+        }
+    }
 
-        // Insert the image on the device
-        String location = MediaStore.Images.Media.insertImage(
-                getContext().getContentResolver(), bitmap, name, "Doodlz Drawing");
+    // Appends the segments the pipeline just built to lineID's path in one pass
+    private void appendSegments(int lineID, int count) {
+        if (count == 0) {
+            return;
+        }
 
-        if (location != null) {
-            showToastWithStringId(R.string.message_saved);
+        float[] segments = strokes.getSegments();
+        if (liveVariable[lineID]) {
+            appendOutline(lineID, segments, count);
         } else {
-            showToastWithStringId(R.string.message_error_saving);
+            Path path = paths[lineID];
+            for (int s = 0; s < count * 4; s += 4) {
+                path.quadTo(segments[s], segments[s + 1], segments[s + 2], segments[s + 3]);
+            }
         }
+
+        addDirtyBounds(strokes.getLeft(), strokes.getTop(), strokes.getRight(), strokes.getBottom(),
+                brushes.getWidth(liveBrushes[lineID]));
+        liveSegmentCounts[lineID] += count;
     }
 
-    public void printImage() {
-        if (PrintHelper.systemSupportsPrint()) {
-            // Use Android Support Library's PrintHelper to print image
-            PrintHelper printHelper = new PrintHelper(getContext());
+    // Outlines the segments into liveMesh at the stroke's current width,
+    // recording that width for each point the segments were built from
+    private void appendOutline(int lineID, float[] segments, int count) {
+        int pointCount = strokes.getPointCount(lineID);
+        float[] widths = pointWidths[lineID];
+        if (pointCount > widths.length) {
+            widths = new float[Math.max(pointCount, widths.length * 2)];
+            System.arraycopy(pointWidths[lineID], 0, widths, 0, pointCount - count);
+            pointWidths[lineID] = widths;
+        }
 
-            // Fit image in page bounds and print the image
-            printHelper.setScaleMode(PrintHelper.SCALE_MODE_FIT);
-            printHelper.printBitmap("Doodlz Image", bitmap);
+        float width = dynamics[lineID].getWidth();
+        StrokeOutline outline = outlines[lineID];
+        for (int s = 0; s < count; s++) {
+            widths[pointCount - count + s] = width;
+            outline.quadTo(segments[s * 4], segments[s * 4 + 1], segments[s * 4 + 2], segments[s * 4 + 3],
+                    width, liveMesh);
+        }
+    }
+
+    // Draws what liveMesh holds of stroke lineID into the committed
+    // drawing and empties it. Translucent pieces overlap at every joint,
+    // so they go opaque into strokeLayer when it can take them.
+    private void commitMesh(int lineID) {
+        if (liveMesh.isEmpty()) {
+            return;
+        }
+        pathBounds.set(liveMesh.getLeft() - 1, liveMesh.getTop() - 1,
+                liveMesh.getRight() + 1, liveMesh.getBottom() + 1);
+
+        if (tiledCanvas != null) {
+            tiledCanvas.drawMesh(liveMesh, paintMesh);
+        } else if (!isTranslucent(lineID) || !canFlatten(lineID)) {
+            captureHistory(pathBounds);
+            StrokeLogRenderer.drawMesh(bitmapCanvas, liveMesh, paintMesh);
+            invalidateBounds(pathBounds);
         } else {
-            showToastWithStringId(R.string.message_error_printing);
+            int[] colors = liveMesh.getColors();
+            for (int v = 0; v < liveMesh.getVertexCount(); v++) {
+                colors[v] |= 0xff000000;
+            }
+            if (strokeLayer == null) {
+                strokeLayer = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
+                strokeLayerCanvas = new Canvas(strokeLayer);
+            }
+            StrokeLogRenderer.drawMesh(strokeLayerCanvas, liveMesh, paintMesh);
+            if (strokeLayerInUse) {
+                strokeLayerBounds.union(pathBounds);
+            } else {
+                strokeLayerBounds.set(pathBounds);
+                strokeLayerAlpha = Color.alpha(brushes.getColor(liveBrushes[lineID]));
+                paintStrokeLayer.setAlpha(strokeLayerAlpha);
+            }
+            strokeLayerInUse = true;
         }
+
+        dirtyRect.union((int) pathBounds.left, (int) pathBounds.top,
+                (int) Math.ceil(pathBounds.right), (int) Math.ceil(pathBounds.bottom));
+        liveMesh.reset();
     }
 
-    public void clear() {
-        pathMap.clear();
-        previousPointMap.clear();
-        bitmap.eraseColor(Color.WHITE);
-        invalidate();
+    // Copies the bitmap's pixels in one bulk read and fills them in the
+    // background; the result is dropped if the drawing changed meanwhile
+    private void startFill(final int x, final int y) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return;
+        }
+
+        if (fillPixels == null || fillPixels.length < width * height) {
+            fillPixels = new int[width * height];
+        }
+        final int[] pixels = fillPixels;
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        final Bitmap target = bitmap;
+        final StrokeLog log = strokeLog;
+        final int logSize = strokeLog.size();
+        final int color = paintLine.getColor();
+        filling = true;
+
+        FILL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final int filled = floodFill.fill(pixels, width, height, x, y, color, FILL_TOLERANCE);
+                final Rect bounds = new Rect(floodFill.getLeft(), floodFill.getTop(),
+                        floodFill.getRight() + 1, floodFill.getBottom() + 1);
+
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        filling = false;
+                        if (filled > 0 && bitmap == target && strokeLog == log && strokeLog.size() == logSize
+                                && tiledCanvas == null) {
+                            applyFill(pixels, bounds, x, y, color);
+                        }
+                    }
+                });
+            }
+        });
     }
 
-    public void setDrawingColor(int color) {
-        paintLine.setColor(color);
+    // Copies the filled bounds back into the bitmap as one undo step
+    private void applyFill(int[] pixels, Rect bounds, int x, int y, int color) {
+        int width = bitmap.getWidth();
+        history.beginStep(bitmapSurface, strokeLog.size());
+        history.captureBefore(bounds.left, bounds.top, bounds.right, bounds.bottom);
+        bitmap.setPixels(pixels, bounds.top * width + bounds.left, width,
+                bounds.left, bounds.top, bounds.width(), bounds.height());
+        strokeLog.appendFill(color, x, y, FILL_TOLERANCE);
+        history.endStep(strokeLog.size());
+
+        invalidate(bounds);
     }
 
-    public int getDrawingColor() {
-        return paintLine.getColor();
+    // Commits the stable prefix of a live path and keeps drawing from its end,
+    // so per-frame cost does not grow with stroke length
+    private void flattenPrefix(int lineID) {
+        Path path = paths[lineID];
+        commitPath(path, lineID);
+        path.rewind();
+        path.moveTo(strokes.getEndX(lineID), strokes.getEndY(lineID));
+        liveSegmentCounts[lineID] = 0;
     }
 
-    public void setLineWidth(int width) {
-        paintLine.setStrokeWidth(width);
+    // Draws a finished path or prefix of stroke lineID into the committed drawing
+    private void commitPath(Path path, int lineID) {
+        int brush = liveBrushes[lineID];
+        path.computeBounds(pathBounds, false);
+        float inset = brushes.getWidth(brush) / 2 + 1;
+        pathBounds.inset(-inset, -inset);
+
+        if (tiledCanvas != null) {
+            tiledCanvas.drawPath(path, brushes.get(brush), pathBounds);
+            return;
+        }
+
+        // Opaque strokes, and whole translucent strokes the layer can't take
+        // or that come from the peer
+        if (!isTranslucent(lineID) || (strokeLayerInUse && !usesStrokeLayer(lineID))
+                || isRemotePointer(lineID)) {
+            captureHistory(pathBounds);
+            bitmapCanvas.drawPath(path, brushes.get(brush));
+            invalidateBounds(pathBounds);
+            return;
+        }
+
+        if (strokeLayer == null) {
+            strokeLayer = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
+            strokeLayerCanvas = new Canvas(strokeLayer);
+        }
+        strokeLayerCanvas.drawPath(path, brushes.get(liveOpaqueBrushes[lineID]));
+        if (strokeLayerInUse) {
+            strokeLayerBounds.union(pathBounds);
+        } else {
+            strokeLayerBounds.set(pathBounds);
+            strokeLayerAlpha = Color.alpha(brushes.getColor(brush));
+            paintStrokeLayer.setAlpha(strokeLayerAlpha);
+        }
+        strokeLayerInUse = true;
     }
 
-    public int getLineWidth() {
-        return (int) paintLine.getStrokeWidth();
+    // A translucent prefix can only be flattened into strokeLayer, which
+    // holds one alpha at a time and does not exist on tiles; other strokes
+    // stay whole until they end. The peer's strokes always stay whole, so
+    // each is committed at once in an undo step of its own.
+    private boolean canFlatten(int lineID) {
+        if (isRemotePointer(lineID)) {
+            return false;
+        }
+        if (!isTranslucent(lineID)) {
+            return true;
+        }
+        return tiledCanvas == null && (!strokeLayerInUse || usesStrokeLayer(lineID));
     }
 
-    private void showToastWithStringId(int id) {
-        Toast message = Toast.makeText(getContext(), id, Toast.LENGTH_SHORT);
-        message.setGravity(Gravity.CENTER, message.getXOffset() / 2, message.getYOffset() / 2);
-        message.show();
+    // True if stroke lineID is translucent with the alpha strokeLayer blends at
+    private boolean usesStrokeLayer(int lineID) {
+        int alpha = Color.alpha(brushes.getColor(liveBrushes[lineID]));
+        return alpha < 255 && alpha == strokeLayerAlpha;
+    }
+
+    private void flushStrokeLayer() {
+        captureHistory(strokeLayerBounds);
+        bitmapCanvas.drawBitmap(strokeLayer, 0, 0, paintStrokeLayer);
+        invalidateBounds(strokeLayerBounds);
+        strokeLayer.eraseColor(Color.TRANSPARENT);
+        strokeLayerInUse = false;
+    }
+
+    // Saves the bitmap tiles under bounds before they are drawn over
+    private void captureHistory(RectF bounds) {
+        history.captureBefore((int) Math.floor(bounds.left), (int) Math.floor(bounds.top),
+                (int) Math.ceil(bounds.right), (int) Math.ceil(bounds.bottom));
+    }
+
+    // Repaints the part of the view a commit changed
+    private void invalidateBounds(RectF bounds) {
+        bounds.roundOut(commitRect);
+        invalidate(commitRect);
+    }
+
+    private boolean isTranslucent(int lineID) {
+        return Color.alpha(brushes.getColor(liveBrushes[lineID])) < 255;
+    }
+
+    // Grows dirtyRect to cover a stroke point, padded by half the line width
+    private void addDirtyPoint(float x, float y, float lineWidth) {
+        addDirtyBounds(x, y, x, y, lineWidth);
+    }
+
+    private void addDirtyBounds(float left, float top, float right, float bottom, float lineWidth) {
+        // One extra pixel on each side covers anti-aliasing
+        int inset = (int) Math.ceil(lineWidth / 2) + 1;
+        dirtyRect.union((int) left - inset, (int) top - inset,
+                (int) Math.ceil(right) + inset, (int) Math.ceil(bottom) + inset);
+    }
+
+    public void saveImage() {
+        final String name = getContext().getResources().getString(R.string.app_name)
+                + System.currentTimeMillis() + imageSaver.getFileExtension();
+
+        // Snapshot what is on screen; encoding and writing happen on a worker
+        imageSaver.save(createSnapshot(), name, "Doodlz Drawing", new ImageSaver.Callback() {
+            @Override
+            public void onImageSaved(ImageSaver.Result result) {
+                if (result.uri != null) {
+                    if (Log.isLoggable(TAG, Log.DEBUG)) {
+                        Log.d(TAG, "Saved " + result.byteCount + " bytes in " + result.saveMillis + " ms");
+                    }
+                    showToastWithStringId(R.string.message_saved);
+                } else {
+                    showToastWithStringId(R.string.message_error_saving);
+                }
+            }
+        });
+    }
+
+    // Copies what the view shows into a new Bitmap
+    private Bitmap createSnapshot() {
+        if (tiledCanvas == null) {
+            return compositeLayers(Math.min(getWidth(), bitmap.getWidth()), Math.min(getHeight(), bitmap.getHeight()));
+        }
+
+        Bitmap snapshot = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
+        clipBounds.set(0, 0, getWidth(), getHeight());
+        drawTiles(new Canvas(snapshot), clipBounds);
+        return snapshot;
+    }
+
+    // Draws every visible layer into a new Bitmap
+    private Bitmap compositeLayers(int width, int height) {
+        Bitmap composite = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        layers.draw(new Canvas(composite));
+        return composite;
+    }
+
+    // Chooses PNG, JPEG or WebP and the quality used by saveImage
+    public void setSaveFormat(Bitmap.CompressFormat format, int quality) {
+        imageSaver.setFormat(format, quality);
+    }
+
+    // Writes the stroke log and a raster cache of the drawing to a project file;
+    // a large canvas is saved as its stroke log alone
+    public void saveProject(final File file) {
+        final StrokeLog logSnapshot = strokeLog.copy();
+        final Bitmap snapshot = tiledCanvas == null ? compositeLayers(bitmap.getWidth(), bitmap.getHeight()) : null;
+
+        PROJECT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean saved;
+                try {
+                    DoodleProjectFile.write(file, logSnapshot, snapshot == null ? null : new BitmapSurface(snapshot));
+                    saved = true;
+                } catch (IOException e) {
+                    Log.e(TAG, "Saving project failed", e);
+                    saved = false;
+                }
+                if (snapshot != null) {
+                    snapshot.recycle();
+                }
+
+                final int messageId = saved ? R.string.message_project_saved : R.string.message_error_project;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        showToastWithStringId(messageId);
+                    }
+                });
+            }
+        });
+    }
+
+    // Maps a project file and decodes every stored tile the bitmap holds.
+    // After a rotation the bitmap is larger than the view, and the next
+    // saveProject writes all of it, so tiles outside the view are needed too.
+    public void openProject(final File file) {
+        setLargeCanvas(false); // Projects open into the view-sized bitmap
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+
+        PROJECT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                StrokeLog loadedLog = null;
+                Bitmap loaded = null;
+                try {
+                    DoodleProjectFile project = DoodleProjectFile.open(file);
+                    try {
+                        loadedLog = project.readStrokeLog();
+                        loaded = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                        loaded.eraseColor(Color.WHITE);
+
+                        if (project.hasRaster()) {
+                            project.readRaster(new BitmapSurface(loaded));
+                        } else {
+                            new StrokeLogRenderer().render(loadedLog, 0, loadedLog.size(),
+                                    loaded, new Canvas(loaded), Color.WHITE);
+                        }
+                    } finally {
+                        project.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Opening project failed", e);
+                    loadedLog = null;
+                }
+
+                final StrokeLog log = loadedLog;
+                final Bitmap opened = loaded;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (log == null) {
+                            showToastWithStringId(R.string.message_error_project);
+                        } else {
+                            showProject(log, opened);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void showProject(StrokeLog log, Bitmap opened) {
+        clearStrokes();
+        strokeLayerInUse = false;
+        if (strokeLayer != null) {
+            strokeLayer.eraseColor(Color.TRANSPARENT);
+        }
+
+        // The view may have grown while the project loaded; the project
+        // replaces every layer
+        if (opened.getWidth() < bitmap.getWidth() || opened.getHeight() < bitmap.getHeight()) {
+            Bitmap page = Bitmap.createBitmap(bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
+            page.eraseColor(Color.WHITE);
+            new Canvas(page).drawBitmap(opened, 0, 0, null);
+            opened.recycle();
+            opened = page;
+        }
+        layers.reset(opened);
+        bitmap = opened;
+        bitmapCanvas = new Canvas(bitmap);
+
+        strokeLog = log;
+        history.clear();
+        invalidate();
+    }
+
+    // Prints what the view shows from the stroke log, so the page is
+    // rendered at the printer's resolution rather than the screen's
+    public void printImage() {
+        PrintManager printManager = (PrintManager) getContext().getSystemService(Context.PRINT_SERVICE);
+        if (printManager == null) {
+            showToastWithStringId(R.string.message_error_printing);
+            return;
+        }
+
+        RectF region = new RectF(0, 0, getWidth(), getHeight());
+        if (tiledCanvas != null) {
+            inverseMatrix.mapRect(region);
+        }
+        printManager.print("Doodlz Image",
+                new DoodlePrintAdapter(getContext(), "Doodlz Image", strokeLog.copy(), region), null);
+    }
+
+    public void clear() {
+        if (session != null) {
+            session.getEncoder().clear();
+            session.scheduleFlush();
+        }
+        clearDrawing();
+    }
+
+    private void clearDrawing() {
+        clearStrokes();
+
+        if (tiledCanvas != null) {
+            strokeLog.appendClear();
+            tiledCanvas.clear();
+            invalidate();
+            return;
+        }
+
+        // The stroke log has no layers, so a clear erases all of them.
+        // Undo history only holds tiles of the active layer: erasing the
+        // only layer is undoable, so the whole bitmap is saved first, but
+        // erasing several ends the history.
+        boolean split = beginSeparateStep();
+        boolean undoable = layers.size() == 1;
+        if (undoable) {
+            history.captureAll();
+        }
+        strokeLog.appendClear();
+        layers.erase();
+        if (strokeLayer != null) {
+            strokeLayer.eraseColor(Color.TRANSPARENT);
+        }
+        strokeLayerInUse = false;
+        if (!undoable) {
+            history.clear();
+        }
+        endSeparateStep(split);
+        invalidate();
+    }
+
+    // Starts an undo step for a change that is not part of the local
+    // gesture: a clear, or a stroke from the peer. Tile snapshots only
+    // undo in reverse order, so a gesture in progress is split around the
+    // step instead of taking it in, and each undo truncates the stroke log
+    // back over exactly the commands of the step it restores. Returns true
+    // if a gesture's step was open.
+    private boolean beginSeparateStep() {
+        boolean split = history.isRecording();
+        history.beginStep(bitmapSurface, strokeLog.size());
+        return split;
+    }
+
+    // Ends the separate step and resumes the gesture's step if it was split
+    private void endSeparateStep(boolean split) {
+        history.endStep(strokeLog.size());
+        if (split) {
+            history.beginStep(bitmapSurface, strokeLog.size());
+        }
+    }
+
+    // Restores the bitmap to before the last gesture, erase or peer stroke
+    public boolean undo() {
+        if (strokes.getActiveCount() > 0 || filling || tiledCanvas != null) {
+            return false; // Not while a stroke or fill is in progress, and not on tiles
+        }
+
+        int logSize = history.undo(bitmapSurface);
+        if (logSize < 0) {
+            return false;
+        }
+
+        strokeLog.setSize(logSize);
+        invalidate();
+        return true;
+    }
+
+    public boolean redo() {
+        if (strokes.getActiveCount() > 0 || filling || tiledCanvas != null) {
+            return false;
+        }
+
+        int logSize = history.redo(bitmapSurface);
+        if (logSize < 0) {
+            return false;
+        }
+
+        strokeLog.setSize(logSize);
+        invalidate();
+        return true;
+    }
+
+    // Switches between the view-sized bitmap and an 8192 x 8192 tiled canvas
+    // that can be panned and zoomed. Undo history only covers the bitmap.
+    public void setLargeCanvas(boolean enabled) {
+        if (enabled == (tiledCanvas != null)) {
+            return;
+        }
+
+        clearStrokes();
+        if (strokeLayerInUse) {
+            flushStrokeLayer();
+        }
+        history.endStep(strokeLog.size());
+        history.clear();
+
+        if (enabled) {
+            // Tiles hold one layer, so the layers are merged first
+            bitmap = layers.flatten();
+            bitmapCanvas = new Canvas(bitmap);
+            tiledCanvas = new TiledCanvas(LARGE_CANVAS_SIZE, LARGE_CANVAS_SIZE, residentTileCount(),
+                    new File(getContext().getCacheDir(), "tiles"));
+            tiledCanvas.drawBitmap(bitmap);
+            updateResidentTiles();
+        } else {
+            // Keep the part of the drawing the bitmap has room for
+            bitmap.eraseColor(Color.WHITE);
+            mappedBounds.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            tiledCanvas.draw(bitmapCanvas, mappedBounds, null);
+            tiledCanvas.release();
+            tiledCanvas = null;
+            navigating = false;
+        }
+
+        viewMatrix.reset();
+        inverseMatrix.reset();
+        if (tiledCanvas != null) {
+            updateViewMatrix(); // Zooms in if even scale 1 shows more tiles than fit
+        }
+        invalidate();
+    }
+
+    public boolean isLargeCanvas() {
+        return tiledCanvas != null;
+    }
+
+    // While enabled, touches on a large canvas pan and pinch-zoom it
+    public void setNavigationMode(boolean enabled) {
+        navigating = enabled;
+    }
+
+    // In fill mode touches fill regions instead of drawing; only on the bitmap
+    public void setFillMode(boolean enabled) {
+        fillMode = enabled;
+    }
+
+    public boolean isFillMode() {
+        return fillMode;
+    }
+
+    public boolean isNavigationMode() {
+        return navigating;
+    }
+
+    public void setHistoryBudgetBytes(long budgetBytes) {
+        history.setBudgetBytes(budgetBytes);
+    }
+
+    public long getHistoryBudgetBytes() {
+        return history.getBudgetBytes();
+    }
+
+    // Memory the undo and redo history currently holds
+    public long getHistoryBytes() {
+        return history.getHistoryBytes();
+    }
+
+    // Adds an empty layer above the active one and draws on it; fails if
+    // the layer budget has no room
+    public boolean addLayer() {
+        if (!canChangeLayers()) {
+            return false;
+        }
+        if (!layers.add()) {
+            showToastWithStringId(R.string.message_layer_budget);
+            return false;
+        }
+        layersChanged();
+        return true;
+    }
+
+    // Deletes the active layer and draws on the one below it
+    public boolean removeLayer() {
+        if (!canChangeLayers() || !layers.remove()) {
+            return false;
+        }
+        layersChanged();
+        return true;
+    }
+
+    // Draws on the layer at index, 0 being the bottom one
+    public boolean selectLayer(int index) {
+        if (!canChangeLayers() || !layers.setActive(index)) {
+            return false;
+        }
+        layersChanged();
+        return true;
+    }
+
+    // Moves the active layer up the stack by offset places, or down if negative
+    public boolean moveLayer(int offset) {
+        if (!canChangeLayers() || !layers.move(offset)) {
+            return false;
+        }
+        layersChanged();
+        return true;
+    }
+
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    public int getLayerIndex() {
+        return layers.getActiveIndex();
+    }
+
+    // Hides or shows the active layer, which can still be drawn on
+    public void setLayerVisible(boolean visible) {
+        if (canChangeLayers()) {
+            layers.setVisible(visible);
+            layersChanged();
+        }
+    }
+
+    public boolean isLayerVisible() {
+        return layers.isVisible();
+    }
+
+    // Opacity of the active layer, 0 to 1; live strokes show at full opacity until lifted
+    public void setLayerOpacity(float opacity) {
+        if (canChangeLayers()) {
+            layers.setOpacity(opacity);
+            layersChanged();
+        }
+    }
+
+    public float getLayerOpacity() {
+        return layers.getOpacity();
+    }
+
+    // One of DoodleLayers' BLEND_ modes, for the active layer
+    public void setLayerBlendMode(int blendMode) {
+        if (canChangeLayers()) {
+            layers.setBlendMode(blendMode);
+            layersChanged();
+        }
+    }
+
+    public int getLayerBlendMode() {
+        return layers.getBlendMode();
+    }
+
+    // Limits the memory layers and their composites may hold; layers
+    // already added are kept
+    public void setLayerBudgetBytes(long budgetBytes) {
+        layers.setBudgetBytes(budgetBytes);
+    }
+
+    public long getLayerBudgetBytes() {
+        return layers.getBudgetBytes();
+    }
+
+    public long getLayerBytes() {
+        return layers.getBytes();
+    }
+
+    // Commits translucent strokes before layers change. Layers are left
+    // alone while strokes or a fill are in progress, and on the large canvas.
+    private boolean canChangeLayers() {
+        if (strokes.getActiveCount() > 0 || filling || tiledCanvas != null || bitmap == null) {
+            return false;
+        }
+        if (strokeLayerInUse) {
+            flushStrokeLayer();
+        }
+        history.endStep(strokeLog.size());
+        return true;
+    }
+
+    // Strokes go to whichever layer is now active. Undo history holds
+    // tiles of the layer it was recorded on, so it ends with that layer.
+    private void layersChanged() {
+        if (bitmap != layers.getActive()) {
+            bitmap = layers.getActive();
+            bitmapCanvas = new Canvas(bitmap);
+            history.clear();
+        }
+        invalidate();
+    }
+
+    public StrokeLog getStrokeLog() {
+        return strokeLog;
+    }
+
+    // Applies to strokes started from now on
+    public void setDrawingColor(int color) {
+        paintLine.setColor(color);
+    }
+
+    public int getDrawingColor() {
+        return paintLine.getColor();
+    }
+
+    public void setLineWidth(int width) {
+        paintLine.setStrokeWidth(width);
+        simplifier.setLineWidth(width);
+    }
+
+    public int getLineWidth() {
+        return (int) paintLine.getStrokeWidth();
+    }
+
+    // Waits for a peer to join on port and draws together once it has
+    public void hostSession(int port) throws IOException {
+        startSession(CollabSession.host(port));
+    }
+
+    public void joinSession(String address, int port) throws IOException {
+        startSession(CollabSession.join(address, port));
+    }
+
+    private void startSession(CollabSession newSession) {
+        endSession();
+        session = newSession;
+        session.attach(this);
+    }
+
+    // Keeps the peer's unfinished strokes as drawn so far
+    public void endSession() {
+        if (session != null) {
+            endRemoteStrokes();
+            session.close();
+            session = null;
+        }
+    }
+
+    public boolean isInSession() {
+        return session != null;
+    }
+
+    void onSessionConnected() {
+        showToastWithStringId(R.string.message_session_connected);
+    }
+
+    // Draws a frame of the peer's strokes, which are in drawing coordinates
+    void applySessionFrame(byte[] frame) {
+        try {
+            session.getDecoder().read(frame, remoteStrokes);
+        } catch (IOException e) {
+            Log.w(TAG, "Ending session after a bad frame", e);
+            endSession();
+            showToastWithStringId(R.string.message_error_session);
+        }
+
+        if (tiledCanvas != null) {
+            mapDirtyRectToView();
+        }
+        invalidateDirtyRect();
+    }
+
+    void onSessionEnded(IOException error) {
+        if (error != null) {
+            Log.w(TAG, "Session failed", error);
+        }
+        endRemoteStrokes();
+        session = null;
+        showToastWithStringId(error == null ? R.string.message_session_ended : R.string.message_error_session);
+    }
+
+    private boolean isRemotePointer(int lineID) {
+        return session != null && lineID >= REMOTE_POINTER_BASE;
+    }
+
+    private void endRemoteStrokes() {
+        for (int i = strokes.getActiveCount() - 1; i >= 0; i--) {
+            int id = strokes.getActiveId(i);
+            if (id >= REMOTE_POINTER_BASE) {
+                boolean split = beginSeparateStep();
+                endStroke(id);
+                endSeparateStep(split);
+            }
+        }
+        dirtyRect.setEmpty();
+        invalidate();
+    }
+
+    // Strokes started from now on vary in width with pressure and speed
+    public void setVariableWidth(boolean enabled) {
+        variableWidth = enabled;
+    }
+
+    public boolean isVariableWidth() {
+        return variableWidth;
+    }
+
+    // Set to false to keep every live stroke as one Path until it ends
+    public void setIncrementalRasterization(boolean enabled) {
+        incrementalRasterization = enabled;
+    }
+
+    // Set to false to invalidate the whole view on every touch event
+    public void setDirtyRectInvalidation(boolean enabled) {
+        dirtyRectInvalidation = enabled;
+    }
+
+    // Draws through a software layer, where invalidating the dirty rect
+    // does limit what is repainted; for measuring getPixelsRedrawnPerFrame
+    public void setSoftwareRendering(boolean enabled) {
+        setLayerType(enabled ? LAYER_TYPE_SOFTWARE : LAYER_TYPE_NONE, null);
+    }
+
+    // Average number of pixels repainted per software-drawn onDraw since
+    // the last reset; 0 if every frame was hardware accelerated
+    public long getPixelsRedrawnPerFrame() {
+        return framesDrawn == 0 ? 0 : pixelsRedrawn / framesDrawn;
+    }
+
+    public void resetRedrawStats() {
+        framesDrawn = 0;
+        pixelsRedrawn = 0;
+    }
+
+    // Starts recording field metrics from scratch, or stops and drops them
+    public void setMetricsEnabled(boolean enabled) {
+        if (!enabled) {
+            metrics = null;
+            return;
+        }
+
+        metrics = new DoodleMetrics(METRICS_SAMPLES);
+        undrawnInputMillis = -1;
+        gcCountAtStart = getRuntimeStat("art.gc.gc-count");
+        gcTimeAtStart = getRuntimeStat("art.gc.gc-time");
+        bytesAllocatedAtStart = getRuntimeStat("art.gc.bytes-allocated");
+    }
+
+    public boolean isMetricsEnabled() {
+        return metrics != null;
+    }
+
+    // Writes the metrics and current memory use; call on the UI thread
+    public void dumpMetrics(PrintWriter out) {
+        if (metrics == null) {
+            out.println("Metrics are off");
+            return;
+        }
+
+        metrics.dump(out);
+        out.println("Bitmap: " + (bitmap == null ? 0 : bitmap.getAllocationByteCount()) + " bytes, stroke layer "
+                + (strokeLayer == null ? 0 : strokeLayer.getAllocationByteCount()) + " bytes");
+        if (tiledCanvas != null) {
+            out.println("Tiles: " + tiledCanvas.getResidentTileCount() + " resident of "
+                    + tiledCanvas.getAllocatedTiles() + ", " + tiledCanvas.getSpilledBytes() + " bytes spilled");
+        }
+        out.println("Layers: " + layers.size() + ", " + layers.getBytes() + " of " + layers.getBudgetBytes()
+                + " bytes; composite cache " + layers.getCompositeHits() + " hits, "
+                + layers.getCompositeMisses() + " misses");
+        out.println("Stroke log: " + strokeLog.size() + " commands, " + strokeLog.getAllocatedByteSize()
+                + " bytes; history " + history.getHistoryBytes() + " bytes");
+        out.println("GC since start: " + (getRuntimeStat("art.gc.gc-count") - gcCountAtStart) + " collections, "
+                + (getRuntimeStat("art.gc.gc-time") - gcTimeAtStart) + " ms, "
+                + (getRuntimeStat("art.gc.bytes-allocated") - bytesAllocatedAtStart) + " bytes allocated");
+    }
+
+    // Logs the dump, and writes it to file off the UI thread if file is not null
+    public void dumpMetrics(final File file) {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        dumpMetrics(out);
+        out.flush();
+        final String dump = text.toString();
+
+        for (String line : dump.split("\n")) {
+            Log.i(TAG, line);
+        }
+        if (file == null) {
+            return;
+        }
+
+        PROJECT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    FileWriter writer = new FileWriter(file);
+                    try {
+                        writer.write(dump);
+                    } finally {
+                        writer.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Writing metrics failed", e);
+                }
+            }
+        });
+    }
+
+    // Starts copying every touch event into a new trace
+    public void startTouchRecording() {
+        touchRecorder = new TouchTraceRecorder();
+    }
+
+    public boolean isRecordingTouches() {
+        return touchRecorder != null;
+    }
+
+    // Stops recording and writes the trace to file off the UI thread
+    public void stopTouchRecording(final File file) {
+        if (touchRecorder == null) {
+            return;
+        }
+        final TouchTrace trace = touchRecorder.getTrace();
+        touchRecorder = null;
+
+        PROJECT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean saved;
+                try {
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                    try {
+                        trace.writeTo(out);
+                    } finally {
+                        out.close();
+                    }
+                    saved = true;
+                } catch (IOException e) {
+                    Log.e(TAG, "Writing touch trace failed", e);
+                    saved = false;
+                }
+
+                final int messageId = saved ? R.string.message_trace_saved : R.string.message_error_trace;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        showToastWithStringId(messageId);
+                    }
+                });
+            }
+        });
+    }
+
+    // Reads a trace and feeds it through onTouchEvent's handling, at the
+    // recorded speed times speed, or one event per message if speed is 0.
+    // The user's touches are ignored until it finishes.
+    public void replayTouches(final File file, final float speed) {
+        if (touchReplay != null) {
+            return;
+        }
+
+        PROJECT_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                TouchTrace loaded = null;
+                try {
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                    try {
+                        loaded = TouchTrace.readFrom(in);
+                    } finally {
+                        in.close();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Reading touch trace failed", e);
+                }
+
+                final TouchTrace trace = loaded;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (trace == null) {
+                            showToastWithStringId(R.string.message_error_trace);
+                        } else if (touchReplay == null && trace.getEventCount() > 0) {
+                            touchReplay = new TouchReplay(trace, speed);
+                            touchReplay.run();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public boolean isReplayingTouches() {
+        return touchReplay != null;
+    }
+
+    // ART's counters are strings; 0 if this runtime doesn't report one
+    private static long getRuntimeStat(String name) {
+        try {
+            return Long.parseLong(Debug.getRuntimeStat(name));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void showToastWithStringId(int id) {
+        Toast message = Toast.makeText(getContext(), id, Toast.LENGTH_SHORT);
+        message.setGravity(Gravity.CENTER, message.getXOffset() / 2, message.getYOffset() / 2);
+        message.show();
+    }
+
+    // Drawing state kept alive by a retained fragment across configuration changes
+    public static class RetainedState {
+        private final DoodleLayers layers;
+        private final StrokeLog strokeLog;
+        private final TileHistory history;
+        private final TiledCanvas tiledCanvas;
+        private final Matrix viewMatrix;
+        private final boolean navigating;
+        private final int color;
+        private final float lineWidth;
+        private final CollabSession session;
+
+        private RetainedState(DoodleLayers layers, StrokeLog strokeLog, TileHistory history, TiledCanvas tiledCanvas,
+                              Matrix viewMatrix, boolean navigating, int color, float lineWidth,
+                              CollabSession session) {
+            this.layers = layers;
+            this.strokeLog = strokeLog;
+            this.history = history;
+            this.tiledCanvas = tiledCanvas;
+            this.viewMatrix = new Matrix(viewMatrix);
+            this.navigating = navigating;
+            this.color = color;
+            this.lineWidth = lineWidth;
+            this.session = session;
+        }
+
+        // For when no view will take the drawing back
+        public void endSession() {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+
+    // Brush settings and a small StrokeLog, for when the process is restarted
+    private static class SavedState extends BaseSavedState {
+        int color;
+        float lineWidth;
+        byte[] strokeLog;
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+        private SavedState(Parcel in) {
+            super(in);
+            color = in.readInt();
+            lineWidth = in.readFloat();
+            strokeLog = in.createByteArray();
+        }
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(color);
+            out.writeFloat(lineWidth);
+            out.writeByteArray(strokeLog);
+        }
+
+        public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
+
+    // Makes the shared Paint for each distinct brush
+    private static class PaintFactory implements BrushTable.Factory<Paint> {
+        @Override
+        public Paint create(int color, float width, int cap, int style) {
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(color);
+            paint.setStrokeWidth(width);
+            paint.setStrokeCap(Paint.Cap.values()[cap]);
+            paint.setStyle(Paint.Style.values()[style]);
+            return paint;
+        }
+    }
+
+    // Feeds the peer's stroke events into the local stroke pipeline
+    private class RemoteStrokes implements StrokeStreamDecoder.Listener {
+        @Override
+        public void onStart(int id, float x, float y, int color, float width, int cap) {
+            startStroke(x, y, REMOTE_POINTER_BASE + id, color, width, Math.min(cap, Paint.Cap.values().length - 1));
+        }
+
+        @Override
+        public void onMove(int id, float[] xs, float[] ys, int count) {
+            if (strokes.isActive(REMOTE_POINTER_BASE + id)) {
+                moveStroke(REMOTE_POINTER_BASE + id, xs, ys, count);
+            }
+        }
+
+        @Override
+        public void onEnd(int id) {
+            boolean split = beginSeparateStep();
+            endStroke(REMOTE_POINTER_BASE + id);
+            endSeparateStep(split);
+        }
+
+        @Override
+        public void onClear() {
+            clearDrawing();
+        }
+    }
+
+    // Dispatches a trace's events one per message, rescheduling itself
+    // at the recorded times; event times are moved to the present so
+    // latency metrics see the replay as live input
+    private class TouchReplay implements Runnable {
+        private final TouchTrace trace;
+        private final float speed;
+        private final TouchTraceRecorder converter = new TouchTraceRecorder();
+        private final long startUptime = SystemClock.uptimeMillis();
+        private long downTime;
+        private int next;
+
+        TouchReplay(TouchTrace trace, float speed) {
+            this.trace = trace;
+            this.speed = speed;
+        }
+
+        @Override
+        public void run() {
+            long now = SystemClock.uptimeMillis();
+            if (trace.getAction(next) == TouchTrace.ACTION_DOWN) {
+                downTime = now;
+            }
+            MotionEvent event = converter.obtainEvent(trace, next, downTime, now - trace.getEventTime(next));
+            dispatchTouch(event);
+            event.recycle();
+
+            next++;
+            if (next == trace.getEventCount()) {
+                touchReplay = null;
+            } else if (speed > 0) {
+                long offsetMillis = (long) ((trace.getEventTime(next) - trace.getSampleTime(0, 0)) / speed);
+                postDelayed(this, Math.max(0, startUptime + offsetMillis - now));
+            } else {
+                post(this);
+            }
+        }
+    }
+
+    // Zooms a large canvas around the pinch focus, within the zoom range
+    private class ScaleListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            viewMatrix.getValues(matrixValues);
+            float scale = matrixValues[Matrix.MSCALE_X];
+            float target = Math.max(minScale, Math.min(MAX_SCALE, scale * detector.getScaleFactor()));
+            viewMatrix.postScale(target / scale, target / scale, detector.getFocusX(), detector.getFocusY());
+            updateViewMatrix();
+            return true;
+        }
+    }
+
+    // Lets TileHistory read and restore tiles of the current bitmap
+    private class CommittedSurface implements TileHistory.Surface {
+        @Override
+        public int getWidth() {
+            return bitmap.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+            return bitmap.getHeight();
+        }
+
+        @Override
+        public void readPixels(int[] pixels, int x, int y, int width, int height) {
+            bitmap.getPixels(pixels, 0, width, x, y, width, height);
+        }
+
+        @Override
+        public void writePixels(int[] pixels, int x, int y, int width, int height) {
+            bitmap.setPixels(pixels, 0, width, x, y, width, height);
+        }
     }
 }
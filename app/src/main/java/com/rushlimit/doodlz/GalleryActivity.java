@@ -0,0 +1,120 @@
+package com.rushlimit.doodlz;
+
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.GridView;
+import android.widget.ImageView;
+import android.widget.Toast;
+
+/**
+ * Grid of the doodles saved from the app, newest first. Thumbnails come
+ * from DoodleGallery; tapping one opens the full image in a viewer.
+ */
+public class GalleryActivity extends AppCompatActivity {
+    private DoodleGallery gallery;
+    private ThumbnailAdapter adapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_gallery);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+
+        gallery = DoodleGallery.get(this);
+        adapter = new ThumbnailAdapter();
+        GridView grid = (GridView) findViewById(R.id.galleryGridView);
+        grid.setEmptyView(findViewById(R.id.galleryEmptyTextView));
+        grid.setAdapter(adapter);
+        grid.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                openImage(gallery.getIndex().get(position));
+            }
+        });
+        gallery.setListener(new DoodleGallery.Listener() {
+            @Override
+            public void onEntriesRemoved() {
+                adapter.notifyDataSetChanged();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        gallery.setListener(null); // The gallery outlives the activity
+        super.onDestroy();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        adapter.notifyDataSetChanged(); // Doodles may have been saved or deleted meanwhile
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            gallery.trimMemory();
+        }
+    }
+
+    private void openImage(GalleryIndex.Entry entry) {
+        Intent intent = new Intent(Intent.ACTION_VIEW);
+        intent.setDataAndType(Uri.parse(entry.uri), "image/*");
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        try {
+            startActivity(intent);
+        } catch (ActivityNotFoundException e) {
+            Toast.makeText(this, R.string.message_error_viewing, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    private class ThumbnailAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return gallery.getIndex().size();
+        }
+
+        @Override
+        public GalleryIndex.Entry getItem(int position) {
+            return gallery.getIndex().get(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getItem(position).id;
+        }
+
+        @Override
+        public boolean hasStableIds() {
+            return true;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            ImageView view = (ImageView) convertView;
+            if (view == null) {
+                int size = getResources().getDimensionPixelSize(R.dimen.gallery_thumbnail_size);
+                view = new ImageView(GalleryActivity.this);
+                view.setLayoutParams(new AbsListView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, size));
+                view.setScaleType(ImageView.ScaleType.CENTER_CROP);
+            }
+
+            GalleryIndex.Entry entry = getItem(position);
+            view.setContentDescription(entry.title);
+            gallery.loadThumbnail(entry, view);
+            return view;
+        }
+    }
+}
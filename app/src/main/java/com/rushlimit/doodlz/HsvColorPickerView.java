@@ -0,0 +1,183 @@
+package com.rushlimit.doodlz;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import android.graphics.SweepGradient;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * A hue ring around a saturation/value square. The ring's SweepGradient
+ * and the square's white and black overlay are made once per process
+ * and shared by every picker, so opening the color dialog again, or
+ * dragging across the ring, never rebuilds a gradient: a hue change
+ * only repaints the square's base color under the cached overlay.
+ */
+public class HsvColorPickerView extends View {
+    public interface OnColorChangedListener {
+        void onColorChanged(float hue, float saturation, float value);
+    }
+
+    private static final int[] HUES = {
+            Color.RED, Color.YELLOW, Color.GREEN, Color.CYAN, Color.BLUE, Color.MAGENTA, Color.RED};
+    private static final float RING_FRACTION = 0.18f; // Ring thickness relative to the radius
+    private static final int OVERLAY_SIZE = 256; // Smooth gradients scale up without visible steps
+
+    // Centered on the origin, so one shader fits every size
+    private static Shader hueShader;
+    private static Bitmap squareOverlay;
+
+    private final Paint ringPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint huePaint = new Paint();
+    private final Paint overlayPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint markerPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF square = new RectF();
+    private final float[] offset = new float[2];
+    private float centerX, centerY, outerRadius, innerRadius;
+
+    private float hue, saturation = 1, value = 1;
+    private boolean draggingRing, draggingSquare;
+    private OnColorChangedListener listener;
+
+    public HsvColorPickerView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        ringPaint.setStyle(Paint.Style.STROKE);
+        ringPaint.setShader(getHueShader());
+        markerPaint.setStyle(Paint.Style.STROKE);
+        markerPaint.setStrokeWidth(2 * getResources().getDisplayMetrics().density);
+        updateHuePaint();
+    }
+
+    private static Shader getHueShader() {
+        if (hueShader == null) {
+            hueShader = new SweepGradient(0, 0, HUES, null);
+        }
+        return hueShader;
+    }
+
+    // White to transparent left to right over transparent to black top to bottom
+    private static Bitmap getSquareOverlay() {
+        if (squareOverlay == null) {
+            squareOverlay = Bitmap.createBitmap(OVERLAY_SIZE, OVERLAY_SIZE, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(squareOverlay);
+            Paint paint = new Paint();
+            paint.setShader(new LinearGradient(0, 0, OVERLAY_SIZE, 0,
+                    Color.WHITE, Color.TRANSPARENT, Shader.TileMode.CLAMP));
+            canvas.drawPaint(paint);
+            paint.setShader(new LinearGradient(0, 0, 0, OVERLAY_SIZE,
+                    Color.TRANSPARENT, Color.BLACK, Shader.TileMode.CLAMP));
+            canvas.drawPaint(paint);
+        }
+        return squareOverlay;
+    }
+
+    public void setOnColorChangedListener(OnColorChangedListener listener) {
+        this.listener = listener;
+    }
+
+    public void setColor(int color) {
+        float[] hsv = new float[3];
+        ColorMath.colorToHsv(color, hsv);
+        hue = hsv[0];
+        saturation = hsv[1];
+        value = hsv[2];
+        updateHuePaint();
+        invalidate();
+    }
+
+    public int getColor(int alpha) {
+        return ColorMath.hsvToColor(alpha, hue, saturation, value);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        int width = w - getPaddingLeft() - getPaddingRight();
+        int height = h - getPaddingTop() - getPaddingBottom();
+        centerX = getPaddingLeft() + width / 2f;
+        centerY = getPaddingTop() + height / 2f;
+        outerRadius = Math.min(width, height) / 2f;
+        float thickness = outerRadius * RING_FRACTION;
+        innerRadius = outerRadius - thickness;
+        ringPaint.setStrokeWidth(thickness);
+
+        // The square sits inside the ring with the same gap on every side
+        float half = (innerRadius - thickness / 2) / (float) Math.sqrt(2);
+        square.set(centerX - half, centerY - half, centerX + half, centerY + half);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float ringRadius = (innerRadius + outerRadius) / 2;
+        canvas.save();
+        canvas.translate(centerX, centerY);
+        canvas.drawCircle(0, 0, ringRadius, ringPaint);
+        canvas.restore();
+
+        canvas.drawRect(square, huePaint);
+        canvas.drawBitmap(getSquareOverlay(), null, square, overlayPaint);
+
+        // Markers for the current hue and saturation/value
+        float markerRadius = (outerRadius - innerRadius) / 3;
+        ColorMath.huePosition(hue, ringRadius, offset);
+        markerPaint.setColor(Color.WHITE);
+        canvas.drawCircle(centerX + offset[0], centerY + offset[1], markerRadius, markerPaint);
+        markerPaint.setColor(value > 0.5f && saturation < 0.5f ? Color.BLACK : Color.WHITE);
+        canvas.drawCircle(square.left + saturation * square.width(), square.top + (1 - value) * square.height(),
+                markerRadius, markerPaint);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        float x = event.getX();
+        float y = event.getY();
+
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                // A drag keeps changing what it started on
+                float slop = (outerRadius - innerRadius) / 2;
+                draggingRing = ColorMath.inRing(x - centerX, y - centerY, innerRadius - slop, outerRadius + slop);
+                draggingSquare = !draggingRing && x >= square.left - slop && x <= square.right + slop
+                        && y >= square.top - slop && y <= square.bottom + slop;
+                if (!draggingRing && !draggingSquare) {
+                    return false;
+                }
+                getParent().requestDisallowInterceptTouchEvent(true);
+                pickColor(x, y);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                pickColor(x, y);
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                draggingRing = draggingSquare = false;
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    // Sets the hue or saturation and value under (x, y), whichever is being dragged
+    private void pickColor(float x, float y) {
+        if (draggingRing) {
+            hue = ColorMath.hueAt(x - centerX, y - centerY);
+            updateHuePaint();
+        } else if (draggingSquare) {
+            saturation = ColorMath.saturationAt(x - square.left, square.width());
+            value = ColorMath.valueAt(y - square.top, square.height());
+        }
+        invalidate();
+        if (listener != null) {
+            listener.onColorChanged(hue, saturation, value);
+        }
+    }
+
+    private void updateHuePaint() {
+        huePaint.setColor(ColorMath.hsvToColor(255, hue, 1, 1));
+    }
+}
@@ -0,0 +1,189 @@
+package com.rushlimit.doodlz;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Saves bitmap snapshots to MediaStore off the UI thread. Each save is
+ * compressed on a worker straight into the MediaStore entry, so the
+ * encoded image is never held in memory whole, and reported back on the
+ * main thread with how long it took.
+ */
+public class ImageSaver {
+    // One worker keeps saves in order and bounds the memory they use
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+
+    public interface Callback {
+        // Called on the main thread
+        void onImageSaved(Result result);
+    }
+
+    public static class Result {
+        public final Uri uri; // null if the save failed
+        public final long saveMillis; // Encoding and writing, which overlap
+        public final long byteCount;
+
+        Result(Uri uri, long saveMillis, long byteCount) {
+            this.uri = uri;
+            this.saveMillis = saveMillis;
+            this.byteCount = byteCount;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
+    private int quality = 100;
+    private DoodleGallery gallery; // Told about every successful save, if set
+
+    public ImageSaver(ContentResolver contentResolver) {
+        this.contentResolver = contentResolver;
+    }
+
+    public void setGallery(DoodleGallery gallery) {
+        this.gallery = gallery;
+    }
+
+    // Quality is ignored by lossless PNG
+    public void setFormat(Bitmap.CompressFormat format, int quality) {
+        this.format = format;
+        this.quality = quality;
+    }
+
+    public Bitmap.CompressFormat getFormat() {
+        return format;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public String getFileExtension() {
+        switch (format) {
+            case PNG:
+                return ".png";
+            case WEBP:
+                return ".webp";
+            default:
+                return ".jpg";
+        }
+    }
+
+    // Takes ownership of snapshot, which must not change while it is saved
+    public void save(final Bitmap snapshot, final String title, final String description,
+                     final Callback callback) {
+        final Bitmap.CompressFormat saveFormat = format;
+        final int saveQuality = quality;
+
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Result result = write(snapshot, saveFormat, saveQuality, title, description);
+                if (result.uri != null && gallery != null) {
+                    gallery.addSavedImage(result.uri, title, snapshot);
+                }
+                snapshot.recycle();
+
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onImageSaved(result);
+                    }
+                });
+            }
+        });
+    }
+
+    // Runs on the worker thread
+    private Result write(Bitmap snapshot, Bitmap.CompressFormat saveFormat, int saveQuality,
+                         String title, String description) {
+        long start = SystemClock.elapsedRealtime();
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.TITLE, title);
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, title);
+        values.put(MediaStore.Images.Media.DESCRIPTION, description);
+        values.put(MediaStore.Images.Media.MIME_TYPE, mimeType(saveFormat));
+        values.put(MediaStore.Images.Media.DATE_TAKEN, System.currentTimeMillis());
+
+        Uri uri = contentResolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if (uri == null) {
+            return new Result(null, SystemClock.elapsedRealtime() - start, 0);
+        }
+
+        CountingOutputStream out = null;
+        try {
+            OutputStream stream = contentResolver.openOutputStream(uri);
+            if (stream == null) {
+                throw new IOException("No output stream for " + uri);
+            }
+            // compress writes through its own buffer, so no more is needed here
+            out = new CountingOutputStream(stream);
+            if (!snapshot.compress(saveFormat, saveQuality, out)) {
+                throw new IOException("Encoding failed for " + uri);
+            }
+            out.close();
+        } catch (IOException e) {
+            closeQuietly(out);
+            // Don't leave an empty or partial entry behind in the gallery
+            contentResolver.delete(uri, null, null);
+            return new Result(null, SystemClock.elapsedRealtime() - start, 0);
+        }
+
+        return new Result(uri, SystemClock.elapsedRealtime() - start, out.count);
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            // The entry is deleted anyway
+        }
+    }
+
+    private static String mimeType(Bitmap.CompressFormat format) {
+        switch (format) {
+            case PNG:
+                return "image/png";
+            case WEBP:
+                return "image/webp";
+            default:
+                return "image/jpeg";
+        }
+    }
+
+    // Counts the encoded bytes on their way to the entry
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -3,37 +3,44 @@ package com.rushlimit.doodlz;
 import android.app.Activity;
 import android.app.Dialog;
 import android.content.DialogInterface;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Paint;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.v4.app.DialogFragment;
 import android.support.v7.app.AlertDialog;
 import android.view.View;
-import android.widget.ImageView;
 import android.widget.SeekBar;
 
 /**
  * Created by aminm on 5/4/16.
  */
 public class LineWidthDialogFragment extends DialogFragment {
-    private ImageView widthImageView;
+    private static final String STATE_ORIGINAL_WIDTH = "originalWidth";
 
-    private final SeekBar.OnSeekBarChangeListener lineWidthChanged = new SeekBar.OnSeekBarChangeListener() {
-        final Bitmap bitmap = Bitmap.createBitmap(400, 100, Bitmap.Config.ARGB_8888);
-        final Canvas canvas = new Canvas(bitmap);
+    private LineWidthPreviewView widthPreviewView;
+    private DoodleView doodleView;
+    private int originalWidth; // Restored if the dialog is cancelled
+    private int pendingWidth;
+    private boolean widthUpdatePosted;
+
+    // Applies the latest width at most once per frame while dragging
+    private final Runnable applyPendingWidth = new Runnable() {
+        @Override
+        public void run() {
+            widthUpdatePosted = false;
+            doodleView.setLineWidth(pendingWidth);
+        }
+    };
 
+    private final SeekBar.OnSeekBarChangeListener lineWidthChanged = new SeekBar.OnSeekBarChangeListener() {
         @Override
         public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-            Paint p = new Paint();
-            p.setColor(getDoodleFragment().getDoodleView().getDrawingColor());
-            p.setStrokeCap(Paint.Cap.ROUND);
-            p.setStrokeWidth(progress);
-
-            bitmap.eraseColor(getResources().getColor(android.R.color.transparent, getContext().getTheme()));
-            canvas.drawLine(30, 50, 370, 50, p);
-            widthImageView.setImageBitmap(bitmap);
+            widthPreviewView.setLineWidth(progress);
+
+            pendingWidth = progress;
+            if (!widthUpdatePosted) {
+                widthUpdatePosted = true;
+                widthPreviewView.postOnAnimation(applyPendingWidth);
+            }
         }
 
         @Override
@@ -56,12 +63,18 @@ public class LineWidthDialogFragment extends DialogFragment {
 
         builder.setTitle(R.string.title_line_width_dialog);
 
-        widthImageView = (ImageView) lineWidthDialogView.findViewById(R.id.widthImageView);
+        doodleView = getDoodleFragment().getDoodleView();
+        widthPreviewView = (LineWidthPreviewView) lineWidthDialogView.findViewById(R.id.widthPreviewView);
+        widthPreviewView.setColor(doodleView.getDrawingColor());
+
+        // The width is applied live, so remember where it started
+        originalWidth = savedInstanceState == null
+                ? doodleView.getLineWidth() : savedInstanceState.getInt(STATE_ORIGINAL_WIDTH);
 
-        final DoodleView doodleView = getDoodleFragment().getDoodleView();
         final SeekBar widthSeekBar = (SeekBar) lineWidthDialogView.findViewById(R.id.widthSeekBar);
         widthSeekBar.setOnSeekBarChangeListener(lineWidthChanged);
         widthSeekBar.setProgress(doodleView.getLineWidth());
+        widthPreviewView.setLineWidth(widthSeekBar.getProgress());
 
         builder.setPositiveButton(R.string.button_set_line_width, new DialogInterface.OnClickListener() {
             @Override
@@ -69,10 +82,35 @@ public class LineWidthDialogFragment extends DialogFragment {
                 doodleView.setLineWidth(widthSeekBar.getProgress());
             }
         });
+        builder.setNegativeButton(android.R.string.cancel, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                restoreOriginalWidth();
+            }
+        });
 
         return builder.create();
     }
 
+    @Override
+    public void onCancel(DialogInterface dialog) {
+        super.onCancel(dialog);
+        restoreOriginalWidth();
+    }
+
+    @Override
+    public void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(STATE_ORIGINAL_WIDTH, originalWidth);
+    }
+
+    private void restoreOriginalWidth() {
+        // A pending update must not land after the restore
+        widthPreviewView.removeCallbacks(applyPendingWidth);
+        widthUpdatePosted = false;
+        doodleView.setLineWidth(originalWidth);
+    }
+
     @Override
     public void onAttach(Activity activity) {
         super.onAttach(activity);
@@ -0,0 +1,57 @@
+package com.rushlimit.doodlz;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Shows a line drawn with the brush's width and color, at the size the
+ * brush paints in DoodleView. It draws straight into the view's display
+ * list, so a width change only invalidates the band the old and new
+ * lines cover, with no Bitmap to erase and upload again.
+ */
+public class LineWidthPreviewView extends View {
+    private final Paint paint = new Paint();
+
+    public LineWidthPreviewView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        paint.setAntiAlias(true);
+        paint.setStrokeCap(Paint.Cap.ROUND);
+    }
+
+    public void setColor(int color) {
+        paint.setColor(color);
+        invalidate();
+    }
+
+    public void setLineWidth(float width) {
+        float oldWidth = paint.getStrokeWidth();
+        if (width == oldWidth) {
+            return;
+        }
+        paint.setStrokeWidth(width);
+
+        // The wider of the two lines covers everything that changed
+        int extent = (int) Math.ceil(Math.max(width, oldWidth) / 2) + 1;
+        int centerY = getCenterY();
+        invalidate(getPaddingLeft(), centerY - extent, getWidth() - getPaddingRight(), centerY + extent);
+    }
+
+    public float getLineWidth() {
+        return paint.getStrokeWidth();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        // Inset the ends so round caps stay inside the padding
+        float inset = paint.getStrokeWidth() / 2;
+        float centerY = getCenterY();
+        canvas.drawLine(getPaddingLeft() + inset, centerY, getWidth() - getPaddingRight() - inset, centerY, paint);
+    }
+
+    private int getCenterY() {
+        return getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom()) / 2;
+    }
+}
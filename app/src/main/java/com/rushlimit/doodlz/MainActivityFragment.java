@@ -3,6 +3,7 @@ package com.rushlimit.doodlz;
 import android.Manifest;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
@@ -19,39 +20,51 @@ import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
 /**
  * A placeholder fragment containing a simple view.
  */
 public class MainActivityFragment extends Fragment {
     private DoodleView doodleView;
-    private float acceleration;
-    private float currentAcceleration;
-    private float lastAcceleration;
+    private DoodleView.RetainedState retainedState; // Drawing kept across configuration changes
+    private final ShakeDetector shakeDetector = new ShakeDetector();
     private boolean dialogOnScreen = false;
 
-    // Value used to determine whether user shook the device to erase
-    private static final int ACCELERATION_THRESHOLD = 100000;
+    // 25 Hz resolves a shake's back-and-forth; batching up to 200 ms of
+    // samples lets the sensor hub buffer them instead of waking the CPU
+    private static final int ACCELEROMETER_PERIOD_US = 40000;
+    private static final int ACCELEROMETER_MAX_LATENCY_US = 200000;
+
+    private static final String ERASE_DIALOG_TAG = "erase dialog";
+    private static final String SESSION_DIALOG_TAG = "session dialog";
 
     // Used to identify the request for using external storage, which
     // the save image feature needs
     private static final int SAVE_IMAGE_PERMISSION_REQUEST_CODE = 1;
 
+    // Layer menu items, in the order of the values they set; blend modes
+    // are indexed as in DoodleLayers
+    private static final int[] OPACITY_ITEM_IDS = {
+            R.id.opacity_100, R.id.opacity_75, R.id.opacity_50, R.id.opacity_25};
+    private static final float[] OPACITIES = {1, 0.75f, 0.5f, 0.25f};
+    private static final int[] BLEND_ITEM_IDS = {
+            R.id.blend_normal, R.id.blend_screen, R.id.blend_overlay,
+            R.id.blend_darken, R.id.blend_lighten, R.id.blend_add};
+
+    private static final String PROJECT_FILE_NAME = "doodle.ddlz";
+    private static final String METRICS_FILE_NAME = "metrics.txt";
+    private static final String TRACE_FILE_NAME = "touches.dtrc";
+
     private final SensorEventListener sensorEventListener = new SensorEventListener() {
         @Override
         public void onSensorChanged(SensorEvent event) {
-            if (!dialogOnScreen) {
-                float x = event.values[0];
-                float y = event.values[1];
-                float z = event.values[2];
-
-                lastAcceleration = currentAcceleration;
-                currentAcceleration = x * x + y * y + z * z;
-
-                acceleration = currentAcceleration * (currentAcceleration - lastAcceleration);
-
-                if (acceleration > ACCELERATION_THRESHOLD) {
-                    confirmErase();
-                }
+            // Batched samples keep their own timestamps
+            if (shakeDetector.onSample(event.timestamp,
+                    event.values[0], event.values[1], event.values[2])) {
+                confirmErase();
             }
         }
 
@@ -72,17 +85,37 @@ public class MainActivityFragment extends Fragment {
         View rootView = inflater.inflate(R.layout.fragment_main, container, false);
         setHasOptionsMenu(true);
 
+        // Keep this fragment, and with it the drawing, across configuration changes
+        setRetainInstance(true);
+
         // Get reference to DoodleView
         doodleView = (DoodleView) rootView.findViewById(R.id.doodleView);
-
-        // Initialize acceleration values
-        acceleration = 0.00f;
-        currentAcceleration = SensorManager.GRAVITY_EARTH;
-        lastAcceleration = SensorManager.GRAVITY_EARTH;
+        if (retainedState != null) {
+            doodleView.restoreRetainedState(retainedState);
+            retainedState = null;
+        }
 
         return rootView;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        // Hand the bitmap, stroke log and history to the next DoodleView
+        retainedState = doodleView.getRetainedState();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        // No view will take the drawing back, so nobody draws with the peer
+        if (retainedState != null) {
+            retainedState.endSession();
+        }
+    }
+
     @Override
     public void onResume() {
         super.onResume();
@@ -105,9 +138,59 @@ public class MainActivityFragment extends Fragment {
         inflater.inflate(R.menu.doodle_fragment_menu, menu);
     }
 
+    @Override
+    public void onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+
+        // Filling works on the view-sized bitmap only
+        MenuItem fill = menu.findItem(R.id.fill);
+        fill.setEnabled(!doodleView.isLargeCanvas());
+        fill.setChecked(!doodleView.isLargeCanvas() && doodleView.isFillMode());
+        menu.findItem(R.id.variable_width).setChecked(doodleView.isVariableWidth());
+
+        // Only one of starting and ending a shared session is offered
+        menu.findItem(R.id.start_session).setVisible(!doodleView.isInSession());
+        menu.findItem(R.id.end_session).setVisible(doodleView.isInSession());
+
+        // Panning and zooming only apply to the large canvas
+        menu.findItem(R.id.large_canvas).setChecked(doodleView.isLargeCanvas());
+        MenuItem panZoom = menu.findItem(R.id.pan_zoom);
+        panZoom.setEnabled(doodleView.isLargeCanvas());
+        panZoom.setChecked(doodleView.isLargeCanvas() && doodleView.isNavigationMode());
+
+        // Layers are merged on the large canvas
+        boolean layered = !doodleView.isLargeCanvas();
+        int layer = doodleView.getLayerIndex();
+        menu.findItem(R.id.layers).setEnabled(layered);
+        menu.findItem(R.id.layer_opacity).setEnabled(layered);
+        menu.findItem(R.id.layer_blend).setEnabled(layered);
+        menu.findItem(R.id.remove_layer).setEnabled(doodleView.getLayerCount() > 1);
+        menu.findItem(R.id.select_layer_above).setEnabled(layer < doodleView.getLayerCount() - 1);
+        menu.findItem(R.id.select_layer_below).setEnabled(layer > 0);
+        menu.findItem(R.id.move_layer_up).setEnabled(layer < doodleView.getLayerCount() - 1);
+        menu.findItem(R.id.move_layer_down).setEnabled(layer > 0);
+        if (layered && doodleView.getLayerCount() > 0) {
+            menu.findItem(R.id.layer_visible).setChecked(doodleView.isLayerVisible());
+            menu.findItem(getOpacityItemId(doodleView.getLayerOpacity())).setChecked(true);
+            menu.findItem(BLEND_ITEM_IDS[doodleView.getLayerBlendMode()]).setChecked(true);
+        }
+
+        menu.findItem(R.id.record_metrics).setChecked(doodleView.isMetricsEnabled());
+        menu.findItem(R.id.dump_metrics).setEnabled(doodleView.isMetricsEnabled());
+        menu.findItem(R.id.record_touches).setChecked(doodleView.isRecordingTouches());
+        menu.findItem(R.id.replay_touches).setEnabled(!doodleView.isRecordingTouches()
+                && !doodleView.isReplayingTouches() && getTraceFile().exists());
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         switch (item.getItemId()) {
+            case R.id.undo:
+                doodleView.undo();
+                return true;
+            case R.id.redo:
+                doodleView.redo();
+                return true;
             case R.id.color:
                 ColorDialogFragment colorDialogFragment = new ColorDialogFragment();
                 colorDialogFragment.show(getFragmentManager(), "color dialog");
@@ -116,6 +199,47 @@ public class MainActivityFragment extends Fragment {
                 LineWidthDialogFragment lineWidthDialogFragment = new LineWidthDialogFragment();
                 lineWidthDialogFragment.show(getFragmentManager(), "line width dialog");
                 return true;
+            case R.id.fill:
+                doodleView.setFillMode(!doodleView.isFillMode());
+                return true;
+            case R.id.variable_width:
+                doodleView.setVariableWidth(!doodleView.isVariableWidth());
+                return true;
+            case R.id.add_layer:
+                doodleView.addLayer();
+                return true;
+            case R.id.remove_layer:
+                doodleView.removeLayer();
+                return true;
+            case R.id.select_layer_above:
+                doodleView.selectLayer(doodleView.getLayerIndex() + 1);
+                return true;
+            case R.id.select_layer_below:
+                doodleView.selectLayer(doodleView.getLayerIndex() - 1);
+                return true;
+            case R.id.move_layer_up:
+                doodleView.moveLayer(1);
+                return true;
+            case R.id.move_layer_down:
+                doodleView.moveLayer(-1);
+                return true;
+            case R.id.layer_visible:
+                doodleView.setLayerVisible(!doodleView.isLayerVisible());
+                return true;
+            case R.id.opacity_100:
+            case R.id.opacity_75:
+            case R.id.opacity_50:
+            case R.id.opacity_25:
+                doodleView.setLayerOpacity(OPACITIES[indexOf(OPACITY_ITEM_IDS, item.getItemId())]);
+                return true;
+            case R.id.blend_normal:
+            case R.id.blend_screen:
+            case R.id.blend_overlay:
+            case R.id.blend_darken:
+            case R.id.blend_lighten:
+            case R.id.blend_add:
+                doodleView.setLayerBlendMode(indexOf(BLEND_ITEM_IDS, item.getItemId()));
+                return true;
             case R.id.delete_drawing:
                 confirmErase();
                 return true;
@@ -125,6 +249,45 @@ public class MainActivityFragment extends Fragment {
             case R.id.print:
                 doodleView.printImage();
                 return true;
+            case R.id.gallery:
+                startActivity(new Intent(getContext(), GalleryActivity.class));
+                return true;
+            case R.id.save_project:
+                doodleView.saveProject(getProjectFile());
+                return true;
+            case R.id.open_project:
+                doodleView.openProject(getProjectFile());
+                return true;
+            case R.id.start_session:
+                if (!dialogOnScreen) {
+                    new SessionDialogFragment().show(getFragmentManager(), SESSION_DIALOG_TAG);
+                }
+                return true;
+            case R.id.end_session:
+                doodleView.endSession();
+                return true;
+            case R.id.large_canvas:
+                doodleView.setLargeCanvas(!doodleView.isLargeCanvas());
+                return true;
+            case R.id.pan_zoom:
+                doodleView.setNavigationMode(!doodleView.isNavigationMode());
+                return true;
+            case R.id.record_metrics:
+                doodleView.setMetricsEnabled(!doodleView.isMetricsEnabled());
+                return true;
+            case R.id.dump_metrics:
+                doodleView.dumpMetrics(new File(getContext().getFilesDir(), METRICS_FILE_NAME));
+                return true;
+            case R.id.record_touches:
+                if (doodleView.isRecordingTouches()) {
+                    doodleView.stopTouchRecording(getTraceFile());
+                } else {
+                    doodleView.startTouchRecording();
+                }
+                return true;
+            case R.id.replay_touches:
+                doodleView.replayTouches(getTraceFile(), 1);
+                return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -140,9 +303,24 @@ public class MainActivityFragment extends Fragment {
         }
     }
 
+    // Adds the drawing metrics to adb shell dumpsys activity
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(prefix, fd, writer, args);
+        if (doodleView != null) {
+            doodleView.dumpMetrics(writer);
+        }
+    }
+
     private void confirmErase() {
+        // The dialog attaches after show() returns, so also look it up by
+        // tag to keep a second request from stacking another one
+        if (dialogOnScreen || getFragmentManager().findFragmentByTag(ERASE_DIALOG_TAG) != null) {
+            return;
+        }
+        dialogOnScreen = true;
         EraseImageDialogFragment eraseImageDialogFragment = new EraseImageDialogFragment();
-        eraseImageDialogFragment.show(getFragmentManager(), "erase dialog");
+        eraseImageDialogFragment.show(getFragmentManager(), ERASE_DIALOG_TAG);
     }
 
     private void saveImage() {
@@ -170,10 +348,13 @@ public class MainActivityFragment extends Fragment {
     }
 
     private void enableAccelerometerListening() {
+        // Peaks from before the pause mean nothing now
+        shakeDetector.reset();
         getSensorManager().registerListener(
                 sensorEventListener,
                 getSensorManager().getDefaultSensor(Sensor.TYPE_ACCELEROMETER),
-                SensorManager.SENSOR_DELAY_NORMAL);
+                ACCELEROMETER_PERIOD_US,
+                ACCELEROMETER_MAX_LATENCY_US);
     }
 
     private void disableAccelerometerListening() {
@@ -182,6 +363,35 @@ public class MainActivityFragment extends Fragment {
                 getSensorManager().getDefaultSensor(Sensor.TYPE_ACCELEROMETER));
     }
 
+    // The opacity item closest to opacity
+    private static int getOpacityItemId(float opacity) {
+        int closest = 0;
+        for (int i = 1; i < OPACITIES.length; i++) {
+            if (Math.abs(OPACITIES[i] - opacity) < Math.abs(OPACITIES[closest] - opacity)) {
+                closest = i;
+            }
+        }
+        return OPACITY_ITEM_IDS[closest];
+    }
+
+    private static int indexOf(int[] ids, int id) {
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Unknown menu item " + id);
+    }
+
+    // The project is kept in app-private storage, so no permission is needed
+    private File getProjectFile() {
+        return new File(getContext().getFilesDir(), PROJECT_FILE_NAME);
+    }
+
+    private File getTraceFile() {
+        return new File(getContext().getFilesDir(), TRACE_FILE_NAME);
+    }
+
     private SensorManager getSensorManager() {
         return (SensorManager) getActivity().getSystemService(Context.SENSOR_SERVICE);
     }
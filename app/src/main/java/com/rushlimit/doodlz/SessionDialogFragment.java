@@ -0,0 +1,118 @@
+package com.rushlimit.doodlz;
+
+import android.app.Activity;
+import android.app.Dialog;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v4.app.DialogFragment;
+import android.support.v7.app.AlertDialog;
+import android.text.InputType;
+import android.util.Log;
+import android.widget.EditText;
+import android.widget.Toast;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Collections;
+
+/**
+ * Starts a shared drawing session: hosts one on this device, showing
+ * the address a peer should enter, or joins the one at the address
+ * entered.
+ */
+public class SessionDialogFragment extends DialogFragment {
+    private static final String TAG = "SessionDialogFragment";
+
+    @NonNull
+    @Override
+    public Dialog onCreateDialog(Bundle savedInstanceState) {
+        AlertDialog.Builder builder = new AlertDialog.Builder(getActivity());
+        final EditText addressText = new EditText(getActivity());
+        addressText.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_URI);
+        addressText.setHint(R.string.hint_session_address);
+
+        builder.setTitle(R.string.title_session_dialog);
+        builder.setMessage(getString(R.string.message_session_address, getLocalAddress()));
+        builder.setView(addressText);
+        builder.setPositiveButton(R.string.button_join_session, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                String address = addressText.getText().toString().trim();
+                if (!address.isEmpty()) {
+                    startSession(address);
+                }
+            }
+        });
+        builder.setNeutralButton(R.string.button_host_session, new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                startSession(null);
+            }
+        });
+        builder.setNegativeButton(android.R.string.cancel, null);
+
+        return builder.create();
+    }
+
+    // Hosts if address is null
+    private void startSession(String address) {
+        DoodleView doodleView = getDoodleFragment().getDoodleView();
+        try {
+            if (address == null) {
+                doodleView.hostSession(CollabConnection.DEFAULT_PORT);
+            } else {
+                doodleView.joinSession(address, CollabConnection.DEFAULT_PORT);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Starting a session failed", e);
+            Toast.makeText(getActivity(), R.string.message_error_session, Toast.LENGTH_SHORT).show();
+        }
+    }
+
+    // The first IPv4 address a peer on the same network could reach
+    private static String getLocalAddress() {
+        try {
+            for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+                if (!networkInterface.isUp() || networkInterface.isLoopback()) {
+                    continue;
+                }
+                for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+                    if (address instanceof Inet4Address) {
+                        return address.getHostAddress();
+                    }
+                }
+            }
+        } catch (SocketException e) {
+            Log.w(TAG, "Listing network interfaces failed", e);
+        }
+        return "?";
+    }
+
+    @Override
+    public void onAttach(Activity activity) {
+        super.onAttach(activity);
+        MainActivityFragment fragment = getDoodleFragment();
+
+        if (fragment != null) {
+            fragment.setDialogOnScreen(true);
+        }
+    }
+
+    @Override
+    public void onDetach() {
+        super.onDetach();
+        MainActivityFragment fragment = getDoodleFragment();
+
+        if (fragment != null) {
+            fragment.setDialogOnScreen(false);
+        }
+    }
+
+    private MainActivityFragment getDoodleFragment() {
+        return (MainActivityFragment) getFragmentManager().findFragmentById(R.id.doodleFragment);
+    }
+}
@@ -0,0 +1,146 @@
+package com.rushlimit.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+
+/**
+ * Replays a StrokeLog onto a Canvas. Scale the Canvas first to render
+ * the doodle at another resolution. Fills work on pixels, so they are
+ * only replayed when rendering into a Bitmap. Runs of opaque
+ * variable-width strokes are outlined into one mesh and drawn with a
+ * single drawVertices call; translucent ones get a layer each so their
+ * overlapping triangles don't darken.
+ */
+public class StrokeLogRenderer {
+    private final Path path = new Path(); // Reused for every stroke
+    private final Paint paint = new Paint();
+    private FloodFill floodFill;
+    private int[] pixels;
+    private final float[] seed = new float[2];
+    private final StrokeOutline outline = new StrokeOutline();
+    private final StrokeMesh mesh = new StrokeMesh();
+    private final Paint meshPaint = new Paint();
+
+    public StrokeLogRenderer() {
+        paint.setAntiAlias(true);
+        paint.setStyle(Paint.Style.STROKE);
+    }
+
+    // Draws commands [from, to) of the log, skipping fills
+    public void render(StrokeLog log, int from, int to, Canvas canvas, int backgroundColor) {
+        render(log, from, to, null, canvas, backgroundColor);
+    }
+
+    // Draws commands [from, to) of the log into bitmap through canvas,
+    // which must draw into bitmap unscaled
+    public void render(StrokeLog log, int from, int to, Bitmap bitmap, Canvas canvas, int backgroundColor) {
+        render(log, from, to, bitmap, canvas, backgroundColor, null);
+    }
+
+    // As above, but canvas draws through matrix, which also maps fill
+    // seeds onto the bitmap's pixels
+    public void render(StrokeLog log, int from, int to, Bitmap bitmap, Canvas canvas, int backgroundColor,
+                       Matrix matrix) {
+        for (int i = from; i < to; i++) {
+            if (log.getKind(i) == StrokeLog.KIND_VARIABLE_STROKE) {
+                i = renderVariableStrokes(log, i, to, canvas) - 1;
+            } else if (log.getKind(i) == StrokeLog.KIND_CLEAR) {
+                canvas.drawColor(backgroundColor);
+            } else if (log.getKind(i) == StrokeLog.KIND_FILL) {
+                if (bitmap != null) {
+                    fill(log, i, bitmap, matrix);
+                }
+            } else {
+                buildPath(log, i, path);
+                paint.setColor(log.getColor(i));
+                paint.setStrokeWidth(log.getWidth(i));
+                paint.setStrokeCap(Paint.Cap.values()[log.getCap(i)]);
+                canvas.drawPath(path, paint);
+            }
+        }
+    }
+
+    // Draws the variable-width strokes starting at from, batching opaque
+    // neighbours; returns the index of the first command not drawn
+    private int renderVariableStrokes(StrokeLog log, int from, int to, Canvas canvas) {
+        int alpha = log.getColor(from) >>> 24;
+        if (alpha < 255) {
+            mesh.reset();
+            outline.outline(log, from, mesh);
+            if (!mesh.isEmpty()) {
+                // Opaque inside the layer, faded as a whole when it is restored
+                for (int v = 0; v < mesh.getVertexCount(); v++) {
+                    mesh.getColors()[v] |= 0xff000000;
+                }
+                int saveCount = canvas.saveLayerAlpha(mesh.getLeft(), mesh.getTop(),
+                        mesh.getRight(), mesh.getBottom(), alpha);
+                drawMesh(canvas, mesh, meshPaint);
+                canvas.restoreToCount(saveCount);
+            }
+            return from + 1;
+        }
+
+        mesh.reset();
+        int i = from;
+        while (i < to && log.getKind(i) == StrokeLog.KIND_VARIABLE_STROKE && log.getColor(i) >>> 24 == 255) {
+            outline.outline(log, i++, mesh);
+        }
+        drawMesh(canvas, mesh, meshPaint);
+        return i;
+    }
+
+    // Draws a mesh built by StrokeOutline; needs a software canvas before
+    // API 29, which is why strokes are rasterized rather than kept as meshes
+    public static void drawMesh(Canvas canvas, StrokeMesh mesh, Paint paint) {
+        if (!mesh.isEmpty()) {
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLE_STRIP, mesh.getVertexCount() * 2,
+                    mesh.getVertices(), 0, null, 0, mesh.getColors(), 0, null, 0, 0, paint);
+        }
+    }
+
+    private void fill(StrokeLog log, int index, Bitmap bitmap, Matrix matrix) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (pixels == null || pixels.length < width * height) {
+            pixels = new int[width * height];
+            floodFill = new FloodFill();
+        }
+
+        int offset = log.getPointOffset(index);
+        seed[0] = log.getCoords()[offset];
+        seed[1] = log.getCoords()[offset + 1];
+        if (matrix != null) {
+            matrix.mapPoints(seed);
+        }
+        int x = (int) seed[0];
+        int y = (int) seed[1];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (floodFill.fill(pixels, width, height, x, y, log.getColor(index), (int) log.getWidth(index)) > 0) {
+            int top = floodFill.getTop();
+            bitmap.setPixels(pixels, top * width, width, 0, top, width, floodFill.getBottom() - top + 1);
+        }
+    }
+
+    // Rebuilds the chain of quads StrokeBuilder produced for a stroke
+    public static void buildPath(StrokeLog log, int index, Path path) {
+        float[] coords = log.getCoords();
+        int offset = log.getPointOffset(index);
+        int end = offset + log.getPointCount(index) * 2;
+
+        float lastX = coords[offset];
+        float lastY = coords[offset + 1];
+        path.rewind();
+        path.moveTo(lastX, lastY);
+
+        for (int i = offset + 2; i < end; i += 2) {
+            float x = coords[i];
+            float y = coords[i + 1];
+            path.quadTo(lastX, lastY, (x + lastX) / 2, (y + lastY) / 2);
+            lastX = x;
+            lastY = y;
+        }
+    }
+}
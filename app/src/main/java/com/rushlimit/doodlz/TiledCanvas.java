@@ -0,0 +1,315 @@
+package com.rushlimit.doodlz;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.zip.DataFormatException;
+
+/**
+ * A drawing surface much larger than the screen, split into fixed-size
+ * tiles. A tile gets a Bitmap the first time something is drawn on it;
+ * untouched tiles are plain white and cost nothing. Only the most
+ * recently used tiles stay in memory; the rest are deflated and spilled
+ * to a TileDiskCache until the user pans back to them.
+ */
+public class TiledCanvas implements TileCache.EvictionListener<Bitmap> {
+    private static final String TAG = "TiledCanvas";
+
+    public static final int TILE_SIZE = 256;
+
+    private static final byte TILE_BLANK = 0; // Never drawn on; white
+    private static final byte TILE_RESIDENT = 1; // In tileCache
+    private static final byte TILE_SPILLED = 2; // In diskCache only
+
+    // Evicted Bitmaps kept for the next tile instead of allocating again
+    private static final int POOL_SIZE = 4;
+
+    private final int width;
+    private final int height;
+    private final int tilesAcross;
+    private final int tilesDown;
+    private final byte[] tileStates;
+    private final boolean[] tileChanged; // Differs from its spilled copy
+    private int allocatedTiles;
+
+    private TileCache<Bitmap> tileCache;
+    private final TileDiskCache diskCache;
+    private final ArrayDeque<Bitmap> bitmapPool = new ArrayDeque<>();
+    private final TileCodec codec = new TileCodec(TILE_SIZE * TILE_SIZE);
+    private final int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+    private final Canvas tileCanvas = new Canvas();
+    private int tilesSpilled;
+    private int tilesLoaded;
+
+    public TiledCanvas(int width, int height, int residentTiles, File spillDirectory) {
+        this.width = width;
+        this.height = height;
+        tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+        tileStates = new byte[tilesAcross * tilesDown];
+        tileChanged = new boolean[tilesAcross * tilesDown];
+        tileCache = new TileCache<>(residentTiles, this);
+        diskCache = new TileDiskCache(spillDirectory);
+    }
+
+    // Tiles needed to keep a view of this size, plus a ring of neighbors,
+    // resident at the smallest zoom
+    public static int residentTilesFor(int viewWidth, int viewHeight, float minScale) {
+        int across = (int) Math.ceil(viewWidth / minScale / TILE_SIZE) + 2;
+        int down = (int) Math.ceil(viewHeight / minScale / TILE_SIZE) + 2;
+        return across * down;
+    }
+
+    // Smallest zoom from minScale up, to at most maxScale, at which every
+    // tile a view of this size overlaps fits in residentTiles. Below it
+    // each frame would load tiles from disk that the same frame evicts.
+    public static float minScaleFor(int viewWidth, int viewHeight, int residentTiles,
+                                    float minScale, float maxScale) {
+        float scale = minScale;
+        while (scale < maxScale && visibleTilesFor(viewWidth, viewHeight, scale) > residentTiles) {
+            scale = Math.min(maxScale, scale * 1.05f);
+        }
+        return scale;
+    }
+
+    // Most tiles a view of this size can overlap at scale, however it is panned
+    private static int visibleTilesFor(int viewWidth, int viewHeight, float scale) {
+        int across = (int) Math.ceil(viewWidth / scale / TILE_SIZE) + 1;
+        int down = (int) Math.ceil(viewHeight / scale / TILE_SIZE) + 1;
+        return across * down;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Changes how many tiles stay in memory, spilling the least recently used
+    public void setResidentTiles(int residentTiles) {
+        if (residentTiles == tileCache.getCapacity()) {
+            return;
+        }
+        tileCache.evictAll();
+        tileCache = new TileCache<>(residentTiles, this);
+    }
+
+    // Draws path on every tile its bounds overlap
+    public void drawPath(Path path, Paint paint, RectF bounds) {
+        draw(path, null, paint, bounds.left, bounds.top, bounds.right, bounds.bottom);
+    }
+
+    // Draws a variable-width stroke mesh on every tile it overlaps
+    public void drawMesh(StrokeMesh mesh, Paint paint) {
+        if (!mesh.isEmpty()) {
+            draw(null, mesh, paint, mesh.getLeft(), mesh.getTop(), mesh.getRight(), mesh.getBottom());
+        }
+    }
+
+    private void draw(Path path, StrokeMesh mesh, Paint paint, float left, float top, float right, float bottom) {
+        int firstX = Math.max(0, (int) Math.floor(left) / TILE_SIZE);
+        int firstY = Math.max(0, (int) Math.floor(top) / TILE_SIZE);
+        int lastX = Math.min(tilesAcross - 1, (int) Math.ceil(right) / TILE_SIZE);
+        int lastY = Math.min(tilesDown - 1, (int) Math.ceil(bottom) / TILE_SIZE);
+
+        for (int tileY = firstY; tileY <= lastY; tileY++) {
+            for (int tileX = firstX; tileX <= lastX; tileX++) {
+                Bitmap tile = getTile(tileX, tileY, true);
+                tileCanvas.setBitmap(tile);
+                int saveCount = tileCanvas.save();
+                tileCanvas.translate(-tileX * TILE_SIZE, -tileY * TILE_SIZE);
+                if (path != null) {
+                    tileCanvas.drawPath(path, paint);
+                } else {
+                    StrokeLogRenderer.drawMesh(tileCanvas, mesh, paint);
+                }
+                tileCanvas.restoreToCount(saveCount);
+                tileChanged[tileY * tilesAcross + tileX] = true;
+            }
+        }
+    }
+
+    // Copies a bitmap into the top left corner, skipping all-white tiles
+    public void drawBitmap(Bitmap source) {
+        int across = Math.min(tilesAcross, (source.getWidth() + TILE_SIZE - 1) / TILE_SIZE);
+        int down = Math.min(tilesDown, (source.getHeight() + TILE_SIZE - 1) / TILE_SIZE);
+
+        for (int tileY = 0; tileY < down; tileY++) {
+            for (int tileX = 0; tileX < across; tileX++) {
+                int x = tileX * TILE_SIZE;
+                int y = tileY * TILE_SIZE;
+                int tileWidth = Math.min(TILE_SIZE, source.getWidth() - x);
+                int tileHeight = Math.min(TILE_SIZE, source.getHeight() - y);
+                source.getPixels(pixels, 0, tileWidth, x, y, tileWidth, tileHeight);
+                if (isBlank(pixels, tileWidth * tileHeight)) {
+                    continue;
+                }
+
+                Bitmap tile = getTile(tileX, tileY, true);
+                tile.setPixels(pixels, 0, tileWidth, 0, 0, tileWidth, tileHeight);
+                tileChanged[tileY * tilesAcross + tileX] = true;
+            }
+        }
+    }
+
+    // Draws the tiles overlapping visible, in canvas coordinates; the
+    // Canvas must already be transformed to those coordinates
+    public void draw(Canvas canvas, RectF visible, Paint paint) {
+        int firstX = Math.max(0, (int) Math.floor(visible.left) / TILE_SIZE);
+        int firstY = Math.max(0, (int) Math.floor(visible.top) / TILE_SIZE);
+        int lastX = Math.min(tilesAcross - 1, (int) Math.ceil(visible.right) / TILE_SIZE);
+        int lastY = Math.min(tilesDown - 1, (int) Math.ceil(visible.bottom) / TILE_SIZE);
+
+        for (int tileY = firstY; tileY <= lastY; tileY++) {
+            for (int tileX = firstX; tileX <= lastX; tileX++) {
+                Bitmap tile = getTile(tileX, tileY, false);
+                if (tile != null) {
+                    canvas.drawBitmap(tile, tileX * TILE_SIZE, tileY * TILE_SIZE, paint);
+                }
+            }
+        }
+    }
+
+    // Makes every tile blank again and drops everything spilled
+    public void clear() {
+        for (int i = 0; i < tileStates.length; i++) {
+            tileStates[i] = TILE_BLANK;
+            tileChanged[i] = false;
+        }
+        tileCache.evictAll(); // Blank tiles go straight back to the pool
+        diskCache.clear();
+        allocatedTiles = 0;
+    }
+
+    // Frees every tile and the spilled files; the canvas is unusable after
+    public void release() {
+        clear();
+        for (Bitmap bitmap : bitmapPool) {
+            bitmap.recycle();
+        }
+        bitmapPool.clear();
+        codec.end();
+    }
+
+    // Tiles that have ever been drawn on
+    public int getAllocatedTiles() {
+        return allocatedTiles;
+    }
+
+    public int getResidentTileCount() {
+        return tileCache.size();
+    }
+
+    public long getSpilledBytes() {
+        return diskCache.getByteSize();
+    }
+
+    public int getTilesSpilled() {
+        return tilesSpilled;
+    }
+
+    public int getTilesLoaded() {
+        return tilesLoaded;
+    }
+
+    // Returns the tile's Bitmap, loading or allocating it as needed; null
+    // for a blank tile when create is false
+    private Bitmap getTile(int tileX, int tileY, boolean create) {
+        int index = tileY * tilesAcross + tileX;
+        int key = tileY << 16 | tileX;
+
+        switch (tileStates[index]) {
+            case TILE_RESIDENT:
+                return tileCache.get(key);
+            case TILE_SPILLED:
+                Bitmap loaded = obtainBitmap();
+                if (!loadTile(key, loaded)) {
+                    loaded.eraseColor(Color.WHITE);
+                }
+                tileStates[index] = TILE_RESIDENT;
+                tileChanged[index] = false;
+                tileCache.put(key, loaded);
+                return loaded;
+            default:
+                if (!create) {
+                    return null;
+                }
+                Bitmap created = obtainBitmap();
+                created.eraseColor(Color.WHITE);
+                tileStates[index] = TILE_RESIDENT;
+                tileChanged[index] = true;
+                allocatedTiles++;
+                tileCache.put(key, created);
+                return created;
+        }
+    }
+
+    private boolean loadTile(int key, Bitmap target) {
+        try {
+            byte[] data = diskCache.read(key);
+            if (data != null && codec.decompress(data, 0, data.length, pixels, TILE_SIZE * TILE_SIZE)) {
+                target.setPixels(pixels, 0, TILE_SIZE, 0, 0, TILE_SIZE, TILE_SIZE);
+                tilesLoaded++;
+                return true;
+            }
+        } catch (IOException | DataFormatException e) {
+            Log.e(TAG, "Reading spilled tile failed", e);
+        }
+        return false;
+    }
+
+    @Override
+    public void onTileEvicted(int key, Bitmap tile) {
+        int index = (key >>> 16) * tilesAcross + (key & 0xffff);
+
+        if (tileStates[index] == TILE_RESIDENT) {
+            tileStates[index] = TILE_SPILLED;
+
+            // A tile that was loaded and not drawn on is already on disk
+            if (tileChanged[index]) {
+                tile.getPixels(pixels, 0, TILE_SIZE, 0, 0, TILE_SIZE, TILE_SIZE);
+                try {
+                    diskCache.write(key, codec.compress(pixels, TILE_SIZE * TILE_SIZE));
+                    tilesSpilled++;
+                } catch (IOException e) {
+                    // A stale copy would be worse than an honest blank tile
+                    Log.e(TAG, "Spilling tile failed; its contents are lost", e);
+                    diskCache.delete(key);
+                    tileStates[index] = TILE_BLANK;
+                    allocatedTiles--;
+                }
+                tileChanged[index] = false;
+            }
+        }
+
+        if (bitmapPool.size() < POOL_SIZE) {
+            bitmapPool.push(tile);
+        } else {
+            tile.recycle();
+        }
+    }
+
+    private Bitmap obtainBitmap() {
+        Bitmap bitmap = bitmapPool.poll();
+        return bitmap != null ? bitmap : Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    private static boolean isBlank(int[] pixels, int length) {
+        for (int i = 0; i < length; i++) {
+            if (pixels[i] != Color.WHITE) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
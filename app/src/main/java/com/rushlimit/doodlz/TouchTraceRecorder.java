@@ -0,0 +1,106 @@
+package com.rushlimit.doodlz;
+
+import android.view.InputDevice;
+import android.view.MotionEvent;
+
+/**
+ * Copies MotionEvents, with all pointers and batched history, into a
+ * TouchTrace, and turns trace events back into MotionEvents so a trace
+ * can be replayed through a view on the device.
+ */
+public class TouchTraceRecorder {
+    private final TouchTrace trace = new TouchTrace();
+
+    // Reused per event
+    private int[] ids = new int[4];
+    private long[] times = new long[8];
+    private float[] coords = new float[64];
+    private float[] pressures = new float[32];
+    private MotionEvent.PointerProperties[] properties = new MotionEvent.PointerProperties[0];
+    private MotionEvent.PointerCoords[] pointerCoords = new MotionEvent.PointerCoords[0];
+
+    public void record(MotionEvent event) {
+        int pointerCount = event.getPointerCount();
+        int historySize = event.getHistorySize();
+        int sampleCount = historySize + 1;
+        if (ids.length < pointerCount) {
+            ids = new int[pointerCount];
+        }
+        if (times.length < sampleCount) {
+            times = new long[sampleCount];
+        }
+        if (coords.length < sampleCount * pointerCount * 2) {
+            coords = new float[sampleCount * pointerCount * 2];
+            pressures = new float[sampleCount * pointerCount];
+        }
+
+        for (int p = 0; p < pointerCount; p++) {
+            ids[p] = event.getPointerId(p);
+        }
+        int i = 0;
+        for (int h = 0; h < historySize; h++) {
+            times[h] = event.getHistoricalEventTime(h);
+            for (int p = 0; p < pointerCount; p++) {
+                pressures[i / 2] = event.getHistoricalPressure(p, h);
+                coords[i++] = event.getHistoricalX(p, h);
+                coords[i++] = event.getHistoricalY(p, h);
+            }
+        }
+        times[historySize] = event.getEventTime();
+        for (int p = 0; p < pointerCount; p++) {
+            pressures[i / 2] = event.getPressure(p);
+            coords[i++] = event.getX(p);
+            coords[i++] = event.getY(p);
+        }
+
+        int action = event.getActionMasked();
+        int actionIndex = action == MotionEvent.ACTION_POINTER_DOWN || action == MotionEvent.ACTION_POINTER_UP
+                ? event.getActionIndex() : 0;
+        trace.appendEvent(action, actionIndex, pointerCount, ids, sampleCount, times, coords, pressures);
+    }
+
+    public TouchTrace getTrace() {
+        return trace;
+    }
+
+    // Builds the trace's event as a MotionEvent with its timestamps moved
+    // by timeOffset; the caller recycles it
+    public MotionEvent obtainEvent(TouchTrace trace, int event, long downTime, long timeOffset) {
+        int pointerCount = trace.getPointerCount(event);
+        if (properties.length < pointerCount) {
+            properties = new MotionEvent.PointerProperties[pointerCount];
+            pointerCoords = new MotionEvent.PointerCoords[pointerCount];
+            for (int p = 0; p < pointerCount; p++) {
+                properties[p] = new MotionEvent.PointerProperties();
+                pointerCoords[p] = new MotionEvent.PointerCoords();
+            }
+        }
+        for (int p = 0; p < pointerCount; p++) {
+            properties[p].clear();
+            properties[p].id = trace.getPointerId(event, p);
+            properties[p].toolType = MotionEvent.TOOL_TYPE_FINGER;
+        }
+
+        int action = trace.getAction(event) | trace.getActionIndex(event) << MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+        setCoords(trace, event, 0, pointerCount);
+        MotionEvent motionEvent = MotionEvent.obtain(downTime, trace.getSampleTime(event, 0) + timeOffset, action,
+                pointerCount, properties, pointerCoords, 0, 0, 1, 1, 0, 0, InputDevice.SOURCE_TOUCHSCREEN, 0);
+
+        // Later samples become history, the last one the current position
+        for (int s = 1; s < trace.getSampleCount(event); s++) {
+            setCoords(trace, event, s, pointerCount);
+            motionEvent.addBatch(trace.getSampleTime(event, s) + timeOffset, pointerCoords, 0);
+        }
+        return motionEvent;
+    }
+
+    private void setCoords(TouchTrace trace, int event, int sample, int pointerCount) {
+        for (int p = 0; p < pointerCount; p++) {
+            pointerCoords[p].clear();
+            pointerCoords[p].x = trace.getX(event, sample, p);
+            pointerCoords[p].y = trace.getY(event, sample, p);
+            pointerCoords[p].pressure = trace.getPressure(event, sample, p);
+            pointerCoords[p].size = 1;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What starting a stroke costs in brush lookups when two fingers with
+ * different brushes take turns, so the last-used shortcut misses every
+ * time and intern falls back to scanning the table.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BrushTableBenchmark {
+    private BrushTable<Object> table;
+    private boolean second;
+
+    @Setup(Level.Trial)
+    public void createTable() {
+        table = new BrushTable<>(new BrushTable.Factory<Object>() {
+            @Override
+            public Object create(int color, float width, int cap, int style) {
+                return new Object();
+            }
+        });
+        for (int i = 0; i < 16; i++) {
+            table.intern(0xff000000 | i, 5, 1, 1); // Other brushes used earlier
+        }
+    }
+
+    @Benchmark
+    public int internAlternatingFingers() {
+        second = !second;
+        int brush = second ? table.intern(0xff00ff00, 8, 1, 1) : table.intern(0x80ff0000, 20, 1, 1);
+        table.release(brush); // The stroke ends
+        return brush;
+    }
+}
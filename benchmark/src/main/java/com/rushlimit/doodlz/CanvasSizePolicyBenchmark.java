@@ -0,0 +1,71 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a rotation costs the drawing surface: a fresh ARGB buffer on
+ * every size change, as DoodleView used to allocate, against the
+ * grow-only surface CanvasSizePolicy keeps. Run with the gc profiler to
+ * see the bytes each rotation allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CanvasSizePolicyBenchmark {
+    // Portrait and landscape sizes of a 1080x1920 screen below the app bar
+    private static final int[][] SIZES = {{1080, 1776}, {1920, 936}};
+
+    private int rotation;
+    private int[] pixels;
+    private int width;
+    private int height;
+
+    @Setup(Level.Trial)
+    public void createSurface() {
+        width = SIZES[0][0];
+        height = SIZES[0][1];
+        pixels = new int[width * height];
+    }
+
+    @Benchmark
+    public int[] rotateNaive() {
+        int[] size = SIZES[++rotation % 2];
+        int[] fresh = new int[size[0] * size[1]];
+        fresh[0] = rotation;
+        return fresh;
+    }
+
+    @Benchmark
+    public int[] rotateGrowOnly() {
+        int[] size = SIZES[++rotation % 2];
+        if (CanvasSizePolicy.fits(width, height, size[0], size[1])) {
+            return pixels;
+        }
+
+        int newWidth = CanvasSizePolicy.grownWidth(width, size[0]);
+        int newHeight = CanvasSizePolicy.grownHeight(height, size[1]);
+        int[] grown = new int[newWidth * newHeight];
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(pixels, row * width, grown, row * newWidth, width);
+        }
+        pixels = grown;
+        width = newWidth;
+        height = newHeight;
+        return pixels;
+    }
+}
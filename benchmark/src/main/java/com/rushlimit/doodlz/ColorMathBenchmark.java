@@ -0,0 +1,65 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the color picker costs per touch, next to what computing its
+ * saturation/value square pixel by pixel would cost on every hue
+ * change, which is why the picker draws it from a cached overlay.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ColorMathBenchmark {
+    private static final int SQUARE_SIZE = 256;
+
+    private final int[] pixels = new int[SQUARE_SIZE * SQUARE_SIZE];
+    private final float[] hsv = new float[3];
+    private float angle;
+
+    // A drag around the hue ring: position to hue to color
+    @Benchmark
+    public int pickHue() {
+        angle += 0.01f;
+        float hue = ColorMath.hueAt((float) Math.cos(angle) * 100, (float) Math.sin(angle) * 100);
+        return ColorMath.hsvToColor(255, hue, 1, 1);
+    }
+
+    // A drag across the square, plus the HSV of the resulting color
+    @Benchmark
+    public float[] pickSaturationValue() {
+        angle += 0.01f;
+        float x = (angle * 37) % SQUARE_SIZE;
+        float y = (angle * 53) % SQUARE_SIZE;
+        int color = ColorMath.hsvToColor(255, 200,
+                ColorMath.saturationAt(x, SQUARE_SIZE), ColorMath.valueAt(y, SQUARE_SIZE));
+        ColorMath.colorToHsv(color, hsv);
+        return hsv;
+    }
+
+    @Benchmark
+    public int[] renderSquare() {
+        angle += 1;
+        for (int y = 0; y < SQUARE_SIZE; y++) {
+            float value = ColorMath.valueAt(y, SQUARE_SIZE - 1);
+            for (int x = 0; x < SQUARE_SIZE; x++) {
+                pixels[y * SQUARE_SIZE + x] =
+                        ColorMath.hsvToColor(255, angle, ColorMath.saturationAt(x, SQUARE_SIZE - 1), value);
+            }
+        }
+        return pixels;
+    }
+}
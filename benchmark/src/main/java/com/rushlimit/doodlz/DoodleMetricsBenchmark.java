@@ -0,0 +1,39 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What DoodleMetrics adds to each touch event and frame it records.
+ * The gc profiler should report no allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoodleMetricsBenchmark {
+    private static final long MILLIS = 1000000;
+
+    private final DoodleMetrics metrics = new DoodleMetrics(1024);
+    private long frame;
+
+    // One touch event with three samples, then the frame it lands in
+    @Benchmark
+    public long recordEventAndFrame() {
+        long i = ++frame;
+        metrics.recordTouchEvent(i * 4 * MILLIS, 3);
+        metrics.recordFrame(i % 5000 * 1000, i % 20 * MILLIS, 2, (int) (i % 300));
+        return metrics.getTotalEvents();
+    }
+}
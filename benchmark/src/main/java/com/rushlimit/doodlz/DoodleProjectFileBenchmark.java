@@ -0,0 +1,94 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and reopening a 4096x4096 doodle with strokes scattered over
+ * it, viewed on a 1080x1920 screen: opening decodes only the tiles the
+ * screen shows, next to decoding every tile as a full load would.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoodleProjectFileBenchmark {
+    private static final int SIZE = 4096;
+
+    private PixelSurface raster;
+    private PixelSurface view;
+    private StrokeLog log;
+    private File file;
+    private File scratch; // Written by the save benchmark, so reads keep a stable file
+
+    @Setup(Level.Trial)
+    public void createProject() throws IOException {
+        raster = new PixelSurface(SIZE, SIZE);
+        for (int stripe = 0; stripe < SIZE; stripe += 64) {
+            raster.fill(0, stripe, SIZE, stripe + 8, 0xff000000 | stripe * 997);
+        }
+        log = new StrokeLog();
+        float[] points = new float[200];
+        for (int stroke = 0; stroke < 1000; stroke++) {
+            log.appendStroke(0xff000000, 5, 1, points, 0, 100);
+        }
+        view = new PixelSurface(SIZE, SIZE);
+
+        file = File.createTempFile("doodle", ".ddlz");
+        scratch = File.createTempFile("doodle", ".ddlz");
+        DoodleProjectFile.write(file, log, raster);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteProject() {
+        file.delete();
+        scratch.delete();
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        DoodleProjectFile.write(scratch, log, raster);
+        return scratch.length();
+    }
+
+    // What opening the project costs before the first frame
+    @Benchmark
+    public int openVisibleRegion() throws IOException {
+        DoodleProjectFile project = DoodleProjectFile.open(file);
+        try {
+            StrokeLog loaded = project.readStrokeLog();
+            project.readRegion(0, 0, 1080, 1920, view);
+            return loaded.size() + project.getTilesDecoded();
+        } finally {
+            project.close();
+        }
+    }
+
+    @Benchmark
+    public int openFullRaster() throws IOException {
+        DoodleProjectFile project = DoodleProjectFile.open(file);
+        try {
+            StrokeLog loaded = project.readStrokeLog();
+            project.readRegion(0, 0, SIZE, SIZE, view);
+            return loaded.size() + project.getTilesDecoded();
+        } finally {
+            project.close();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bucket fill of a 4K canvas scribbled with rings, so the fill has to
+ * flow around holes. Each invocation restores the canvas first; the copy
+ * is a small part of the time next to the fill itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FloodFillBenchmark {
+    private static final int WIDTH = 3840;
+    private static final int HEIGHT = 2160;
+    private static final int WHITE = 0xffffffff;
+    private static final int BLACK = 0xff000000;
+    private static final int RED = 0xffff0000;
+
+    private final FloodFill fill = new FloodFill();
+    private final int[] pixels = new int[WIDTH * HEIGHT];
+    private int[] background;
+
+    @Setup(Level.Trial)
+    public void scribble() {
+        background = new int[WIDTH * HEIGHT];
+        Arrays.fill(background, WHITE);
+        for (int i = 1; i <= 400; i++) {
+            int cx = (i * 7919) % WIDTH;
+            int cy = (i * 104729) % HEIGHT;
+            for (int y = Math.max(0, cy - 30); y < Math.min(HEIGHT, cy + 30); y++) {
+                for (int x = Math.max(0, cx - 30); x < Math.min(WIDTH, cx + 30); x++) {
+                    int dx = x - cx;
+                    int dy = y - cy;
+                    int d = dx * dx + dy * dy;
+                    if (d > 24 * 24 && d < 30 * 30) {
+                        background[y * WIDTH + x] = BLACK;
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public int fill4k() {
+        System.arraycopy(background, 0, pixels, 0, pixels.length);
+        return fill.fill(pixels, WIDTH, HEIGHT, 0, 0, RED, 0);
+    }
+}
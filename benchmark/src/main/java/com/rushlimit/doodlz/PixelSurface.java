@@ -0,0 +1,50 @@
+package com.rushlimit.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * A TileHistory.Surface over a plain ARGB array, standing in for the
+ * Bitmap DoodleView draws on.
+ */
+public class PixelSurface implements TileHistory.Surface {
+    public final int width;
+    public final int height;
+    public final int[] pixels;
+
+    public PixelSurface(int width, int height) {
+        this.width = width;
+        this.height = height;
+        pixels = new int[width * height];
+        Arrays.fill(pixels, 0xffffffff);
+    }
+
+    public void fill(int left, int top, int right, int bottom, int color) {
+        for (int y = top; y < bottom; y++) {
+            Arrays.fill(pixels, y * width + left, y * width + right, color);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void readPixels(int[] dst, int x, int y, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(pixels, (y + row) * width + x, dst, row * w, w);
+        }
+    }
+
+    @Override
+    public void writePixels(int[] src, int x, int y, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(src, row * w, pixels, (y + row) * width + x, w);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ten fingers moving at once, one finger lifting and touching down again
+ * every hundred events, through the slot table DoodleView's move handler
+ * uses. Reported per pointer update; the gc profiler should show none.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PointerSlotTableBenchmark {
+    private static final int FINGERS = 10;
+    private static final int EVENTS = 1000;
+
+    private final PointerSlotTable slots = new PointerSlotTable();
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS * FINGERS)
+    public float moveFingers() {
+        float checksum = 0;
+        for (int id = 0; id < FINGERS; id++) {
+            slots.start(id, id * 50, id * 50);
+        }
+
+        for (int event = 0; event < EVENTS; event++) {
+            if (event % 100 == 99) {
+                int id = (event / 100) % FINGERS;
+                slots.end(id);
+                slots.start(id, id * 50, id * 50);
+            }
+
+            for (int i = 0; i < slots.getActiveCount(); i++) {
+                int id = slots.getActiveId(i);
+                float x = id * 50 + (event % 360);
+                float y = id * 50 + ((event * 7) % 360);
+                float lastX = slots.getLastX(id);
+                float lastY = slots.getLastY(id);
+                slots.setEnd(id, (x + lastX) / 2, (y + lastY) / 2);
+                slots.setLast(id, x, y);
+                checksum += slots.getEndX(id);
+            }
+        }
+
+        slots.clear();
+        return checksum;
+    }
+}
@@ -0,0 +1,102 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point throughput of variable-width outlines: the quads a synthetic
+ * gesture yields, with varying widths, turned into one batch of
+ * triangle strips. Scores are points per microsecond; the gc profiler
+ * shows the batch allocates nothing once its arrays have grown.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokeOutlineBenchmark {
+    private static final int EVENTS = 240;
+    private static final int SAMPLES_PER_EVENT = 4;
+    private static final int POINTS = EVENTS * SAMPLES_PER_EVENT; // Per finger
+    private static final int FINGERS = 10;
+
+    @Param({"4", "40"})
+    public float width;
+
+    private float[][] xs; // [finger][point]
+    private float[][] ys;
+    private float[][] widths;
+    private StrokeOutline[] outlines;
+    private final StrokeMesh mesh = new StrokeMesh();
+
+    @Setup(Level.Trial)
+    public void createPoints() {
+        SyntheticTrace trace = new SyntheticTrace(FINGERS, EVENTS, SAMPLES_PER_EVENT, 42);
+        xs = new float[FINGERS][POINTS];
+        ys = new float[FINGERS][POINTS];
+        widths = new float[FINGERS][POINTS];
+        outlines = new StrokeOutline[FINGERS];
+        for (int finger = 0; finger < FINGERS; finger++) {
+            for (int point = 0; point < POINTS; point++) {
+                int event = point / SAMPLES_PER_EVENT;
+                xs[finger][point] = trace.xs[event * FINGERS + finger][point % SAMPLES_PER_EVENT];
+                ys[finger][point] = trace.ys[event * FINGERS + finger][point % SAMPLES_PER_EVENT];
+                widths[finger][point] = width * (0.6f + 0.4f * (float) Math.sin(point * 0.05));
+            }
+            outlines[finger] = new StrokeOutline();
+        }
+    }
+
+    // One finger's whole stroke
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public int outlineStroke() {
+        return outline(1);
+    }
+
+    // Ten strokes interleaved event by event into one batch, as DoodleView draws them
+    @Benchmark
+    @OperationsPerInvocation(POINTS * FINGERS)
+    public int outlineGesture() {
+        return outline(FINGERS);
+    }
+
+    private int outline(int fingers) {
+        mesh.reset();
+        for (int finger = 0; finger < fingers; finger++) {
+            outlines[finger].start(xs[finger][0], ys[finger][0], widths[finger][0], 0xff000000);
+        }
+
+        for (int event = 0; event < EVENTS; event++) {
+            for (int finger = 0; finger < fingers; finger++) {
+                float[] x = xs[finger];
+                float[] y = ys[finger];
+                for (int point = Math.max(1, event * SAMPLES_PER_EVENT); point < (event + 1) * SAMPLES_PER_EVENT;
+                     point++) {
+                    // The quads StrokeBuilder builds: control at a point, end halfway to the next
+                    outlines[finger].quadTo(x[point - 1], y[point - 1], (x[point] + x[point - 1]) / 2,
+                            (y[point] + y[point - 1]) / 2, widths[finger][point], mesh);
+                }
+            }
+        }
+
+        for (int finger = 0; finger < fingers; finger++) {
+            outlines[finger].finish(mesh);
+        }
+        return mesh.getVertexCount();
+    }
+}
@@ -0,0 +1,111 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays synthetic multi-finger gestures through the StrokePipeline
+ * DoodleView uses, as DoodleView's touch handlers would, minus drawing.
+ * Throughput mode reports gestures or events per second, sample mode the
+ * latency percentiles, and the gc profiler the allocation rate.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrokePipelineBenchmark {
+    private static final float TOUCH_TOLERANCE = 10;
+    private static final int EVENTS = 240; // Two seconds at 120 Hz
+
+    @Param({"1", "5", "10"})
+    public int fingers;
+
+    @Param({"1", "4"})
+    public int samplesPerEvent;
+
+    @Param({"tolerance", "adaptive"})
+    public String simplifier;
+
+    private SyntheticTrace trace;
+    private StrokePipeline pipeline;
+    private StrokeLog log;
+    private int nextEvent; // For moveEvent, which plays the trace one event at a time
+
+    @Setup(Level.Trial)
+    public void createTrace() {
+        trace = new SyntheticTrace(fingers, EVENTS, samplesPerEvent, 42);
+        pipeline = simplifier.equals("adaptive")
+                ? new QuadStrokePipeline(new AdaptiveSimplifier()) : new QuadStrokePipeline(TOUCH_TOLERANCE);
+        log = new StrokeLog();
+    }
+
+    // One gesture from every finger down to every finger up
+    @Benchmark
+    public int replayGesture() {
+        log.setSize(0); // Reuses the log's arrays across gestures
+        startStrokes();
+
+        int segments = 0;
+        for (int event = 0; event < EVENTS; event++) {
+            segments += moveFingers(event);
+        }
+
+        endStrokes();
+        return segments;
+    }
+
+    // One ACTION_MOVE carrying every finger's samples
+    @Benchmark
+    public int moveEvent() {
+        if (nextEvent == 0) {
+            log.setSize(0);
+            startStrokes();
+        }
+
+        int segments = moveFingers(nextEvent);
+
+        nextEvent++;
+        if (nextEvent == EVENTS) {
+            endStrokes();
+            nextEvent = 0;
+        }
+        return segments;
+    }
+
+    private void startStrokes() {
+        for (int finger = 0; finger < fingers; finger++) {
+            pipeline.start(finger, trace.getStartX(finger), trace.getStartY(finger));
+        }
+    }
+
+    private int moveFingers(int event) {
+        int segments = 0;
+        for (int finger = 0; finger < fingers; finger++) {
+            int index = event * fingers + finger;
+            segments += pipeline.addSamples(finger, trace.xs[index], trace.ys[index], samplesPerEvent);
+        }
+        return segments;
+    }
+
+    private void endStrokes() {
+        for (int finger = 0; finger < fingers; finger++) {
+            pipeline.finish(finger);
+            log.appendStroke(0xff000000, 5, 1, pipeline.getPoints(finger), 0, pipeline.getPointCount(finger));
+            pipeline.end(finger);
+        }
+    }
+}
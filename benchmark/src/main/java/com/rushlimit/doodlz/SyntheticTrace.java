@@ -0,0 +1,93 @@
+package com.rushlimit.doodlz;
+
+import java.util.Random;
+
+/**
+ * A reproducible multi-pointer gesture: every finger draws a wobbly loop
+ * at 120 events per second, each event batching a few samples the way
+ * MotionEvent history does.
+ */
+public class SyntheticTrace {
+    public final int fingers;
+    public final int events;
+    public final int samplesPerEvent;
+
+    // [event * fingers + finger] holds that finger's samples for the event
+    public final float[][] xs;
+    public final float[][] ys;
+
+    public SyntheticTrace(int fingers, int events, int samplesPerEvent, long seed) {
+        this.fingers = fingers;
+        this.events = events;
+        this.samplesPerEvent = samplesPerEvent;
+        xs = new float[events * fingers][samplesPerEvent];
+        ys = new float[events * fingers][samplesPerEvent];
+
+        Random random = new Random(seed);
+        int samples = events * samplesPerEvent;
+        for (int finger = 0; finger < fingers; finger++) {
+            float centerX = 200 + finger * 150;
+            float centerY = 400 + finger * 90;
+            float radius = 80 + random.nextInt(200);
+
+            for (int sample = 0; sample < samples; sample++) {
+                double angle = 2 * Math.PI * sample / samples;
+                float wobble = (float) Math.sin(angle * 7) * 12;
+                float[] x = xs[(sample / samplesPerEvent) * fingers + finger];
+                float[] y = ys[(sample / samplesPerEvent) * fingers + finger];
+                x[sample % samplesPerEvent] = centerX + (float) Math.cos(angle) * (radius + wobble)
+                        + random.nextFloat() - 0.5f;
+                y[sample % samplesPerEvent] = centerY + (float) Math.sin(angle) * (radius + wobble)
+                        + random.nextFloat() - 0.5f;
+            }
+        }
+    }
+
+    // The same gesture as touch events 8 ms apart: fingers go down one by
+    // one, move together, and lift in reverse order
+    public TouchTrace toTouchTrace() {
+        TouchTrace trace = new TouchTrace();
+        int[] ids = new int[fingers];
+        long[] times = new long[samplesPerEvent];
+        float[] coords = new float[samplesPerEvent * fingers * 2];
+        long time = 0;
+
+        for (int finger = 0; finger < fingers; finger++) {
+            ids[finger] = finger;
+            coords[finger * 2] = getStartX(finger);
+            coords[finger * 2 + 1] = getStartY(finger);
+            times[0] = time;
+            trace.appendEvent(finger == 0 ? TouchTrace.ACTION_DOWN : TouchTrace.ACTION_POINTER_DOWN,
+                    finger, finger + 1, ids, 1, times, coords);
+        }
+
+        for (int event = 0; event < events; event++) {
+            for (int sample = 0; sample < samplesPerEvent; sample++) {
+                times[sample] = time + 8 * (sample + 1) / samplesPerEvent;
+                for (int finger = 0; finger < fingers; finger++) {
+                    coords[(sample * fingers + finger) * 2] = xs[event * fingers + finger][sample];
+                    coords[(sample * fingers + finger) * 2 + 1] = ys[event * fingers + finger][sample];
+                }
+            }
+            time += 8;
+            trace.appendEvent(TouchTrace.ACTION_MOVE, 0, fingers, ids, samplesPerEvent, times, coords);
+        }
+
+        // Fingers lift where the last sample left them
+        System.arraycopy(coords, (samplesPerEvent - 1) * fingers * 2, coords, 0, fingers * 2);
+        times[0] = time + 8;
+        for (int pointers = fingers; pointers > 0; pointers--) {
+            trace.appendEvent(pointers == 1 ? TouchTrace.ACTION_UP : TouchTrace.ACTION_POINTER_UP,
+                    pointers - 1, pointers, ids, 1, times, coords);
+        }
+        return trace;
+    }
+
+    public float getStartX(int finger) {
+        return xs[finger][0];
+    }
+
+    public float getStartY(int finger) {
+        return ys[finger][0];
+    }
+}
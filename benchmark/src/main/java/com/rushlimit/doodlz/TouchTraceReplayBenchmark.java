@@ -0,0 +1,63 @@
+package com.rushlimit.doodlz;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a touch trace at maximum speed through the StrokePipeline
+ * DoodleView draws with.
+ * Pass a trace recorded on a device with -p trace=/path/to/touches.dtrc;
+ * by default a ten finger synthetic gesture is used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TouchTraceReplayBenchmark {
+    @Param({""})
+    public String trace;
+
+    private TouchTrace touchTrace;
+    private TouchTraceReplayer replayer;
+    private StrokeLog log;
+
+    @Setup(Level.Trial)
+    public void loadTrace() throws IOException {
+        if (trace.isEmpty()) {
+            touchTrace = new SyntheticTrace(10, 240, 4, 42).toTouchTrace();
+        } else {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(trace)));
+            try {
+                touchTrace = TouchTrace.readFrom(in);
+            } finally {
+                in.close();
+            }
+        }
+        replayer = new TouchTraceReplayer(new QuadStrokePipeline(new AdaptiveSimplifier()));
+        log = new StrokeLog();
+    }
+
+    @Benchmark
+    public int replayTrace() throws InterruptedException {
+        log.setSize(0);
+        return replayer.replay(touchTrace, log);
+    }
+}
@@ -0,0 +1,159 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Streaming simplification by distance from the chord. Samples since the
+ * last accepted point are held back while they all stay within the
+ * tolerance of the straight line from that point to the newest sample;
+ * once one strays further, or the stroke turns a corner, the sample
+ * before the newest is accepted. Every sample therefore lies within the
+ * tolerance of the polyline through the accepted points.
+ *
+ * The tolerance starts at a fraction of a dp or of the stroke width,
+ * whichever is larger, since wide strokes hide small deviations. It then
+ * scales with sample spacing, a proxy for speed at a fixed touch rate:
+ * slow, careful strokes keep their detail and fast ones shed points.
+ */
+public class AdaptiveSimplifier implements StrokeSimplifier {
+    private static final float BASE_TOLERANCE_DP = 0.75f;
+    private static final float WIDTH_TOLERANCE = 0.15f; // Of the stroke width
+    private static final float REFERENCE_SPACING_DP = 4; // Spacing at which the base tolerance applies
+    private static final float MIN_SPEED_SCALE = 0.5f;
+    private static final float MAX_SPEED_SCALE = 2;
+    private static final float CORNER_COS = 0.5f; // Turns sharper than 60 degrees are kept
+    private static final float SPACING_SMOOTHING = 0.3f;
+
+    // Samples held back per stroke; a full buffer forces an accept
+    static final int MAX_PENDING = 32;
+
+    private float density = 1;
+    private float lineWidth = 5;
+
+    private final float[] tolerances; // Base tolerance of each stroke, fixed at start
+    private final float[] spacings; // Smoothed distance between consecutive samples
+    private final float[][] pendingX; // Samples since the last accepted point
+    private final float[][] pendingY;
+    private final int[] pendingCounts;
+
+    public AdaptiveSimplifier() {
+        this(PointerSlotTable.DEFAULT_CAPACITY);
+    }
+
+    public AdaptiveSimplifier(int capacity) {
+        tolerances = new float[capacity];
+        spacings = new float[capacity];
+        pendingX = new float[capacity][MAX_PENDING];
+        pendingY = new float[capacity][MAX_PENDING];
+        pendingCounts = new int[capacity];
+    }
+
+    // Pixels per dp of the display strokes are drawn on
+    public void setDensity(float density) {
+        this.density = density;
+    }
+
+    // Width of strokes started from now on
+    public void setLineWidth(float lineWidth) {
+        this.lineWidth = lineWidth;
+    }
+
+    // Largest distance a sample of a stroke with this width may end up
+    // from the simplified polyline
+    public float getMaxError(float lineWidth) {
+        return baseTolerance(lineWidth) * MAX_SPEED_SCALE;
+    }
+
+    private float baseTolerance(float lineWidth) {
+        return Math.max(BASE_TOLERANCE_DP * density, WIDTH_TOLERANCE * lineWidth);
+    }
+
+    @Override
+    public void start(int id, float x, float y) {
+        tolerances[id] = baseTolerance(lineWidth);
+        spacings[id] = REFERENCE_SPACING_DP * density;
+        pendingCounts[id] = 0;
+    }
+
+    @Override
+    public boolean offer(int id, float lastX, float lastY, float x, float y, float[] accepted) {
+        float[] xs = pendingX[id];
+        float[] ys = pendingY[id];
+        int count = pendingCounts[id];
+
+        float previousX = count > 0 ? xs[count - 1] : lastX;
+        float previousY = count > 0 ? ys[count - 1] : lastY;
+        float spacing = (float) Math.hypot(x - previousX, y - previousY);
+        if (spacing == 0) {
+            return false; // A repeated sample adds nothing
+        }
+        spacings[id] += (spacing - spacings[id]) * SPACING_SMOOTHING;
+
+        if (count > 0 && (count == MAX_PENDING || isCorner(lastX, lastY, previousX, previousY, x, y, id)
+                || strays(xs, ys, count, lastX, lastY, x, y, tolerance(id)))) {
+            accepted[0] = previousX;
+            accepted[1] = previousY;
+            xs[0] = x;
+            ys[0] = y;
+            pendingCounts[id] = 1;
+            return true;
+        }
+
+        xs[count] = x;
+        ys[count] = y;
+        pendingCounts[id] = count + 1;
+        return false;
+    }
+
+    @Override
+    public boolean finish(int id, float lastX, float lastY, float[] accepted) {
+        int count = pendingCounts[id];
+        pendingCounts[id] = 0;
+        if (count == 0) {
+            return false;
+        }
+        accepted[0] = pendingX[id][count - 1];
+        accepted[1] = pendingY[id][count - 1];
+        return true;
+    }
+
+    private float tolerance(int id) {
+        float scale = spacings[id] / (REFERENCE_SPACING_DP * density);
+        return tolerances[id] * Math.max(MIN_SPEED_SCALE, Math.min(MAX_SPEED_SCALE, scale));
+    }
+
+    // True if the path bends sharply at (x1, y1), once it is far enough
+    // from the anchor for the direction to mean something
+    private boolean isCorner(float x0, float y0, float x1, float y1, float x2, float y2, int id) {
+        float ax = x1 - x0;
+        float ay = y1 - y0;
+        float bx = x2 - x1;
+        float by = y2 - y1;
+        float lengths = (float) Math.sqrt((ax * ax + ay * ay) * (bx * bx + by * by));
+        if (ax * ax + ay * ay < tolerances[id] * tolerances[id] || lengths == 0) {
+            return false;
+        }
+        return (ax * bx + ay * by) / lengths < CORNER_COS;
+    }
+
+    // True if any held back sample is further than tolerance from the
+    // segment (x0, y0)-(x1, y1)
+    private static boolean strays(float[] xs, float[] ys, int count,
+                                  float x0, float y0, float x1, float y1, float tolerance) {
+        for (int i = 0; i < count; i++) {
+            if (distanceToSegmentSquared(xs[i], ys[i], x0, y0, x1, y1) > tolerance * tolerance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static float distanceToSegmentSquared(float px, float py, float x0, float y0, float x1, float y1) {
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float lengthSquared = dx * dx + dy * dy;
+        float t = lengthSquared == 0 ? 0 : ((px - x0) * dx + (py - y0) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        float ex = x0 + t * dx - px;
+        float ey = y0 + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,161 @@
+package com.rushlimit.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Interns brushes by color, width, cap and style. Each distinct brush is
+ * created once by the Factory and then shared by every stroke that uses
+ * it, so starting a stroke looks up an id instead of allocating a Paint.
+ * Strokes hold a reference from intern until release. Brushes no stroke
+ * holds stay cached for reuse, but only the MAX_IDLE most recently
+ * released; older ones are dropped and their ids reused. Picking colors
+ * or widths continuously therefore never grows the table, which stays
+ * small enough to search in order.
+ */
+public class BrushTable<T> {
+    public interface Factory<T> {
+        // Returns a brush that must not be changed afterwards
+        T create(int color, float width, int cap, int style);
+    }
+
+    // Unreferenced brushes kept for strokes that repeat them
+    public static final int MAX_IDLE = 32;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final Factory<T> factory;
+    private int[] colors = new int[INITIAL_CAPACITY];
+    private float[] widths = new float[INITIAL_CAPACITY];
+    private int[] caps = new int[INITIAL_CAPACITY];
+    private int[] styles = new int[INITIAL_CAPACITY];
+    private Object[] brushes = new Object[INITIAL_CAPACITY]; // Null for a free id
+    private int[] references = new int[INITIAL_CAPACITY];
+    private long[] released = new long[INITIAL_CAPACITY]; // When references last dropped to 0
+    private int count; // Ids in use or free
+    private int size; // Brushes held
+    private int idle; // Brushes held with no references
+    private long releases;
+    private int lastId = -1; // Strokes usually repeat the previous brush
+
+    public BrushTable(Factory<T> factory) {
+        this.factory = factory;
+    }
+
+    // Returns the id of the matching brush, creating it on first use, and
+    // takes a reference to it that the caller must give back to release
+    public int intern(int color, float width, int cap, int style) {
+        int id = find(color, width, cap, style);
+        if (id < 0) {
+            id = create(color, width, cap, style);
+        }
+        if (references[id]++ == 0) {
+            idle--;
+        }
+        lastId = id;
+        return id;
+    }
+
+    // Drops a reference taken by intern; the id stays valid until then
+    public void release(int id) {
+        if (references[id] <= 0) {
+            throw new IllegalStateException("Brush " + id + " is not referenced");
+        }
+        if (--references[id] == 0) {
+            released[id] = ++releases;
+            if (++idle > MAX_IDLE) {
+                evictOldestIdle();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int id) {
+        return (T) brushes[id];
+    }
+
+    public int getColor(int id) {
+        return colors[id];
+    }
+
+    public float getWidth(int id) {
+        return widths[id];
+    }
+
+    public int getCap(int id) {
+        return caps[id];
+    }
+
+    public int getStyle(int id) {
+        return styles[id];
+    }
+
+    // Number of brushes held, referenced or idle
+    public int size() {
+        return size;
+    }
+
+    private int find(int color, float width, int cap, int style) {
+        if (lastId >= 0 && matches(lastId, color, width, cap, style)) {
+            return lastId;
+        }
+        for (int id = 0; id < count; id++) {
+            if (matches(id, color, width, cap, style)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // Creates an unreferenced brush in a free id, or a new one
+    private int create(int color, float width, int cap, int style) {
+        int id = 0;
+        while (id < count && brushes[id] != null) {
+            id++;
+        }
+        if (id == colors.length) {
+            int capacity = count * 2;
+            colors = Arrays.copyOf(colors, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            caps = Arrays.copyOf(caps, capacity);
+            styles = Arrays.copyOf(styles, capacity);
+            brushes = Arrays.copyOf(brushes, capacity);
+            references = Arrays.copyOf(references, capacity);
+            released = Arrays.copyOf(released, capacity);
+        }
+        if (id == count) {
+            count++;
+        }
+        colors[id] = color;
+        widths[id] = width;
+        caps[id] = cap;
+        styles[id] = style;
+        brushes[id] = factory.create(color, width, cap, style);
+        references[id] = 0;
+        size++;
+        idle++;
+        return id;
+    }
+
+    private void evictOldestIdle() {
+        int oldest = -1;
+        for (int id = 0; id < count; id++) {
+            if (brushes[id] != null && references[id] == 0
+                    && (oldest < 0 || released[id] < released[oldest])) {
+                oldest = id;
+            }
+        }
+        brushes[oldest] = null;
+        size--;
+        idle--;
+        if (lastId == oldest) {
+            lastId = -1;
+        }
+    }
+
+    private boolean matches(int id, int color, float width, int cap, int style) {
+        // Compare widths by bits so the key behaves like the Paint it makes
+        return brushes[id] != null && colors[id] == color
+                && Float.floatToIntBits(widths[id]) == Float.floatToIntBits(width)
+                && caps[id] == cap && styles[id] == style;
+    }
+}
@@ -0,0 +1,107 @@
+package com.rushlimit.doodlz;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache bounded by the total byte size of its
+ * values rather than their number, so a few large thumbnails cannot
+ * crowd out the heap. Keys are longs; thread-safe.
+ */
+public class ByteSizedLruCache<V> {
+    public interface Sizer<V> {
+        // Bytes value holds; must not change while it is cached
+        int sizeOf(V value);
+    }
+
+    private final LinkedHashMap<Long, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final Sizer<V> sizer;
+    private final long maxBytes;
+    private long byteSize;
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    public ByteSizedLruCache(long maxBytes, Sizer<V> sizer) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.sizer = sizer;
+    }
+
+    // Returns the value and marks it most recently used, or null
+    public synchronized V get(long key) {
+        V value = map.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+    // Adds or replaces a value, evicting the least recently used ones
+    // until the cache fits; a value larger than the cache is not kept
+    public synchronized void put(long key, V value) {
+        int size = sizer.sizeOf(value);
+        V previous = map.remove(key);
+        if (previous != null) {
+            byteSize -= sizer.sizeOf(previous);
+        }
+        if (size > maxBytes) {
+            return;
+        }
+
+        map.put(key, value);
+        byteSize += size;
+        trimTo(maxBytes);
+    }
+
+    public synchronized V remove(long key) {
+        V value = map.remove(key);
+        if (value != null) {
+            byteSize -= sizer.sizeOf(value);
+        }
+        return value;
+    }
+
+    // Drops the least recently used values until at most bytes remain
+    public synchronized void trimTo(long bytes) {
+        Iterator<Map.Entry<Long, V>> oldest = map.entrySet().iterator();
+        while (byteSize > bytes && oldest.hasNext()) {
+            byteSize -= sizer.sizeOf(oldest.next().getValue());
+            oldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void evictAll() {
+        trimTo(0);
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getByteSize() {
+        return byteSize;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    public synchronized int getEvictionCount() {
+        return evictions;
+    }
+}
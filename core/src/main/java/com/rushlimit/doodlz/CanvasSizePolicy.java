@@ -0,0 +1,25 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Sizing rules for the backing bitmap behind DoodleView. The bitmap only
+ * ever grows: a view that still fits reuses it, so rotating back and
+ * forth allocates once and never loses the drawing.
+ */
+public final class CanvasSizePolicy {
+    private CanvasSizePolicy() {
+    }
+
+    // True if the current backing surface can show a view of this size
+    public static boolean fits(int backingWidth, int backingHeight, int viewWidth, int viewHeight) {
+        return viewWidth <= backingWidth && viewHeight <= backingHeight;
+    }
+
+    // Width of a surface big enough for both the old content and the new view
+    public static int grownWidth(int backingWidth, int viewWidth) {
+        return Math.max(backingWidth, viewWidth);
+    }
+
+    public static int grownHeight(int backingHeight, int viewHeight) {
+        return Math.max(backingHeight, viewHeight);
+    }
+}
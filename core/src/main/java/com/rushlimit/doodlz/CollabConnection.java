@@ -0,0 +1,316 @@
+package com.rushlimit.doodlz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One end of a drawing session with a single peer over TCP. A selector
+ * thread owned by the connection accepts or connects, then reads and
+ * writes without blocking. Frames go out in the order sent, each
+ * prefixed by its length as a VarInt; the first frame either side sends
+ * is a hello with MAGIC and VERSION. Listener calls come from the
+ * connection's thread; send and close may be called from any thread.
+ */
+public class CollabConnection implements Closeable {
+    public static final int MAGIC = 0x44535452; // "DSTR"
+    public static final int VERSION = 1;
+    public static final int DEFAULT_PORT = 7613;
+
+    static final int MAX_FRAME_BYTES = 1024 * 1024;
+
+    public interface Listener {
+        void onConnected();
+
+        void onFrame(byte[] frame);
+
+        // error is null if either side closed the session normally
+        void onClosed(IOException error);
+    }
+
+    private final Listener listener;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+    private int localPort = -1;
+
+    // Only touched by the connection's thread
+    private ServerSocketChannel server;
+    private SocketChannel channel;
+    private String host;
+    private int port;
+    private ByteBuffer writing;
+    private ByteBuffer incoming = ByteBuffer.allocate(8192);
+    private boolean helloReceived;
+
+    private CollabConnection(Listener listener) throws IOException {
+        this.listener = listener;
+        selector = Selector.open();
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "CollabConnection");
+        thread.setDaemon(true);
+
+        ByteArrayOutputStream hello = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(hello);
+        out.writeInt(MAGIC);
+        VarInt.write(out, VERSION);
+        outgoing.add(encodeFrame(hello.toByteArray()));
+    }
+
+    // Waits for one peer on port, or any free port if it is 0
+    public static CollabConnection listen(int port, Listener listener) throws IOException {
+        CollabConnection connection = new CollabConnection(listener);
+        try {
+            connection.server = ServerSocketChannel.open();
+            connection.server.socket().setReuseAddress(true);
+            connection.server.socket().bind(new InetSocketAddress(port));
+            connection.server.configureBlocking(false);
+            connection.server.register(connection.selector, SelectionKey.OP_ACCEPT);
+            connection.localPort = connection.server.socket().getLocalPort();
+        } catch (IOException e) {
+            connection.closeChannels();
+            throw e;
+        }
+        connection.thread.start();
+        return connection;
+    }
+
+    // Connects to a listening peer; the host is looked up on the connection's thread
+    public static CollabConnection connect(String host, int port, Listener listener) throws IOException {
+        CollabConnection connection = new CollabConnection(listener);
+        connection.host = host;
+        connection.port = port;
+        connection.thread.start();
+        return connection;
+    }
+
+    // The port a listening connection was bound to
+    public int getLocalPort() {
+        return localPort;
+    }
+
+    // Queues a frame; frames sent before the peer connects wait for it
+    public void send(byte[] frame) {
+        if (frame.length > MAX_FRAME_BYTES) {
+            throw new IllegalArgumentException("Frame too large: " + frame.length);
+        }
+        outgoing.add(encodeFrame(frame));
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // Waits for the connection's thread to finish after a close
+    public void join(long millis) throws InterruptedException {
+        thread.join(millis);
+    }
+
+    private void loop() {
+        IOException error = null;
+        try {
+            if (host != null) {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                if (channel.connect(new InetSocketAddress(host, port))) {
+                    channel.register(selector, SelectionKey.OP_READ);
+                    connected();
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT);
+                }
+            }
+
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext() && !closed) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isConnectable()) {
+                        channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        connected();
+                    } else if (key.isReadable() && !read()) {
+                        closed = true;
+                    }
+                }
+                if (!closed && channel != null && channel.isConnected()) {
+                    write();
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            closed = true;
+            closeChannels();
+        }
+        listener.onClosed(error);
+    }
+
+    private void accept() throws IOException {
+        SocketChannel accepted = server.accept();
+        if (accepted == null) {
+            return;
+        }
+        // Only one peer per session
+        server.close();
+        server = null;
+        channel = accepted;
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+        connected();
+    }
+
+    private void connected() throws IOException {
+        // Small frames should leave at once rather than wait for more
+        channel.socket().setTcpNoDelay(true);
+        listener.onConnected();
+    }
+
+    // Writes what the socket takes and asks to be woken for the rest
+    private void write() throws IOException {
+        while (true) {
+            if (writing == null) {
+                writing = outgoing.poll();
+                if (writing == null) {
+                    break;
+                }
+            }
+            channel.write(writing);
+            if (writing.hasRemaining()) {
+                break;
+            }
+            writing = null;
+        }
+        SelectionKey key = channel.keyFor(selector);
+        key.interestOps(writing != null ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    // Reads and delivers every complete frame; false once the peer has closed
+    private boolean read() throws IOException {
+        int read = channel.read(incoming);
+        if (read < 0) {
+            return false;
+        }
+
+        incoming.flip();
+        while (true) {
+            int start = incoming.position();
+            int length = readLength(incoming);
+            if (length < 0) {
+                incoming.position(start);
+                break;
+            }
+            if (length > MAX_FRAME_BYTES) {
+                throw new IOException("Frame too large: " + length);
+            }
+            if (incoming.remaining() < length) {
+                incoming.position(start);
+                // Make room for the whole frame if the buffer can't hold it
+                if (length + 5 > incoming.capacity()) {
+                    ByteBuffer grown = ByteBuffer.allocate(length + 5);
+                    grown.put(incoming);
+                    incoming = grown;
+                    return true;
+                }
+                break;
+            }
+
+            byte[] frame = new byte[length];
+            incoming.get(frame);
+            if (helloReceived) {
+                listener.onFrame(frame);
+            } else {
+                checkHello(frame);
+                helloReceived = true;
+            }
+        }
+        incoming.compact();
+        return true;
+    }
+
+    private static void checkHello(byte[] frame) throws IOException {
+        ByteBuffer hello = ByteBuffer.wrap(frame);
+        if (frame.length < 5 || hello.getInt() != MAGIC) {
+            throw new IOException("Peer is not a doodle session");
+        }
+        int version = readLength(hello);
+        if (version != VERSION) {
+            throw new IOException("Unsupported session version: " + version);
+        }
+    }
+
+    // Decodes a VarInt at the buffer's position, or returns -1 if the
+    // buffer ends first; VarInt.read can't tell that from a bad value
+    private static int readLength(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int b = buffer.get() & 0xff;
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("Malformed frame length");
+                }
+                return value;
+            }
+        }
+        throw new IOException("Malformed frame length");
+    }
+
+    private static ByteBuffer encodeFrame(byte[] frame) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(frame.length + 5);
+        try {
+            VarInt.write(new DataOutputStream(bytes), frame.length);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Memory streams don't throw
+        }
+        bytes.write(frame, 0, frame.length);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private void closeChannels() {
+        closeQuietly(server);
+        closeQuietly(channel);
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+            // Nothing left to do with it
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+                // Nothing left to do with it
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.rushlimit.doodlz;
+
+/**
+ * HSV conversions and the geometry of the color picker: hue around a
+ * ring and saturation/value across a square. Angles follow the screen,
+ * where y grows downward, so hue runs clockwise from three o'clock just
+ * like a SweepGradient. Colors are packed ARGB ints as in Android.
+ */
+public final class ColorMath {
+    private ColorMath() {
+    }
+
+    // hue in degrees, saturation and value in [0, 1]
+    public static int hsvToColor(int alpha, float hue, float saturation, float value) {
+        float h = ((hue % 360) + 360) % 360 / 60;
+        int sector = Math.min((int) h, 5);
+        float fraction = h - sector;
+        float p = value * (1 - saturation);
+        float q = value * (1 - saturation * fraction);
+        float t = value * (1 - saturation * (1 - fraction));
+
+        float r, g, b;
+        switch (sector) {
+            case 0: r = value; g = t; b = p; break;
+            case 1: r = q; g = value; b = p; break;
+            case 2: r = p; g = value; b = t; break;
+            case 3: r = p; g = q; b = value; break;
+            case 4: r = t; g = p; b = value; break;
+            default: r = value; g = p; b = q; break;
+        }
+        return (alpha << 24) | (toByte(r) << 16) | (toByte(g) << 8) | toByte(b);
+    }
+
+    // Writes hue, saturation and value into hsv; alpha is ignored
+    public static void colorToHsv(int color, float[] hsv) {
+        float r = ((color >> 16) & 0xff) / 255f;
+        float g = ((color >> 8) & 0xff) / 255f;
+        float b = (color & 0xff) / 255f;
+        float max = Math.max(r, Math.max(g, b));
+        float min = Math.min(r, Math.min(g, b));
+        float delta = max - min;
+
+        float hue;
+        if (delta == 0) {
+            hue = 0;
+        } else if (max == r) {
+            hue = 60 * (((g - b) / delta + 6) % 6);
+        } else if (max == g) {
+            hue = 60 * ((b - r) / delta + 2);
+        } else {
+            hue = 60 * ((r - g) / delta + 4);
+        }
+        hsv[0] = hue;
+        hsv[1] = max == 0 ? 0 : delta / max;
+        hsv[2] = max;
+    }
+
+    // Hue in [0, 360) at offset (dx, dy) from the ring's center
+    public static float hueAt(float dx, float dy) {
+        float degrees = (float) Math.toDegrees(Math.atan2(dy, dx));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
+    // Writes the offset from the center of the point at hue on a circle
+    public static void huePosition(float hue, float radius, float[] offset) {
+        double radians = Math.toRadians(hue);
+        offset[0] = (float) (Math.cos(radians) * radius);
+        offset[1] = (float) (Math.sin(radians) * radius);
+    }
+
+    public static boolean inRing(float dx, float dy, float innerRadius, float outerRadius) {
+        float distanceSquared = dx * dx + dy * dy;
+        return distanceSquared >= innerRadius * innerRadius && distanceSquared <= outerRadius * outerRadius;
+    }
+
+    // Saturation grows from the square's left edge, x measured from there
+    public static float saturationAt(float x, float size) {
+        return clamp(x / size);
+    }
+
+    // Value is 1 along the top edge and 0 along the bottom
+    public static float valueAt(float y, float size) {
+        return clamp(1 - y / size);
+    }
+
+    private static float clamp(float fraction) {
+        return fraction < 0 ? 0 : fraction > 1 ? 1 : fraction;
+    }
+
+    private static int toByte(float component) {
+        return Math.round(component * 255);
+    }
+}
@@ -0,0 +1,49 @@
+package com.rushlimit.doodlz;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Loading and saving the small DataOutput files the app keeps, such as
+ * the gallery index and the recent colors. Saves write a temporary file
+ * and rename it over the old one, so a crash mid-save leaves the
+ * previous file intact.
+ */
+public final class DataFiles {
+    public interface Writer {
+        void writeTo(DataOutput out) throws IOException;
+    }
+
+    private DataFiles() {
+    }
+
+    // A buffered stream over file, or null if the file does not exist yet
+    public static DataInputStream openIfExists(File file) throws IOException {
+        try {
+            return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+    }
+
+    public static void save(File file, Writer writer) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            writer.writeTo(out);
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.rushlimit.doodlz;
+
+import java.io.PrintWriter;
+
+/**
+ * Field metrics for DoodleView: touch-to-draw latency, onDraw durations,
+ * input rates and the size of the live strokes. The UI thread records
+ * into fixed rings and histograms without locking or allocating; dump
+ * may run on any thread. A view without metrics keeps a null reference,
+ * so disabled metrics cost one null check per hook.
+ */
+public class DoodleMetrics {
+    private static final long SECOND_NANOS = 1000000000L;
+
+    private final SampleRing inputLatencies; // Oldest undrawn sample to end of onDraw
+    private final SampleRing drawDurations;
+    private final DurationHistogram drawHistogram = new DurationHistogram();
+    private final SampleRing eventsPerSecond;
+    private final SampleRing samplesPerSecond;
+    private final SampleRing livePaths; // Per frame
+    private final SampleRing livePoints; // Per frame
+
+    // Input counted in the current one-second window
+    private long windowStartNanos;
+    private int windowEvents;
+    private int windowSamples;
+    private volatile long totalEvents;
+    private volatile long totalSamples;
+
+    public DoodleMetrics(int capacity) {
+        inputLatencies = new SampleRing(capacity);
+        drawDurations = new SampleRing(capacity);
+        eventsPerSecond = new SampleRing(capacity);
+        samplesPerSecond = new SampleRing(capacity);
+        livePaths = new SampleRing(capacity);
+        livePoints = new SampleRing(capacity);
+    }
+
+    // Counts one MotionEvent carrying samples pointer samples
+    public void recordTouchEvent(long nowNanos, int samples) {
+        if (windowStartNanos == 0) {
+            windowStartNanos = nowNanos;
+        } else if (nowNanos - windowStartNanos >= SECOND_NANOS) {
+            // Rates cover only windows with input, so idle time doesn't dilute them
+            long elapsed = nowNanos - windowStartNanos;
+            eventsPerSecond.add(windowEvents * SECOND_NANOS / elapsed);
+            samplesPerSecond.add(windowSamples * SECOND_NANOS / elapsed);
+            windowStartNanos = nowNanos;
+            windowEvents = 0;
+            windowSamples = 0;
+        }
+        windowEvents++;
+        windowSamples += samples;
+        totalEvents++;
+        totalSamples += samples;
+    }
+
+    // Records one onDraw; inputLatencyNanos is negative if no input was waiting
+    public void recordFrame(long drawNanos, long inputLatencyNanos, int paths, int points) {
+        drawDurations.add(drawNanos);
+        drawHistogram.record(drawNanos);
+        if (inputLatencyNanos >= 0) {
+            inputLatencies.add(inputLatencyNanos);
+        }
+        livePaths.add(paths);
+        livePoints.add(points);
+    }
+
+    public SampleRing getInputLatencies() {
+        return inputLatencies;
+    }
+
+    public SampleRing getDrawDurations() {
+        return drawDurations;
+    }
+
+    public DurationHistogram getDrawHistogram() {
+        return drawHistogram;
+    }
+
+    public SampleRing getEventsPerSecond() {
+        return eventsPerSecond;
+    }
+
+    public SampleRing getSamplesPerSecond() {
+        return samplesPerSecond;
+    }
+
+    public SampleRing getLivePaths() {
+        return livePaths;
+    }
+
+    public SampleRing getLivePoints() {
+        return livePoints;
+    }
+
+    public long getTotalEvents() {
+        return totalEvents;
+    }
+
+    public long getTotalSamples() {
+        return totalSamples;
+    }
+
+    public void dump(PrintWriter out) {
+        out.println("Input: " + totalEvents + " events, " + totalSamples + " samples");
+        dumpRing(out, "Touch-to-draw latency (us)", inputLatencies, 1000);
+        dumpRing(out, "onDraw (us)", drawDurations, 1000);
+        out.println("onDraw histogram (" + drawHistogram.getTotalCount() + " frames):");
+        drawHistogram.dump(out, "  ");
+        dumpRing(out, "Events/s", eventsPerSecond, 1);
+        dumpRing(out, "Samples/s", samplesPerSecond, 1);
+        dumpRing(out, "Live paths", livePaths, 1);
+        dumpRing(out, "Live points", livePoints, 1);
+    }
+
+    private static void dumpRing(PrintWriter out, String name, SampleRing ring, long divisor) {
+        out.println(name + ": n=" + ring.size() + " p50=" + ring.getPercentile(50) / divisor
+                + " p90=" + ring.getPercentile(90) / divisor + " p99=" + ring.getPercentile(99) / divisor
+                + " max=" + ring.getMax() / divisor);
+    }
+}
@@ -0,0 +1,317 @@
+package com.rushlimit.doodlz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Native Doodlz project file: a header, the StrokeLog and an optional
+ * raster cache of deflated tiles. Files are opened by memory-mapping
+ * them, and tiles are only decoded when a region asks for them.
+ *
+ * <pre>
+ * header      magic, version, width, height, tile size, tile grid,
+ *             stroke log offset and length, tile index offset
+ * stroke log  StrokeLog.writeTo
+ * tile index  per tile, row-major: data offset (long), data length (int)
+ * tile data   deflated ARGB ints; length 0 means an all-white tile
+ * </pre>
+ */
+public class DoodleProjectFile implements Closeable {
+    public static final int MAGIC = 0x44444c5a; // "DDLZ"
+    public static final int VERSION = 1;
+    public static final int TILE_SIZE = TileHistory.TILE_SIZE;
+
+    private static final int HEADER_BYTES = 48;
+    private static final int INDEX_ENTRY_BYTES = 12;
+    private static final int WHITE = 0xffffffff;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int tilesAcross;
+    private final int tilesDown;
+    private final long strokeLogOffset;
+    private final long strokeLogLength;
+    private final long tileIndexOffset;
+
+    // Scratch space reused for every tile
+    private final TileCodec codec = new TileCodec(TILE_SIZE * TILE_SIZE);
+    private final int[] tilePixels = new int[TILE_SIZE * TILE_SIZE]; // A whole stored tile
+    private final int[] pixels = new int[TILE_SIZE * TILE_SIZE]; // The part the target needs
+    private byte[] compressed = new byte[0];
+    private int tilesDecoded;
+
+    private DoodleProjectFile(RandomAccessFile file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a Doodlz project file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported project version " + buffer.getInt(4));
+        }
+        if (buffer.getInt(16) != TILE_SIZE) {
+            throw new IOException("Unsupported tile size " + buffer.getInt(16));
+        }
+
+        width = buffer.getInt(8);
+        height = buffer.getInt(12);
+        tilesAcross = buffer.getInt(20);
+        tilesDown = buffer.getInt(24);
+        strokeLogOffset = buffer.getLong(28);
+        strokeLogLength = buffer.getInt(36);
+        tileIndexOffset = buffer.getLong(40);
+
+        // A truncated or corrupt header must not send reads outside the file
+        if (width < 0 || height < 0 || tilesAcross != tilesFor(width) || tilesDown != tilesFor(height)) {
+            throw new IOException("Bad raster size " + width + " x " + height
+                    + " in " + tilesAcross + " x " + tilesDown + " tiles");
+        }
+        if (!fits(strokeLogOffset, strokeLogLength)) {
+            throw new IOException("Stroke log outside the file");
+        }
+        if (!fits(tileIndexOffset, (long) tilesAcross * tilesDown * INDEX_ENTRY_BYTES)) {
+            throw new IOException("Tile index outside the file");
+        }
+    }
+
+    // Maps the file; nothing but the header is read until asked for
+    public static DoodleProjectFile open(File path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        DoodleProjectFile project = null;
+        try {
+            FileChannel channel = file.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Project file too large: " + channel.size() + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            project = new DoodleProjectFile(file, buffer);
+            return project;
+        } finally {
+            if (project == null) {
+                file.close();
+            }
+        }
+    }
+
+    // Writes a project; raster may be null to store only the stroke log.
+    // Replaces path through a temporary file, see DataFiles.save.
+    public static void write(File path, StrokeLog log, TileHistory.Surface raster) throws IOException {
+        final int width = raster == null ? 0 : raster.getWidth();
+        final int height = raster == null ? 0 : raster.getHeight();
+        final int tilesAcross = tilesFor(width);
+        final int tilesDown = tilesFor(height);
+        int tileCount = tilesAcross * tilesDown;
+
+        final ByteArrayOutputStream logBytes = new ByteArrayOutputStream();
+        log.writeTo(new DataOutputStream(logBytes));
+
+        // Compress every tile first so the index can be written up front
+        final byte[][] tiles = new byte[tileCount][];
+        if (raster != null) {
+            int[] tilePixels = new int[TILE_SIZE * TILE_SIZE];
+            TileCodec codec = new TileCodec(TILE_SIZE * TILE_SIZE);
+
+            for (int tile = 0; tile < tileCount; tile++) {
+                int x = (tile % tilesAcross) * TILE_SIZE;
+                int y = (tile / tilesAcross) * TILE_SIZE;
+                int tileWidth = Math.min(TILE_SIZE, width - x);
+                int tileHeight = Math.min(TILE_SIZE, height - y);
+                int length = tileWidth * tileHeight;
+                raster.readPixels(tilePixels, x, y, tileWidth, tileHeight);
+
+                if (isBlank(tilePixels, length)) {
+                    continue;
+                }
+
+                tiles[tile] = codec.compress(tilePixels, length);
+            }
+            codec.end();
+        }
+
+        final long strokeLogOffset = HEADER_BYTES;
+        final long tileIndexOffset = strokeLogOffset + logBytes.size();
+        final long firstDataOffset = tileIndexOffset + (long) tileCount * INDEX_ENTRY_BYTES;
+
+        DataFiles.save(path, new DataFiles.Writer() {
+            @Override
+            public void writeTo(DataOutput out) throws IOException {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(width);
+                out.writeInt(height);
+                out.writeInt(TILE_SIZE);
+                out.writeInt(tilesAcross);
+                out.writeInt(tilesDown);
+                out.writeLong(strokeLogOffset);
+                out.writeInt(logBytes.size());
+                out.writeLong(tileIndexOffset);
+                out.write(logBytes.toByteArray());
+
+                long dataOffset = firstDataOffset;
+                for (byte[] tile : tiles) {
+                    out.writeLong(tile == null ? 0 : dataOffset);
+                    out.writeInt(tile == null ? 0 : tile.length);
+                    dataOffset += tile == null ? 0 : tile.length;
+                }
+                for (byte[] tile : tiles) {
+                    if (tile != null) {
+                        out.write(tile);
+                    }
+                }
+            }
+        });
+    }
+
+    private static int tilesFor(int size) {
+        return (size + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    // True if length bytes at offset lie inside the mapped file
+    private boolean fits(long offset, long length) {
+        return offset >= 0 && length >= 0 && offset + length <= buffer.capacity();
+    }
+
+    private static boolean isBlank(int[] pixels, int length) {
+        for (int i = 0; i < length; i++) {
+            if (pixels[i] != WHITE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Raster cache size; 0 if the project only holds strokes
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean hasRaster() {
+        return width > 0 && height > 0;
+    }
+
+    // Tiles decoded since the file was opened
+    public int getTilesDecoded() {
+        return tilesDecoded;
+    }
+
+    public StrokeLog readStrokeLog() throws IOException {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position((int) strokeLogOffset);
+        slice.limit((int) (strokeLogOffset + strokeLogLength));
+        return StrokeLog.readFrom(new DataInputStream(new ByteBufferInputStream(slice)));
+    }
+
+    // Decodes every stored tile that fits target, as when the whole
+    // drawing is loaded back into a bitmap that may be larger than the view
+    public void readRaster(TileHistory.Surface target) throws IOException {
+        readRegion(0, 0, target.getWidth(), target.getHeight(), target);
+    }
+
+    // Decodes only the tiles overlapping [left, right) x [top, bottom) into target
+    public void readRegion(int left, int top, int right, int bottom, TileHistory.Surface target) throws IOException {
+        int firstX = Math.max(0, left / TILE_SIZE);
+        int firstY = Math.max(0, top / TILE_SIZE);
+        int lastX = Math.min(tilesAcross, (Math.min(right, target.getWidth()) + TILE_SIZE - 1) / TILE_SIZE) - 1;
+        int lastY = Math.min(tilesDown, (Math.min(bottom, target.getHeight()) + TILE_SIZE - 1) / TILE_SIZE) - 1;
+
+        for (int tileY = firstY; tileY <= lastY; tileY++) {
+            for (int tileX = firstX; tileX <= lastX; tileX++) {
+                int x = tileX * TILE_SIZE;
+                int y = tileY * TILE_SIZE;
+                int tileWidth = Math.min(TILE_SIZE, Math.min(width, target.getWidth()) - x);
+                int tileHeight = Math.min(TILE_SIZE, Math.min(height, target.getHeight()) - y);
+                if (tileWidth > 0 && tileHeight > 0) {
+                    readTile(tileX, tileY, tileWidth, tileHeight);
+                    target.writePixels(pixels, x, y, tileWidth, tileHeight);
+                }
+            }
+        }
+    }
+
+    // Decodes one tile into pixels, cropped to tileWidth x tileHeight
+    private void readTile(int tileX, int tileY, int tileWidth, int tileHeight) throws IOException {
+        int fullWidth = Math.min(TILE_SIZE, width - tileX * TILE_SIZE);
+        int fullHeight = Math.min(TILE_SIZE, height - tileY * TILE_SIZE);
+        int indexPosition = (int) (tileIndexOffset + (long) (tileY * tilesAcross + tileX) * INDEX_ENTRY_BYTES);
+        long offset = buffer.getLong(indexPosition);
+        int length = buffer.getInt(indexPosition + 8);
+
+        if (length == 0) {
+            Arrays.fill(pixels, 0, tileWidth * tileHeight, WHITE);
+            return;
+        }
+        if (!fits(offset, length)) {
+            throw new IOException("Tile " + tileX + ", " + tileY + " outside the file");
+        }
+
+        if (compressed.length < length) {
+            compressed = new byte[length];
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position((int) offset);
+        data.get(compressed, 0, length);
+
+        try {
+            if (!codec.decompress(compressed, 0, length, tilePixels, fullWidth * fullHeight)) {
+                throw new IOException("Truncated tile " + tileX + ", " + tileY);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt tile " + tileX + ", " + tileY, e);
+        }
+        tilesDecoded++;
+
+        // Crop rows when the target is smaller than the stored tile
+        for (int row = 0; row < tileHeight; row++) {
+            System.arraycopy(tilePixels, row * fullWidth, pixels, row * tileWidth, tileWidth);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        codec.end();
+        file.close();
+    }
+
+    // Streams a slice of the mapped file into DataInputStream
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
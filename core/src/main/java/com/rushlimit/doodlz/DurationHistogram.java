@@ -0,0 +1,83 @@
+package com.rushlimit.doodlz;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations in power-of-two microsecond buckets: bucket 0 holds
+ * everything up to 1 us, bucket i everything up to 2^i us, and the last
+ * bucket everything longer. Unlike a SampleRing it covers every sample
+ * ever recorded, in constant space. One thread records; any may read.
+ */
+public class DurationHistogram {
+    public static final int BUCKETS = 24; // The last bound is about 4 s
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    // Only one thread may call this
+    public void record(long nanos) {
+        int bucket = bucketFor(nanos);
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+    }
+
+    static int bucketFor(long nanos) {
+        long micros = Math.max(0, (nanos + 999) / 1000);
+        if (micros <= 1) {
+            return 0;
+        }
+        // Smallest i with micros <= 2^i
+        int bucket = 64 - Long.numberOfLeadingZeros(micros - 1);
+        return Math.min(BUCKETS - 1, bucket);
+    }
+
+    // Inclusive upper bound of a bucket; the last one is open-ended
+    public static long getUpperMicros(int bucket) {
+        return 1L << bucket;
+    }
+
+    public long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    // Upper bound of the bucket holding the given percentile; 0 when empty
+    public long getPercentileMicros(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return getUpperMicros(i);
+            }
+        }
+        return getUpperMicros(BUCKETS - 1);
+    }
+
+    public void clear() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    // Prints the non-empty buckets, one per line
+    public void dump(PrintWriter out, String indent) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = counts.get(i);
+            if (count > 0) {
+                out.println(indent + (i == BUCKETS - 1 ? ">" + getUpperMicros(i - 1) : "<=" + getUpperMicros(i))
+                        + " us: " + count);
+            }
+        }
+    }
+}
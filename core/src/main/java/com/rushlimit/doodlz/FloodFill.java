@@ -0,0 +1,176 @@
+package com.rushlimit.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Paint-bucket fill over an ARGB int[] pixel buffer. Span filling: each
+ * run of matching pixels in a row is found with one scan and written
+ * with one Arrays.fill, and the rows above and below are queued as spans
+ * on a plain int[] stack, so there is no recursion and nothing is boxed.
+ * A pixel matches if every channel is within the tolerance of the pixel
+ * the fill started on.
+ */
+public class FloodFill {
+    private int[] stack = new int[256]; // x1, x2, y, dy per pending span
+    private int stackSize;
+    private long[] filled = new long[0]; // Bit per pixel, only used when the fill color itself matches
+
+    private int[] pixels;
+    private int width;
+    private int height;
+    private int seed;
+    private int tolerance;
+    private boolean masked;
+
+    // Bounds of the last fill, inclusive; empty if nothing was filled
+    private int left, top, right, bottom;
+    private int filledCount;
+
+    // Fills the region around (x, y) with color; returns the number of
+    // pixels changed
+    public int fill(int[] pixels, int width, int height, int x, int y, int color, int tolerance) {
+        left = top = Integer.MAX_VALUE;
+        right = bottom = Integer.MIN_VALUE;
+        filledCount = 0;
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.seed = pixels[y * width + x];
+        this.tolerance = tolerance;
+
+        // Pixels already filled would match again and be revisited forever
+        masked = matches(color);
+        if (masked) {
+            int words = (int) (((long) width * height + 63) >>> 6);
+            if (filled.length < words) {
+                filled = new long[words];
+            } else {
+                Arrays.fill(filled, 0, words, 0);
+            }
+        }
+
+        stackSize = 0;
+        push(x, x, y, 1);
+        push(x, x, y - 1, -1);
+        while (stackSize > 0) {
+            stackSize -= 4;
+            int x1 = stack[stackSize];
+            int x2 = stack[stackSize + 1];
+            int row = stack[stackSize + 2];
+            int dy = stack[stackSize + 3];
+            if (row < 0 || row >= height) {
+                continue;
+            }
+            int offset = row * width;
+
+            // Extend left of the span's start
+            int start = x1;
+            if (inside(offset, x1)) {
+                while (start > 0 && inside(offset, start - 1)) {
+                    start--;
+                }
+                if (start < x1) {
+                    setSpan(offset, row, start, x1, color);
+                    push(start, x1 - 1, row - dy, -dy);
+                }
+            }
+
+            // Walk the span, filling each matching run and queueing its neighbors
+            while (x1 <= x2) {
+                int end = x1;
+                while (end < width && inside(offset, end)) {
+                    end++;
+                }
+                if (end > x1) {
+                    setSpan(offset, row, x1, end, color);
+                }
+                if (end > start) {
+                    push(start, end - 1, row + dy, dy);
+                }
+                if (end - 1 > x2) {
+                    push(x2 + 1, end - 1, row - dy, -dy);
+                }
+
+                x1 = end + 1;
+                while (x1 < x2 && !inside(offset, x1)) {
+                    x1++;
+                }
+                start = x1;
+            }
+        }
+
+        this.pixels = null;
+        return filledCount;
+    }
+
+    private boolean inside(int offset, int x) {
+        int index = offset + x;
+        if (masked && (filled[index >>> 6] & 1L << index) != 0) {
+            return false;
+        }
+        return matches(pixels[index]);
+    }
+
+    private boolean matches(int pixel) {
+        if (pixel == seed) {
+            return true;
+        }
+        int t = tolerance;
+        return Math.abs((pixel >>> 24) - (seed >>> 24)) <= t
+                && Math.abs((pixel >> 16 & 0xff) - (seed >> 16 & 0xff)) <= t
+                && Math.abs((pixel >> 8 & 0xff) - (seed >> 8 & 0xff)) <= t
+                && Math.abs((pixel & 0xff) - (seed & 0xff)) <= t;
+    }
+
+    // Fills [from, to) of a row
+    private void setSpan(int offset, int row, int from, int to, int color) {
+        Arrays.fill(pixels, offset + from, offset + to, color);
+        if (masked) {
+            for (int index = offset + from; index < offset + to; index++) {
+                filled[index >>> 6] |= 1L << index;
+            }
+        }
+        filledCount += to - from;
+        left = Math.min(left, from);
+        right = Math.max(right, to - 1);
+        top = Math.min(top, row);
+        bottom = Math.max(bottom, row);
+    }
+
+    private void push(int x1, int x2, int y, int dy) {
+        if (stackSize + 4 > stack.length) {
+            stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[stackSize] = x1;
+        stack[stackSize + 1] = x2;
+        stack[stackSize + 2] = y;
+        stack[stackSize + 3] = dy;
+        stackSize += 4;
+    }
+
+    public int getFilledCount() {
+        return filledCount;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    // Inclusive
+    public int getRight() {
+        return right;
+    }
+
+    // Inclusive
+    public int getBottom() {
+        return bottom;
+    }
+}
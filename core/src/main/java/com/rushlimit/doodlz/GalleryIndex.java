@@ -0,0 +1,121 @@
+package com.rushlimit.doodlz;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The doodles saved from the app, newest first, with what the gallery
+ * needs to list them without touching the images: where each one is,
+ * its title, when it was saved and its size. Thread-safe; the image
+ * saver adds entries on its worker while the gallery reads them.
+ */
+public class GalleryIndex implements DataFiles.Writer {
+    public static final int MAGIC = 0x4447414c; // "DGAL"
+    public static final int VERSION = 1;
+
+    public static class Entry {
+        public final long id; // Also names the entry's cached thumbnail
+        public final String uri;
+        public final String title;
+        public final long savedMillis;
+        public final int width;
+        public final int height;
+
+        public Entry(long id, String uri, String title, long savedMillis, int width, int height) {
+            this.id = id;
+            this.uri = uri;
+            this.title = title;
+            this.savedMillis = savedMillis;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>(); // Oldest first
+    private long nextId = 1;
+
+    // Records a saved doodle and returns its entry
+    public synchronized Entry add(String uri, String title, long savedMillis, int width, int height) {
+        Entry entry = new Entry(nextId++, uri, title, savedMillis, width, height);
+        entries.add(entry);
+        return entry;
+    }
+
+    // Forgets a doodle, e.g. after it was deleted elsewhere; false if unknown
+    public synchronized boolean remove(long id) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).id == id) {
+                entries.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // position 0 is the newest doodle
+    public synchronized Entry get(int position) {
+        return entries.get(entries.size() - 1 - position);
+    }
+
+    @Override
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(nextId);
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+            out.writeLong(entry.id);
+            out.writeUTF(entry.uri);
+            out.writeUTF(entry.title);
+            out.writeLong(entry.savedMillis);
+            out.writeInt(entry.width);
+            out.writeInt(entry.height);
+        }
+    }
+
+    public static GalleryIndex readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a gallery index");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported gallery index version " + version);
+        }
+
+        GalleryIndex index = new GalleryIndex();
+        index.nextId = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            index.entries.add(new Entry(in.readLong(), in.readUTF(), in.readUTF(), in.readLong(),
+                    in.readInt(), in.readInt()));
+        }
+        return index;
+    }
+
+    // Reads the index from file; an empty index if there is none yet
+    public static GalleryIndex load(File file) throws IOException {
+        DataInputStream in = DataFiles.openIfExists(file);
+        if (in == null) {
+            return new GalleryIndex();
+        }
+        try {
+            return readFrom(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    // A crash mid-save leaves the previous index intact
+    public void save(File file) throws IOException {
+        DataFiles.save(file, this);
+    }
+}
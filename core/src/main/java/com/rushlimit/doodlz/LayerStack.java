@@ -0,0 +1,262 @@
+package com.rushlimit.doodlz;
+
+import java.util.ArrayList;
+
+/**
+ * An ordered stack of drawing layers, bottom first, with one active
+ * layer that receives strokes. Layers under the active one are shown
+ * from one cached composite and layers over it from another; the stack
+ * tracks which of the two a change makes stale, so drawing on the
+ * active layer, or changing the layers on one side of it, never
+ * rebuilds the other composite. Pixels are whatever T the caller keeps
+ * per layer, and their sizes count against a memory budget.
+ */
+public class LayerStack<T> {
+    private static class Layer<T> {
+        T pixels;
+        long bytes;
+        boolean visible = true;
+        float opacity = 1;
+        int blendMode;
+    }
+
+    private final ArrayList<Layer<T>> layers = new ArrayList<>();
+    private int active = -1;
+    private long budgetBytes;
+    private long bytes;
+
+    private boolean belowValid;
+    private boolean aboveValid;
+    private long hits;
+    private long misses;
+
+    public LayerStack(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public int size() {
+        return layers.size();
+    }
+
+    public T get(int index) {
+        return layers.get(index).pixels;
+    }
+
+    // True if a layer of this many bytes still fits in the budget
+    public boolean canAdd(long layerBytes) {
+        return bytes + layerBytes <= budgetBytes;
+    }
+
+    // Inserts a layer just above the active one and makes it active; the
+    // first layer is always accepted so there is something to draw on.
+    // Returns its index, or -1 if it would exceed the budget.
+    public int add(T pixels, long layerBytes) {
+        if (!layers.isEmpty() && !canAdd(layerBytes)) {
+            return -1;
+        }
+        Layer<T> layer = new Layer<>();
+        layer.pixels = pixels;
+        layer.bytes = layerBytes;
+        layers.add(active + 1, layer);
+        bytes += layerBytes;
+
+        // The old active layer is now below; nothing above changed
+        active++;
+        belowValid = false;
+        return active;
+    }
+
+    // Removes the layer at index and returns its pixels for the caller to
+    // release. The last layer can't be removed.
+    public T remove(int index) {
+        if (layers.size() == 1) {
+            throw new IllegalStateException("Can't remove the only layer");
+        }
+        invalidateFor(index);
+        if (index == active) {
+            // The layer below takes over, or the one above if there is none
+            active = Math.max(0, active - 1);
+            belowValid = false;
+            aboveValid = false;
+        } else if (index < active) {
+            active--;
+        }
+        Layer<T> layer = layers.remove(index);
+        bytes -= layer.bytes;
+        return layer.pixels;
+    }
+
+    // Empties the stack; the caller releases every layer's pixels first
+    public void clear() {
+        layers.clear();
+        active = -1;
+        bytes = 0;
+        invalidateComposites();
+    }
+
+    // Replaces a layer's pixels, as when the canvas grows, and returns the old ones
+    public T replace(int index, T pixels, long layerBytes) {
+        Layer<T> layer = layers.get(index);
+        T old = layer.pixels;
+        bytes += layerBytes - layer.bytes;
+        layer.pixels = pixels;
+        layer.bytes = layerBytes;
+        contentChanged(index);
+        return old;
+    }
+
+    // Moves a layer to another position; the active layer stays active
+    public void move(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        invalidateFor(from);
+        invalidateFor(to);
+        // Moving the active layer, or another one onto its place, puts
+        // layers on the other side of it
+        if (from == active || to == active) {
+            belowValid = false;
+            aboveValid = false;
+        }
+        Layer<T> activeLayer = layers.get(active);
+        layers.add(to, layers.remove(from));
+        active = layers.indexOf(activeLayer);
+    }
+
+    public int getActiveIndex() {
+        return active;
+    }
+
+    public T getActive() {
+        return layers.get(active).pixels;
+    }
+
+    public void setActive(int index) {
+        if (index < 0 || index >= layers.size()) {
+            throw new IndexOutOfBoundsException("No layer " + index);
+        }
+        if (index != active) {
+            active = index;
+            belowValid = false;
+            aboveValid = false;
+        }
+    }
+
+    public boolean isVisible(int index) {
+        return layers.get(index).visible;
+    }
+
+    public void setVisible(int index, boolean visible) {
+        Layer<T> layer = layers.get(index);
+        if (layer.visible != visible) {
+            layer.visible = visible;
+            invalidateFor(index);
+        }
+    }
+
+    public float getOpacity(int index) {
+        return layers.get(index).opacity;
+    }
+
+    public void setOpacity(int index, float opacity) {
+        Layer<T> layer = layers.get(index);
+        if (layer.opacity != opacity) {
+            layer.opacity = opacity;
+            invalidateFor(index);
+        }
+    }
+
+    public int getBlendMode(int index) {
+        return layers.get(index).blendMode;
+    }
+
+    public void setBlendMode(int index, int blendMode) {
+        Layer<T> layer = layers.get(index);
+        if (layer.blendMode != blendMode) {
+            layer.blendMode = blendMode;
+            invalidateFor(index);
+        }
+    }
+
+    // Call after the pixels of a layer other than the active one change;
+    // the active layer is drawn on its own, so its edits need no call
+    public void contentChanged(int index) {
+        invalidateFor(index);
+    }
+
+    // Drops both composites, as when their pixels were reallocated
+    public void invalidateComposites() {
+        belowValid = false;
+        aboveValid = false;
+    }
+
+    // Returns true if the cached composite of the layers below the active
+    // one can be drawn as is. Otherwise the caller must rebuild it now,
+    // and it counts as valid from then on.
+    public boolean useBelowComposite() {
+        return use(true);
+    }
+
+    public boolean useAboveComposite() {
+        return use(false);
+    }
+
+    private boolean use(boolean below) {
+        boolean valid = below ? belowValid : aboveValid;
+        if (valid) {
+            hits++;
+        } else {
+            misses++;
+            if (below) {
+                belowValid = true;
+            } else {
+                aboveValid = true;
+            }
+        }
+        return valid;
+    }
+
+    // True if any visible layer is above the active one
+    public boolean hasVisibleAbove() {
+        for (int i = active + 1; i < layers.size(); i++) {
+            if (layers.get(i).visible) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    // A smaller budget only limits layers added from now on
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    private void invalidateFor(int index) {
+        if (index < active) {
+            belowValid = false;
+        } else if (index > active) {
+            aboveValid = false;
+        }
+    }
+}
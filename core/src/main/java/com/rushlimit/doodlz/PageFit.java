@@ -0,0 +1,37 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Places a drawing on a printed page: as large as the page's content
+ * area allows, centered, and turned a quarter when that makes it
+ * larger. Page units are whatever the page canvas uses (PDF points).
+ */
+public final class PageFit {
+    public final boolean rotated; // Drawing turned 90 degrees clockwise
+    public final float scale; // Page units per drawing pixel
+    public final float left; // Offset of the placed drawing in the content area
+    public final float top;
+
+    private PageFit(boolean rotated, float scale, float left, float top) {
+        this.rotated = rotated;
+        this.scale = scale;
+        this.left = left;
+        this.top = top;
+    }
+
+    public static PageFit fit(float pageWidth, float pageHeight, float width, float height) {
+        float upright = Math.min(pageWidth / width, pageHeight / height);
+        float turned = Math.min(pageWidth / height, pageHeight / width);
+        if (turned > upright) {
+            return new PageFit(true, turned, (pageWidth - height * turned) / 2, (pageHeight - width * turned) / 2);
+        }
+        return new PageFit(false, upright, (pageWidth - width * upright) / 2, (pageHeight - height * upright) / 2);
+    }
+
+    // Bitmap pixels per drawing pixel for rendering at dpi when one page
+    // unit is 1/72 inch, reduced until width x height fits in maxPixels
+    public float rasterScale(int dpi, int width, int height, long maxPixels) {
+        float rasterScale = scale * dpi / 72f;
+        float limit = (float) Math.sqrt((double) maxPixels / ((long) width * height));
+        return Math.min(rasterScale, limit);
+    }
+}
@@ -0,0 +1,152 @@
+package com.rushlimit.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity table of per-pointer stroke state, indexed directly by
+ * MotionEvent pointer id. Pointer ids are small ints, so plain arrays
+ * replace the boxed Integer maps and nothing is allocated while drawing.
+ */
+public class PointerSlotTable {
+    // Pointer ids handed out by Android stay well below this
+    public static final int DEFAULT_CAPACITY = 32;
+
+    private final boolean[] active;
+    private final float[] lastX; // Last accepted touch point of each pointer
+    private final float[] lastY;
+    private final float[] endX; // Current end point of each pointer's path
+    private final float[] endY;
+
+    // Accepted points of each pointer's stroke as x, y pairs, kept for the StrokeLog
+    private final float[][] points;
+    private final int[] pointCounts;
+
+    // Dense list of active pointer ids so iteration skips unused slots
+    private final int[] activeIds;
+    private final int[] activePositions;
+    private int activeCount;
+
+    public PointerSlotTable() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PointerSlotTable(int capacity) {
+        active = new boolean[capacity];
+        lastX = new float[capacity];
+        lastY = new float[capacity];
+        endX = new float[capacity];
+        endY = new float[capacity];
+        points = new float[capacity][];
+        pointCounts = new int[capacity];
+        activeIds = new int[capacity];
+        activePositions = new int[capacity];
+    }
+
+    public int getCapacity() {
+        return active.length;
+    }
+
+    // Returns false if the id does not fit in the table
+    public boolean start(int id, float x, float y) {
+        if (id < 0 || id >= active.length) {
+            return false;
+        }
+
+        if (!active[id]) {
+            active[id] = true;
+            activePositions[id] = activeCount;
+            activeIds[activeCount++] = id;
+        }
+
+        lastX[id] = x;
+        lastY[id] = y;
+        endX[id] = x;
+        endY[id] = y;
+        pointCounts[id] = 0;
+        addPoint(id, x, y);
+        return true;
+    }
+
+    public void end(int id) {
+        if (!isActive(id)) {
+            return;
+        }
+
+        // Move the last active id into the freed position
+        int position = activePositions[id];
+        int movedId = activeIds[--activeCount];
+        activeIds[position] = movedId;
+        activePositions[movedId] = position;
+        active[id] = false;
+    }
+
+    public void clear() {
+        for (int i = 0; i < activeCount; i++) {
+            active[activeIds[i]] = false;
+        }
+        activeCount = 0;
+    }
+
+    public boolean isActive(int id) {
+        return id >= 0 && id < active.length && active[id];
+    }
+
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    public int getActiveId(int index) {
+        return activeIds[index];
+    }
+
+    public float getLastX(int id) {
+        return lastX[id];
+    }
+
+    public float getLastY(int id) {
+        return lastY[id];
+    }
+
+    public void setLast(int id, float x, float y) {
+        lastX[id] = x;
+        lastY[id] = y;
+    }
+
+    public void addPoint(int id, float x, float y) {
+        float[] buffer = points[id];
+        int offset = pointCounts[id] * 2;
+        if (buffer == null) {
+            buffer = new float[64];
+            points[id] = buffer;
+        } else if (offset + 2 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            points[id] = buffer;
+        }
+
+        buffer[offset] = x;
+        buffer[offset + 1] = y;
+        pointCounts[id]++;
+    }
+
+    // Points of the pointer's stroke as x, y pairs; valid up to getPointCount(id)
+    public float[] getPoints(int id) {
+        return points[id];
+    }
+
+    public int getPointCount(int id) {
+        return pointCounts[id];
+    }
+
+    public float getEndX(int id) {
+        return endX[id];
+    }
+
+    public float getEndY(int id) {
+        return endY[id];
+    }
+
+    public void setEnd(int id, float x, float y) {
+        endX[id] = x;
+        endY[id] = y;
+    }
+}
@@ -0,0 +1,117 @@
+package com.rushlimit.doodlz;
+
+/**
+ * The StrokePipeline DoodleView draws with: a PointerSlotTable holding
+ * per-pointer state and a StrokeBuilder smoothing samples into quads.
+ */
+public class QuadStrokePipeline implements StrokePipeline {
+    private final PointerSlotTable slots;
+    private final StrokeBuilder builder;
+
+    public QuadStrokePipeline(float touchTolerance) {
+        this(new PointerSlotTable(), new StrokeBuilder(touchTolerance));
+    }
+
+    public QuadStrokePipeline(StrokeSimplifier simplifier) {
+        this(new PointerSlotTable(), new StrokeBuilder(simplifier));
+    }
+
+    public QuadStrokePipeline(PointerSlotTable slots, StrokeBuilder builder) {
+        this.slots = slots;
+        this.builder = builder;
+    }
+
+    @Override
+    public int getCapacity() {
+        return slots.getCapacity();
+    }
+
+    @Override
+    public boolean start(int id, float x, float y) {
+        if (!slots.start(id, x, y)) {
+            return false;
+        }
+        builder.start(id, x, y);
+        return true;
+    }
+
+    @Override
+    public int addSamples(int id, float[] xs, float[] ys, int count) {
+        return builder.addSamples(slots, id, xs, ys, count);
+    }
+
+    @Override
+    public float[] getSegments() {
+        return builder.getSegments();
+    }
+
+    @Override
+    public float getLeft() {
+        return builder.getLeft();
+    }
+
+    @Override
+    public float getTop() {
+        return builder.getTop();
+    }
+
+    @Override
+    public float getRight() {
+        return builder.getRight();
+    }
+
+    @Override
+    public float getBottom() {
+        return builder.getBottom();
+    }
+
+    @Override
+    public int finish(int id) {
+        return slots.isActive(id) ? builder.finish(slots, id) : 0;
+    }
+
+    @Override
+    public void end(int id) {
+        slots.end(id);
+    }
+
+    @Override
+    public void clear() {
+        slots.clear();
+    }
+
+    @Override
+    public boolean isActive(int id) {
+        return slots.isActive(id);
+    }
+
+    @Override
+    public int getActiveCount() {
+        return slots.getActiveCount();
+    }
+
+    @Override
+    public int getActiveId(int index) {
+        return slots.getActiveId(index);
+    }
+
+    @Override
+    public float getEndX(int id) {
+        return slots.getEndX(id);
+    }
+
+    @Override
+    public float getEndY(int id) {
+        return slots.getEndY(id);
+    }
+
+    @Override
+    public float[] getPoints(int id) {
+        return slots.getPoints(id);
+    }
+
+    @Override
+    public int getPointCount(int id) {
+        return slots.getPointCount(id);
+    }
+}
@@ -0,0 +1,117 @@
+package com.rushlimit.doodlz;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The colors picked most recently, newest first and without repeats.
+ * Picking a color already in the list moves it to the front; picking a
+ * new one when the list is full drops the oldest. Thread-safe, so the
+ * list can be saved off the UI thread while the dialog reads it.
+ */
+public class RecentColors implements DataFiles.Writer {
+    public static final int MAGIC = 0x44524343; // "DRCC"
+    public static final int VERSION = 1;
+
+    private final int[] colors;
+    private int size;
+
+    public RecentColors(int capacity) {
+        colors = new int[capacity];
+    }
+
+    // Returns false if color was already the most recent
+    public synchronized boolean add(int color) {
+        int index = indexOf(color);
+        if (index == 0) {
+            return false;
+        }
+        if (index < 0) {
+            index = Math.min(size, colors.length - 1);
+            size = Math.min(size + 1, colors.length);
+        }
+        System.arraycopy(colors, 0, colors, 1, index);
+        colors[0] = color;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return colors.length;
+    }
+
+    // 0 is the most recent
+    public synchronized int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return colors[index];
+    }
+
+    private int indexOf(int color) {
+        for (int i = 0; i < size; i++) {
+            if (colors[i] == color) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(colors[i]);
+        }
+    }
+
+    // Keeps at most capacity colors, the newest, if the file holds more
+    public static RecentColors readFrom(DataInput in, int capacity) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a recent colors file");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported recent colors version " + version);
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Bad color count " + count);
+        }
+
+        RecentColors recent = new RecentColors(capacity);
+        for (int i = 0; i < count; i++) {
+            int color = in.readInt();
+            if (recent.size < capacity && recent.indexOf(color) < 0) {
+                recent.colors[recent.size++] = color;
+            }
+        }
+        return recent;
+    }
+
+    // An empty list if the file does not exist yet
+    public static RecentColors load(File file, int capacity) throws IOException {
+        DataInputStream in = DataFiles.openIfExists(file);
+        if (in == null) {
+            return new RecentColors(capacity);
+        }
+        try {
+            return readFrom(in, capacity);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Replaces file through a temporary one, see DataFiles.save
+    public void save(File file) throws IOException {
+        DataFiles.save(file, this);
+    }
+}
@@ -0,0 +1,94 @@
+package com.rushlimit.doodlz;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent samples of a measurement, such as frame times in
+ * nanoseconds, in a fixed ring so recording never allocates or locks.
+ * One thread records; any thread may read. A reader racing the writer
+ * may see a sample that was just overwritten, which is fine for metrics.
+ */
+public class SampleRing {
+    private final long[] samples;
+    private final AtomicLong written = new AtomicLong(); // Samples ever added
+
+    public SampleRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        samples = new long[capacity];
+    }
+
+    // Records a sample, overwriting the oldest once the ring is full.
+    // Only one thread may call this.
+    public void add(long sample) {
+        long count = written.get();
+        samples[(int) (count % samples.length)] = sample;
+        written.lazySet(count + 1); // Publishes the sample to readers
+    }
+
+    public int size() {
+        return (int) Math.min(written.get(), samples.length);
+    }
+
+    public int getCapacity() {
+        return samples.length;
+    }
+
+    // Total samples recorded, including those overwritten since
+    public long getTotalCount() {
+        return written.get();
+    }
+
+    public void clear() {
+        written.set(0);
+    }
+
+    // Copies the retained samples, in no particular order
+    public long[] snapshot() {
+        return Arrays.copyOf(samples, size());
+    }
+
+    // Nearest-rank percentile, percentile in [0, 100]; 0 when empty
+    public long getPercentile(double percentile) {
+        long[] sorted = snapshot();
+        if (sorted.length == 0) {
+            return 0;
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    public long getMean() {
+        long[] values = snapshot();
+        if (values.length == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    public long getMax() {
+        long max = 0;
+        for (long value : snapshot()) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    // Samples above threshold, e.g. frames that missed a vsync deadline
+    public int countAbove(long threshold) {
+        int above = 0;
+        for (long value : snapshot()) {
+            if (value > threshold) {
+                above++;
+            }
+        }
+        return above;
+    }
+}
@@ -0,0 +1,20 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Picks BitmapFactory's inSampleSize for decoding an image to a target
+ * size: the largest power of two that keeps both sides at least as
+ * large as requested, so the decoder does most of the shrinking and at
+ * most a quarter of the extra pixels are ever allocated.
+ */
+public final class SampleSize {
+    private SampleSize() {
+    }
+
+    public static int forTarget(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,109 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Recognizes a deliberate shake in a stream of accelerometer samples.
+ * A low-pass filter tracks gravity, and subtracting it leaves the
+ * device's own acceleration (a high-pass filter); each time its
+ * magnitude rises past the threshold counts as a peak. Enough peaks
+ * inside the window make a shake, after which the detector stays quiet
+ * for the cooldown, so one shake is reported once. Filtering follows
+ * the samples' timestamps, so batched or irregular delivery is fine.
+ */
+public class ShakeDetector {
+    public static final float DEFAULT_THRESHOLD = 12; // m/s^2 beyond gravity
+    public static final int DEFAULT_PEAKS = 4;
+    public static final long DEFAULT_WINDOW_NANOS = 1000000000L;
+    public static final long DEFAULT_COOLDOWN_NANOS = 2000000000L;
+
+    // Time constant of the gravity filter; slow tilting stays below it
+    private static final float GRAVITY_TIME_CONSTANT = 0.5f;
+
+    private final float threshold;
+    private final long windowNanos;
+    private final long cooldownNanos;
+    private final long[] peakTimes; // Ring of the most recent peaks
+    private int peakCount;
+    private int nextPeak;
+
+    private boolean started;
+    private long lastTimestamp;
+    private float gravityX, gravityY, gravityZ;
+    private boolean aboveThreshold; // Waits for the magnitude to fall before the next peak
+    private long quietUntil = Long.MIN_VALUE;
+
+    public ShakeDetector() {
+        this(DEFAULT_THRESHOLD, DEFAULT_PEAKS, DEFAULT_WINDOW_NANOS, DEFAULT_COOLDOWN_NANOS);
+    }
+
+    public ShakeDetector(float threshold, int peaks, long windowNanos, long cooldownNanos) {
+        if (peaks < 1) {
+            throw new IllegalArgumentException("peaks must be positive: " + peaks);
+        }
+        this.threshold = threshold;
+        this.windowNanos = windowNanos;
+        this.cooldownNanos = cooldownNanos;
+        peakTimes = new long[peaks];
+    }
+
+    // Feeds one sample in m/s^2, as SensorEvent reports it; returns true
+    // if it completes a shake
+    public boolean onSample(long timestampNanos, float x, float y, float z) {
+        if (!started) {
+            started = true;
+            gravityX = x;
+            gravityY = y;
+            gravityZ = z;
+            lastTimestamp = timestampNanos;
+            return false;
+        }
+
+        float dt = Math.max(0, (timestampNanos - lastTimestamp) / 1e9f);
+        lastTimestamp = timestampNanos;
+        float alpha = GRAVITY_TIME_CONSTANT / (GRAVITY_TIME_CONSTANT + dt);
+        gravityX = alpha * gravityX + (1 - alpha) * x;
+        gravityY = alpha * gravityY + (1 - alpha) * y;
+        gravityZ = alpha * gravityZ + (1 - alpha) * z;
+
+        float linearX = x - gravityX;
+        float linearY = y - gravityY;
+        float linearZ = z - gravityZ;
+        float magnitudeSquared = linearX * linearX + linearY * linearY + linearZ * linearZ;
+
+        // Rising edge past the threshold is a peak; re-arm below half of it
+        if (aboveThreshold) {
+            aboveThreshold = magnitudeSquared > threshold * threshold / 4;
+            return false;
+        }
+        if (magnitudeSquared <= threshold * threshold) {
+            return false;
+        }
+        aboveThreshold = true;
+
+        if (timestampNanos < quietUntil) {
+            return false;
+        }
+        return addPeak(timestampNanos);
+    }
+
+    private boolean addPeak(long timestampNanos) {
+        peakTimes[nextPeak] = timestampNanos;
+        nextPeak = (nextPeak + 1) % peakTimes.length;
+        peakCount = Math.min(peakCount + 1, peakTimes.length);
+
+        // With the ring full, nextPeak is the oldest of the last peaks
+        if (peakCount == peakTimes.length && timestampNanos - peakTimes[nextPeak] <= windowNanos) {
+            peakCount = 0;
+            quietUntil = timestampNanos + cooldownNanos;
+            return true;
+        }
+        return false;
+    }
+
+    // Forgets peaks and filter state, e.g. after the listener was paused
+    public void reset() {
+        started = false;
+        peakCount = 0;
+        aboveThreshold = false;
+        quietUntil = Long.MIN_VALUE;
+    }
+}
@@ -0,0 +1,131 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Turns batches of float touch samples into quadratic stroke segments.
+ * Each accepted sample becomes the control point of a quad ending halfway
+ * to the next one, so strokes stay smooth. A StrokeSimplifier picks the
+ * samples to accept; accepted ones are recorded in the pointer's slot.
+ */
+public class StrokeBuilder {
+    private final StrokeSimplifier simplifier;
+    private final float[] accepted = new float[2];
+
+    // Output of the last batch: controlX, controlY, endX, endY per segment
+    private float[] segments = new float[64];
+    private int segmentCount;
+
+    // Bounds of every point the last batch touched, including its start
+    private float left, top, right, bottom;
+
+    // Keeps samples that moved touchTolerance along either axis
+    public StrokeBuilder(float touchTolerance) {
+        this(new ToleranceSimplifier(touchTolerance));
+    }
+
+    public StrokeBuilder(StrokeSimplifier simplifier) {
+        this.simplifier = simplifier;
+    }
+
+    // Call after the slot for id has been started at (x, y)
+    public void start(int id, float x, float y) {
+        simplifier.start(id, x, y);
+    }
+
+    // Consumes count samples for pointer id and returns the number of segments built
+    public int addSamples(PointerSlotTable slots, int id, float[] xs, float[] ys, int count) {
+        float lastX = slots.getLastX(id);
+        float lastY = slots.getLastY(id);
+        float endX = slots.getEndX(id);
+        float endY = slots.getEndY(id);
+
+        segmentCount = 0;
+        left = right = endX;
+        top = bottom = endY;
+
+        for (int i = 0; i < count; i++) {
+            // Skip samples the simplifier can do without
+            if (!simplifier.offer(id, lastX, lastY, xs[i], ys[i], accepted)) {
+                continue;
+            }
+
+            float x = accepted[0];
+            float y = accepted[1];
+            endX = (x + lastX) / 2;
+            endY = (y + lastY) / 2;
+            appendSegment(lastX, lastY, endX, endY);
+            slots.addPoint(id, x, y);
+            lastX = x;
+            lastY = y;
+        }
+
+        slots.setLast(id, lastX, lastY);
+        slots.setEnd(id, endX, endY);
+        return segmentCount;
+    }
+
+    // Builds the segment for a point the simplifier held back, if any,
+    // before the stroke ends; returns the number of segments built
+    public int finish(PointerSlotTable slots, int id) {
+        float lastX = slots.getLastX(id);
+        float lastY = slots.getLastY(id);
+        segmentCount = 0;
+        left = right = slots.getEndX(id);
+        top = bottom = slots.getEndY(id);
+
+        if (simplifier.finish(id, lastX, lastY, accepted)) {
+            float endX = (accepted[0] + lastX) / 2;
+            float endY = (accepted[1] + lastY) / 2;
+            appendSegment(lastX, lastY, endX, endY);
+            slots.addPoint(id, accepted[0], accepted[1]);
+            slots.setLast(id, accepted[0], accepted[1]);
+            slots.setEnd(id, endX, endY);
+        }
+        return segmentCount;
+    }
+
+    private void appendSegment(float controlX, float controlY, float endX, float endY) {
+        int offset = segmentCount * 4;
+        if (offset + 4 > segments.length) {
+            float[] grown = new float[segments.length * 2];
+            System.arraycopy(segments, 0, grown, 0, offset);
+            segments = grown;
+        }
+
+        segments[offset] = controlX;
+        segments[offset + 1] = controlY;
+        segments[offset + 2] = endX;
+        segments[offset + 3] = endY;
+        segmentCount++;
+
+        // A quad stays inside the hull of its start, control and end points
+        left = Math.min(left, Math.min(controlX, endX));
+        top = Math.min(top, Math.min(controlY, endY));
+        right = Math.max(right, Math.max(controlX, endX));
+        bottom = Math.max(bottom, Math.max(controlY, endY));
+    }
+
+    // Segments of the last batch, four floats each
+    public float[] getSegments() {
+        return segments;
+    }
+
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+}
@@ -0,0 +1,279 @@
+package com.rushlimit.doodlz;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Append-only log of drawing commands, the source of truth for a doodle.
+ * Commands are kept in parallel primitive arrays and stroke points are
+ * packed as x, y pairs into one float array, so the log stays compact
+ * and can be re-rendered at any resolution. Undo moves the end of the
+ * log back; undone commands are kept for redo until the next append.
+ */
+public class StrokeLog {
+    // Command kinds
+    public static final byte KIND_STROKE = 0;
+    public static final byte KIND_CLEAR = 1;
+    public static final byte KIND_FILL = 2; // One point, the seed; width holds the tolerance
+    public static final byte KIND_VARIABLE_STROKE = 3; // Points, then each point's width; see getPointWidthOffset
+
+    // Highest stroke cap: Paint.Cap's BUTT, ROUND and SQUARE
+    public static final int MAX_CAP = 2;
+
+    // Most points readFrom accepts in one command; far more than any
+    // stroke holds, and small enough that the float count can't overflow
+    private static final int MAX_READ_POINT_COUNT = 1 << 24;
+
+    // Bytes each command costs in the parallel arrays below
+    private static final int BYTES_PER_COMMAND = 1 + 4 + 4 + 1 + 4 + 4;
+
+    private byte[] kinds = new byte[16];
+    private int[] colors = new int[16];
+    private float[] widths = new float[16];
+    private byte[] caps = new byte[16];
+    private int[] pointOffsets = new int[16]; // Index of the first x in coords
+    private int[] pointCounts = new int[16];
+    private int size;
+    private int retainedSize; // Includes undone commands that can be redone
+
+    private float[] coords = new float[256];
+    private int coordCount;
+
+    // Appends a stroke of pointCount points read as x, y pairs from xy at offset
+    public void appendStroke(int color, float width, int cap, float[] xy, int offset, int pointCount) {
+        int index = appendCommand(KIND_STROKE);
+        colors[index] = color;
+        widths[index] = width;
+        caps[index] = (byte) cap;
+        pointOffsets[index] = coordCount;
+        pointCounts[index] = pointCount;
+
+        ensureCoordCapacity(coordCount + pointCount * 2);
+        System.arraycopy(xy, offset, coords, coordCount, pointCount * 2);
+        coordCount += pointCount * 2;
+    }
+
+    // Appends a stroke whose width varies: pointWidths holds one width
+    // per point from widthOffset; width is the brush's own
+    public void appendVariableStroke(int color, float width, int cap, float[] xy, int offset,
+                                     float[] pointWidths, int widthOffset, int pointCount) {
+        int index = appendCommand(KIND_VARIABLE_STROKE);
+        colors[index] = color;
+        widths[index] = width;
+        caps[index] = (byte) cap;
+        pointOffsets[index] = coordCount;
+        pointCounts[index] = pointCount;
+
+        ensureCoordCapacity(coordCount + pointCount * 3);
+        System.arraycopy(xy, offset, coords, coordCount, pointCount * 2);
+        System.arraycopy(pointWidths, widthOffset, coords, coordCount + pointCount * 2, pointCount);
+        coordCount += pointCount * 3;
+    }
+
+    public void appendClear() {
+        int index = appendCommand(KIND_CLEAR);
+        pointOffsets[index] = coordCount;
+    }
+
+    // Appends a paint-bucket fill of color seeded at (x, y)
+    public void appendFill(int color, float x, float y, int tolerance) {
+        int index = appendCommand(KIND_FILL);
+        colors[index] = color;
+        widths[index] = tolerance;
+        pointOffsets[index] = coordCount;
+        pointCounts[index] = 1;
+
+        ensureCoordCapacity(coordCount + 2);
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    private int appendCommand(byte kind) {
+        // Appending discards the undone commands and their points
+        if (retainedSize > size) {
+            coordCount = size == 0 ? 0 : getCoordEnd(size - 1);
+        }
+
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            colors = Arrays.copyOf(colors, capacity);
+            widths = Arrays.copyOf(widths, capacity);
+            caps = Arrays.copyOf(caps, capacity);
+            pointOffsets = Arrays.copyOf(pointOffsets, capacity);
+            pointCounts = Arrays.copyOf(pointCounts, capacity);
+        }
+
+        kinds[size] = kind;
+        colors[size] = 0;
+        widths[size] = 0;
+        caps[size] = 0;
+        pointCounts[size] = 0;
+        retainedSize = size + 1;
+        return size++;
+    }
+
+    private void ensureCoordCapacity(int capacity) {
+        if (capacity > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(capacity, coords.length * 2));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getRetainedSize() {
+        return retainedSize;
+    }
+
+    // Moves the end of the log for undo or redo, within the retained commands
+    public void setSize(int size) {
+        if (size < 0 || size > retainedSize) {
+            throw new IllegalArgumentException("Size " + size + " outside 0.." + retainedSize);
+        }
+        this.size = size;
+    }
+
+    public byte getKind(int index) {
+        return kinds[index];
+    }
+
+    public int getColor(int index) {
+        return colors[index];
+    }
+
+    public float getWidth(int index) {
+        return widths[index];
+    }
+
+    public int getCap(int index) {
+        return caps[index];
+    }
+
+    // Index into getCoords() of the command's first x coordinate
+    public int getPointOffset(int index) {
+        return pointOffsets[index];
+    }
+
+    public int getPointCount(int index) {
+        return pointCounts[index];
+    }
+
+    // Index into getCoords() of a variable stroke's first point width
+    public int getPointWidthOffset(int index) {
+        return pointOffsets[index] + pointCounts[index] * 2;
+    }
+
+    // Index just past the command's floats in coords
+    private int getCoordEnd(int index) {
+        return pointOffsets[index] + pointCounts[index] * getFloatsPerPoint(kinds[index]);
+    }
+
+    private static int getFloatsPerPoint(byte kind) {
+        return kind == KIND_VARIABLE_STROKE ? 3 : 2;
+    }
+
+    // Packed x, y pairs of every stroke; only valid up to the last command's points
+    public float[] getCoords() {
+        return coords;
+    }
+
+    // Bytes of command and point data the log holds
+    public long getByteSize() {
+        return (long) size * BYTES_PER_COMMAND + (long) coordCount * 4;
+    }
+
+    // Bytes the log has allocated, including spare capacity
+    public long getAllocatedByteSize() {
+        return (long) kinds.length * BYTES_PER_COMMAND + (long) coords.length * 4;
+    }
+
+    // Copy of the visible commands, safe to hand to another thread
+    public StrokeLog copy() {
+        StrokeLog copy = new StrokeLog();
+        int capacity = Math.max(size, 1);
+        copy.kinds = Arrays.copyOf(kinds, capacity);
+        copy.colors = Arrays.copyOf(colors, capacity);
+        copy.widths = Arrays.copyOf(widths, capacity);
+        copy.caps = Arrays.copyOf(caps, capacity);
+        copy.pointOffsets = Arrays.copyOf(pointOffsets, capacity);
+        copy.pointCounts = Arrays.copyOf(pointCounts, capacity);
+        copy.size = size;
+        copy.retainedSize = size;
+        copy.coordCount = size == 0 ? 0 : getCoordEnd(size - 1);
+        copy.coords = Arrays.copyOf(coords, Math.max(copy.coordCount, 2));
+        return copy;
+    }
+
+    // Writes the visible commands; undone ones are left out
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeByte(kinds[i]);
+            out.writeInt(colors[i]);
+            out.writeFloat(widths[i]);
+            out.writeByte(caps[i]);
+            out.writeInt(pointCounts[i]);
+
+            int end = getCoordEnd(i);
+            for (int c = pointOffsets[i]; c < end; c++) {
+                out.writeFloat(coords[c]);
+            }
+        }
+    }
+
+    public static StrokeLog readFrom(DataInput in) throws IOException {
+        StrokeLog log = new StrokeLog();
+        int commandCount = in.readInt();
+        if (commandCount < 0) {
+            throw new IOException("Bad command count " + commandCount);
+        }
+        float[] points = new float[64];
+
+        for (int i = 0; i < commandCount; i++) {
+            byte kind = in.readByte();
+            int color = in.readInt();
+            float width = in.readFloat();
+            byte cap = in.readByte();
+            int pointCount = in.readInt();
+
+            if (kind < KIND_STROKE || kind > KIND_VARIABLE_STROKE) {
+                throw new IOException("Unknown command kind " + kind);
+            }
+            // Strokes are rendered from their first point and through their cap
+            boolean stroke = kind == KIND_STROKE || kind == KIND_VARIABLE_STROKE;
+            if (pointCount < 0 || pointCount > MAX_READ_POINT_COUNT
+                    || (kind == KIND_FILL && pointCount != 1) || (stroke && pointCount < 1)) {
+                throw new IOException("Bad point count " + pointCount + " for command kind " + kind);
+            }
+            if (stroke && (cap < 0 || cap > MAX_CAP)) {
+                throw new IOException("Unknown stroke cap " + cap);
+            }
+            if (kind == KIND_CLEAR) {
+                log.appendClear();
+                continue;
+            }
+
+            // Grown as points arrive, so a count larger than the data
+            // ends in EOFException rather than a huge allocation
+            int floatCount = pointCount * getFloatsPerPoint(kind);
+            for (int c = 0; c < floatCount; c++) {
+                if (c == points.length) {
+                    points = Arrays.copyOf(points, Math.min(floatCount, c * 2));
+                }
+                points[c] = in.readFloat();
+            }
+            if (kind == KIND_FILL) {
+                log.appendFill(color, points[0], points[1], (int) width);
+            } else if (kind == KIND_VARIABLE_STROKE) {
+                log.appendVariableStroke(color, width, cap, points, 0, points, pointCount * 2, pointCount);
+            } else {
+                log.appendStroke(color, width, cap, points, 0, pointCount);
+            }
+        }
+        return log;
+    }
+}
@@ -0,0 +1,112 @@
+package com.rushlimit.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * A batch of triangle strips in reusable arrays, laid out for one
+ * Canvas.drawVertices call in TRIANGLE_STRIP mode: packed x, y vertices
+ * and one color per vertex. Strips from different strokes are joined
+ * with degenerate triangles, which cover no pixels, so any number of
+ * strokes of any colors draw in a single call.
+ */
+public class StrokeMesh {
+    private float[] vertices = new float[512];
+    private int[] colors = new int[256];
+    private int vertexCount;
+    private boolean stripPending; // Next vertex starts a strip and is doubled
+    private Object owner; // Who is adding to the current strip
+
+    private float left, top, right, bottom;
+
+    public StrokeMesh() {
+        reset();
+    }
+
+    // Empties the batch, keeping its arrays
+    public void reset() {
+        vertexCount = 0;
+        stripPending = false;
+        owner = null;
+        left = top = Float.POSITIVE_INFINITY;
+        right = bottom = Float.NEGATIVE_INFINITY;
+    }
+
+    // Starts a new strip for owner, unconnected to the one before
+    public void beginStrip(Object owner) {
+        this.owner = owner;
+        if (vertexCount > 0) {
+            // Repeating the last vertex and the next one joins the strips
+            // with triangles of zero area
+            ensureCapacity(vertexCount + 1);
+            vertices[vertexCount * 2] = vertices[vertexCount * 2 - 2];
+            vertices[vertexCount * 2 + 1] = vertices[vertexCount * 2 - 1];
+            colors[vertexCount] = colors[vertexCount - 1];
+            vertexCount++;
+            stripPending = true;
+        }
+    }
+
+    // The object whose strip the next vertex extends, if any
+    public Object getOwner() {
+        return owner;
+    }
+
+    public void add(float x, float y, int color) {
+        int count = stripPending ? 2 : 1;
+        stripPending = false;
+        ensureCapacity(vertexCount + count);
+        for (int i = 0; i < count; i++) {
+            vertices[vertexCount * 2] = x;
+            vertices[vertexCount * 2 + 1] = y;
+            colors[vertexCount] = color;
+            vertexCount++;
+        }
+
+        left = Math.min(left, x);
+        top = Math.min(top, y);
+        right = Math.max(right, x);
+        bottom = Math.max(bottom, y);
+    }
+
+    private void ensureCapacity(int count) {
+        if (count > colors.length) {
+            int capacity = Math.max(count, colors.length * 2);
+            vertices = Arrays.copyOf(vertices, capacity * 2);
+            colors = Arrays.copyOf(colors, capacity);
+        }
+    }
+
+    public boolean isEmpty() {
+        return vertexCount == 0;
+    }
+
+    // Logical vertices; drawVertices wants twice this, the float count
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    public int[] getColors() {
+        return colors;
+    }
+
+    // Bounds of every vertex in the batch
+    public float getLeft() {
+        return left;
+    }
+
+    public float getTop() {
+        return top;
+    }
+
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+}
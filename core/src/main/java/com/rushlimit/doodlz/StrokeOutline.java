@@ -0,0 +1,155 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Builds the filled outline of one variable-width stroke into a
+ * StrokeMesh as it grows. Each quad the StrokeBuilder produces is
+ * flattened into short pieces, and every piece adds a pair of vertices
+ * on either side of the centerline, half the width away. Turns are
+ * covered by a wedge between the pieces' pairs, and round caps close
+ * both ends. Vertices only ever get appended, so a live stroke can be
+ * drawn piece by piece without redrawing what is already down.
+ */
+public class StrokeOutline {
+    // Longest piece a quad is flattened into, in pixels
+    private static final float MAX_PIECE_LENGTH = 4;
+    private static final int MAX_PIECES_PER_QUAD = 16;
+    private static final int MAX_CAP_STEPS = 8;
+
+    private int color;
+    private float x, y; // End of the centerline so far
+    private float width; // Width at (x, y)
+    private float normalX, normalY; // Unit normal of the last piece
+    private boolean hasPieces;
+
+    // Called before the stroke's first quad; nothing is drawn until then
+    public void start(float x, float y, float width, int color) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.color = color;
+        hasPieces = false;
+    }
+
+    // Continues the centerline along the quad from the current end,
+    // with the width changing linearly to endWidth
+    public void quadTo(float controlX, float controlY, float endX, float endY, float endWidth, StrokeMesh mesh) {
+        float startX = x;
+        float startY = y;
+        float startWidth = width;
+        float length = distance(startX, startY, controlX, controlY) + distance(controlX, controlY, endX, endY);
+        int pieces = Math.max(1, Math.min(MAX_PIECES_PER_QUAD, (int) Math.ceil(length / MAX_PIECE_LENGTH)));
+
+        for (int i = 1; i <= pieces; i++) {
+            float t = (float) i / pieces;
+            float u = 1 - t;
+            float px = u * u * startX + 2 * u * t * controlX + t * t * endX;
+            float py = u * u * startY + 2 * u * t * controlY + t * t * endY;
+            lineTo(px, py, startWidth + (endWidth - startWidth) * t, mesh);
+        }
+    }
+
+    // Outlines a KIND_VARIABLE_STROKE from the log whole, with the same
+    // quads and widths it was drawn with live: each point is the control
+    // of a quad ending halfway to the next, at that next point's width
+    public void outline(StrokeLog log, int index, StrokeMesh mesh) {
+        float[] coords = log.getCoords();
+        int offset = log.getPointOffset(index);
+        int widthOffset = log.getPointWidthOffset(index);
+        int count = log.getPointCount(index);
+
+        start(coords[offset], coords[offset + 1], coords[widthOffset], log.getColor(index));
+        for (int i = 1; i < count; i++) {
+            float lastX = coords[offset + i * 2 - 2];
+            float lastY = coords[offset + i * 2 - 1];
+            float x = coords[offset + i * 2];
+            float y = coords[offset + i * 2 + 1];
+            quadTo(lastX, lastY, (x + lastX) / 2, (y + lastY) / 2, coords[widthOffset + i], mesh);
+        }
+        finish(mesh);
+    }
+
+    public void lineTo(float toX, float toY, float toWidth, StrokeMesh mesh) {
+        float dx = toX - x;
+        float dy = toY - y;
+        float length = (float) Math.sqrt(dx * dx + dy * dy);
+        if (length < 1e-3f) {
+            width = toWidth;
+            return;
+        }
+        float nx = -dy / length;
+        float ny = dx / length;
+
+        if (!hasPieces) {
+            mesh.beginStrip(this);
+            // The start cap ends with the pair across the start point
+            addCap(x, y, width / 2, -dx / length, -dy / length, nx, ny, true, mesh);
+            hasPieces = true;
+        } else {
+            continueStrip(mesh);
+            // A pair across the joint along the new normal closes the outer wedge
+            addPair(x, y, width / 2, nx, ny, mesh);
+        }
+        addPair(toX, toY, toWidth / 2, nx, ny, mesh);
+
+        x = toX;
+        y = toY;
+        width = toWidth;
+        normalX = nx;
+        normalY = ny;
+    }
+
+    // Closes the stroke with a round cap; a stroke that never moved
+    // becomes a dot
+    public void finish(StrokeMesh mesh) {
+        float radius = width / 2;
+        if (!hasPieces) {
+            mesh.beginStrip(this);
+            addCap(x, y, radius, -1, 0, 0, 1, true, mesh);
+            addCap(x, y, radius, 1, 0, 0, 1, false, mesh);
+            return;
+        }
+        continueStrip(mesh);
+        addCap(x, y, radius, normalY, -normalX, normalX, normalY, false, mesh);
+    }
+
+    // Other strokes may have added strips since this one last did; if so,
+    // start a new strip from this stroke's last pair
+    private void continueStrip(StrokeMesh mesh) {
+        if (mesh.getOwner() != this || mesh.isEmpty()) {
+            mesh.beginStrip(this);
+            addPair(x, y, width / 2, normalX, normalY, mesh);
+        }
+    }
+
+    private void addPair(float centerX, float centerY, float halfWidth, float nx, float ny, StrokeMesh mesh) {
+        mesh.add(centerX + nx * halfWidth, centerY + ny * halfWidth, color);
+        mesh.add(centerX - nx * halfWidth, centerY - ny * halfWidth, color);
+    }
+
+    // A half disc pointing along (axisX, axisY), as pairs either side of
+    // the axis from the tip to the full width, or back for an end cap
+    private void addCap(float centerX, float centerY, float radius, float axisX, float axisY,
+                        float nx, float ny, boolean towardCenter, StrokeMesh mesh) {
+        int steps = Math.max(2, Math.min(MAX_CAP_STEPS, (int) Math.ceil(radius / 2)));
+        for (int i = 0; i <= steps; i++) {
+            int step = towardCenter ? i : steps - i;
+            double angle = Math.PI / 2 * step / steps;
+            float along = (float) Math.cos(angle) * radius;
+            float across = (float) Math.sin(angle) * radius;
+            float ax = centerX + axisX * along;
+            float ay = centerY + axisY * along;
+            mesh.add(ax + nx * across, ay + ny * across, color);
+            mesh.add(ax - nx * across, ay - ny * across, color);
+        }
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    private static float distance(float x1, float y1, float x2, float y2) {
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
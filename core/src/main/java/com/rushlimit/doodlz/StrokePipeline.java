@@ -0,0 +1,59 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Turns raw multi-pointer touch samples into smoothed stroke geometry,
+ * with no dependency on Android, so the same code runs in DoodleView and
+ * in JVM tests and benchmarks. Pointers are identified by small ids, as
+ * MotionEvent assigns them.
+ */
+public interface StrokePipeline {
+    // Highest pointer id plus one that the pipeline can track
+    int getCapacity();
+
+    // Starts a stroke at (x, y); false if id is beyond the capacity
+    boolean start(int id, float x, float y);
+
+    // Consumes count samples for pointer id and returns the number of
+    // segments built; see getSegments
+    int addSamples(int id, float[] xs, float[] ys, int count);
+
+    // Segments of the last addSamples call: controlX, controlY, endX, endY
+    // of one quadratic curve each
+    float[] getSegments();
+
+    // Bounds of every point the last addSamples call touched
+    float getLeft();
+
+    float getTop();
+
+    float getRight();
+
+    float getBottom();
+
+    // Builds segments for samples held back at the end of the stroke;
+    // call before end. Returns the number of segments, like addSamples.
+    int finish(int id);
+
+    // Ends the stroke; its points stay readable until id starts again
+    void end(int id);
+
+    // Drops every live stroke
+    void clear();
+
+    boolean isActive(int id);
+
+    int getActiveCount();
+
+    // Id of the index-th live stroke, for iterating over them
+    int getActiveId(int index);
+
+    // Where the stroke's geometry currently ends
+    float getEndX(int id);
+
+    float getEndY(int id);
+
+    // Accepted points of the stroke, packed x, y
+    float[] getPoints(int id);
+
+    int getPointCount(int id);
+}
@@ -0,0 +1,18 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Decides which touch samples of a stroke StrokeBuilder keeps. Samples
+ * are offered one at a time with the last accepted point; a simplifier
+ * may hold samples back and accept one later, at most one per offer.
+ */
+public interface StrokeSimplifier {
+    // A stroke for pointer id starts at (x, y)
+    void start(int id, float x, float y);
+
+    // Offers the next sample; returns true with the accepted point in
+    // accepted[0], accepted[1] if one was accepted
+    boolean offer(int id, float lastX, float lastY, float x, float y, float[] accepted);
+
+    // The stroke is ending; returns true with a held back final point
+    boolean finish(int id, float lastX, float lastY, float[] accepted);
+}
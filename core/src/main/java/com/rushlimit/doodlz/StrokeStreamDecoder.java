@@ -0,0 +1,85 @@
+package com.rushlimit.doodlz;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * Reads frames written by a StrokeStreamEncoder and reports their
+ * messages in order. Positions are tracked per pointer id across
+ * frames, so one decoder must see every frame of a stream.
+ */
+public class StrokeStreamDecoder {
+    public interface Listener {
+        void onStart(int id, float x, float y, int color, float width, int cap);
+
+        // xs and ys are reused by the next MOVE
+        void onMove(int id, float[] xs, float[] ys, int count);
+
+        void onEnd(int id);
+
+        void onClear();
+    }
+
+    private final int[] lastX = new int[StrokeStreamEncoder.MAX_POINTER_ID + 1];
+    private final int[] lastY = new int[StrokeStreamEncoder.MAX_POINTER_ID + 1];
+    private float[] xs = new float[64];
+    private float[] ys = new float[64];
+
+    public void read(byte[] frame, Listener listener) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(frame);
+        DataInputStream in = new DataInputStream(bytes);
+        while (bytes.available() > 0) {
+            int type = VarInt.read(in);
+            switch (type) {
+                case StrokeStreamEncoder.START: {
+                    int id = readId(in);
+                    lastX[id] = VarInt.readSigned(in);
+                    lastY[id] = VarInt.readSigned(in);
+                    int color = VarInt.read(in);
+                    float width = VarInt.read(in) / StrokeStreamEncoder.SUBPIXELS;
+                    int cap = VarInt.read(in);
+                    listener.onStart(id, lastX[id] / StrokeStreamEncoder.SUBPIXELS,
+                            lastY[id] / StrokeStreamEncoder.SUBPIXELS, color, width, cap);
+                    break;
+                }
+                case StrokeStreamEncoder.MOVE: {
+                    int id = readId(in);
+                    int count = VarInt.read(in);
+                    // Every sample takes at least two bytes
+                    if (count < 0 || count > bytes.available() / 2) {
+                        throw new IOException("Bad sample count: " + count);
+                    }
+                    if (count > xs.length) {
+                        xs = new float[count];
+                        ys = new float[count];
+                    }
+                    for (int i = 0; i < count; i++) {
+                        lastX[id] += VarInt.readSigned(in);
+                        lastY[id] += VarInt.readSigned(in);
+                        xs[i] = lastX[id] / StrokeStreamEncoder.SUBPIXELS;
+                        ys[i] = lastY[id] / StrokeStreamEncoder.SUBPIXELS;
+                    }
+                    listener.onMove(id, xs, ys, count);
+                    break;
+                }
+                case StrokeStreamEncoder.END:
+                    listener.onEnd(readId(in));
+                    break;
+                case StrokeStreamEncoder.CLEAR:
+                    listener.onClear();
+                    break;
+                default:
+                    throw new IOException("Unknown message type: " + type);
+            }
+        }
+    }
+
+    private static int readId(DataInputStream in) throws IOException {
+        int id = VarInt.read(in);
+        if (id < 0 || id > StrokeStreamEncoder.MAX_POINTER_ID) {
+            throw new IOException("Pointer id out of range: " + id);
+        }
+        return id;
+    }
+}
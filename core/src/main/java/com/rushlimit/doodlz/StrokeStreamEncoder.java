@@ -0,0 +1,111 @@
+package com.rushlimit.doodlz;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Batches stroke events into frames for a collaborator. Each frame is
+ * a run of messages:
+ *
+ * <pre>
+ * START  type, pointer id, x, y, color, width, cap
+ * MOVE   type, pointer id, sample count, per sample the x and y deltas
+ *        from the pointer's last position
+ * END    type, pointer id
+ * CLEAR  type
+ * </pre>
+ * Everything is a VarInt. Positions and widths are in 1/16 px and
+ * zigzagged; a START's position is a delta from the origin. Deltas are
+ * taken between rounded positions, so rounding never accumulates.
+ */
+public class StrokeStreamEncoder {
+    public static final int START = 1;
+    public static final int MOVE = 2;
+    public static final int END = 3;
+    public static final int CLEAR = 4;
+
+    public static final int MAX_POINTER_ID = PointerSlotTable.DEFAULT_CAPACITY - 1;
+    static final float SUBPIXELS = 16;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final int[] lastX = new int[MAX_POINTER_ID + 1];
+    private final int[] lastY = new int[MAX_POINTER_ID + 1];
+
+    public void start(int id, float x, float y, int color, float width, int cap) {
+        checkId(id);
+        try {
+            VarInt.write(out, START);
+            VarInt.write(out, id);
+            lastX[id] = Math.round(x * SUBPIXELS);
+            lastY[id] = Math.round(y * SUBPIXELS);
+            VarInt.writeSigned(out, lastX[id]);
+            VarInt.writeSigned(out, lastY[id]);
+            VarInt.write(out, color);
+            VarInt.write(out, Math.round(width * SUBPIXELS));
+            VarInt.write(out, cap);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Memory streams don't throw
+        }
+    }
+
+    public void move(int id, float[] xs, float[] ys, int count) {
+        checkId(id);
+        try {
+            VarInt.write(out, MOVE);
+            VarInt.write(out, id);
+            VarInt.write(out, count);
+            for (int i = 0; i < count; i++) {
+                int x = Math.round(xs[i] * SUBPIXELS);
+                int y = Math.round(ys[i] * SUBPIXELS);
+                VarInt.writeSigned(out, x - lastX[id]);
+                VarInt.writeSigned(out, y - lastY[id]);
+                lastX[id] = x;
+                lastY[id] = y;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void end(int id) {
+        checkId(id);
+        try {
+            VarInt.write(out, END);
+            VarInt.write(out, id);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void clear() {
+        try {
+            VarInt.write(out, CLEAR);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public boolean isEmpty() {
+        return bytes.size() == 0;
+    }
+
+    // Bytes batched since the last frame was taken
+    public int size() {
+        return bytes.size();
+    }
+
+    // Returns the messages batched so far as one frame and starts the next
+    public byte[] takeFrame() {
+        byte[] frame = bytes.toByteArray();
+        bytes.reset();
+        return frame;
+    }
+
+    private static void checkId(int id) {
+        if (id < 0 || id > MAX_POINTER_ID) {
+            throw new IllegalArgumentException("Pointer id out of range: " + id);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.rushlimit.doodlz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Encoded thumbnails kept on disk across sessions, one file per key. The
+ * directory is bounded in bytes: when it grows past the limit, the files
+ * read or written longest ago are deleted. Everything here can be
+ * rebuilt from the original images, so it belongs in a cache directory.
+ * Thread-safe.
+ */
+public class ThumbnailDiskCache {
+    private final File directory;
+    private final long maxBytes;
+    private long byteSize;
+
+    public ThumbnailDiskCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                byteSize += file.length();
+            }
+        }
+    }
+
+    public synchronized void write(long key, byte[] data, int length) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        File file = fileFor(key);
+        byteSize -= file.length();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data, 0, length);
+        } finally {
+            out.close();
+        }
+        byteSize += length;
+
+        if (byteSize > maxBytes) {
+            trimTo(maxBytes * 3 / 4); // Leave room so the next writes don't trim again
+        }
+    }
+
+    // Returns the thumbnail, or null if key is not cached
+    public synchronized byte[] read(long key) throws IOException {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int count = in.read(data, offset, data.length - offset);
+                if (count < 0) {
+                    throw new IOException("Truncated thumbnail file " + file);
+                }
+                offset += count;
+            }
+        } finally {
+            in.close();
+        }
+
+        file.setLastModified(System.currentTimeMillis()); // Recently used; trimmed last
+        return data;
+    }
+
+    public synchronized void delete(long key) {
+        File file = fileFor(key);
+        long length = file.length();
+        if (file.delete()) {
+            byteSize -= length;
+        }
+    }
+
+    // Deletes the least recently used files until at most bytes remain
+    public synchronized void trimTo(long bytes) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final long[] modified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            modified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return modified[a] < modified[b] ? -1 : modified[a] > modified[b] ? 1 : 0;
+            }
+        });
+
+        for (int i = 0; i < order.length && byteSize > bytes; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                byteSize -= length;
+            }
+        }
+    }
+
+    public synchronized long getByteSize() {
+        return byteSize;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    private File fileFor(long key) {
+        return new File(directory, Long.toHexString(key));
+    }
+}
@@ -0,0 +1,145 @@
+package com.rushlimit.doodlz;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity least-recently-used cache of tiles keyed by int. Keys,
+ * values and use stamps live in parallel arrays, so lookups neither box
+ * keys nor allocate entries; a linear scan is cheap for the few dozen
+ * tiles a screen holds.
+ */
+public class TileCache<T> {
+    public interface EvictionListener<T> {
+        // Called when value leaves the cache to make room for another tile
+        void onTileEvicted(int key, T value);
+    }
+
+    private final int[] keys;
+    private final Object[] values;
+    private final long[] stamps;
+    private final EvictionListener<T> listener;
+    private int count;
+    private long clock;
+    private int hits;
+    private int misses;
+
+    public TileCache(int capacity, EvictionListener<T> listener) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        keys = new int[capacity];
+        values = new Object[capacity];
+        stamps = new long[capacity];
+        this.listener = listener;
+    }
+
+    // Returns the tile and marks it most recently used, or null
+    @SuppressWarnings("unchecked")
+    public T get(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        stamps[index] = ++clock;
+        return (T) values[index];
+    }
+
+    public boolean contains(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    // Adds or replaces a tile, evicting the least recently used one when full
+    @SuppressWarnings("unchecked")
+    public void put(int key, T value) {
+        int index = indexOf(key);
+        if (index < 0) {
+            if (count == keys.length) {
+                index = oldest();
+                T evicted = (T) values[index];
+                int evictedKey = keys[index];
+                removeAt(index);
+                listener.onTileEvicted(evictedKey, evicted);
+            }
+            index = count++;
+            keys[index] = key;
+        }
+        values[index] = value;
+        stamps[index] = ++clock;
+    }
+
+    // Removes a tile without notifying the listener
+    @SuppressWarnings("unchecked")
+    public T remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        T value = (T) values[index];
+        removeAt(index);
+        return value;
+    }
+
+    // Evicts every tile through the listener
+    @SuppressWarnings("unchecked")
+    public void evictAll() {
+        while (count > 0) {
+            int index = count - 1;
+            T value = (T) values[index];
+            int key = keys[index];
+            removeAt(index);
+            listener.onTileEvicted(key, value);
+        }
+    }
+
+    // Drops every tile without notifying the listener
+    public void clear() {
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return keys.length;
+    }
+
+    public int getHitCount() {
+        return hits;
+    }
+
+    public int getMissCount() {
+        return misses;
+    }
+
+    private int indexOf(int key) {
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int oldest() {
+        int oldest = 0;
+        for (int i = 1; i < count; i++) {
+            if (stamps[i] < stamps[oldest]) {
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    // Moves the last entry into the hole so the arrays stay dense
+    private void removeAt(int index) {
+        count--;
+        keys[index] = keys[count];
+        values[index] = values[count];
+        stamps[index] = stamps[count];
+        values[count] = null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.rushlimit.doodlz;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates tiles of ARGB pixels and inflates them back, reusing its
+ * buffers, Deflater and Inflater across tiles. Not thread-safe.
+ */
+public class TileCodec {
+    private final ByteBuffer pixelBytes;
+    private final IntBuffer pixelInts;
+    private final byte[] chunk = new byte[8192];
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+
+    public TileCodec(int maxPixels) {
+        pixelBytes = ByteBuffer.allocate(maxPixels * 4);
+        pixelInts = pixelBytes.asIntBuffer();
+    }
+
+    public byte[] compress(int[] pixels, int length) {
+        pixelInts.clear();
+        pixelInts.put(pixels, 0, length);
+
+        deflater.reset();
+        deflater.setInput(pixelBytes.array(), 0, length * 4);
+        deflater.finish();
+        compressed.reset();
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return compressed.toByteArray();
+    }
+
+    // Inflates exactly length pixels; returns false if data holds fewer
+    public boolean decompress(byte[] data, int offset, int dataLength, int[] pixels, int length)
+            throws DataFormatException {
+        int expected = length * 4;
+        inflater.reset();
+        inflater.setInput(data, offset, dataLength);
+
+        int inflated = 0;
+        while (inflated < expected && !inflater.finished() && !inflater.needsInput()) {
+            inflated += inflater.inflate(pixelBytes.array(), inflated, expected - inflated);
+        }
+        if (inflated != expected) {
+            return false;
+        }
+
+        pixelInts.clear();
+        pixelInts.get(pixels, 0, length);
+        return true;
+    }
+
+    public void end() {
+        deflater.end();
+        inflater.end();
+    }
+}
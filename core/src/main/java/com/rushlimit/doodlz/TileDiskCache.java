@@ -0,0 +1,87 @@
+package com.rushlimit.doodlz;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Spills encoded tiles to one file each in a cache directory, so tiles
+ * evicted from memory can be read back when the user pans to them.
+ */
+public class TileDiskCache {
+    private final File directory;
+    private long byteSize;
+
+    public TileDiskCache(File directory) {
+        this.directory = directory;
+        clear(); // Tiles from an earlier session are stale
+    }
+
+    public void write(int key, byte[] data) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+
+        File file = fileFor(key);
+        byteSize -= file.length();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        byteSize += data.length;
+    }
+
+    // Returns the spilled tile, or null if key was never written
+    public byte[] read(int key) throws IOException {
+        File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < data.length) {
+                int count = in.read(data, offset, data.length - offset);
+                if (count < 0) {
+                    throw new IOException("Truncated tile file " + file);
+                }
+                offset += count;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    public void delete(int key) {
+        File file = fileFor(key);
+        long length = file.length();
+        if (file.delete()) {
+            byteSize -= length;
+        }
+    }
+
+    public void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        byteSize = 0;
+    }
+
+    // Bytes currently spilled to disk
+    public long getByteSize() {
+        return byteSize;
+    }
+
+    private File fileFor(int key) {
+        return new File(directory, Integer.toHexString(key));
+    }
+}
@@ -0,0 +1,282 @@
+package com.rushlimit.doodlz;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+/**
+ * Undo/redo history that stores only the tiles each step touched,
+ * deflate-compressed, instead of full copies of the drawing. Steps are
+ * kept within a byte budget; the oldest history is evicted first.
+ */
+public class TileHistory {
+    public static final int TILE_SIZE = 128;
+
+    // Per-entry bookkeeping counted against the budget on top of tile data
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
+    private static final int TILE_OVERHEAD_BYTES = 24;
+
+    // Pixel storage the history reads tiles from and restores them to
+    public interface Surface {
+        int getWidth();
+
+        int getHeight();
+
+        void readPixels(int[] pixels, int x, int y, int width, int height);
+
+        void writePixels(int[] pixels, int x, int y, int width, int height);
+    }
+
+    private static class Entry {
+        int[] tiles; // Tile coordinates packed as tileY << 16 | tileX
+        int[] sizes; // Tile width << 16 | height, as captured
+        byte[][] data; // Compressed pixels of each tile
+        int tileCount;
+        int logMarkBefore; // StrokeLog size before and after the step
+        int logMarkAfter;
+        long bytes;
+    }
+
+    private final ArrayDeque<Entry> undoStack = new ArrayDeque<>();
+    private final ArrayDeque<Entry> redoStack = new ArrayDeque<>();
+    private long budgetBytes;
+    private long historyBytes;
+
+    // Step being recorded and the tiles it has captured so far
+    private Surface surface;
+    private Entry pending;
+    private boolean[] captured = new boolean[0];
+    private int tilesAcross;
+
+    // Scratch space reused for every tile
+    private final int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+    private final TileCodec codec = new TileCodec(TILE_SIZE * TILE_SIZE);
+
+    public TileHistory(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    // Starts recording a step; ends the previous one if it is still open
+    public void beginStep(Surface surface, int logMark) {
+        endStep(logMark);
+
+        this.surface = surface;
+        tilesAcross = tilesFor(surface.getWidth());
+        int tileCount = tilesAcross * tilesFor(surface.getHeight());
+        if (captured.length < tileCount) {
+            captured = new boolean[tileCount];
+        }
+
+        pending = new Entry();
+        pending.tiles = new int[8];
+        pending.sizes = new int[8];
+        pending.data = new byte[8][];
+        pending.logMarkBefore = logMark;
+    }
+
+    public boolean isRecording() {
+        return pending != null;
+    }
+
+    // Saves the tiles covering [left, right) x [top, bottom) before they change
+    public void captureBefore(int left, int top, int right, int bottom) {
+        if (pending == null) {
+            return;
+        }
+
+        int firstX = Math.max(0, left / TILE_SIZE);
+        int firstY = Math.max(0, top / TILE_SIZE);
+        int lastX = Math.min(tilesAcross, tilesFor(right)) - 1;
+        int lastY = Math.min(tilesFor(surface.getHeight()), tilesFor(bottom)) - 1;
+
+        for (int tileY = firstY; tileY <= lastY; tileY++) {
+            for (int tileX = firstX; tileX <= lastX; tileX++) {
+                int index = tileY * tilesAcross + tileX;
+                if (!captured[index]) {
+                    captured[index] = true;
+
+                    // Edge tiles only cover what is left of the surface
+                    int width = Math.min(TILE_SIZE, surface.getWidth() - tileX * TILE_SIZE);
+                    int height = Math.min(TILE_SIZE, surface.getHeight() - tileY * TILE_SIZE);
+                    int tile = tileY << 16 | tileX;
+                    int size = width << 16 | height;
+                    addTile(pending, tile, size, compressTile(tile, size));
+                }
+            }
+        }
+    }
+
+    public void captureAll() {
+        if (surface != null) {
+            captureBefore(0, 0, surface.getWidth(), surface.getHeight());
+        }
+    }
+
+    // Finishes the open step; steps that touched no tiles are dropped
+    public void endStep(int logMark) {
+        if (pending == null) {
+            return;
+        }
+
+        releaseCaptured();
+
+        if (pending.tileCount > 0) {
+            pending.logMarkAfter = logMark;
+            undoStack.push(pending);
+            historyBytes += pending.bytes;
+
+            // A new step makes the redo history unreachable
+            while (!redoStack.isEmpty()) {
+                historyBytes -= redoStack.pop().bytes;
+            }
+            trimToBudget();
+        }
+        pending = null;
+    }
+
+    // Restores the last step and returns the StrokeLog size before it, or -1
+    public int undo(Surface surface) {
+        if (pending != null || undoStack.isEmpty()) {
+            return -1;
+        }
+
+        Entry entry = undoStack.pop();
+        swapTiles(entry, surface);
+        redoStack.push(entry);
+        return entry.logMarkBefore;
+    }
+
+    // Reapplies the last undone step and returns the StrokeLog size after it, or -1
+    public int redo(Surface surface) {
+        if (pending != null || redoStack.isEmpty()) {
+            return -1;
+        }
+
+        Entry entry = redoStack.pop();
+        swapTiles(entry, surface);
+        undoStack.push(entry);
+        return entry.logMarkAfter;
+    }
+
+    public boolean canUndo() {
+        return pending == null && !undoStack.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return pending == null && !redoStack.isEmpty();
+    }
+
+    public void clear() {
+        if (pending != null) {
+            releaseCaptured();
+            pending = null;
+        }
+        undoStack.clear();
+        redoStack.clear();
+        historyBytes = 0;
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        trimToBudget();
+    }
+
+    // Bytes currently held by undo and redo steps
+    public long getHistoryBytes() {
+        return historyBytes;
+    }
+
+    public int getUndoCount() {
+        return undoStack.size();
+    }
+
+    public int getRedoCount() {
+        return redoStack.size();
+    }
+
+    private void releaseCaptured() {
+        for (int i = 0; i < pending.tileCount; i++) {
+            int tile = pending.tiles[i];
+            captured[(tile >>> 16) * tilesAcross + (tile & 0xffff)] = false;
+        }
+    }
+
+    private void trimToBudget() {
+        // Evict the oldest undo steps first, then the furthest redo steps
+        while (historyBytes > budgetBytes && !undoStack.isEmpty()) {
+            historyBytes -= undoStack.removeLast().bytes;
+        }
+        while (historyBytes > budgetBytes && !redoStack.isEmpty()) {
+            historyBytes -= redoStack.removeLast().bytes;
+        }
+    }
+
+    // Exchanges each stored tile with what the surface currently shows. Tiles
+    // keep their position and size, so the surface may have grown since.
+    private void swapTiles(Entry entry, Surface target) {
+        this.surface = target;
+        historyBytes -= entry.bytes;
+        entry.bytes = ENTRY_OVERHEAD_BYTES;
+
+        for (int i = 0; i < entry.tileCount; i++) {
+            byte[] stored = entry.data[i];
+            entry.data[i] = compressTile(entry.tiles[i], entry.sizes[i]);
+            entry.bytes += entry.data[i].length + TILE_OVERHEAD_BYTES;
+            decompressTile(entry.tiles[i], entry.sizes[i], stored);
+        }
+        historyBytes += entry.bytes;
+    }
+
+    private void addTile(Entry entry, int tile, int size, byte[] data) {
+        if (entry.tileCount == entry.tiles.length) {
+            entry.tiles = Arrays.copyOf(entry.tiles, entry.tileCount * 2);
+            entry.sizes = Arrays.copyOf(entry.sizes, entry.tileCount * 2);
+            entry.data = Arrays.copyOf(entry.data, entry.tileCount * 2);
+        }
+
+        entry.tiles[entry.tileCount] = tile;
+        entry.sizes[entry.tileCount] = size;
+        entry.data[entry.tileCount] = data;
+        entry.tileCount++;
+        entry.bytes += data.length + TILE_OVERHEAD_BYTES;
+        if (entry.tileCount == 1) {
+            entry.bytes += ENTRY_OVERHEAD_BYTES;
+        }
+    }
+
+    private byte[] compressTile(int tile, int size) {
+        int x = (tile & 0xffff) * TILE_SIZE;
+        int y = (tile >>> 16) * TILE_SIZE;
+        int width = size >>> 16;
+        int height = size & 0xffff;
+        int length = width * height;
+
+        surface.readPixels(pixels, x, y, width, height);
+        return codec.compress(pixels, length);
+    }
+
+    private void decompressTile(int tile, int size, byte[] data) {
+        int x = (tile & 0xffff) * TILE_SIZE;
+        int y = (tile >>> 16) * TILE_SIZE;
+        int width = size >>> 16;
+        int height = size & 0xffff;
+        int length = width * height;
+
+        try {
+            if (!codec.decompress(data, 0, data.length, pixels, length)) {
+                throw new IllegalStateException("Truncated history tile");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt history tile", e);
+        }
+        surface.writePixels(pixels, x, y, width, height);
+    }
+
+    private static int tilesFor(int pixels) {
+        return (pixels + TILE_SIZE - 1) / TILE_SIZE;
+    }
+}
@@ -0,0 +1,33 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Accepts a sample once it has moved the touch tolerance along either
+ * axis from the last accepted point. Holds nothing back, so the stroke
+ * ends at its last accepted point.
+ */
+public class ToleranceSimplifier implements StrokeSimplifier {
+    private final float touchTolerance;
+
+    public ToleranceSimplifier(float touchTolerance) {
+        this.touchTolerance = touchTolerance;
+    }
+
+    @Override
+    public void start(int id, float x, float y) {
+    }
+
+    @Override
+    public boolean offer(int id, float lastX, float lastY, float x, float y, float[] accepted) {
+        if (Math.abs(x - lastX) < touchTolerance && Math.abs(y - lastY) < touchTolerance) {
+            return false;
+        }
+        accepted[0] = x;
+        accepted[1] = y;
+        return true;
+    }
+
+    @Override
+    public boolean finish(int id, float lastX, float lastY, float[] accepted) {
+        return false;
+    }
+}
@@ -0,0 +1,309 @@
+package com.rushlimit.doodlz;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A recorded stream of touch events: per event the masked action, the
+ * pointer it applies to, every pointer's id, and each pointer's position
+ * and pressure at every batched sample with the sample's time.
+ * Coordinates are kept at 1/16 pixel and pressures at 1/256, so a trace
+ * read back from its binary form replays exactly like the one that was
+ * recorded.
+ *
+ * <pre>
+ * header  magic, version, event count
+ * event   action, action index, pointer count (bytes), sample count,
+ *         pointer ids, per sample a time delta in ms, then per sample
+ *         and pointer the x and y deltas from that pointer id's last
+ *         position, in 1/16 px, and the pressure delta from its last
+ *         pressure, in 1/256
+ * </pre>
+ * All counts, ids and deltas are VarInts; deltas are zigzagged. Version 1
+ * traces have no pressures and read back with a pressure of 1.
+ */
+public class TouchTrace {
+    public static final int MAGIC = 0x44545243; // "DTRC"
+    public static final int VERSION = 2;
+
+    // Same values as MotionEvent's masked actions
+    public static final int ACTION_DOWN = 0;
+    public static final int ACTION_UP = 1;
+    public static final int ACTION_MOVE = 2;
+    public static final int ACTION_CANCEL = 3;
+    public static final int ACTION_POINTER_DOWN = 5;
+    public static final int ACTION_POINTER_UP = 6;
+
+    public static final int MAX_POINTER_ID = 255;
+    private static final float SUBPIXELS = 16;
+    private static final float PRESSURE_STEPS = 256;
+
+    private int eventCount;
+    private int[] actions = new int[64];
+    private int[] actionIndexes = new int[64];
+    private int[] pointerCounts = new int[64];
+    private int[] sampleCounts = new int[64];
+    private int[] pointerOffsets = new int[64]; // Into ids
+    private int[] sampleOffsets = new int[64]; // Into times
+    private int[] coordOffsets = new int[64]; // Into coords
+
+    private int[] ids = new int[64];
+    private int idCount;
+    private long[] times = new long[64];
+    private int timeCount;
+    private float[] coords = new float[256];
+    private int coordCount;
+    private float[] pressures = new float[128]; // One per coords pair
+
+    // Records an event with a pressure of 1 throughout
+    public void appendEvent(int action, int actionIndex, int pointerCount, int[] pointerIds,
+                            int sampleCount, long[] sampleTimes, float[] sampleCoords) {
+        appendEvent(action, actionIndex, pointerCount, pointerIds, sampleCount, sampleTimes, sampleCoords, null);
+    }
+
+    // Records an event. coords holds x, y for each pointer of each sample,
+    // sample-major: [(sample * pointerCount + pointer) * 2]; pressures is
+    // laid out the same way with one value per pointer sample
+    public void appendEvent(int action, int actionIndex, int pointerCount, int[] pointerIds,
+                            int sampleCount, long[] sampleTimes, float[] sampleCoords, float[] samplePressures) {
+        for (int p = 0; p < pointerCount; p++) {
+            if (pointerIds[p] < 0 || pointerIds[p] > MAX_POINTER_ID) {
+                throw new IllegalArgumentException("Pointer id out of range: " + pointerIds[p]);
+            }
+        }
+
+        if (eventCount == actions.length) {
+            int capacity = eventCount * 2;
+            actions = Arrays.copyOf(actions, capacity);
+            actionIndexes = Arrays.copyOf(actionIndexes, capacity);
+            pointerCounts = Arrays.copyOf(pointerCounts, capacity);
+            sampleCounts = Arrays.copyOf(sampleCounts, capacity);
+            pointerOffsets = Arrays.copyOf(pointerOffsets, capacity);
+            sampleOffsets = Arrays.copyOf(sampleOffsets, capacity);
+            coordOffsets = Arrays.copyOf(coordOffsets, capacity);
+        }
+        actions[eventCount] = action;
+        actionIndexes[eventCount] = actionIndex;
+        pointerCounts[eventCount] = pointerCount;
+        sampleCounts[eventCount] = sampleCount;
+        pointerOffsets[eventCount] = idCount;
+        sampleOffsets[eventCount] = timeCount;
+        coordOffsets[eventCount] = coordCount;
+        eventCount++;
+
+        ids = ensureCapacity(ids, idCount + pointerCount);
+        System.arraycopy(pointerIds, 0, ids, idCount, pointerCount);
+        idCount += pointerCount;
+
+        if (timeCount + sampleCount > times.length) {
+            times = Arrays.copyOf(times, Math.max(times.length * 2, timeCount + sampleCount));
+        }
+        System.arraycopy(sampleTimes, 0, times, timeCount, sampleCount);
+        timeCount += sampleCount;
+
+        int coordLength = sampleCount * pointerCount * 2;
+        if (coordCount + coordLength > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(coords.length * 2, coordCount + coordLength));
+        }
+        for (int i = 0; i < coordLength; i++) {
+            coords[coordCount + i] = Math.round(sampleCoords[i] * SUBPIXELS) / SUBPIXELS;
+        }
+
+        int pressureOffset = coordCount / 2;
+        int pressureLength = coordLength / 2;
+        if (pressureOffset + pressureLength > pressures.length) {
+            pressures = Arrays.copyOf(pressures, Math.max(pressures.length * 2, pressureOffset + pressureLength));
+        }
+        for (int i = 0; i < pressureLength; i++) {
+            pressures[pressureOffset + i] = samplePressures == null
+                    ? 1 : Math.round(samplePressures[i] * PRESSURE_STEPS) / PRESSURE_STEPS;
+        }
+        coordCount += coordLength;
+    }
+
+    private static int[] ensureCapacity(int[] array, int length) {
+        return length <= array.length ? array : Arrays.copyOf(array, Math.max(array.length * 2, length));
+    }
+
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    public int getAction(int event) {
+        return actions[event];
+    }
+
+    // Pointer index that went down or up; 0 for other actions
+    public int getActionIndex(int event) {
+        return actionIndexes[event];
+    }
+
+    public int getPointerCount(int event) {
+        return pointerCounts[event];
+    }
+
+    public int getPointerId(int event, int pointer) {
+        return ids[pointerOffsets[event] + pointer];
+    }
+
+    // Batched historical samples plus the current one
+    public int getSampleCount(int event) {
+        return sampleCounts[event];
+    }
+
+    // Uptime in milliseconds, as MotionEvent reports it
+    public long getSampleTime(int event, int sample) {
+        return times[sampleOffsets[event] + sample];
+    }
+
+    // Time of the event's current, last, sample
+    public long getEventTime(int event) {
+        return getSampleTime(event, sampleCounts[event] - 1);
+    }
+
+    public float getX(int event, int sample, int pointer) {
+        return coords[coordIndex(event, sample, pointer)];
+    }
+
+    public float getY(int event, int sample, int pointer) {
+        return coords[coordIndex(event, sample, pointer) + 1];
+    }
+
+    // Normalized pressure, as MotionEvent reports it
+    public float getPressure(int event, int sample, int pointer) {
+        return pressures[coordIndex(event, sample, pointer) / 2];
+    }
+
+    private int coordIndex(int event, int sample, int pointer) {
+        return coordOffsets[event] + (sample * pointerCounts[event] + pointer) * 2;
+    }
+
+    // Time from the first to the last sample
+    public long getDurationMillis() {
+        return eventCount == 0 ? 0 : getEventTime(eventCount - 1) - times[0];
+    }
+
+    public int getTotalSampleCount() {
+        return timeCount;
+    }
+
+    public void clear() {
+        eventCount = 0;
+        idCount = 0;
+        timeCount = 0;
+        coordCount = 0;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        VarInt.write(out, eventCount);
+
+        long lastTime = eventCount == 0 ? 0 : times[0];
+        out.writeLong(lastTime);
+        int[] lastX = new int[MAX_POINTER_ID + 1];
+        int[] lastY = new int[MAX_POINTER_ID + 1];
+        int[] lastPressure = new int[MAX_POINTER_ID + 1];
+
+        for (int event = 0; event < eventCount; event++) {
+            int pointerCount = pointerCounts[event];
+            int sampleCount = sampleCounts[event];
+            out.writeByte(actions[event]);
+            out.writeByte(actionIndexes[event]);
+            out.writeByte(pointerCount);
+            VarInt.write(out, sampleCount);
+            for (int p = 0; p < pointerCount; p++) {
+                out.writeByte(getPointerId(event, p));
+            }
+
+            for (int s = 0; s < sampleCount; s++) {
+                long time = getSampleTime(event, s);
+                VarInt.writeSigned(out, (int) (time - lastTime));
+                lastTime = time;
+            }
+
+            for (int s = 0; s < sampleCount; s++) {
+                for (int p = 0; p < pointerCount; p++) {
+                    int id = getPointerId(event, p);
+                    int x = Math.round(getX(event, s, p) * SUBPIXELS);
+                    int y = Math.round(getY(event, s, p) * SUBPIXELS);
+                    int pressure = Math.round(getPressure(event, s, p) * PRESSURE_STEPS);
+                    VarInt.writeSigned(out, x - lastX[id]);
+                    VarInt.writeSigned(out, y - lastY[id]);
+                    VarInt.writeSigned(out, pressure - lastPressure[id]);
+                    lastX[id] = x;
+                    lastY[id] = y;
+                    lastPressure[id] = pressure;
+                }
+            }
+        }
+    }
+
+    public static TouchTrace readFrom(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a touch trace");
+        }
+        int version = in.readInt();
+        if (version != 1 && version != VERSION) {
+            throw new IOException("Unsupported touch trace version " + version);
+        }
+
+        TouchTrace trace = new TouchTrace();
+        int eventCount = VarInt.read(in);
+        long lastTime = in.readLong();
+        int[] lastX = new int[MAX_POINTER_ID + 1];
+        int[] lastY = new int[MAX_POINTER_ID + 1];
+        int[] lastPressure = new int[MAX_POINTER_ID + 1];
+        int[] pointerIds = new int[0];
+        long[] sampleTimes = new long[0];
+        float[] sampleCoords = new float[0];
+        float[] samplePressures = new float[0];
+
+        for (int event = 0; event < eventCount; event++) {
+            int action = in.readUnsignedByte();
+            int actionIndex = in.readUnsignedByte();
+            int pointerCount = in.readUnsignedByte();
+            int sampleCount = VarInt.read(in);
+            if (pointerIds.length < pointerCount) {
+                pointerIds = new int[pointerCount];
+            }
+            if (sampleTimes.length < sampleCount) {
+                sampleTimes = new long[sampleCount];
+            }
+            if (sampleCoords.length < sampleCount * pointerCount * 2) {
+                sampleCoords = new float[sampleCount * pointerCount * 2];
+                samplePressures = new float[sampleCount * pointerCount];
+            }
+
+            for (int p = 0; p < pointerCount; p++) {
+                pointerIds[p] = in.readUnsignedByte();
+            }
+            for (int s = 0; s < sampleCount; s++) {
+                lastTime += VarInt.readSigned(in);
+                sampleTimes[s] = lastTime;
+            }
+            int i = 0;
+            for (int s = 0; s < sampleCount; s++) {
+                for (int p = 0; p < pointerCount; p++) {
+                    int id = pointerIds[p];
+                    lastX[id] += VarInt.readSigned(in);
+                    lastY[id] += VarInt.readSigned(in);
+                    if (version > 1) {
+                        lastPressure[id] += VarInt.readSigned(in);
+                    } else {
+                        lastPressure[id] = (int) PRESSURE_STEPS;
+                    }
+                    samplePressures[i / 2] = lastPressure[id] / PRESSURE_STEPS;
+                    sampleCoords[i++] = lastX[id] / SUBPIXELS;
+                    sampleCoords[i++] = lastY[id] / SUBPIXELS;
+                }
+            }
+
+            trace.appendEvent(action, actionIndex, pointerCount, pointerIds, sampleCount, sampleTimes, sampleCoords,
+                    samplePressures);
+        }
+        return trace;
+    }
+}
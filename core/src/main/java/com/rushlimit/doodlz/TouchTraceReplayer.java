@@ -0,0 +1,135 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Feeds a TouchTrace through a StrokePipeline the way DoodleView's touch
+ * handlers do, appending each finished stroke to a StrokeLog. Replays as
+ * fast as possible by default, or paced to the recorded timestamps
+ * scaled by setSpeed. The same trace always yields the same log.
+ */
+public class TouchTraceReplayer {
+    private final StrokePipeline strokes;
+    private float speed; // 0 replays at maximum speed
+    private int color = 0xff000000;
+    private float width = 10;
+    private int cap = 1; // Paint.Cap.ROUND
+
+    private float[] sampleX = new float[16];
+    private float[] sampleY = new float[16];
+    private int eventsReplayed;
+    private int segmentsBuilt;
+    private long lateNanos; // Worst lag behind the recorded schedule when paced
+
+    public TouchTraceReplayer(StrokePipeline strokes) {
+        this.strokes = strokes;
+    }
+
+    // 1 replays at recorded speed, 2 twice as fast; 0 as fast as possible
+    public void setSpeed(float speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed must not be negative");
+        }
+        this.speed = speed;
+    }
+
+    // Brush recorded in the log for every replayed stroke
+    public void setBrush(int color, float width, int cap) {
+        this.color = color;
+        this.width = width;
+        this.cap = cap;
+    }
+
+    // Replays the whole trace, ending any stroke still live at its end;
+    // returns the number of segments built
+    public int replay(TouchTrace trace, StrokeLog log) throws InterruptedException {
+        eventsReplayed = 0;
+        segmentsBuilt = 0;
+        lateNanos = 0;
+        long startNanos = System.nanoTime();
+        long firstMillis = trace.getEventCount() == 0 ? 0 : trace.getSampleTime(0, 0);
+
+        for (int event = 0; event < trace.getEventCount(); event++) {
+            if (speed > 0) {
+                long dueNanos = startNanos + (long) ((trace.getEventTime(event) - firstMillis) * 1000000L / speed);
+                long waitNanos = dueNanos - System.nanoTime();
+                if (waitNanos > 0) {
+                    Thread.sleep(waitNanos / 1000000L, (int) (waitNanos % 1000000L));
+                } else {
+                    lateNanos = Math.max(lateNanos, -waitNanos);
+                }
+            }
+            replayEvent(trace, event, log);
+        }
+
+        for (int i = strokes.getActiveCount() - 1; i >= 0; i--) {
+            segmentsBuilt += endStroke(strokes.getActiveId(i), log);
+        }
+        return segmentsBuilt;
+    }
+
+    // Applies one event; returns the number of segments it built
+    public int replayEvent(TouchTrace trace, int event, StrokeLog log) {
+        int action = trace.getAction(event);
+        int actionIndex = trace.getActionIndex(event);
+        int built = 0;
+
+        if (action == TouchTrace.ACTION_DOWN || action == TouchTrace.ACTION_POINTER_DOWN) {
+            int last = trace.getSampleCount(event) - 1;
+            strokes.start(trace.getPointerId(event, actionIndex),
+                    trace.getX(event, last, actionIndex), trace.getY(event, last, actionIndex));
+        } else if (action == TouchTrace.ACTION_UP || action == TouchTrace.ACTION_POINTER_UP) {
+            built = endStroke(trace.getPointerId(event, actionIndex), log);
+        } else {
+            built = moveStrokes(trace, event);
+        }
+
+        eventsReplayed++;
+        segmentsBuilt += built;
+        return built;
+    }
+
+    private int moveStrokes(TouchTrace trace, int event) {
+        int sampleCount = trace.getSampleCount(event);
+        if (sampleCount > sampleX.length) {
+            sampleX = new float[sampleCount];
+            sampleY = new float[sampleCount];
+        }
+
+        int built = 0;
+        for (int p = 0; p < trace.getPointerCount(event); p++) {
+            int id = trace.getPointerId(event, p);
+            if (strokes.isActive(id)) {
+                for (int s = 0; s < sampleCount; s++) {
+                    sampleX[s] = trace.getX(event, s, p);
+                    sampleY[s] = trace.getY(event, s, p);
+                }
+                built += strokes.addSamples(id, sampleX, sampleY, sampleCount);
+            }
+        }
+        return built;
+    }
+
+    private int endStroke(int id, StrokeLog log) {
+        if (!strokes.isActive(id)) {
+            return 0;
+        }
+        int built = strokes.finish(id);
+        strokes.end(id);
+        if (log != null) {
+            log.appendStroke(color, width, cap, strokes.getPoints(id), 0, strokes.getPointCount(id));
+        }
+        return built;
+    }
+
+    public int getEventsReplayed() {
+        return eventsReplayed;
+    }
+
+    public int getSegmentsBuilt() {
+        return segmentsBuilt;
+    }
+
+    // How far the last paced replay fell behind the recording, at worst
+    public long getLateNanos() {
+        return lateNanos;
+    }
+}
@@ -0,0 +1,52 @@
+package com.rushlimit.doodlz;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * LEB128 variable-length ints: seven bits per byte, low bits first, so
+ * small values take one byte. Signed deltas go through zigzag first so
+ * small negative numbers stay small too.
+ */
+public final class VarInt {
+    private VarInt() {
+    }
+
+    public static void write(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int read(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    public static void writeSigned(DataOutput out, int value) throws IOException {
+        write(out, zigzag(value));
+    }
+
+    public static int readSigned(DataInput in) throws IOException {
+        return unzigzag(read(in));
+    }
+
+    // Maps 0, -1, 1, -2, ... to 0, 1, 2, 3, ...
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.rushlimit.doodlz;
+
+/**
+ * Varies a brush's width along a stroke like ink from a nib: pressing
+ * harder widens the line, moving faster thins it. Pressure is
+ * MotionEvent's normalized pressure; speed is measured in dp per
+ * millisecond so a stroke looks the same on every screen density. The
+ * width eases toward its target so sample noise does not make the
+ * outline ripple.
+ */
+public class WidthDynamics {
+    // Thinnest the line gets, relative to the brush width
+    private static final float MIN_FRACTION = 0.35f;
+
+    // Speed at which the line is thinnest
+    private static final float FAST_DP_PER_MILLI = 3;
+
+    // Time the width takes to cover about two thirds of a change
+    private static final float SMOOTHING_MILLIS = 30;
+
+    private float baseWidth = 5;
+    private float density = 1;
+
+    private long lastTime;
+    private float lastX, lastY;
+    private float width;
+
+    public void setBaseWidth(float baseWidth) {
+        this.baseWidth = baseWidth;
+    }
+
+    public float getBaseWidth() {
+        return baseWidth;
+    }
+
+    public void setDensity(float density) {
+        this.density = density;
+    }
+
+    // Starts a stroke; its first width comes from pressure alone
+    public float start(long timeMillis, float x, float y, float pressure) {
+        lastTime = timeMillis;
+        lastX = x;
+        lastY = y;
+        width = targetWidth(pressure, 0);
+        return width;
+    }
+
+    // Moves the width toward what this sample calls for and returns it
+    public float update(long timeMillis, float x, float y, float pressure) {
+        long elapsed = timeMillis - lastTime;
+        if (elapsed <= 0) {
+            // Samples at the same time carry no speed; only pressure counts
+            elapsed = 1;
+        }
+        float dx = x - lastX;
+        float dy = y - lastY;
+        float speed = (float) Math.sqrt(dx * dx + dy * dy) / density / elapsed;
+
+        float target = targetWidth(pressure, speed);
+        float blend = 1 - (float) Math.exp(-elapsed / SMOOTHING_MILLIS);
+        width += (target - width) * blend;
+
+        lastTime = timeMillis;
+        lastX = x;
+        lastY = y;
+        return width;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    float targetWidth(float pressure, float speed) {
+        float pressed = MIN_FRACTION + (1 - MIN_FRACTION) * clamp(pressure);
+        float slowed = 1 - (1 - MIN_FRACTION) * clamp(speed / FAST_DP_PER_MILLI);
+        return Math.max(baseWidth * MIN_FRACTION, baseWidth * pressed * slowed);
+    }
+
+    private static float clamp(float fraction) {
+        return fraction < 0 ? 0 : fraction > 1 ? 1 : fraction;
+    }
+}
@@ -0,0 +1,180 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSimplifierTest {
+    private static final float DENSITY = 2.75f; // A typical xxhdpi phone
+    private static final float LINE_WIDTH = 5;
+
+    // Samples along a curve, spacing px apart at a fixed touch rate
+    private static float[][] spiral(int count, float spacing) {
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        double angle = 0;
+        for (int i = 0; i < count; i++) {
+            double radius = 20 + angle * 15;
+            xs[i] = 500 + (float) (Math.cos(angle) * radius);
+            ys[i] = 500 + (float) (Math.sin(angle) * radius);
+            angle += spacing / radius;
+        }
+        return new float[][]{xs, ys};
+    }
+
+    // Small loops traced slowly, like handwriting
+    private static float[][] loops(int count, float radius, float spacing) {
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        for (int i = 0; i < count; i++) {
+            double angle = i * spacing / radius;
+            xs[i] = 300 + i * 0.2f + (float) (Math.cos(angle) * radius);
+            ys[i] = 300 + (float) (Math.sin(angle) * radius);
+        }
+        return new float[][]{xs, ys};
+    }
+
+    private static float[][] line(int count, float spacing) {
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = 100 + i * spacing;
+            ys[i] = 200 + i * spacing * 0.5f;
+        }
+        return new float[][]{xs, ys};
+    }
+
+    // Feeds the samples in batches of four and ends the stroke
+    private static PointerSlotTable simplify(StrokeSimplifier simplifier, float[][] samples) {
+        PointerSlotTable slots = new PointerSlotTable();
+        StrokeBuilder builder = new StrokeBuilder(simplifier);
+        float[] xs = samples[0];
+        float[] ys = samples[1];
+        slots.start(0, xs[0], ys[0]);
+        builder.start(0, xs[0], ys[0]);
+
+        float[] batchX = new float[4];
+        float[] batchY = new float[4];
+        for (int i = 1; i < xs.length; i += 4) {
+            int count = Math.min(4, xs.length - i);
+            System.arraycopy(xs, i, batchX, 0, count);
+            System.arraycopy(ys, i, batchY, 0, count);
+            builder.addSamples(slots, 0, batchX, batchY, count);
+        }
+        builder.finish(slots, 0);
+        return slots;
+    }
+
+    // Largest distance from any sample to the polyline through the kept points
+    private static float maxError(float[][] samples, PointerSlotTable slots) {
+        float[] points = slots.getPoints(0);
+        int pointCount = slots.getPointCount(0);
+        float max = 0;
+        for (int i = 0; i < samples[0].length; i++) {
+            float best = Float.MAX_VALUE;
+            for (int p = 0; p + 1 < pointCount; p++) {
+                best = Math.min(best, AdaptiveSimplifier.distanceToSegmentSquared(samples[0][i], samples[1][i],
+                        points[p * 2], points[p * 2 + 1], points[p * 2 + 2], points[p * 2 + 3]));
+            }
+            max = Math.max(max, (float) Math.sqrt(best));
+        }
+        return max;
+    }
+
+    private static AdaptiveSimplifier adaptive(float lineWidth) {
+        AdaptiveSimplifier simplifier = new AdaptiveSimplifier();
+        simplifier.setDensity(DENSITY);
+        simplifier.setLineWidth(lineWidth);
+        return simplifier;
+    }
+
+    @Test
+    public void slowSpiral_staysWithinErrorBound() throws Exception {
+        float[][] samples = spiral(2000, 1.5f);
+        AdaptiveSimplifier simplifier = adaptive(LINE_WIDTH);
+        PointerSlotTable slots = simplify(simplifier, samples);
+        PointerSlotTable fixed = simplify(new ToleranceSimplifier(10), samples);
+
+        assertTrue(maxError(samples, slots) <= simplifier.getMaxError(LINE_WIDTH) + 1e-3f);
+        assertTrue(slots.getPointCount(0) < fixed.getPointCount(0));
+    }
+
+    @Test
+    public void slowLoops_keepDetailFixedToleranceDrops() throws Exception {
+        float[][] samples = loops(1000, 8, 1);
+        AdaptiveSimplifier simplifier = adaptive(LINE_WIDTH);
+        PointerSlotTable slots = simplify(simplifier, samples);
+        PointerSlotTable fixed = simplify(new ToleranceSimplifier(10), samples);
+
+        assertTrue(maxError(samples, slots) <= simplifier.getMaxError(LINE_WIDTH) + 1e-3f);
+        assertTrue(slots.getPointCount(0) < samples[0].length / 3);
+        // The fixed box test cuts corners on tight, slow curves
+        assertTrue(maxError(samples, slots) < maxError(samples, fixed));
+    }
+
+    @Test
+    public void fastStraightLine_dropsAlmostEveryPoint() throws Exception {
+        float[][] samples = line(400, 30);
+        AdaptiveSimplifier simplifier = adaptive(LINE_WIDTH);
+        PointerSlotTable slots = simplify(simplifier, samples);
+        PointerSlotTable fixed = simplify(new ToleranceSimplifier(10), samples);
+
+        // Only the pending buffer limit forces intermediate points
+        assertTrue(slots.getPointCount(0) <= samples[0].length / AdaptiveSimplifier.MAX_PENDING + 2);
+        assertEquals(samples[0].length, fixed.getPointCount(0));
+        assertTrue(maxError(samples, slots) < 0.01f);
+    }
+
+    @Test
+    public void fastCurve_keepsFewerPointsThanFixedTolerance() throws Exception {
+        float[][] samples = spiral(600, 24);
+        AdaptiveSimplifier simplifier = adaptive(LINE_WIDTH);
+        PointerSlotTable slots = simplify(simplifier, samples);
+        PointerSlotTable fixed = simplify(new ToleranceSimplifier(10), samples);
+
+        assertTrue(slots.getPointCount(0) < fixed.getPointCount(0));
+        assertTrue(maxError(samples, slots) <= simplifier.getMaxError(LINE_WIDTH) + 1e-3f);
+    }
+
+    @Test
+    public void wideStrokes_tolerateMoreError() throws Exception {
+        float[][] samples = spiral(2000, 3);
+        PointerSlotTable thin = simplify(adaptive(LINE_WIDTH), samples);
+        AdaptiveSimplifier wideSimplifier = adaptive(60);
+        PointerSlotTable wide = simplify(wideSimplifier, samples);
+
+        assertTrue(wide.getPointCount(0) < thin.getPointCount(0));
+        assertTrue(maxError(samples, wide) <= wideSimplifier.getMaxError(60) + 1e-3f);
+    }
+
+    @Test
+    public void corners_areKept() throws Exception {
+        // Slowly right, then slowly down: the corner sample must survive
+        float[] xs = new float[41];
+        float[] ys = new float[41];
+        for (int i = 0; i <= 20; i++) {
+            xs[i] = i * 2;
+            ys[i] = 0;
+            xs[20 + i] = 40;
+            ys[20 + i] = i * 2;
+        }
+        PointerSlotTable slots = simplify(adaptive(LINE_WIDTH), new float[][]{xs, ys});
+
+        float[] points = slots.getPoints(0);
+        boolean corner = false;
+        for (int p = 0; p < slots.getPointCount(0); p++) {
+            corner |= points[p * 2] == 40 && points[p * 2 + 1] == 0;
+        }
+        assertTrue(corner);
+        assertEquals(3, slots.getPointCount(0));
+    }
+
+    @Test
+    public void finish_reachesTheLastSample() throws Exception {
+        float[][] samples = line(10, 3);
+        PointerSlotTable slots = simplify(adaptive(LINE_WIDTH), samples);
+
+        assertEquals(samples[0][9], slots.getLastX(0), 0);
+        assertEquals(samples[1][9], slots.getLastY(0), 0);
+    }
+}
@@ -0,0 +1,108 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BrushTableTest {
+    // Counts how many brushes it had to make
+    private static class CountingFactory implements BrushTable.Factory<String> {
+        int created;
+
+        @Override
+        public String create(int color, float width, int cap, int style) {
+            created++;
+            return Integer.toHexString(color) + "/" + width + "/" + cap + "/" + style;
+        }
+    }
+
+    @Test
+    public void intern_sharesBrushesWithEqualKeys() throws Exception {
+        CountingFactory factory = new CountingFactory();
+        BrushTable<String> table = new BrushTable<>(factory);
+
+        int black = table.intern(0xff000000, 5, 1, 1);
+        int red = table.intern(0xffff0000, 5, 1, 1);
+        assertEquals(black, table.intern(0xff000000, 5, 1, 1));
+        assertEquals(red, table.intern(0xffff0000, 5, 1, 1));
+
+        assertNotEquals(black, red);
+        assertEquals(2, factory.created);
+        assertEquals("ffff0000/5.0/1/1", table.get(red));
+    }
+
+    @Test
+    public void intern_distinguishesEveryKeyField() throws Exception {
+        BrushTable<String> table = new BrushTable<>(new CountingFactory());
+        int brush = table.intern(0xff000000, 5, 1, 1);
+
+        assertNotEquals(brush, table.intern(0x80000000, 5, 1, 1));
+        assertNotEquals(brush, table.intern(0xff000000, 5.5f, 1, 1));
+        assertNotEquals(brush, table.intern(0xff000000, 5, 2, 1));
+        assertNotEquals(brush, table.intern(0xff000000, 5, 1, 0));
+        assertEquals(5, table.size());
+
+        assertEquals(0x80000000, table.getColor(1));
+        assertEquals(5.5f, table.getWidth(2), 0);
+        assertEquals(2, table.getCap(3));
+        assertEquals(0, table.getStyle(4));
+    }
+
+    @Test
+    public void intern_growsPastInitialCapacity() throws Exception {
+        BrushTable<String> table = new BrushTable<>(new CountingFactory());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, table.intern(i, 1, 0, 0));
+        }
+        assertEquals(37, table.intern(37, 1, 0, 0));
+        assertEquals(100, table.size());
+    }
+
+    @Test
+    public void intern_alternatingFingersReuseTheirBrushes() throws Exception {
+        // Two fingers with different brushes, starting strokes in turn
+        CountingFactory factory = new CountingFactory();
+        BrushTable<String> table = new BrushTable<>(factory);
+        for (int i = 0; i < 16; i++) {
+            table.intern(0xff000000 | i, 5, 1, 1); // Other brushes used earlier
+        }
+
+        long sum = 0;
+        for (int i = 0; i < 1000; i++) {
+            sum += (i & 1) == 0 ? table.intern(0xff00ff00, 8, 1, 1) : table.intern(0x80ff0000, 20, 1, 1);
+        }
+
+        assertEquals(18, factory.created);
+        assertTrue(sum > 0);
+    }
+
+    @Test
+    public void release_keepsOnlyTheRecentIdleBrushes() throws Exception {
+        // A continuous color drag: every stroke gets a brush of its own
+        CountingFactory factory = new CountingFactory();
+        BrushTable<String> table = new BrushTable<>(factory);
+        int held = table.intern(0xff000000, 5, 1, 1); // A stroke still being drawn
+        for (int color = 1; color <= 1000; color++) {
+            table.release(table.intern(0xff000000 | color, 5, 1, 1));
+        }
+
+        assertEquals(1 + BrushTable.MAX_IDLE, table.size());
+        assertEquals("ff000000/5.0/1/1", table.get(held));
+
+        // The latest idle brushes are reused; older ones are made again
+        int created = factory.created;
+        table.release(table.intern(0xff000000 | 1000, 5, 1, 1));
+        assertEquals(created, factory.created);
+        table.release(table.intern(0xff000000 | 1, 5, 1, 1));
+        assertEquals(created + 1, factory.created);
+        assertEquals(1 + BrushTable.MAX_IDLE, table.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void release_rejectsUnreferencedBrushes() throws Exception {
+        BrushTable<String> table = new BrushTable<>(new CountingFactory());
+        int brush = table.intern(0xff000000, 5, 1, 1);
+        table.release(brush);
+        table.release(brush);
+    }
+}
@@ -0,0 +1,71 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ByteSizedLruCacheTest {
+    private static final ByteSizedLruCache.Sizer<byte[]> LENGTH = new ByteSizedLruCache.Sizer<byte[]>() {
+        @Override
+        public int sizeOf(byte[] value) {
+            return value.length;
+        }
+    };
+
+    @Test
+    public void put_evictsLeastRecentlyUsedByBytes() throws Exception {
+        ByteSizedLruCache<byte[]> cache = new ByteSizedLruCache<>(100, LENGTH);
+        cache.put(1, new byte[40]);
+        cache.put(2, new byte[40]);
+        cache.get(1); // 2 is now the oldest
+        cache.put(3, new byte[40]);
+
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+        assertEquals(80, cache.getByteSize());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void put_evictsSeveralSmallValuesForOneLarge() throws Exception {
+        ByteSizedLruCache<byte[]> cache = new ByteSizedLruCache<>(100, LENGTH);
+        for (int key = 0; key < 10; key++) {
+            cache.put(key, new byte[10]);
+        }
+        cache.put(10, new byte[75]);
+
+        assertEquals(3, cache.size());
+        assertEquals(95, cache.getByteSize());
+        assertNotNull(cache.get(8));
+        assertNull(cache.get(7));
+    }
+
+    @Test
+    public void put_replacesAndSkipsOversizedValues() throws Exception {
+        ByteSizedLruCache<byte[]> cache = new ByteSizedLruCache<>(100, LENGTH);
+        cache.put(1, new byte[60]);
+        cache.put(1, new byte[30]);
+        assertEquals(30, cache.getByteSize());
+
+        cache.put(2, new byte[101]);
+        assertNull(cache.get(2));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() throws Exception {
+        ByteSizedLruCache<byte[]> cache = new ByteSizedLruCache<>(100, LENGTH);
+        cache.put(1, new byte[1]);
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        assertNotNull(cache.remove(1));
+        cache.evictAll();
+        assertEquals(0, cache.getByteSize());
+    }
+}
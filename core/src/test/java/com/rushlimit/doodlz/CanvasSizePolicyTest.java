@@ -0,0 +1,63 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CanvasSizePolicyTest {
+    private static final int ROTATIONS = 20;
+
+    @Test
+    public void fits_onlyWhenBothDimensionsFit() throws Exception {
+        assertTrue(CanvasSizePolicy.fits(1080, 1920, 1080, 1920));
+        assertTrue(CanvasSizePolicy.fits(1920, 1920, 1080, 1920));
+        assertFalse(CanvasSizePolicy.fits(1080, 1920, 1920, 1080));
+    }
+
+    @Test
+    public void grow_coversOldContentAndNewView() throws Exception {
+        assertEquals(1920, CanvasSizePolicy.grownWidth(1080, 1920));
+        assertEquals(1920, CanvasSizePolicy.grownHeight(1920, 1080));
+    }
+
+    @Test
+    public void rotation_allocatesOnce() throws Exception {
+        // Portrait and landscape sizes of a 1080x1920 screen below the app bar
+        int[][] sizes = {{1080, 1776}, {1920, 936}};
+
+        // Old behaviour: a fresh ARGB buffer on every size change
+        long naiveBytes = 0;
+        for (int rotation = 0; rotation < ROTATIONS; rotation++) {
+            int[] size = sizes[rotation % 2];
+            naiveBytes += size[0] * size[1] * 4L;
+        }
+
+        // Grow-only backing surface that keeps its content
+        int width = sizes[0][0];
+        int height = sizes[0][1];
+        int[] pixels = new int[width * height];
+        long grownBytes = 0;
+        int allocations = 0;
+        for (int rotation = 1; rotation < ROTATIONS; rotation++) {
+            int[] size = sizes[rotation % 2];
+            if (CanvasSizePolicy.fits(width, height, size[0], size[1])) {
+                continue;
+            }
+
+            int newWidth = CanvasSizePolicy.grownWidth(width, size[0]);
+            int newHeight = CanvasSizePolicy.grownHeight(height, size[1]);
+            int[] grown = new int[newWidth * newHeight];
+            for (int row = 0; row < height; row++) {
+                System.arraycopy(pixels, row * width, grown, row * newWidth, width);
+            }
+            pixels = grown;
+            width = newWidth;
+            height = newHeight;
+            grownBytes += grown.length * 4L;
+            allocations++;
+        }
+
+        assertEquals(1, allocations);
+        assertTrue(grownBytes < naiveBytes);
+    }
+}
@@ -0,0 +1,216 @@
+package com.rushlimit.doodlz;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CollabConnectionTest {
+    private static final String LOOPBACK = "127.0.0.1";
+
+    // Queues everything a connection reports, for the test thread to take
+    static class Inbox implements CollabConnection.Listener {
+        final CountDownLatch connected = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        final BlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+        volatile IOException error;
+
+        @Override
+        public void onConnected() {
+            connected.countDown();
+        }
+
+        @Override
+        public void onFrame(byte[] frame) {
+            frames.add(frame);
+        }
+
+        @Override
+        public void onClosed(IOException error) {
+            this.error = error;
+            closed.countDown();
+        }
+
+        byte[] take() throws InterruptedException {
+            byte[] frame = frames.poll(5, TimeUnit.SECONDS);
+            assertNotNull("No frame arrived", frame);
+            return frame;
+        }
+    }
+
+    private CollabConnection host;
+    private CollabConnection guest;
+
+    @After
+    public void tearDown() {
+        if (host != null) {
+            host.close();
+        }
+        if (guest != null) {
+            guest.close();
+        }
+    }
+
+    @Test
+    public void frames_arriveInOrderBothWays() throws Exception {
+        Inbox hostInbox = new Inbox();
+        Inbox guestInbox = new Inbox();
+        host = CollabConnection.listen(0, hostInbox);
+        // Sent before anyone connected; waits for the peer
+        host.send(new byte[]{1, 2, 3});
+        guest = CollabConnection.connect(LOOPBACK, host.getLocalPort(), guestInbox);
+
+        assertTrue(hostInbox.connected.await(5, TimeUnit.SECONDS));
+        assertTrue(guestInbox.connected.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            guest.send(new byte[]{(byte) i});
+        }
+        host.send(new byte[0]);
+
+        assertArrayEquals(new byte[]{1, 2, 3}, guestInbox.take());
+        assertArrayEquals(new byte[0], guestInbox.take());
+        for (int i = 0; i < 100; i++) {
+            assertArrayEquals(new byte[]{(byte) i}, hostInbox.take());
+        }
+    }
+
+    @Test
+    public void largeFrames_arriveWhole() throws Exception {
+        Inbox hostInbox = new Inbox();
+        host = CollabConnection.listen(0, hostInbox);
+        guest = CollabConnection.connect(LOOPBACK, host.getLocalPort(), new Inbox());
+
+        byte[] large = new byte[200 * 1024];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) (i * 31);
+        }
+        guest.send(large);
+        guest.send(new byte[]{7});
+
+        assertArrayEquals(large, hostInbox.take());
+        assertArrayEquals(new byte[]{7}, hostInbox.take());
+    }
+
+    @Test
+    public void close_endsBothSidesWithoutError() throws Exception {
+        Inbox hostInbox = new Inbox();
+        Inbox guestInbox = new Inbox();
+        host = CollabConnection.listen(0, hostInbox);
+        guest = CollabConnection.connect(LOOPBACK, host.getLocalPort(), guestInbox);
+        assertTrue(hostInbox.connected.await(5, TimeUnit.SECONDS));
+        assertTrue(guestInbox.connected.await(5, TimeUnit.SECONDS));
+
+        guest.close();
+
+        assertTrue(guestInbox.closed.await(5, TimeUnit.SECONDS));
+        assertTrue(hostInbox.closed.await(5, TimeUnit.SECONDS));
+        assertNull(guestInbox.error);
+        assertNull(hostInbox.error);
+        assertTrue(host.isClosed());
+    }
+
+    @Test
+    public void peerWithoutHello_isRejected() throws Exception {
+        Inbox hostInbox = new Inbox();
+        host = CollabConnection.listen(0, hostInbox);
+
+        Socket socket = new Socket(InetAddress.getByName(LOOPBACK), host.getLocalPort());
+        try {
+            OutputStream out = socket.getOutputStream();
+            out.write(new byte[]{5, 'h', 'e', 'l', 'l', 'o'});
+            out.flush();
+            assertTrue(hostInbox.closed.await(5, TimeUnit.SECONDS));
+        } finally {
+            socket.close();
+        }
+        assertNotNull(hostInbox.error);
+        assertTrue(hostInbox.frames.isEmpty());
+    }
+
+    @Test
+    public void remoteStrokes_buildTheSameGeometryAsLocalOnes() throws Exception {
+        Inbox hostInbox = new Inbox();
+        host = CollabConnection.listen(0, hostInbox);
+        guest = CollabConnection.connect(LOOPBACK, host.getLocalPort(), new Inbox());
+
+        // The guest draws two fingers locally and streams each event as a frame
+        QuadStrokePipeline local = new QuadStrokePipeline(2);
+        StrokeStreamEncoder encoder = new StrokeStreamEncoder();
+        float[][] xs = new float[2][4];
+        float[][] ys = new float[2][4];
+        for (int id = 0; id < 2; id++) {
+            // Sixteenths survive the stream exactly
+            float x = 100 + id * 300.0625f;
+            float y = 200;
+            local.start(id, x, y);
+            encoder.start(id, x, y, 0xff0000ff, 8, 1);
+        }
+        guest.send(encoder.takeFrame());
+        for (int event = 0; event < 50; event++) {
+            for (int id = 0; id < 2; id++) {
+                for (int s = 0; s < 4; s++) {
+                    int step = event * 4 + s;
+                    xs[id][s] = 100 + id * 300 + step * 1.5f;
+                    ys[id][s] = 200 + Math.round((float) Math.sin(step * 0.05f + id) * 1600) / 16f;
+                }
+                local.addSamples(id, xs[id], ys[id], 4);
+                encoder.move(id, xs[id], ys[id], 4);
+            }
+            guest.send(encoder.takeFrame());
+        }
+        for (int id = 0; id < 2; id++) {
+            local.finish(id);
+            encoder.end(id);
+        }
+        guest.send(encoder.takeFrame());
+
+        // The headless host applies them to its own pipeline, offset past its local pointers
+        final int remoteBase = 16;
+        final QuadStrokePipeline remote = new QuadStrokePipeline(2);
+        final int[] ended = new int[1];
+        StrokeStreamDecoder decoder = new StrokeStreamDecoder();
+        StrokeStreamDecoder.Listener apply = new StrokeStreamDecoder.Listener() {
+            @Override
+            public void onStart(int id, float x, float y, int color, float width, int cap) {
+                assertTrue(remote.start(remoteBase + id, x, y));
+            }
+
+            @Override
+            public void onMove(int id, float[] movedX, float[] movedY, int count) {
+                remote.addSamples(remoteBase + id, movedX, movedY, count);
+            }
+
+            @Override
+            public void onEnd(int id) {
+                remote.finish(remoteBase + id);
+                ended[0]++;
+            }
+
+            @Override
+            public void onClear() {
+                fail("No clear was sent");
+            }
+        };
+        while (ended[0] < 2) {
+            decoder.read(hostInbox.take(), apply);
+        }
+
+        for (int id = 0; id < 2; id++) {
+            int count = local.getPointCount(id);
+            assertTrue(count > 10);
+            assertEquals(count, remote.getPointCount(remoteBase + id));
+            for (int i = 0; i < count * 2; i++) {
+                assertEquals(local.getPoints(id)[i], remote.getPoints(remoteBase + id)[i], 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ColorMathTest {
+    @Test
+    public void hsvToColor_matchesPrimaries() throws Exception {
+        assertEquals(0xffff0000, ColorMath.hsvToColor(255, 0, 1, 1));
+        assertEquals(0xffffff00, ColorMath.hsvToColor(255, 60, 1, 1));
+        assertEquals(0xff00ff00, ColorMath.hsvToColor(255, 120, 1, 1));
+        assertEquals(0xff0000ff, ColorMath.hsvToColor(255, 240, 1, 1));
+        assertEquals(0xffff0000, ColorMath.hsvToColor(255, 360, 1, 1));
+        assertEquals(0x80ffffff, ColorMath.hsvToColor(128, 200, 0, 1));
+        assertEquals(0xff000000, ColorMath.hsvToColor(255, 200, 1, 0));
+    }
+
+    @Test
+    public void hsvToColor_agreesWithAwt() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            float hue = random.nextFloat() * 360;
+            float saturation = random.nextFloat();
+            float value = random.nextFloat();
+            int expected = java.awt.Color.HSBtoRGB(hue / 360, saturation, value);
+            int actual = ColorMath.hsvToColor(255, hue, saturation, value);
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = ((expected >> shift) & 0xff) - ((actual >> shift) & 0xff);
+                assertTrue(hue + "," + saturation + "," + value, Math.abs(difference) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void colorToHsv_roundTrips() throws Exception {
+        Random random = new Random(11);
+        float[] hsv = new float[3];
+        for (int i = 0; i < 10000; i++) {
+            int color = random.nextInt() | 0xff000000;
+            ColorMath.colorToHsv(color, hsv);
+            assertEquals(Integer.toHexString(color), color,
+                    ColorMath.hsvToColor(255, hsv[0], hsv[1], hsv[2]));
+        }
+    }
+
+    @Test
+    public void hueAt_runsClockwiseOnScreen() throws Exception {
+        assertEquals(0, ColorMath.hueAt(10, 0), 1e-3);
+        assertEquals(90, ColorMath.hueAt(0, 10), 1e-3); // Below the center
+        assertEquals(180, ColorMath.hueAt(-10, 0), 1e-3);
+        assertEquals(270, ColorMath.hueAt(0, -10), 1e-3);
+
+        float[] offset = new float[2];
+        ColorMath.huePosition(123, 50, offset);
+        assertEquals(123, ColorMath.hueAt(offset[0], offset[1]), 1e-3);
+        assertEquals(50, Math.hypot(offset[0], offset[1]), 1e-3);
+    }
+
+    @Test
+    public void square_clampsSaturationAndValue() throws Exception {
+        assertEquals(0, ColorMath.saturationAt(-5, 100), 0);
+        assertEquals(0.25f, ColorMath.saturationAt(25, 100), 1e-6);
+        assertEquals(1, ColorMath.saturationAt(150, 100), 0);
+        assertEquals(1, ColorMath.valueAt(-5, 100), 0);
+        assertEquals(0.75f, ColorMath.valueAt(25, 100), 1e-6);
+        assertEquals(0, ColorMath.valueAt(150, 100), 0);
+
+        assertTrue(ColorMath.inRing(45, 0, 40, 50));
+        assertFalse(ColorMath.inRing(30, 0, 40, 50));
+        assertFalse(ColorMath.inRing(40, 40, 40, 50));
+    }
+}
@@ -0,0 +1,54 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class DataFilesTest {
+    @Test
+    public void save_failedWriteKeepsThePreviousFile() throws Exception {
+        File file = File.createTempFile("data", ".bin");
+        try {
+            DataFiles.save(file, new DataFiles.Writer() {
+                @Override
+                public void writeTo(DataOutput out) throws IOException {
+                    out.writeInt(1);
+                }
+            });
+            try {
+                DataFiles.save(file, new DataFiles.Writer() {
+                    @Override
+                    public void writeTo(DataOutput out) throws IOException {
+                        out.writeInt(2);
+                        throw new IOException("Disk full");
+                    }
+                });
+                fail();
+            } catch (IOException expected) {
+            }
+
+            DataInputStream in = DataFiles.openIfExists(file);
+            try {
+                assertEquals(1, in.readInt());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+            new File(file.getPath() + ".tmp").delete();
+        }
+    }
+
+    @Test
+    public void openIfExists_missingFileGivesNull() throws Exception {
+        File file = File.createTempFile("data", ".bin");
+        assertTrue(file.delete());
+
+        assertNull(DataFiles.openIfExists(file));
+    }
+}
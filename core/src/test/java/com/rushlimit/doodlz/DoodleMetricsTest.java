@@ -0,0 +1,96 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class DoodleMetricsTest {
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void recordTouchEvent_reportsRatesPerSecondWindow() throws Exception {
+        DoodleMetrics metrics = new DoodleMetrics(16);
+        long now = 5000 * MILLIS;
+
+        // 120 events of 2 samples each over one second, then one to close the window
+        for (int i = 0; i < 120; i++) {
+            metrics.recordTouchEvent(now + i * 1000 * MILLIS / 120, 2);
+        }
+        metrics.recordTouchEvent(now + 1000 * MILLIS, 2);
+
+        assertEquals(1, metrics.getEventsPerSecond().size());
+        assertEquals(120, metrics.getEventsPerSecond().getMax());
+        assertEquals(240, metrics.getSamplesPerSecond().getMax());
+        assertEquals(121, metrics.getTotalEvents());
+    }
+
+    @Test
+    public void recordFrame_skipsLatencyWithoutInput() throws Exception {
+        DoodleMetrics metrics = new DoodleMetrics(16);
+        metrics.recordFrame(2 * MILLIS, 12 * MILLIS, 2, 40);
+        metrics.recordFrame(3 * MILLIS, -1, 0, 0);
+
+        assertEquals(1, metrics.getInputLatencies().size());
+        assertEquals(2, metrics.getDrawDurations().size());
+        assertEquals(2, metrics.getDrawHistogram().getTotalCount());
+        assertEquals(40, metrics.getLivePoints().getMax());
+    }
+
+    @Test
+    public void dump_listsEveryMetric() throws Exception {
+        DoodleMetrics metrics = new DoodleMetrics(16);
+        metrics.recordFrame(1500 * 1000, 8 * MILLIS, 1, 10);
+
+        StringWriter text = new StringWriter();
+        metrics.dump(new PrintWriter(text, true));
+
+        assertTrue(text.toString().contains("Touch-to-draw latency (us): n=1 p50=8000"));
+        assertTrue(text.toString().contains("<=2048 us: 1"));
+        assertTrue(text.toString().contains("Live points"));
+    }
+
+    @Test
+    public void histogram_bucketsByPowersOfTwoMicros() throws Exception {
+        assertEquals(0, DurationHistogram.bucketFor(0));
+        assertEquals(0, DurationHistogram.bucketFor(1000));
+        assertEquals(1, DurationHistogram.bucketFor(1001));
+        assertEquals(4, DurationHistogram.bucketFor(16000));
+        assertEquals(5, DurationHistogram.bucketFor(16001));
+        assertEquals(DurationHistogram.BUCKETS - 1, DurationHistogram.bucketFor(3600L * 1000 * MILLIS));
+
+        DurationHistogram histogram = new DurationHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(3 * MILLIS);
+        }
+        histogram.record(40 * MILLIS);
+        assertEquals(4096, histogram.getPercentileMicros(50));
+        assertEquals(65536, histogram.getPercentileMicros(100));
+    }
+
+    @Test
+    public void recording_doesNotAllocate() throws Exception {
+        DoodleMetrics metrics = new DoodleMetrics(1024);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up on the same loop, so the JIT's own bookkeeping isn't counted
+        recordFrames(metrics, 200000);
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        recordFrames(metrics, 1000000);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertTrue(allocated < 1024);
+    }
+
+    private static void recordFrames(DoodleMetrics metrics, int frames) {
+        for (int i = 0; i < frames; i++) {
+            metrics.recordTouchEvent(i * 4 * MILLIS, 3);
+            metrics.recordFrame(i % 5000 * 1000, i % 20 * MILLIS, 2, i % 300);
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class DoodleProjectFileTest {
+    @Test
+    public void write_roundTripsStrokeLogAndRaster() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendStroke(0xff00ff00, 9, 1, new float[]{10, 20, 30.5f, 40}, 0, 2);
+        log.appendClear();
+
+        IntSurface raster = new IntSurface(300, 200); // Partial edge tiles
+        raster.fill(120, 60, 290, 190, 0xff123456);
+        raster.pixels[0] = 0xff000000;
+
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            DoodleProjectFile.write(file, log, raster);
+            DoodleProjectFile project = DoodleProjectFile.open(file);
+            try {
+                assertEquals(300, project.getWidth());
+                assertEquals(200, project.getHeight());
+
+                StrokeLog loaded = project.readStrokeLog();
+                assertEquals(2, loaded.size());
+                assertEquals(0xff00ff00, loaded.getColor(0));
+                assertEquals(30.5f, loaded.getCoords()[2], 0);
+                assertEquals(StrokeLog.KIND_CLEAR, loaded.getKind(1));
+
+                IntSurface copy = new IntSurface(300, 200);
+                copy.fill(0, 0, 300, 200, 0);
+                project.readRegion(0, 0, 300, 200, copy);
+                assertArrayEquals(raster.pixels, copy.pixels);
+            } finally {
+                project.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readRegion_decodesOnlyVisibleTiles() throws Exception {
+        IntSurface raster = new IntSurface(1024, 1024);
+        for (int i = 0; i < raster.pixels.length; i++) {
+            raster.pixels[i] = 0xff000000 | i;
+        }
+
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            DoodleProjectFile.write(file, new StrokeLog(), raster);
+            DoodleProjectFile project = DoodleProjectFile.open(file);
+            try {
+                IntSurface view = new IntSurface(1024, 1024);
+                project.readRegion(0, 0, 200, 130, view);
+
+                // Two tiles across and two down out of 64
+                assertEquals(4, project.getTilesDecoded());
+                assertEquals(raster.pixels[129 * 1024 + 199], view.pixels[129 * 1024 + 199]);
+                assertEquals(IntSurface.WHITE, view.pixels[600 * 1024 + 600]);
+            } finally {
+                project.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readRegion_cropsToSmallerTarget() throws Exception {
+        IntSurface raster = new IntSurface(300, 300);
+        raster.fill(0, 0, 300, 300, 0xff0000ff);
+
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            DoodleProjectFile.write(file, new StrokeLog(), raster);
+            DoodleProjectFile project = DoodleProjectFile.open(file);
+            try {
+                IntSurface view = new IntSurface(200, 150);
+                project.readRegion(0, 0, 200, 150, view);
+                assertEquals(0xff0000ff, view.pixels[149 * 200 + 199]);
+            } finally {
+                project.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readRaster_keepsTheDrawingOutsideTheViewThroughASecondSave() throws Exception {
+        // Drawn on a bitmap grown by rotation to 512x384; the view shows only 200x150
+        IntSurface raster = new IntSurface(512, 384);
+        raster.fill(10, 10, 100, 100, 0xff00ff00);
+        raster.fill(300, 200, 500, 380, 0xffff0000);
+
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            DoodleProjectFile.write(file, new StrokeLog(), raster);
+            IntSurface reopened = new IntSurface(512, 384);
+            DoodleProjectFile project = DoodleProjectFile.open(file);
+            try {
+                project.readRaster(reopened);
+            } finally {
+                project.close();
+            }
+
+            // Saving what was opened must not blank the area outside the view
+            DoodleProjectFile.write(file, new StrokeLog(), reopened);
+            IntSurface resaved = new IntSurface(512, 384);
+            project = DoodleProjectFile.open(file);
+            try {
+                project.readRaster(resaved);
+            } finally {
+                project.close();
+            }
+            assertArrayEquals(raster.pixels, resaved.pixels);
+            assertEquals(0xffff0000, resaved.pixels[379 * 512 + 499]);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void open_rejectsATruncatedFile() throws Exception {
+        IntSurface raster = new IntSurface(300, 300);
+        raster.fill(0, 0, 300, 300, 0xff0000ff);
+
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            DoodleProjectFile.write(file, new StrokeLog(), raster);
+            for (long length : new long[]{file.length() / 2, 60, 20}) {
+                java.io.RandomAccessFile truncated = new java.io.RandomAccessFile(file, "rw");
+                truncated.setLength(length);
+                truncated.close();
+                try {
+                    DoodleProjectFile project = DoodleProjectFile.open(file);
+                    try {
+                        project.readRaster(new IntSurface(300, 300));
+                    } finally {
+                        project.close();
+                    }
+                    fail("Opened a file truncated to " + length + " bytes");
+                } catch (java.io.IOException expected) {
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void open_rejectsATileGridThatDoesNotMatchTheSize() throws Exception {
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            DoodleProjectFile.write(file, new StrokeLog(), new IntSurface(300, 200));
+            java.io.RandomAccessFile corrupt = new java.io.RandomAccessFile(file, "rw");
+            corrupt.seek(20); // Tiles across
+            corrupt.writeInt(1000);
+            corrupt.close();
+            DoodleProjectFile.open(file).close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void open_rejectsOtherFiles() throws Exception {
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            java.io.FileOutputStream out = new java.io.FileOutputStream(file);
+            out.write(new byte[64]);
+            out.close();
+            DoodleProjectFile.open(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void readRegion_decodesOnlyTheVisibleTilesOfALargeDoodle() throws Exception {
+        // A 4096x4096 doodle with strokes scattered over it, viewed on a 1080x1920 screen
+        IntSurface raster = new IntSurface(4096, 4096);
+        for (int stripe = 0; stripe < 4096; stripe += 64) {
+            raster.fill(0, stripe, 4096, stripe + 8, 0xff000000 | stripe * 997);
+        }
+        StrokeLog log = new StrokeLog();
+        float[] points = new float[200];
+        for (int stroke = 0; stroke < 1000; stroke++) {
+            log.appendStroke(0xff000000, 5, 1, points, 0, 100);
+        }
+
+        File file = File.createTempFile("doodle", ".ddlz");
+        try {
+            DoodleProjectFile.write(file, log, raster);
+
+            DoodleProjectFile project = DoodleProjectFile.open(file);
+            IntSurface view = new IntSurface(4096, 4096);
+            StrokeLog loaded = project.readStrokeLog();
+            project.readRegion(0, 0, 1080, 1920, view);
+            int visibleTiles = project.getTilesDecoded();
+            project.readRegion(0, 0, 4096, 4096, view);
+            int allTiles = project.getTilesDecoded() - visibleTiles;
+            project.close();
+
+            int tileSize = DoodleProjectFile.TILE_SIZE;
+            int visibleTileCount = ((1080 + tileSize - 1) / tileSize) * ((1920 + tileSize - 1) / tileSize);
+            assertTrue(visibleTiles <= visibleTileCount);
+            assertTrue(visibleTiles < allTiles);
+            assertEquals(1000, loaded.size());
+            assertArrayEquals(raster.pixels, view.pixels);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FloodFillTest {
+    private static final int WHITE = 0xffffffff;
+    private static final int BLACK = 0xff000000;
+    private static final int RED = 0xffff0000;
+
+    private static int[] canvas(int width, int height) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, WHITE);
+        return pixels;
+    }
+
+    private static void rect(int[] pixels, int width, int left, int top, int right, int bottom, int color) {
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                pixels[y * width + x] = color;
+            }
+        }
+    }
+
+    @Test
+    public void fill_staysInsideOutline() throws Exception {
+        int[] pixels = canvas(20, 20);
+        // Hollow black square from (5, 5) to (14, 14)
+        rect(pixels, 20, 5, 5, 14, 5, BLACK);
+        rect(pixels, 20, 5, 14, 14, 14, BLACK);
+        rect(pixels, 20, 5, 5, 5, 14, BLACK);
+        rect(pixels, 20, 14, 5, 14, 14, BLACK);
+
+        FloodFill fill = new FloodFill();
+        assertEquals(64, fill.fill(pixels, 20, 20, 9, 9, RED, 0));
+
+        assertEquals(RED, pixels[6 * 20 + 6]);
+        assertEquals(RED, pixels[13 * 20 + 13]);
+        assertEquals(BLACK, pixels[5 * 20 + 9]);
+        assertEquals(WHITE, pixels[0]);
+        assertEquals(6, fill.getLeft());
+        assertEquals(6, fill.getTop());
+        assertEquals(13, fill.getRight());
+        assertEquals(13, fill.getBottom());
+    }
+
+    @Test
+    public void fill_followsConcaveShapes() throws Exception {
+        // A comb: the teeth hang down from the top bar, so spans must be
+        // queued in both directions to reach every gap
+        int[] pixels = canvas(21, 12);
+        for (int x = 1; x < 21; x += 4) {
+            rect(pixels, 21, x, 0, x + 1, 9, BLACK);
+        }
+
+        FloodFill fill = new FloodFill();
+        int filled = fill.fill(pixels, 21, 12, 0, 11, RED, 0);
+
+        int white = 0;
+        for (int pixel : pixels) {
+            white += pixel == WHITE ? 1 : 0;
+        }
+        assertEquals(0, white);
+        assertEquals(21 * 12 - 5 * 2 * 10, filled);
+    }
+
+    @Test
+    public void fill_honorsTolerance() throws Exception {
+        int[] pixels = canvas(10, 1);
+        pixels[3] = 0xfff0f0f0; // Antialiased edge, close to white
+        pixels[6] = 0xff808080;
+
+        assertEquals(6, new FloodFill().fill(pixels.clone(), 10, 1, 0, 0, RED, 16));
+        assertEquals(3, new FloodFill().fill(pixels.clone(), 10, 1, 0, 0, RED, 0));
+    }
+
+    @Test
+    public void fill_withMatchingColorTerminates() throws Exception {
+        int[] pixels = canvas(50, 50);
+        FloodFill fill = new FloodFill();
+
+        // Near-white is within tolerance of white, so filled pixels still match
+        assertEquals(2500, fill.fill(pixels, 50, 50, 25, 25, 0xfffefefe, 8));
+        assertEquals(0xfffefefe, pixels[0]);
+    }
+
+    @Test
+    public void fill_outsideBufferDoesNothing() throws Exception {
+        int[] pixels = canvas(4, 4);
+        assertEquals(0, new FloodFill().fill(pixels, 4, 4, 4, 0, RED, 0));
+        assertEquals(WHITE, pixels[0]);
+    }
+
+    @Test
+    public void fill_flowsAroundHolesIn4k() throws Exception {
+        int width = 3840;
+        int height = 2160;
+        int[] pixels = new int[width * height];
+
+        // Scribbled circles so the fill has to flow around holes
+        int[] background = canvas(width, height);
+        for (int i = 1; i <= 400; i++) {
+            int cx = (i * 7919) % width;
+            int cy = (i * 104729) % height;
+            for (int y = Math.max(0, cy - 30); y < Math.min(height, cy + 30); y++) {
+                for (int x = Math.max(0, cx - 30); x < Math.min(width, cx + 30); x++) {
+                    int dx = x - cx;
+                    int dy = y - cy;
+                    int d = dx * dx + dy * dy;
+                    if (d > 24 * 24 && d < 30 * 30) {
+                        background[y * width + x] = BLACK;
+                    }
+                }
+            }
+        }
+
+        System.arraycopy(background, 0, pixels, 0, pixels.length);
+        int filled = new FloodFill().fill(pixels, width, height, 0, 0, RED, 0);
+
+        assertTrue(filled > width * height / 2);
+        // The inside of a ring is cut off from the corner
+        int cx = 7919 % width;
+        int cy = 104729 % height;
+        assertEquals(background[cy * width + cx], pixels[cy * width + cx]);
+    }
+}
@@ -0,0 +1,67 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class GalleryIndexTest {
+    @Test
+    public void get_listsNewestFirst() throws Exception {
+        GalleryIndex index = new GalleryIndex();
+        GalleryIndex.Entry first = index.add("content://media/1", "Doodlz1", 1000, 1080, 1920);
+        GalleryIndex.Entry second = index.add("content://media/2", "Doodlz2", 2000, 1080, 1920);
+
+        assertEquals(2, index.size());
+        assertSame(second, index.get(0));
+        assertSame(first, index.get(1));
+        assertTrue(second.id != first.id);
+    }
+
+    @Test
+    public void remove_forgetsEntry() throws Exception {
+        GalleryIndex index = new GalleryIndex();
+        GalleryIndex.Entry first = index.add("content://media/1", "Doodlz1", 1000, 10, 10);
+        index.add("content://media/2", "Doodlz2", 2000, 10, 10);
+
+        assertTrue(index.remove(first.id));
+        assertFalse(index.remove(first.id));
+        assertEquals(1, index.size());
+        assertEquals("Doodlz2", index.get(0).title);
+    }
+
+    @Test
+    public void save_roundTripsAndKeepsIdsUnique() throws Exception {
+        File file = File.createTempFile("gallery", ".idx");
+        try {
+            GalleryIndex index = new GalleryIndex();
+            index.add("content://media/1", "Doodlz1", 1000, 1080, 1920);
+            GalleryIndex.Entry removed = index.add("content://media/2", "Doodlz2", 2000, 720, 1280);
+            index.remove(removed.id);
+            index.save(file);
+
+            GalleryIndex loaded = GalleryIndex.load(file);
+            assertEquals(1, loaded.size());
+            GalleryIndex.Entry entry = loaded.get(0);
+            assertEquals("content://media/1", entry.uri);
+            assertEquals("Doodlz1", entry.title);
+            assertEquals(1000, entry.savedMillis);
+            assertEquals(1080, entry.width);
+            assertEquals(1920, entry.height);
+
+            // A removed entry's id, and so its cached thumbnail, is never reused
+            assertTrue(loaded.add("content://media/3", "Doodlz3", 3000, 1, 1).id > removed.id);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void load_missingFileGivesEmptyIndex() throws Exception {
+        File file = File.createTempFile("gallery", ".idx");
+        assertTrue(file.delete());
+
+        assertEquals(0, GalleryIndex.load(file).size());
+    }
+}
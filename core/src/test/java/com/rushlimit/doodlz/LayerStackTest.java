@@ -0,0 +1,173 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LayerStackTest {
+    private static final long LAYER = 100;
+
+    // Base, A, B with B active, composites built
+    private static LayerStack<String> threeLayers() {
+        LayerStack<String> stack = new LayerStack<>(10 * LAYER);
+        stack.add("base", LAYER);
+        stack.add("a", LAYER);
+        stack.add("b", LAYER);
+        stack.setActive(1);
+        stack.useBelowComposite();
+        stack.useAboveComposite();
+        stack.resetStats();
+        return stack;
+    }
+
+    @Test
+    public void add_insertsAboveTheActiveLayerAndActivatesIt() {
+        LayerStack<String> stack = new LayerStack<>(10 * LAYER);
+        assertEquals(0, stack.add("base", LAYER));
+        assertEquals(1, stack.add("top", LAYER));
+        stack.setActive(0);
+        assertEquals(1, stack.add("middle", LAYER));
+
+        assertEquals("base", stack.get(0));
+        assertEquals("middle", stack.get(1));
+        assertEquals("top", stack.get(2));
+        assertEquals("middle", stack.getActive());
+        assertEquals(3 * LAYER, stack.getBytes());
+    }
+
+    @Test
+    public void drawingOnTheActiveLayer_keepsBothCompositesCached() {
+        LayerStack<String> stack = threeLayers();
+        for (int frame = 0; frame < 100; frame++) {
+            assertTrue(stack.useBelowComposite());
+            assertTrue(stack.useAboveComposite());
+        }
+        assertEquals(200, stack.getHits());
+        assertEquals(0, stack.getMisses());
+    }
+
+    @Test
+    public void changesBelowTheActiveLayer_onlyInvalidateTheLowerComposite() {
+        LayerStack<String> stack = threeLayers();
+
+        stack.setOpacity(0, 0.5f);
+        assertFalse(stack.useBelowComposite());
+        assertTrue(stack.useAboveComposite());
+        // Rebuilt once, then cached again
+        assertTrue(stack.useBelowComposite());
+
+        stack.setBlendMode(2, 3);
+        assertTrue(stack.useBelowComposite());
+        assertFalse(stack.useAboveComposite());
+
+        stack.setVisible(0, false);
+        assertFalse(stack.useBelowComposite());
+        stack.contentChanged(2);
+        assertFalse(stack.useAboveComposite());
+
+        assertEquals(4, stack.getMisses());
+        assertEquals(3, stack.getHits());
+    }
+
+    @Test
+    public void unchangedProperties_keepTheCompositeCached() {
+        LayerStack<String> stack = threeLayers();
+        stack.setOpacity(0, 1);
+        stack.setVisible(2, true);
+        stack.setBlendMode(0, 0);
+        stack.setActive(1);
+        assertTrue(stack.useBelowComposite());
+        assertTrue(stack.useAboveComposite());
+    }
+
+    @Test
+    public void switchingTheActiveLayer_invalidatesBoth() {
+        LayerStack<String> stack = threeLayers();
+        stack.setActive(2);
+        assertFalse(stack.useBelowComposite());
+        assertFalse(stack.useAboveComposite());
+        assertFalse(stack.hasVisibleAbove());
+    }
+
+    @Test
+    public void addingALayer_keepsTheUpperComposite() {
+        LayerStack<String> stack = threeLayers();
+        stack.add("c", LAYER);
+        assertEquals(2, stack.getActiveIndex());
+        assertFalse(stack.useBelowComposite());
+        assertTrue(stack.useAboveComposite());
+        assertEquals("b", stack.get(3));
+    }
+
+    @Test
+    public void move_keepsTheActiveLayerActive() {
+        LayerStack<String> stack = threeLayers();
+
+        // The top layer goes to the bottom, passing the active one
+        stack.move(2, 0);
+        assertEquals("b", stack.get(0));
+        assertEquals("base", stack.get(1));
+        assertEquals("a", stack.get(2));
+        assertEquals("a", stack.getActive());
+        assertFalse(stack.useBelowComposite());
+        assertFalse(stack.useAboveComposite());
+
+        // Moving a layer within one side leaves the other alone
+        stack.move(0, 1);
+        assertEquals("base", stack.get(0));
+        assertEquals("a", stack.getActive());
+        assertFalse(stack.useBelowComposite());
+        assertTrue(stack.useAboveComposite());
+
+        // Moving the active layer
+        stack.move(2, 0);
+        assertEquals("a", stack.get(0));
+        assertEquals(0, stack.getActiveIndex());
+        assertFalse(stack.useBelowComposite());
+        assertFalse(stack.useAboveComposite());
+    }
+
+    @Test
+    public void remove_returnsPixelsAndHandsActiveToTheLayerBelow() {
+        LayerStack<String> stack = threeLayers();
+
+        assertEquals("b", stack.remove(2));
+        assertEquals("a", stack.getActive());
+        assertTrue(stack.useBelowComposite());
+        assertFalse(stack.useAboveComposite());
+
+        assertEquals("a", stack.remove(1));
+        assertEquals("base", stack.getActive());
+        assertEquals(LAYER, stack.getBytes());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void remove_keepsTheLastLayer() {
+        LayerStack<String> stack = new LayerStack<>(LAYER);
+        stack.add("base", LAYER);
+        stack.remove(0);
+    }
+
+    @Test
+    public void add_refusesLayersOverTheBudget() {
+        LayerStack<String> stack = new LayerStack<>(2 * LAYER);
+        // The first layer is accepted even over budget
+        assertEquals(0, stack.add("base", 3 * LAYER));
+        assertFalse(stack.canAdd(LAYER));
+        assertEquals(-1, stack.add("a", LAYER));
+        assertEquals(1, stack.size());
+
+        stack.setBudgetBytes(5 * LAYER);
+        assertEquals(1, stack.add("a", LAYER));
+        assertEquals(-1, stack.add("b", 2 * LAYER));
+    }
+
+    @Test
+    public void replace_tracksBytesAndInvalidates() {
+        LayerStack<String> stack = threeLayers();
+        assertEquals("base", stack.replace(0, "grown", 2 * LAYER));
+        assertEquals(4 * LAYER, stack.getBytes());
+        assertFalse(stack.useBelowComposite());
+        assertTrue(stack.useAboveComposite());
+    }
+}
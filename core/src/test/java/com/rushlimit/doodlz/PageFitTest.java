@@ -0,0 +1,40 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PageFitTest {
+    private static final float EPSILON = 1e-3f;
+
+    @Test
+    public void fit_centersAnUprightDrawing() throws Exception {
+        // 1080 x 1920 view on A4's 595 x 842 points
+        PageFit fit = PageFit.fit(595, 842, 1080, 1920);
+        assertFalse(fit.rotated);
+        assertEquals(842f / 1920, fit.scale, EPSILON);
+        assertEquals((595 - 1080 * fit.scale) / 2, fit.left, EPSILON);
+        assertEquals(0, fit.top, EPSILON);
+    }
+
+    @Test
+    public void fit_turnsALandscapeDrawingOnAPortraitPage() throws Exception {
+        PageFit fit = PageFit.fit(595, 842, 1920, 1080);
+        assertTrue(fit.rotated);
+        assertEquals(842f / 1920, fit.scale, EPSILON);
+        assertEquals((595 - 1080 * fit.scale) / 2, fit.left, EPSILON);
+        assertEquals(0, fit.top, EPSILON);
+    }
+
+    @Test
+    public void rasterScale_followsThePrinterUntilTheBudget() throws Exception {
+        PageFit fit = PageFit.fit(595, 842, 1080, 1920);
+
+        // 300 dpi needs about 2.6 bitmap pixels per view pixel
+        assertEquals(fit.scale * 300 / 72, fit.rasterScale(300, 1080, 1920, 64L * 1024 * 1024), EPSILON);
+
+        // At 600 dpi, 8M pixels allows only 2 x 2 per view pixel
+        float limited = fit.rasterScale(600, 1080, 1920, 4L * 1080 * 1920);
+        assertEquals(2, limited, EPSILON);
+    }
+}
@@ -0,0 +1,110 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class PointerSlotTableTest {
+    private static final int FINGERS = 10;
+    private static final int EVENTS = 200000;
+    private static final int SAMPLES_PER_EVENT = 4;
+
+    @Test
+    public void startAndEnd_trackActivePointers() throws Exception {
+        PointerSlotTable slots = new PointerSlotTable();
+
+        assertTrue(slots.start(0, 1, 2));
+        assertTrue(slots.start(3, 4, 5));
+        assertTrue(slots.start(7, 6, 7));
+        assertEquals(3, slots.getActiveCount());
+
+        slots.end(3);
+        assertFalse(slots.isActive(3));
+        assertEquals(2, slots.getActiveCount());
+        assertEquals(0, slots.getActiveId(0));
+        assertEquals(7, slots.getActiveId(1));
+        assertEquals(6, slots.getLastX(7), 0);
+        assertEquals(7, slots.getEndY(7), 0);
+
+        slots.clear();
+        assertEquals(0, slots.getActiveCount());
+        assertFalse(slots.isActive(0));
+    }
+
+    @Test
+    public void start_rejectsIdsOutsideCapacity() throws Exception {
+        PointerSlotTable slots = new PointerSlotTable(4);
+
+        assertFalse(slots.start(4, 0, 0));
+        assertFalse(slots.start(-1, 0, 0));
+        assertFalse(slots.isActive(4));
+        assertEquals(0, slots.getActiveCount());
+    }
+
+    @Test
+    public void tenFingerStream_allocatesNothing() throws Exception {
+        // The pipeline DoodleView draws with, so addPoint and the builder's
+        // segment buffer are exercised along with the slots
+        StrokePipeline strokes = new QuadStrokePipeline(new PointerSlotTable(),
+                new StrokeBuilder(new AdaptiveSimplifier(PointerSlotTable.DEFAULT_CAPACITY)));
+        float[] xs = new float[SAMPLES_PER_EVENT];
+        float[] ys = new float[SAMPLES_PER_EVENT];
+
+        // Warm up so class loading and JIT do not count as allocation, and
+        // so the point and segment buffers reach the size the stream needs
+        feedStream(strokes, EVENTS / 10, xs, ys);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long segments = feedStream(strokes, EVENTS, xs, ys);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        assertTrue(segments > EVENTS);
+        // Only the measurement calls themselves may allocate
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    // Replays a synthetic stream of ten fingers tracing circles, a few
+    // batched samples per event, lifting and replacing one finger every
+    // hundred events; returns the number of segments built
+    private static long feedStream(StrokePipeline strokes, int events, float[] xs, float[] ys) {
+        long segments = 0;
+        for (int id = 0; id < FINGERS; id++) {
+            strokes.start(id, circleX(id, 0), circleY(id, 0));
+        }
+
+        for (int event = 0; event < events; event++) {
+            if (event % 100 == 99) {
+                int id = (event / 100) % FINGERS;
+                segments += strokes.finish(id);
+                strokes.end(id);
+                strokes.start(id, circleX(id, event), circleY(id, event));
+            }
+
+            for (int i = 0; i < strokes.getActiveCount(); i++) {
+                int id = strokes.getActiveId(i);
+                for (int s = 0; s < SAMPLES_PER_EVENT; s++) {
+                    int step = event * SAMPLES_PER_EVENT + s;
+                    xs[s] = circleX(id, step);
+                    ys[s] = circleY(id, step);
+                }
+                segments += strokes.addSamples(id, xs, ys, SAMPLES_PER_EVENT);
+            }
+        }
+
+        strokes.clear();
+        return segments;
+    }
+
+    private static float circleX(int id, int step) {
+        return 200 + id * 50 + (float) Math.cos(step * 0.05) * 150;
+    }
+
+    private static float circleY(int id, int step) {
+        return 300 + (float) Math.sin(step * 0.05) * 150;
+    }
+}
@@ -0,0 +1,68 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class RecentColorsTest {
+    @Test
+    public void add_keepsNewestFirstWithoutRepeats() throws Exception {
+        RecentColors recent = new RecentColors(3);
+        assertTrue(recent.add(1));
+        assertTrue(recent.add(2));
+        assertTrue(recent.add(3));
+        assertTrue(recent.add(1)); // Moves to the front
+        assertFalse(recent.add(1));
+
+        assertEquals(3, recent.size());
+        assertEquals(1, recent.get(0));
+        assertEquals(3, recent.get(1));
+        assertEquals(2, recent.get(2));
+    }
+
+    @Test
+    public void add_dropsTheOldestWhenFull() throws Exception {
+        RecentColors recent = new RecentColors(3);
+        for (int color = 1; color <= 5; color++) {
+            recent.add(color);
+        }
+        assertEquals(3, recent.size());
+        assertEquals(5, recent.get(0));
+        assertEquals(3, recent.get(2));
+    }
+
+    @Test
+    public void save_roundTripsAndFitsANewCapacity() throws Exception {
+        File file = File.createTempFile("recent", ".colors");
+        try {
+            RecentColors recent = new RecentColors(4);
+            recent.add(0xff000000);
+            recent.add(0x80ff0000);
+            recent.add(0xff00ff00);
+            recent.save(file);
+
+            RecentColors loaded = RecentColors.load(file, 4);
+            assertEquals(3, loaded.size());
+            assertEquals(0xff00ff00, loaded.get(0));
+            assertEquals(0x80ff0000, loaded.get(1));
+            assertEquals(0xff000000, loaded.get(2));
+
+            RecentColors smaller = RecentColors.load(file, 2);
+            assertEquals(2, smaller.size());
+            assertEquals(0x80ff0000, smaller.get(1));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void load_missingFileIsEmpty() throws Exception {
+        File file = new File(System.getProperty("java.io.tmpdir"), "missing-recent-colors");
+        file.delete();
+        RecentColors recent = RecentColors.load(file, 8);
+        assertEquals(0, recent.size());
+        assertEquals(8, recent.getCapacity());
+    }
+}
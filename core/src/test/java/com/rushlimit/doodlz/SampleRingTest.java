@@ -0,0 +1,56 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleRingTest {
+    @Test
+    public void getPercentile_usesNearestRank() throws Exception {
+        SampleRing ring = new SampleRing(100);
+        for (int i = 100; i >= 1; i--) {
+            ring.add(i);
+        }
+
+        assertEquals(50, ring.getPercentile(50));
+        assertEquals(99, ring.getPercentile(99));
+        assertEquals(100, ring.getPercentile(100));
+        assertEquals(1, ring.getPercentile(0));
+        assertEquals(50, ring.getMean());
+    }
+
+    @Test
+    public void add_overwritesOldestWhenFull() throws Exception {
+        SampleRing ring = new SampleRing(3);
+        ring.add(1000);
+        ring.add(1);
+        ring.add(2);
+        ring.add(3);
+
+        assertEquals(3, ring.size());
+        assertEquals(3, ring.getMax());
+        assertEquals(2, ring.getMean());
+    }
+
+    @Test
+    public void countAbove_findsLateFrames() throws Exception {
+        SampleRing ring = new SampleRing(8);
+        long[] intervals = {16, 17, 16, 40, 16, 33, 17, 16};
+        for (long interval : intervals) {
+            ring.add(interval);
+        }
+
+        assertEquals(2, ring.countAbove(25));
+    }
+
+    @Test
+    public void emptyRing_reportsZero() throws Exception {
+        SampleRing ring = new SampleRing(4);
+        assertEquals(0, ring.getPercentile(50));
+        assertEquals(0, ring.getMean());
+
+        ring.add(5);
+        ring.clear();
+        assertEquals(0, ring.size());
+    }
+}
@@ -0,0 +1,15 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SampleSizeTest {
+    @Test
+    public void forTarget_keepsBothSidesAtLeastTheTarget() throws Exception {
+        assertEquals(1, SampleSize.forTarget(100, 100, 100, 100));
+        assertEquals(8, SampleSize.forTarget(1080, 1920, 128, 128));
+        assertEquals(4, SampleSize.forTarget(1080, 1920, 200, 128));
+        assertEquals(1, SampleSize.forTarget(50, 50, 128, 128));
+    }
+}
@@ -0,0 +1,144 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ShakeDetectorTest {
+    // Each row is timestamp_ns,x,y,z as a SensorEvent reports them
+    private static List<float[]> load(String name, List<Long> timestamps) throws IOException {
+        InputStream in = ShakeDetectorTest.class.getResourceAsStream("accelerometer/" + name);
+        assertNotNull(name, in);
+        List<float[]> samples = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                timestamps.add(Long.parseLong(fields[0]));
+                samples.add(new float[] {Float.parseFloat(fields[1]),
+                        Float.parseFloat(fields[2]), Float.parseFloat(fields[3])});
+            }
+        } finally {
+            reader.close();
+        }
+        return samples;
+    }
+
+    // Returns the times of the reported shakes in seconds from the trace start
+    private static List<Float> shakes(ShakeDetector detector, String name) throws IOException {
+        return shakes(detector, name, 0, 1);
+    }
+
+    // Same, feeding only some of the 50 Hz samples from index first on:
+    // each step skips ahead by the next of strides in turn, so {2} is the
+    // 25 Hz the app asks for
+    private static List<Float> shakes(ShakeDetector detector, String name, int first, int... strides)
+            throws IOException {
+        List<Long> timestamps = new ArrayList<>();
+        List<float[]> samples = load(name, timestamps);
+        List<Float> shakes = new ArrayList<>();
+        for (int i = first, step = 0; i < samples.size(); i += strides[step++ % strides.length]) {
+            float[] s = samples.get(i);
+            if (detector.onSample(timestamps.get(i), s[0], s[1], s[2])) {
+                shakes.add((timestamps.get(i) - timestamps.get(0)) / 1e9f);
+            }
+        }
+        return shakes;
+    }
+
+    @Test
+    public void shakeIsReportedOnce() throws IOException {
+        List<Float> shakes = shakes(new ShakeDetector(), "shake.csv");
+        assertEquals(shakes.toString(), 1, shakes.size());
+
+        // The shake runs from 2.0 to 3.5 s; it should be noticed early on
+        assertTrue(shakes.toString(), shakes.get(0) > 2.0f && shakes.get(0) < 3.0f);
+    }
+
+    @Test
+    public void continuedShakingIsReportedOncePerCooldown() throws IOException {
+        List<Float> shakes = shakes(new ShakeDetector(), "long_shake.csv");
+        assertEquals(shakes.toString(), 2, shakes.size());
+        assertTrue(shakes.toString(), shakes.get(1) - shakes.get(0) >= 2.0f);
+    }
+
+    @Test
+    public void walkingIsNotAShake() throws IOException {
+        assertEquals(0, shakes(new ShakeDetector(), "walking.csv").size());
+    }
+
+    @Test
+    public void tapsAreNotAShake() throws IOException {
+        assertEquals(0, shakes(new ShakeDetector(), "taps.csv").size());
+    }
+
+    @Test
+    public void turningThePhoneIsNotAShake() throws IOException {
+        // Gravity moves from z to y; the filter must follow it
+        assertEquals(0, shakes(new ShakeDetector(), "pickup.csv").size());
+    }
+
+    @Test
+    public void shakeIsReportedAtTheRegisteredRate() throws IOException {
+        // MainActivityFragment asks for 25 Hz; the fixtures are 50 Hz, so
+        // take every other sample, starting from either. Half the samples
+        // miss some peaks, but the shake is still caught before it ends.
+        for (int first = 0; first < 2; first++) {
+            List<Float> shakes = shakes(new ShakeDetector(), "shake.csv", first, 2);
+            assertEquals(shakes.toString(), 1, shakes.size());
+            assertTrue(shakes.toString(), shakes.get(0) > 2.0f && shakes.get(0) < 3.5f);
+
+            // Whether shaking on past the cooldown is reported again
+            // depends on which samples arrive; the first report does not
+            shakes = shakes(new ShakeDetector(), "long_shake.csv", first, 2);
+            assertTrue(shakes.toString(), shakes.size() >= 1 && shakes.get(0) < 2.5f);
+        }
+    }
+
+    @Test
+    public void otherMotionIsNotAShakeAtTheRegisteredRate() throws IOException {
+        for (int first = 0; first < 2; first++) {
+            assertEquals(0, shakes(new ShakeDetector(), "walking.csv", first, 2).size());
+            assertEquals(0, shakes(new ShakeDetector(), "taps.csv", first, 2).size());
+            assertEquals(0, shakes(new ShakeDetector(), "pickup.csv", first, 2).size());
+        }
+    }
+
+    @Test
+    public void irregularGapsGiveTheSameResult() throws IOException {
+        // A sensor hub may deliver 20 to 60 ms apart around the requested
+        // 40 ms; the filter follows the timestamps, not the sample count
+        List<Float> shakes = shakes(new ShakeDetector(), "shake.csv", 0, 1, 3, 2, 3, 1);
+        assertEquals(shakes.toString(), 1, shakes.size());
+        assertTrue(shakes.toString(), shakes.get(0) > 2.0f && shakes.get(0) < 3.0f);
+
+        assertEquals(0, shakes(new ShakeDetector(), "walking.csv", 0, 1, 3, 2, 3, 1).size());
+        assertEquals(0, shakes(new ShakeDetector(), "pickup.csv", 0, 1, 3, 2, 3, 1).size());
+    }
+
+    @Test
+    public void resetForgetsPeaks() {
+        ShakeDetector detector = new ShakeDetector(5, 2, 1000000000L, 0);
+        detector.onSample(0, 0, 0, 9.81f);
+        detector.onSample(20000000L, 20, 0, 9.81f); // First peak
+        detector.reset();
+        detector.onSample(40000000L, 0, 0, 9.81f);
+        detector.onSample(60000000L, 0, 0, 9.81f);
+        assertEquals(false, detector.onSample(80000000L, 20, 0, 9.81f));
+        detector.onSample(100000000L, 0, 0, 9.81f);
+        assertEquals(true, detector.onSample(120000000L, -20, 0, 9.81f));
+    }
+}
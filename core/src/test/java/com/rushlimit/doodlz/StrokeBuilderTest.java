@@ -0,0 +1,102 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StrokeBuilderTest {
+    private static final float TOLERANCE = 10;
+
+    @Test
+    public void addSamples_consumesEveryHistoricalSample() throws Exception {
+        PointerSlotTable slots = new PointerSlotTable();
+        StrokeBuilder builder = new StrokeBuilder(TOLERANCE);
+        slots.start(0, 0, 0);
+
+        float[] xs = {10, 20, 30, 40};
+        float[] ys = {0, 0, 0, 0};
+        assertEquals(4, builder.addSamples(slots, 0, xs, ys, 4));
+
+        float[] segments = builder.getSegments();
+        // First quad is controlled by the start point and ends halfway to the first sample
+        assertEquals(0, segments[0], 0);
+        assertEquals(5, segments[2], 0);
+        // Last quad is controlled by the third sample
+        assertEquals(30, segments[12], 0);
+        assertEquals(35, segments[14], 0);
+
+        assertEquals(40, slots.getLastX(0), 0);
+        assertEquals(35, slots.getEndX(0), 0);
+    }
+
+    @Test
+    public void addSamples_honorsTouchTolerance() throws Exception {
+        PointerSlotTable slots = new PointerSlotTable();
+        StrokeBuilder builder = new StrokeBuilder(TOLERANCE);
+        slots.start(0, 0, 0);
+
+        float[] xs = {3, 6, 9, 12, 15};
+        float[] ys = {1, 2, 3, 4, 5};
+        assertEquals(1, builder.addSamples(slots, 0, xs, ys, 5));
+        assertEquals(12, slots.getLastX(0), 0);
+
+        // Nothing moved far enough from the last accepted point
+        assertEquals(0, builder.addSamples(slots, 0, new float[]{14}, new float[]{9}, 1));
+        assertEquals(12, slots.getLastX(0), 0);
+    }
+
+    @Test
+    public void addSamples_keepsSubPixelPrecision() throws Exception {
+        PointerSlotTable slots = new PointerSlotTable();
+        StrokeBuilder builder = new StrokeBuilder(TOLERANCE);
+        slots.start(0, 0.25f, 0.75f);
+
+        builder.addSamples(slots, 0, new float[]{10.5f}, new float[]{20.25f}, 1);
+
+        assertEquals(0.25f, builder.getSegments()[0], 0);
+        assertEquals(5.375f, builder.getSegments()[2], 0);
+        assertEquals(10.5f, builder.getSegments()[3], 0);
+        assertEquals(10.5f, slots.getLastX(0), 0);
+    }
+
+    @Test
+    public void addSamples_reportsBatchBounds() throws Exception {
+        PointerSlotTable slots = new PointerSlotTable();
+        StrokeBuilder builder = new StrokeBuilder(TOLERANCE);
+        slots.start(0, 50, 50);
+
+        builder.addSamples(slots, 0, new float[]{30, 80}, new float[]{90, 10}, 2);
+
+        // Start (50, 50), controls (50, 50) and (30, 90), ends (40, 70) and (55, 50)
+        assertEquals(30, builder.getLeft(), 0);
+        assertEquals(50, builder.getTop(), 0);
+        assertEquals(55, builder.getRight(), 0);
+        assertEquals(90, builder.getBottom(), 0);
+    }
+
+    @Test
+    public void addSamples_consumesALongBatchedStream() throws Exception {
+        PointerSlotTable slots = new PointerSlotTable();
+        StrokeBuilder builder = new StrokeBuilder(TOLERANCE);
+
+        // A 240 Hz digitizer batches about four samples into each 60 Hz event
+        int batch = 4;
+        int events = 10000;
+        float[] xs = new float[batch];
+        float[] ys = new float[batch];
+
+        slots.start(0, 0, 0);
+        long segments = 0;
+        for (int event = 0; event < events; event++) {
+            for (int i = 0; i < batch; i++) {
+                float t = (event * batch + i) * 0.05f;
+                xs[i] = 500 + 400 * (float) Math.cos(t);
+                ys[i] = 500 + 400 * (float) Math.sin(t);
+            }
+            segments += builder.addSamples(slots, 0, xs, ys, batch);
+        }
+
+        assertTrue(segments > 0);
+        assertTrue(segments <= events * (long) batch);
+    }
+}
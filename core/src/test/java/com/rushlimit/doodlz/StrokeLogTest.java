@@ -0,0 +1,245 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class StrokeLogTest {
+    @Test
+    public void appendStroke_packsPointsAfterEachOther() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendStroke(0xff000000, 5, 1, new float[]{1, 2, 3, 4}, 0, 2);
+        log.appendStroke(0x80ff0000, 12.5f, 0, new float[]{9, 9, 5, 6, 7, 8}, 2, 2);
+
+        assertEquals(2, log.size());
+        assertEquals(StrokeLog.KIND_STROKE, log.getKind(1));
+        assertEquals(0x80ff0000, log.getColor(1));
+        assertEquals(12.5f, log.getWidth(1), 0);
+        assertEquals(0, log.getCap(1));
+        assertEquals(4, log.getPointOffset(1));
+        assertEquals(2, log.getPointCount(1));
+        assertEquals(5, log.getCoords()[4], 0);
+        assertEquals(8, log.getCoords()[7], 0);
+    }
+
+    @Test
+    public void appendClear_recordsCommandWithoutPoints() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendStroke(0xff000000, 5, 1, new float[]{1, 2}, 0, 1);
+        log.appendClear();
+
+        assertEquals(2, log.size());
+        assertEquals(StrokeLog.KIND_CLEAR, log.getKind(1));
+        assertEquals(0, log.getPointCount(1));
+    }
+
+    @Test
+    public void setSize_keepsUndoneCommandsUntilNextAppend() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendStroke(1, 5, 1, new float[]{1, 2}, 0, 1);
+        log.appendStroke(2, 5, 1, new float[]{3, 4}, 0, 1);
+
+        log.setSize(1);
+        assertEquals(1, log.size());
+        assertEquals(2, log.getRetainedSize());
+
+        log.setSize(2); // Redo
+        assertEquals(2, log.getColor(1));
+
+        log.setSize(1);
+        log.appendStroke(3, 5, 1, new float[]{5, 6}, 0, 1);
+        assertEquals(2, log.getRetainedSize());
+        assertEquals(3, log.getColor(1));
+        assertEquals(2, log.getPointOffset(1));
+        assertEquals(5, log.getCoords()[2], 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setSize_rejectsSizeBeyondRetainedCommands() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendClear();
+        log.setSize(2);
+    }
+
+    @Test
+    public void writeTo_roundTripsVisibleCommands() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendStroke(0x80123456, 7.5f, 2, new float[]{1.25f, 2, 3, 4}, 0, 2);
+        log.appendClear();
+        log.appendStroke(1, 5, 1, new float[]{5, 6}, 0, 1);
+        log.setSize(2); // The undone stroke is not written
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        log.writeTo(new DataOutputStream(bytes));
+        StrokeLog copy = StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, copy.size());
+        assertEquals(0x80123456, copy.getColor(0));
+        assertEquals(7.5f, copy.getWidth(0), 0);
+        assertEquals(2, copy.getCap(0));
+        assertEquals(2, copy.getPointCount(0));
+        assertEquals(1.25f, copy.getCoords()[0], 0);
+        assertEquals(4, copy.getCoords()[3], 0);
+        assertEquals(StrokeLog.KIND_CLEAR, copy.getKind(1));
+    }
+
+    @Test
+    public void appendFill_roundTripsSeedAndTolerance() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendStroke(1, 5, 1, new float[]{1, 2, 3, 4}, 0, 2);
+        log.appendFill(0xff00ff00, 12.5f, 40, 24);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        log.writeTo(new DataOutputStream(bytes));
+        StrokeLog copy = StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(StrokeLog.KIND_FILL, copy.getKind(1));
+        assertEquals(0xff00ff00, copy.getColor(1));
+        assertEquals(24, copy.getWidth(1), 0);
+        assertEquals(1, copy.getPointCount(1));
+        assertEquals(12.5f, copy.getCoords()[copy.getPointOffset(1)], 0);
+        assertEquals(40, copy.getCoords()[copy.getPointOffset(1) + 1], 0);
+    }
+
+    @Test
+    public void appendVariableStroke_roundTripsPointWidths() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendVariableStroke(0xff112233, 10, 1, new float[]{1, 2, 3, 4, 5, 6}, 0, new float[]{0, 4, 7, 9}, 1, 3);
+        log.appendStroke(1, 5, 1, new float[]{7, 8}, 0, 1);
+
+        // Undoing the second stroke and appending must keep the widths
+        log.setSize(1);
+        log.appendClear();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        log.writeTo(new DataOutputStream(bytes));
+        StrokeLog copy = StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2, copy.size());
+        assertEquals(StrokeLog.KIND_VARIABLE_STROKE, copy.getKind(0));
+        assertEquals(10, copy.getWidth(0), 0);
+        assertEquals(3, copy.getPointCount(0));
+        assertEquals(5, copy.getCoords()[4], 0);
+        int widths = copy.getPointWidthOffset(0);
+        assertEquals(4, copy.getCoords()[widths], 0);
+        assertEquals(9, copy.getCoords()[widths + 2], 0);
+        assertEquals(9, copy.getPointOffset(1));
+        assertEquals(9, copy.copy().getPointOffset(1));
+    }
+
+    @Test
+    public void copy_isIndependentOfLaterAppends() throws Exception {
+        StrokeLog log = new StrokeLog();
+        log.appendStroke(1, 5, 1, new float[]{1, 2, 3, 4}, 0, 2);
+        StrokeLog copy = log.copy();
+        log.appendStroke(2, 5, 1, new float[]{5, 6}, 0, 1);
+
+        assertEquals(1, copy.size());
+        assertEquals(3, copy.getCoords()[2], 0);
+        copy.appendClear();
+        assertEquals(2, log.getColor(1));
+    }
+
+    @Test
+    public void append_growsPastInitialCapacity() throws Exception {
+        StrokeLog log = new StrokeLog();
+        float[] points = new float[400];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = i;
+        }
+
+        for (int stroke = 0; stroke < 100; stroke++) {
+            log.appendStroke(stroke, stroke, 1, points, 0, 200);
+        }
+
+        assertEquals(100, log.size());
+        assertEquals(99, log.getColor(99));
+        assertEquals(99 * 400, log.getPointOffset(99));
+        assertEquals(399, log.getCoords()[99 * 400 + 399], 0);
+    }
+
+    @Test
+    public void byteSize_isFarBelowABitmapOfTheDrawing() throws Exception {
+        // A busy doodle: 500 strokes of 80 accepted points each
+        StrokeLog log = new StrokeLog();
+        float[] points = new float[160];
+        for (int stroke = 0; stroke < 500; stroke++) {
+            for (int i = 0; i < points.length; i += 2) {
+                points[i] = (stroke * 13 + i * 7) % 1080;
+                points[i + 1] = (stroke * 29 + i * 3) % 1920;
+            }
+            log.appendStroke(0xff000000 | stroke, 5, 1, points, 0, 80);
+        }
+
+        // The ARGB_8888 bitmap of a 1080x1920 screen
+        long bitmapBytes = 1080L * 1920L * 4L;
+        assertTrue(log.getAllocatedByteSize() * 10 < bitmapBytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsUnknownKinds() throws Exception {
+        StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(command(7, 0))));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsNegativePointCounts() throws Exception {
+        StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(command(StrokeLog.KIND_STROKE, -1))));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsHugePointCounts() throws Exception {
+        // Would need 24 GB of floats
+        StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(
+                command(StrokeLog.KIND_STROKE, Integer.MAX_VALUE))));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_failsOnCountsLargerThanTheData() throws Exception {
+        StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(command(StrokeLog.KIND_STROKE, 1000))));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsEmptyStrokes() throws Exception {
+        StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(command(StrokeLog.KIND_STROKE, 0))));
+    }
+
+    @Test
+    public void readFrom_rejectsUnknownCaps() throws Exception {
+        for (int cap : new int[]{-1, StrokeLog.MAX_CAP + 1}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(command(StrokeLog.KIND_VARIABLE_STROKE, cap, 1));
+            out.writeFloat(1);
+            out.writeFloat(2);
+            out.writeFloat(5);
+            try {
+                StrokeLog.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+                fail("Accepted cap " + cap);
+            } catch (IOException expected) {
+            }
+        }
+    }
+
+    // One command header with no points after it
+    private static byte[] command(int kind, int pointCount) throws IOException {
+        return command(kind, 1, pointCount);
+    }
+
+    private static byte[] command(int kind, int cap, int pointCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1);
+        out.writeByte(kind);
+        out.writeInt(0xff000000);
+        out.writeFloat(5);
+        out.writeByte(cap);
+        out.writeInt(pointCount);
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,140 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StrokeOutlineTest {
+    private static float distance(float[] vertices, int a, int b) {
+        return (float) Math.hypot(vertices[a * 2] - vertices[b * 2], vertices[a * 2 + 1] - vertices[b * 2 + 1]);
+    }
+
+    // Twice the area the strip's triangles cover, counting overlaps
+    private static double coveredArea(StrokeMesh mesh) {
+        float[] v = mesh.getVertices();
+        double area = 0;
+        for (int i = 2; i < mesh.getVertexCount(); i++) {
+            double cross = (v[i * 2 - 2] - v[i * 2 - 4]) * (v[i * 2 + 1] - v[i * 2 - 3])
+                    - (v[i * 2 - 1] - v[i * 2 - 3]) * (v[i * 2] - v[i * 2 - 4]);
+            area += Math.abs(cross) / 2;
+        }
+        return area;
+    }
+
+    @Test
+    public void straightStroke_isAsWideAsItsWidths() throws Exception {
+        StrokeMesh mesh = new StrokeMesh();
+        StrokeOutline outline = new StrokeOutline();
+        outline.start(0, 0, 10, 0xff000000);
+        outline.lineTo(100, 0, 10, mesh);
+        outline.lineTo(200, 0, 30, mesh);
+        outline.finish(mesh);
+
+        // Bounds include the round caps
+        assertEquals(-5, mesh.getLeft(), 1e-3);
+        assertEquals(215, mesh.getRight(), 1e-3);
+        assertEquals(-15, mesh.getTop(), 1e-3);
+        assertEquals(15, mesh.getBottom(), 1e-3);
+
+        // Body of the stroke is a trapezoid plus a rectangle; caps add half discs
+        double expected = 100 * 10 + 100 * (10 + 30) / 2.0 + Math.PI * (25 + 225) / 2;
+        assertEquals(expected, coveredArea(mesh), expected * 0.03);
+    }
+
+    @Test
+    public void pairs_straddleTheCenterline() throws Exception {
+        StrokeMesh mesh = new StrokeMesh();
+        StrokeOutline outline = new StrokeOutline();
+        outline.start(0, 0, 8, 0xff000000);
+        outline.quadTo(50, 0, 50, 50, 8, mesh);
+
+        // The last pair sits across the quad's end, 8 apart
+        int last = mesh.getVertexCount() - 1;
+        assertEquals(8, distance(mesh.getVertices(), last, last - 1), 1e-3);
+        float midX = (mesh.getVertices()[last * 2] + mesh.getVertices()[last * 2 - 2]) / 2;
+        float midY = (mesh.getVertices()[last * 2 + 1] + mesh.getVertices()[last * 2 - 1]) / 2;
+        assertEquals(50, midX, 1e-3);
+        assertEquals(50, midY, 1e-3);
+    }
+
+    @Test
+    public void interleavedStrokes_joinWithDegenerateTriangles() throws Exception {
+        StrokeMesh mesh = new StrokeMesh();
+        StrokeOutline first = new StrokeOutline();
+        StrokeOutline second = new StrokeOutline();
+        first.start(0, 0, 10, 0xffff0000);
+        second.start(0, 100, 10, 0xff0000ff);
+
+        first.lineTo(100, 0, 10, mesh);
+        double firstArea = coveredArea(mesh);
+        second.lineTo(100, 100, 10, mesh);
+        double bothArea = coveredArea(mesh);
+        first.lineTo(200, 0, 10, mesh);
+
+        // The joins add no area: the second stroke adds what the first did,
+        // and resuming the first adds just its next 100 x 10 piece
+        assertEquals(2 * firstArea, bothArea, 1e-3);
+        assertEquals(bothArea + 1000, coveredArea(mesh), 1e-2);
+
+        // Vertices keep their stroke's color
+        int[] colors = mesh.getColors();
+        assertEquals(0xffff0000, colors[0]);
+        assertEquals(0xffff0000, colors[mesh.getVertexCount() - 1]);
+    }
+
+    @Test
+    public void outline_replaysALoggedStrokeAsDrawnLive() throws Exception {
+        float[] points = {0, 0, 30, 5, 60, 30, 70, 80, 40, 120};
+        float[] widths = {6, 8, 12, 9, 4};
+
+        StrokeMesh live = new StrokeMesh();
+        StrokeOutline outline = new StrokeOutline();
+        outline.start(points[0], points[1], widths[0], 0xff336699);
+        for (int i = 1; i < widths.length; i++) {
+            float lastX = points[i * 2 - 2];
+            float lastY = points[i * 2 - 1];
+            outline.quadTo(lastX, lastY, (points[i * 2] + lastX) / 2, (points[i * 2 + 1] + lastY) / 2,
+                    widths[i], live);
+        }
+        outline.finish(live);
+
+        StrokeLog log = new StrokeLog();
+        log.appendClear();
+        log.appendVariableStroke(0xff336699, 12, 1, points, 0, widths, 0, widths.length);
+        StrokeMesh replayed = new StrokeMesh();
+        new StrokeOutline().outline(log, 1, replayed);
+
+        assertEquals(live.getVertexCount(), replayed.getVertexCount());
+        for (int i = 0; i < live.getVertexCount() * 2; i++) {
+            assertEquals(live.getVertices()[i], replayed.getVertices()[i], 0);
+        }
+        assertEquals(0xff336699, replayed.getColors()[replayed.getVertexCount() - 1]);
+    }
+
+    @Test
+    public void strokeThatNeverMoved_isADot() throws Exception {
+        StrokeMesh mesh = new StrokeMesh();
+        StrokeOutline outline = new StrokeOutline();
+        outline.start(20, 30, 12, 0xff000000);
+        outline.finish(mesh);
+
+        assertEquals(14, mesh.getLeft(), 1e-3);
+        assertEquals(26, mesh.getRight(), 1e-3);
+        assertEquals(Math.PI * 36, coveredArea(mesh), Math.PI * 36 * 0.05);
+    }
+
+    @Test
+    public void reset_reusesArrays() throws Exception {
+        StrokeMesh mesh = new StrokeMesh();
+        StrokeOutline outline = new StrokeOutline();
+        outline.start(0, 0, 4, 0xff000000);
+        for (int i = 1; i <= 1000; i++) {
+            outline.lineTo(i * 3, (i % 2) * 3, 4, mesh);
+        }
+        float[] vertices = mesh.getVertices();
+        mesh.reset();
+        assertTrue(mesh.isEmpty());
+        outline.lineTo(3003, 0, 4, mesh);
+        assertSame(vertices, mesh.getVertices());
+    }
+}
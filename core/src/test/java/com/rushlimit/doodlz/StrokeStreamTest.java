@@ -0,0 +1,150 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StrokeStreamTest {
+    // Records messages as strings so whole streams compare at once
+    static class Recorder implements StrokeStreamDecoder.Listener {
+        final List<String> messages = new ArrayList<>();
+
+        @Override
+        public void onStart(int id, float x, float y, int color, float width, int cap) {
+            messages.add("start " + id + " " + x + "," + y + " " + Integer.toHexString(color) + " " + width + " " + cap);
+        }
+
+        @Override
+        public void onMove(int id, float[] xs, float[] ys, int count) {
+            StringBuilder message = new StringBuilder("move " + id);
+            for (int i = 0; i < count; i++) {
+                message.append(' ').append(xs[i]).append(',').append(ys[i]);
+            }
+            messages.add(message.toString());
+        }
+
+        @Override
+        public void onEnd(int id) {
+            messages.add("end " + id);
+        }
+
+        @Override
+        public void onClear() {
+            messages.add("clear");
+        }
+    }
+
+    @Test
+    public void frames_roundTripEveryMessage() throws Exception {
+        StrokeStreamEncoder encoder = new StrokeStreamEncoder();
+        encoder.start(0, 100.5f, 200.25f, 0x80ff0000, 12.5f, 1);
+        encoder.move(0, new float[]{101, 103.0625f}, new float[]{199.5f, 190}, 2);
+        encoder.start(3, 10, 20, 0xff000000, 5, 2);
+        byte[] first = encoder.takeFrame();
+        assertTrue(encoder.isEmpty());
+
+        encoder.move(0, new float[]{90}, new float[]{250}, 1);
+        encoder.end(0);
+        encoder.end(3);
+        encoder.clear();
+        byte[] second = encoder.takeFrame();
+
+        StrokeStreamDecoder decoder = new StrokeStreamDecoder();
+        Recorder recorder = new Recorder();
+        decoder.read(first, recorder);
+        decoder.read(second, recorder);
+
+        assertEquals(7, recorder.messages.size());
+        assertEquals("start 0 100.5,200.25 80ff0000 12.5 1", recorder.messages.get(0));
+        assertEquals("move 0 101.0,199.5 103.0625,190.0", recorder.messages.get(1));
+        assertEquals("start 3 10.0,20.0 ff000000 5.0 2", recorder.messages.get(2));
+        // Positions carry over from the previous frame
+        assertEquals("move 0 90.0,250.0", recorder.messages.get(3));
+        assertEquals("end 0", recorder.messages.get(4));
+        assertEquals("end 3", recorder.messages.get(5));
+        assertEquals("clear", recorder.messages.get(6));
+    }
+
+    @Test
+    public void move_roundsToSixteenthsWithoutDrift() throws Exception {
+        StrokeStreamEncoder encoder = new StrokeStreamEncoder();
+        encoder.start(1, 0, 0, 0xff000000, 5, 1);
+        int count = 1000;
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = i * 0.33f;
+            ys[i] = (float) Math.sin(i * 0.01) * 300;
+        }
+        encoder.move(1, xs, ys, count);
+
+        final float[] decoded = new float[count * 2];
+        new StrokeStreamDecoder().read(encoder.takeFrame(), new Recorder() {
+            @Override
+            public void onMove(int id, float[] movedX, float[] movedY, int movedCount) {
+                for (int i = 0; i < movedCount; i++) {
+                    decoded[i * 2] = movedX[i];
+                    decoded[i * 2 + 1] = movedY[i];
+                }
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(xs[i], decoded[i * 2], 1 / 32f);
+            assertEquals(ys[i], decoded[i * 2 + 1], 1 / 32f);
+        }
+    }
+
+    @Test
+    public void move_takesAFewBytesPerSample() {
+        StrokeStreamEncoder encoder = new StrokeStreamEncoder();
+        encoder.start(0, 500, 500, 0xff000000, 5, 1);
+        encoder.takeFrame();
+
+        // A finger moving a few pixels between samples, as at 120 Hz
+        int count = 1200;
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        for (int i = 0; i < count; i++) {
+            xs[i] = 500 + (float) Math.cos(i * 0.02) * 200;
+            ys[i] = 500 + (float) Math.sin(i * 0.03) * 200;
+        }
+        for (int i = 0; i < count; i += 4) {
+            encoder.move(0, slice(xs, i, 4), slice(ys, i, 4), 4);
+        }
+
+        float bytesPerSample = (float) encoder.size() / count;
+        // Two raw floats would be 8
+        assertTrue(bytesPerSample < 4.5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void start_rejectsPointerIdsOutOfRange() {
+        new StrokeStreamEncoder().start(StrokeStreamEncoder.MAX_POINTER_ID + 1, 0, 0, 0, 1, 0);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsUnknownMessages() throws Exception {
+        new StrokeStreamDecoder().read(new byte[]{42}, new Recorder());
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsTruncatedFrames() throws Exception {
+        StrokeStreamEncoder encoder = new StrokeStreamEncoder();
+        encoder.move(0, new float[]{1000, 2000}, new float[]{1000, 2000}, 2);
+        byte[] frame = encoder.takeFrame();
+        byte[] truncated = new byte[frame.length - 1];
+        System.arraycopy(frame, 0, truncated, 0, truncated.length);
+        new StrokeStreamDecoder().read(truncated, new Recorder());
+    }
+
+    private static float[] slice(float[] values, int from, int count) {
+        float[] slice = new float[count];
+        System.arraycopy(values, from, slice, 0, count);
+        return slice;
+    }
+}
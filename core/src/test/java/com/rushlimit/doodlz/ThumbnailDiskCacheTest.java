@@ -0,0 +1,62 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailDiskCacheTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createDirectory() {
+        return new File(temporaryFolder.getRoot(), "thumbnails"); // Created by the first write
+    }
+
+    @Test
+    public void write_roundTripsAndSurvivesReopening() throws Exception {
+        File directory = createDirectory();
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 1000);
+        cache.write(42, new byte[]{1, 2, 3, 4}, 3);
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.read(42));
+        assertNull(cache.read(7));
+
+        ThumbnailDiskCache reopened = new ThumbnailDiskCache(directory, 1000);
+        assertEquals(3, reopened.getByteSize());
+        assertArrayEquals(new byte[]{1, 2, 3}, reopened.read(42));
+    }
+
+    @Test
+    public void write_trimsLeastRecentlyUsedFiles() throws Exception {
+        File directory = createDirectory();
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 300);
+        cache.write(1, new byte[100], 100);
+        cache.write(2, new byte[100], 100);
+        cache.write(3, new byte[100], 100);
+        // File times are coarse on some file systems, so age them by hand
+        new File(directory, "1").setLastModified(3000000);
+        new File(directory, "2").setLastModified(1000000);
+        new File(directory, "3").setLastModified(2000000);
+
+        cache.write(4, new byte[100], 100); // Over the limit: trims to 225 bytes
+
+        assertNull(cache.read(2));
+        assertNull(cache.read(3));
+        assertNotNull(cache.read(1));
+        assertNotNull(cache.read(4));
+        assertEquals(200, cache.getByteSize());
+    }
+
+    @Test
+    public void delete_updatesByteSize() throws Exception {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(createDirectory(), 1000);
+        cache.write(5, new byte[10], 10);
+        cache.delete(5);
+
+        assertNull(cache.read(5));
+        assertEquals(0, cache.getByteSize());
+    }
+}
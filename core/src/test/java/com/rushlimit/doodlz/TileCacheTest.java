@@ -0,0 +1,111 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TileCacheTest {
+    // Records evicted keys in order
+    private static class Evictions implements TileCache.EvictionListener<String> {
+        final List<Integer> keys = new ArrayList<>();
+
+        @Override
+        public void onTileEvicted(int key, String value) {
+            keys.add(key);
+        }
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedTile() throws Exception {
+        Evictions evictions = new Evictions();
+        TileCache<String> cache = new TileCache<>(3, evictions);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+
+        assertEquals("a", cache.get(1)); // 2 is now the oldest
+        cache.put(4, "d");
+
+        assertEquals(1, evictions.keys.size());
+        assertEquals(2, (int) evictions.keys.get(0));
+        assertNull(cache.get(2));
+        assertEquals("c", cache.get(3));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void put_replacesExistingTileWithoutEviction() throws Exception {
+        Evictions evictions = new Evictions();
+        TileCache<String> cache = new TileCache<>(2, evictions);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(1, "a2");
+
+        assertTrue(evictions.keys.isEmpty());
+        assertEquals("a2", cache.get(1));
+    }
+
+    @Test
+    public void remove_doesNotNotifyListener() throws Exception {
+        Evictions evictions = new Evictions();
+        TileCache<String> cache = new TileCache<>(2, evictions);
+        cache.put(1, "a");
+        cache.put(2, "b");
+
+        assertEquals("a", cache.remove(1));
+        assertFalse(cache.contains(1));
+        cache.put(3, "c"); // Fits in the freed slot
+        assertTrue(evictions.keys.isEmpty());
+    }
+
+    @Test
+    public void evictAll_notifiesForEveryTile() throws Exception {
+        Evictions evictions = new Evictions();
+        TileCache<String> cache = new TileCache<>(4, evictions);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(3, "c");
+
+        cache.evictAll();
+        assertEquals(3, evictions.keys.size());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void get_countsHitsAndMisses() throws Exception {
+        TileCache<String> cache = new TileCache<>(2, new Evictions());
+        cache.put(1, "a");
+        cache.get(1);
+        cache.get(2);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void panningAcrossGrid_keepsRecentTilesResident() throws Exception {
+        // A 4x3 window sliding right across a row of 32 tiles, as a pan would
+        Evictions evictions = new Evictions();
+        TileCache<String> cache = new TileCache<>(4 * 3 + 6, evictions);
+
+        for (int left = 0; left + 4 <= 32; left++) {
+            for (int y = 0; y < 3; y++) {
+                for (int x = left; x < left + 4; x++) {
+                    int key = y << 16 | x;
+                    if (cache.get(key) == null) {
+                        cache.put(key, "tile");
+                    }
+                }
+            }
+        }
+
+        // Each step loads one new column, and evicts only tiles left behind
+        assertEquals(32 * 3, cache.getMissCount());
+        for (int key : evictions.keys) {
+            assertTrue((key & 0xffff) < 32 - 4);
+        }
+    }
+}
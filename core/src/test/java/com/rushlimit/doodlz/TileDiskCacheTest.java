@@ -0,0 +1,54 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class TileDiskCacheTest {
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createDirectory() {
+        return new File(temporaryFolder.getRoot(), "tiles"); // Created by the first write
+    }
+
+    @Test
+    public void write_roundTripsTiles() throws Exception {
+        TileDiskCache cache = new TileDiskCache(createDirectory());
+        cache.write(3 << 16 | 7, new byte[]{1, 2, 3});
+        cache.write(1, new byte[]{9});
+
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.read(3 << 16 | 7));
+        assertArrayEquals(new byte[]{9}, cache.read(1));
+        assertNull(cache.read(2));
+        assertEquals(4, cache.getByteSize());
+    }
+
+    @Test
+    public void write_replacesEarlierSpill() throws Exception {
+        TileDiskCache cache = new TileDiskCache(createDirectory());
+        cache.write(1, new byte[100]);
+        cache.write(1, new byte[]{5, 6});
+
+        assertArrayEquals(new byte[]{5, 6}, cache.read(1));
+        assertEquals(2, cache.getByteSize());
+
+        cache.delete(1);
+        assertNull(cache.read(1));
+        assertEquals(0, cache.getByteSize());
+    }
+
+    @Test
+    public void newCache_dropsTilesOfEarlierSession() throws Exception {
+        File directory = createDirectory();
+        new TileDiskCache(directory).write(1, new byte[]{1});
+
+        TileDiskCache cache = new TileDiskCache(directory);
+        assertNull(cache.read(1));
+        assertEquals(0, cache.getByteSize());
+    }
+}
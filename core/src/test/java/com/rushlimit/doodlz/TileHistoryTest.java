@@ -0,0 +1,124 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileHistoryTest {
+    private static final int WHITE = IntSurface.WHITE;
+    private static final int BLACK = 0xff000000;
+
+    // Draws a rectangle as one undo step, capturing its tiles first
+    private static void drawStep(TileHistory history, IntSurface surface, int logMark,
+                                 int left, int top, int right, int bottom, int color) {
+        history.beginStep(surface, logMark);
+        history.captureBefore(left, top, right, bottom);
+        surface.fill(left, top, right, bottom, color);
+        history.endStep(logMark + 1);
+    }
+
+    @Test
+    public void undoAndRedo_restoreTouchedTiles() throws Exception {
+        IntSurface surface = new IntSurface(300, 200); // Edge tiles are partial
+        TileHistory history = new TileHistory(1 << 20);
+        int[] blank = surface.pixels.clone();
+
+        drawStep(history, surface, 0, 100, 50, 290, 190, BLACK);
+        int[] drawn = surface.pixels.clone();
+
+        assertEquals(0, history.undo(surface));
+        assertArrayEquals(blank, surface.pixels);
+        assertTrue(history.canRedo());
+
+        assertEquals(1, history.redo(surface));
+        assertArrayEquals(drawn, surface.pixels);
+        assertFalse(history.canRedo());
+    }
+
+    @Test
+    public void captureBefore_savesOnlyTouchedTilesOnce() throws Exception {
+        IntSurface surface = new IntSurface(1024, 1024);
+        TileHistory history = new TileHistory(1 << 20);
+
+        history.beginStep(surface, 0);
+        history.captureBefore(10, 10, 20, 20);
+        history.captureBefore(12, 12, 30, 30); // Same tile again
+        surface.fill(10, 10, 30, 30, BLACK);
+        history.endStep(1);
+
+        // A single mostly-white tile compresses far below the full 4 MB bitmap
+        assertTrue(history.getHistoryBytes() < 1024);
+        assertEquals(1, history.getUndoCount());
+    }
+
+    @Test
+    public void undo_restoresEdgeTilesAfterSurfaceGrew() throws Exception {
+        IntSurface small = new IntSurface(200, 300);
+        TileHistory history = new TileHistory(1 << 20);
+        drawStep(history, small, 0, 150, 0, 200, 300, BLACK);
+
+        // Copy the drawing into a larger surface, as a rotation would
+        IntSurface grown = new IntSurface(300, 300);
+        for (int row = 0; row < 300; row++) {
+            System.arraycopy(small.pixels, row * 200, grown.pixels, row * 300, 200);
+        }
+        grown.fill(200, 0, 300, 300, BLACK);
+
+        assertEquals(0, history.undo(grown));
+        assertEquals(WHITE, grown.pixels[150]);
+        assertEquals(WHITE, grown.pixels[299 * 300 + 199]);
+        // Pixels outside the original partial edge tile are untouched
+        assertEquals(BLACK, grown.pixels[299 * 300 + 200]);
+    }
+
+    @Test
+    public void newStep_discardsRedoHistory() throws Exception {
+        IntSurface surface = new IntSurface(256, 256);
+        TileHistory history = new TileHistory(1 << 20);
+
+        drawStep(history, surface, 0, 0, 0, 50, 50, BLACK);
+        history.undo(surface);
+        drawStep(history, surface, 0, 60, 60, 100, 100, BLACK);
+
+        assertFalse(history.canRedo());
+        assertEquals(1, history.getUndoCount());
+    }
+
+    @Test
+    public void emptyStep_isDropped() throws Exception {
+        IntSurface surface = new IntSurface(256, 256);
+        TileHistory history = new TileHistory(1 << 20);
+
+        history.beginStep(surface, 0);
+        history.endStep(0);
+
+        assertFalse(history.canUndo());
+        assertEquals(0, history.getHistoryBytes());
+    }
+
+    @Test
+    public void budget_evictsOldestSteps() throws Exception {
+        IntSurface surface = new IntSurface(1024, 1024);
+        TileHistory history = new TileHistory(1 << 20);
+
+        for (int step = 0; step < 50; step++) {
+            // Noise does not compress, so every step is expensive
+            history.beginStep(surface, step);
+            history.captureBefore(0, 0, 256, 256);
+            for (int i = 0; i < 256 * 1024; i++) {
+                surface.pixels[i] = (int) (i * 2654435761L + step * 40503L);
+            }
+            history.endStep(step + 1);
+        }
+
+        assertTrue(history.getHistoryBytes() <= history.getBudgetBytes());
+        assertTrue(history.getUndoCount() < 50);
+
+        // The newest steps survive eviction
+        assertEquals(49, history.undo(surface));
+
+        history.setBudgetBytes(0);
+        assertEquals(0, history.getHistoryBytes());
+        assertFalse(history.canUndo());
+    }
+}
@@ -0,0 +1,65 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TouchTraceReplayerTest {
+    @Test
+    public void replay_logsOneStrokePerPointer() throws Exception {
+        TouchTraceReplayer replayer = new TouchTraceReplayer(new QuadStrokePipeline(10));
+        StrokeLog log = new StrokeLog();
+        int segments = replayer.replay(TouchTraceTest.twoFingerTrace(20), log);
+
+        assertEquals(2, log.size());
+        assertTrue(segments > 0);
+        assertEquals(segments, replayer.getSegmentsBuilt());
+        assertEquals(24, replayer.getEventsReplayed());
+    }
+
+    @Test
+    public void replay_isDeterministicAcrossRoundTrip() throws Exception {
+        TouchTrace trace = TouchTraceTest.twoFingerTrace(50);
+        StrokeLog first = new StrokeLog();
+        StrokeLog second = new StrokeLog();
+
+        new TouchTraceReplayer(new QuadStrokePipeline(10)).replay(trace, first);
+        new TouchTraceReplayer(new QuadStrokePipeline(10)).replay(TouchTraceTest.roundTrip(trace), second);
+
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.getPointCount(i), second.getPointCount(i));
+        }
+        assertEquals(first.getByteSize(), second.getByteSize());
+        for (int i = 0; i < first.getPointOffset(1) * 2; i++) {
+            assertEquals(first.getCoords()[i], second.getCoords()[i], 0);
+        }
+    }
+
+    @Test
+    public void replay_endsStrokesLeftOpen() throws Exception {
+        TouchTrace trace = new TouchTrace();
+        trace.appendEvent(TouchTrace.ACTION_DOWN, 0, 1, new int[]{3}, 1, new long[]{0}, new float[]{0, 0});
+        trace.appendEvent(TouchTrace.ACTION_MOVE, 0, 1, new int[]{3}, 1, new long[]{8}, new float[]{50, 50});
+        QuadStrokePipeline strokes = new QuadStrokePipeline(10);
+        StrokeLog log = new StrokeLog();
+
+        new TouchTraceReplayer(strokes).replay(trace, log);
+
+        assertEquals(0, strokes.getActiveCount());
+        assertEquals(1, log.size());
+    }
+
+    @Test
+    public void replay_pacedFollowsRecordedTimes() throws Exception {
+        TouchTrace trace = TouchTraceTest.twoFingerTrace(10); // 104 ms
+        TouchTraceReplayer replayer = new TouchTraceReplayer(new QuadStrokePipeline(10));
+        replayer.setSpeed(2);
+
+        long start = System.nanoTime();
+        replayer.replay(trace, new StrokeLog());
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+        assertTrue(elapsedMillis >= trace.getDurationMillis() / 2);
+    }
+}
@@ -0,0 +1,184 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TouchTraceTest {
+    // Two fingers: down, pointer down, a few batched moves, pointer up, up
+    static TouchTrace twoFingerTrace(int moves) {
+        TouchTrace trace = new TouchTrace();
+        long time = 1000;
+        trace.appendEvent(TouchTrace.ACTION_DOWN, 0, 1, new int[]{0}, 1, new long[]{time},
+                new float[]{100, 200});
+        time += 8;
+        trace.appendEvent(TouchTrace.ACTION_POINTER_DOWN, 1, 2, new int[]{0, 1}, 1, new long[]{time},
+                new float[]{100, 200, 400, 300});
+
+        for (int i = 1; i <= moves; i++) {
+            long[] times = {time + 4, time + 8};
+            float[] coords = new float[8];
+            for (int s = 0; s < 2; s++) {
+                float step = i * 2 + s;
+                coords[s * 4] = 100 + step * 7.3f;
+                coords[s * 4 + 1] = 200 + step * 3.1f;
+                coords[s * 4 + 2] = 400 - step * 5.7f;
+                coords[s * 4 + 3] = 300 + (float) Math.sin(step) * 40;
+            }
+            trace.appendEvent(TouchTrace.ACTION_MOVE, 0, 2, new int[]{0, 1}, 2, times, coords);
+            time += 8;
+        }
+
+        trace.appendEvent(TouchTrace.ACTION_POINTER_UP, 0, 2, new int[]{0, 1}, 1, new long[]{time + 8},
+                new float[]{250, 260, 150, 310});
+        trace.appendEvent(TouchTrace.ACTION_UP, 0, 1, new int[]{1}, 1, new long[]{time + 16},
+                new float[]{150, 310});
+        return trace;
+    }
+
+    static TouchTrace roundTrip(TouchTrace trace) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        trace.writeTo(new DataOutputStream(bytes));
+        return TouchTrace.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void appendEvent_keepsPointersAndSamples() throws Exception {
+        TouchTrace trace = twoFingerTrace(3);
+
+        assertEquals(7, trace.getEventCount());
+        assertEquals(TouchTrace.ACTION_POINTER_DOWN, trace.getAction(1));
+        assertEquals(1, trace.getActionIndex(1));
+        assertEquals(1, trace.getPointerId(1, 1));
+        assertEquals(2, trace.getSampleCount(2));
+        assertEquals(1012, trace.getSampleTime(2, 0));
+        assertEquals(1016, trace.getEventTime(2));
+        assertEquals(400, trace.getX(1, 0, 1), 0);
+        assertEquals(1, trace.getPointerId(6, 0));
+        assertEquals(48, trace.getDurationMillis());
+    }
+
+    @Test
+    public void appendEvent_quantizesToSixteenthPixels() throws Exception {
+        TouchTrace trace = new TouchTrace();
+        trace.appendEvent(TouchTrace.ACTION_DOWN, 0, 1, new int[]{0}, 1, new long[]{0},
+                new float[]{10.03f, 20.97f});
+
+        assertEquals(10f, trace.getX(0, 0, 0), 0);
+        assertEquals(21f, trace.getY(0, 0, 0), 0);
+    }
+
+    @Test
+    public void appendEvent_keepsPressuresPerPointerSample() throws Exception {
+        TouchTrace trace = new TouchTrace();
+        trace.appendEvent(TouchTrace.ACTION_MOVE, 0, 2, new int[]{0, 1}, 2, new long[]{0, 8},
+                new float[]{0, 0, 10, 10, 1, 1, 11, 11}, new float[]{0.25f, 0.5f, 0.75f, 1.25f});
+        trace.appendEvent(TouchTrace.ACTION_UP, 0, 1, new int[]{0}, 1, new long[]{16}, new float[]{2, 2});
+
+        assertEquals(0.25f, trace.getPressure(0, 0, 0), 0);
+        assertEquals(0.5f, trace.getPressure(0, 0, 1), 0);
+        assertEquals(0.75f, trace.getPressure(0, 1, 0), 0);
+        assertEquals(1.25f, trace.getPressure(0, 1, 1), 0);
+        assertEquals(1f, trace.getPressure(1, 0, 0), 0);
+
+        TouchTrace read = roundTrip(trace);
+        assertEquals(1.25f, read.getPressure(0, 1, 1), 0);
+        assertEquals(1f, read.getPressure(1, 0, 0), 0);
+    }
+
+    @Test
+    public void readFrom_readsVersionOneWithFullPressure() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(TouchTrace.MAGIC);
+        out.writeInt(1);
+        VarInt.write(out, 1);
+        out.writeLong(500);
+        out.writeByte(TouchTrace.ACTION_DOWN);
+        out.writeByte(0);
+        out.writeByte(1);
+        VarInt.write(out, 1);
+        out.writeByte(2);
+        VarInt.writeSigned(out, 0);
+        VarInt.writeSigned(out, 160);
+        VarInt.writeSigned(out, -32);
+
+        TouchTrace trace = TouchTrace.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(1, trace.getEventCount());
+        assertEquals(2, trace.getPointerId(0, 0));
+        assertEquals(500, trace.getSampleTime(0, 0));
+        assertEquals(10f, trace.getX(0, 0, 0), 0);
+        assertEquals(-2f, trace.getY(0, 0, 0), 0);
+        assertEquals(1f, trace.getPressure(0, 0, 0), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void appendEvent_rejectsPointerIdOutOfRange() throws Exception {
+        new TouchTrace().appendEvent(TouchTrace.ACTION_DOWN, 0, 1, new int[]{256}, 1, new long[]{0},
+                new float[]{0, 0});
+    }
+
+    @Test
+    public void writeTo_roundTripsExactly() throws Exception {
+        TouchTrace trace = twoFingerTrace(20);
+        TouchTrace read = roundTrip(trace);
+
+        assertEquals(trace.getEventCount(), read.getEventCount());
+        for (int e = 0; e < trace.getEventCount(); e++) {
+            assertEquals(trace.getAction(e), read.getAction(e));
+            assertEquals(trace.getActionIndex(e), read.getActionIndex(e));
+            assertEquals(trace.getPointerCount(e), read.getPointerCount(e));
+            assertEquals(trace.getSampleCount(e), read.getSampleCount(e));
+            for (int p = 0; p < trace.getPointerCount(e); p++) {
+                assertEquals(trace.getPointerId(e, p), read.getPointerId(e, p));
+            }
+            for (int s = 0; s < trace.getSampleCount(e); s++) {
+                assertEquals(trace.getSampleTime(e, s), read.getSampleTime(e, s));
+                for (int p = 0; p < trace.getPointerCount(e); p++) {
+                    assertEquals(trace.getX(e, s, p), read.getX(e, s, p), 0);
+                    assertEquals(trace.getY(e, s, p), read.getY(e, s, p), 0);
+                    assertEquals(trace.getPressure(e, s, p), read.getPressure(e, s, p), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void writeTo_isCompact() throws Exception {
+        TouchTrace trace = twoFingerTrace(200);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        trace.writeTo(new DataOutputStream(bytes));
+
+        // Raw floats alone would be 12 bytes per pointer sample
+        int pointerSamples = 200 * 2 * 2;
+        assertTrue(bytes.size() < pointerSamples * 7);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFrom_rejectsOtherData() throws Exception {
+        TouchTrace.readFrom(new DataInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 0, 0, 0, 1})));
+    }
+
+    @Test
+    public void varInt_roundTripsSignedValues() throws Exception {
+        int[] values = {0, 1, -1, 63, -64, 64, 300, -300, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (int value : values) {
+            VarInt.writeSigned(out, value);
+        }
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int value : values) {
+            assertEquals(value, VarInt.readSigned(in));
+        }
+        assertEquals(1, VarInt.zigzag(-1));
+        assertEquals(-64, VarInt.unzigzag(VarInt.zigzag(-64)));
+    }
+}
@@ -0,0 +1,50 @@
+package com.rushlimit.doodlz;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WidthDynamicsTest {
+    @Test
+    public void pressureWidensAndSpeedThins() throws Exception {
+        WidthDynamics dynamics = new WidthDynamics();
+        dynamics.setBaseWidth(20);
+        dynamics.setDensity(2);
+
+        assertEquals(20, dynamics.targetWidth(1, 0), 1e-4);
+        assertTrue(dynamics.targetWidth(0.5f, 0) < dynamics.targetWidth(0.8f, 0));
+        assertTrue(dynamics.targetWidth(1, 2) < dynamics.targetWidth(1, 0.5f));
+
+        // Never thinner than the floor, however light and fast
+        assertEquals(7, dynamics.targetWidth(0, 100), 1e-4);
+    }
+
+    @Test
+    public void widthEasesTowardTheTarget() throws Exception {
+        WidthDynamics dynamics = new WidthDynamics();
+        dynamics.setBaseWidth(20);
+        assertEquals(20, dynamics.start(0, 0, 0, 1), 1e-4);
+
+        // A sudden fast move thins the line over a few samples, not at once
+        float first = dynamics.update(8, 40, 0, 1);
+        assertTrue(first < 20 && first > dynamics.targetWidth(1, 5));
+        float width = first;
+        for (int i = 2; i < 20; i++) {
+            width = dynamics.update(8 * i, 40 * i, 0, 1);
+        }
+        assertEquals(dynamics.targetWidth(1, 5), width, 0.1f);
+    }
+
+    @Test
+    public void densityKeepsSpeedInDp() throws Exception {
+        WidthDynamics low = new WidthDynamics();
+        low.setDensity(1);
+        low.start(0, 0, 0, 1);
+        WidthDynamics high = new WidthDynamics();
+        high.setDensity(3);
+        high.start(0, 0, 0, 1);
+
+        // The same physical motion covers three times the pixels at 3x
+        assertEquals(low.update(16, 10, 0, 1), high.update(16, 30, 0, 1), 1e-4);
+    }
+}